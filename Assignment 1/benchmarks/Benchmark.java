@@ -0,0 +1,31 @@
+/*
+ * The benchmarks of the solvers, each run in a JVM of its own by BenchmarkFork. The kernels time one pass over
+ * the grid, the solves time a whole run from scratch.
+ */
+
+package benchmarks;
+
+public enum Benchmark {
+
+	// UtilityController.calcBestUtil of every non-wall state, the uncompiled backup on the grid of states
+	CALC_BEST_UTIL,
+
+	// UtilityController.calcBestUtils over all the rows, the Jacobi sweep on the transition model
+	CALC_BEST_UTILS,
+
+	// UtilityController.calcNextUtil, the K sweeps evaluating a random policy
+	CALC_NEXT_UTIL,
+
+	// ValueIteration.runValueIteration in the order of SWEEP_MODE
+	VALUE_ITERATION,
+
+	// PolicyIteration.runPolicyIteration from a random policy, evaluated in EVALUATION_MODE
+	POLICY_ITERATION,
+
+	// SaveOutput.writeToFile of HISTORY_STORES utility stores to a temporary csv file
+	WRITE_TO_FILE;
+
+	// Number of utility stores written by WRITE_TO_FILE, the history of a short solve
+	public static final int HISTORY_STORES = 10;
+
+}
@@ -0,0 +1,199 @@
+/*
+ * Runs one benchmark at the grid size of GridConstants in a JVM of its own, started by Benchmarks, so the
+ * compiled code and the heap of one benchmark never skew another. Every iteration repeats the operation for at
+ * least the iteration time and at least once, the warmup iterations are thrown away, and each measured iteration
+ * records the time per operation, the bytes allocated per operation by this thread and the collections it caused.
+ * The result is printed as a single line starting with RESULT_PREFIX, in the columns of Benchmarks.RESULT_HEADER.
+ *
+ * Usage: java -Dcols=N -Drows=N benchmarks.BenchmarkFork <benchmark> <walls> <warmup> <measure> <iteration ms>
+ * where walls is "maze" for the built-in walls, or the share of cells turned into walls at random
+ */
+
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import controller.SaveOutput;
+import controller.TransitionModel;
+import controller.UtilityController;
+import grid.AgentState;
+import grid.Grid;
+import grid.GridStore;
+import grid.UtilityStore;
+import iterations.PolicyIteration;
+import iterations.ValueIteration;
+
+public class BenchmarkFork {
+
+	public static final String RESULT_PREFIX = "RESULT,";
+
+	// Walls of the built-in maze, instead of random ones
+	public static final String MAZE_WALLS = "maze";
+
+	// Seed of the random walls, the same walls in every fork of a size and share
+	private static final long WALL_SEED = 42;
+
+	// Reads the bytes allocated by a thread, as the GC profiler of JMH does
+	private static final com.sun.management.ThreadMXBean THREADS =
+	(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	// Sink of the results of the operations, so they are never optimised away
+	private static double sink = 0.000;
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 5) {
+			System.err.println("Usage: java benchmarks.BenchmarkFork <benchmark> <walls> <warmup> <measure> <iteration ms>");
+			System.exit(1);
+		}
+		Benchmark benchmark = Benchmark.valueOf(args[0]);
+		String walls = args[1];
+		int warmup = Integer.parseInt(args[2]);
+		int measure = Integer.parseInt(args[3]);
+		long iterationNanos = Long.parseLong(args[4]) * 1000000;
+
+		Grid gridEnvironment = new Grid();
+		if (!MAZE_WALLS.equals(walls)) {
+			setRandomWalls(gridEnvironment.getStore(), Double.parseDouble(walls));
+		}
+		Runnable operation = setUp(benchmark, gridEnvironment);
+
+		for (int i = 0; i < warmup; i++) {
+			runIteration(operation, iterationNanos);
+		}
+
+		// Time, allocation and collections of every measured iteration
+		double[] millis_per_op = new double[measure];
+		long ops = 0;
+		long nanos = 0;
+		long allocated = 0;
+		long collections = 0;
+		long collection_millis = 0;
+		for (int i = 0; i < measure; i++) {
+			long allocated_before = THREADS.getCurrentThreadAllocatedBytes();
+			long collections_before = collectionCount();
+			long collection_millis_before = collectionMillis();
+			long[] iteration = runIteration(operation, iterationNanos);
+			allocated += THREADS.getCurrentThreadAllocatedBytes() - allocated_before;
+			collections += collectionCount() - collections_before;
+			collection_millis += collectionMillis() - collection_millis_before;
+			ops += iteration[0];
+			nanos += iteration[1];
+			millis_per_op[i] = iteration[1] / 1e6 / iteration[0];
+		}
+
+		double mean = 0.000;
+		for (double millis : millis_per_op) {
+			mean += millis / measure;
+		}
+		double variance = 0.000;
+		for (double millis : millis_per_op) {
+			variance += (millis - mean) * (millis - mean) / Math.max(1, measure - 1);
+		}
+
+		System.out.println(String.format(Locale.ROOT, "%s%s,%d,%s,%d,%.6f,%.6f,%d,%.3f,%d,%d", RESULT_PREFIX, benchmark,
+		gridEnvironment.getStore().getNumCols(), walls, ops, mean, Math.sqrt(variance), allocated / ops,
+		allocated / 1048576.0 / (nanos / 1e9), collections, collection_millis));
+		System.err.println("(sink " + sink + ")");
+	}
+
+	// The operation of a benchmark, with everything it reads prepared outside of the timing
+	private static Runnable setUp(final Benchmark benchmark, final Grid gridEnvironment) throws IOException {
+
+		final GridStore store = gridEnvironment.getStore();
+		final TransitionModel model = new TransitionModel(store);
+		final UtilityStore currUtilArr = new UtilityStore();
+		final UtilityStore newUtilArr = new UtilityStore();
+
+		switch (benchmark) {
+			case CALC_BEST_UTIL:
+			final AgentState[][] grid = gridEnvironment.getGrid();
+			return () -> {
+				for (int state = 0; state < model.getNumStates(); state++) {
+					int cell = model.getCell(state);
+					sink += UtilityController.calcBestUtil(cell % model.getNumCols(), cell / model.getNumCols(),
+					currUtilArr, grid).getUtil();
+				}
+			};
+
+			case CALC_BEST_UTILS:
+			return () -> sink += UtilityController.calcBestUtils(model, 0, model.getNumRows(), currUtilArr, newUtilArr);
+
+			case CALC_NEXT_UTIL:
+			final UtilityStore policy = PolicyIteration.randomPolicy(store);
+			return () -> sink += UtilityController.calcNextUtil(policy, model).getUtil(model.getCell(0));
+
+			case VALUE_ITERATION:
+			return () -> sink += ValueIteration.runValueIteration(store, globals.IterationConstants.SWEEP_MODE);
+
+			case POLICY_ITERATION:
+			return () -> sink += PolicyIteration.runPolicyIteration(store, globals.IterationConstants.EVALUATION_MODE,
+			PolicyIteration.randomPolicy(store));
+
+			case WRITE_TO_FILE:
+			final List<UtilityStore> history = new ArrayList<>();
+			for (int i = 0; i < Benchmark.HISTORY_STORES; i++) {
+				UtilityController.calcBestUtils(model, 0, model.getNumRows(), currUtilArr, newUtilArr);
+				history.add(newUtilArr.copy());
+				currUtilArr.copyFrom(newUtilArr);
+			}
+			final File file = File.createTempFile("benchmark", "");
+			file.deleteOnExit();
+			return () -> {
+				SaveOutput.writeToFile(history, file.getPath());
+				sink += new File(file.getPath() + ".csv").length();
+			};
+
+			default:
+			throw new IllegalArgumentException("No benchmark " + benchmark);
+		}
+	}
+
+	// Repeats the operation for at least the iteration time, returning the number of operations and the time taken
+	private static long[] runIteration(final Runnable operation, final long iterationNanos) {
+		long ops = 0;
+		long start = System.nanoTime();
+		long elapsed;
+		do {
+			operation.run();
+			ops++;
+			elapsed = System.nanoTime() - start;
+		} while (elapsed < iterationNanos);
+		return new long[] { ops, elapsed };
+	}
+
+	// Turns every cell into a wall with the given probability, and every other cell into an open one
+	private static void setRandomWalls(final GridStore store, final double share) {
+		Random random = new Random(WALL_SEED);
+		for (int row = 0; row < store.getNumRows(); row++) {
+			for (int col = 0; col < store.getNumCols(); col++) {
+				store.setWall(col, row, random.nextDouble() < share);
+			}
+		}
+	}
+
+	// Collections of every collector so far
+	private static long collectionCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += Math.max(0, collector.getCollectionCount());
+		}
+		return count;
+	}
+
+	// Time spent in collections of every collector so far
+	private static long collectionMillis() {
+		long millis = 0;
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			millis += Math.max(0, collector.getCollectionTime());
+		}
+		return millis;
+	}
+
+}
@@ -0,0 +1,165 @@
+/*
+ * Runs the benchmarks of the solvers over grid sizes and shares of walls, each combination in a JVM of its own
+ * (see BenchmarkFork), prints a table of the time and allocation per operation and writes it to a csv file.
+ * Given the csv file of an earlier run as a baseline, it also prints how many times slower or faster each
+ * benchmark got, so a change to the solvers can be measured against the committed baseline,
+ * outputs/benchmarks/baseline.csv.
+ *
+ * Usage: java [-Dbench=NAME,...] [-Dsizes=6,60,...] [-Dwalls=maze,0.1,...] [-Dwarmup=N] [-Dmeasure=N]
+ *        [-DiterationMs=N] [-Dbaseline=file] [-Dresults=file] [-Dforkargs="..."] benchmarks.Benchmarks
+ * The forks run on one thread with a two-store ring history, so the solves time the solvers, not the threads
+ * or the history files; -Dforkargs adds to or overrides these JVM options.
+ */
+
+package benchmarks;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+public class Benchmarks {
+
+	// Define the benchmarks to run, all by default (override with -Dbench=NAME,...)
+	public static final String BENCHMARKS = System.getProperty("bench", "");
+
+	// Define the sizes of the square grids (override with -Dsizes=N,...)
+	public static final String SIZES = System.getProperty("sizes", "6,60,600,2000");
+
+	// Define the walls of the grids, "maze" for the built-in walls or a share of cells at random (override with -Dwalls=...)
+	public static final String WALLS = System.getProperty("walls", "maze,0.1,0.3");
+
+	// Define the number of iterations thrown away and measured (override with -Dwarmup=N and -Dmeasure=N)
+	public static final int WARMUP_ITERATIONS = Integer.getInteger("warmup", 2);
+	public static final int MEASURED_ITERATIONS = Integer.getInteger("measure", 5);
+
+	// Define the shortest time of an iteration, which runs at least one operation (override with -DiterationMs=N)
+	public static final int ITERATION_MILLIS = Integer.getInteger("iterationMs", 1000);
+
+	// Define the results of an earlier run to compare with, if the file exists (override with -Dbaseline=file)
+	public static final String BASELINE_FILE = System.getProperty("baseline", "outputs/benchmarks/baseline.csv");
+
+	// Define the file the results are written to (override with -Dresults=file)
+	public static final String RESULTS_FILE = System.getProperty("results", "benchmark_results.csv");
+
+	// Define the JVM options of the forks, after the defaults (override with -Dforkargs="...")
+	public static final String FORK_ARGS = System.getProperty("forkargs", "");
+
+	// Columns of the results, as printed by BenchmarkFork
+	public static final String RESULT_HEADER =
+	"benchmark,size,walls,ops,ms_per_op,error_ms,alloc_bytes_per_op,alloc_mb_per_s,gc_count,gc_ms";
+
+	private static final List<String> DEFAULT_FORK_ARGS = Arrays.asList("-Dthreads=1", "-Dhistory=RING", "-Dring=2");
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+
+		List<Benchmark> benchmarks = new ArrayList<>();
+		if (BENCHMARKS.isEmpty()) {
+			benchmarks.addAll(Arrays.asList(Benchmark.values()));
+		} else {
+			for (String name : BENCHMARKS.split(",")) {
+				benchmarks.add(Benchmark.valueOf(name.trim().toUpperCase()));
+			}
+		}
+		Map<String, Double> baseline = readBaseline(Paths.get(BASELINE_FILE));
+
+		List<String> results = new ArrayList<>();
+		results.add(RESULT_HEADER);
+		System.out.println(String.format("%-18s%7s%7s%14s%12s%16s%12s%6s%8s%10s", "BENCHMARK", "SIZE", "WALLS",
+		"ms/op", "ERROR", "ALLOC B/op", "ALLOC MB/s", "GC", "GC ms", "BASELINE"));
+
+		for (Benchmark benchmark : benchmarks) {
+			for (String size : SIZES.split(",")) {
+				for (String walls : WALLS.split(",")) {
+					String result = fork(benchmark, size.trim(), walls.trim());
+					if (result == null) {
+						System.out.println(String.format("%-18s%7s%7s%14s", benchmark, size.trim(), walls.trim(), "FAILED"));
+						continue;
+					}
+					results.add(result);
+					printResult(result, baseline);
+				}
+			}
+		}
+		Files.write(Paths.get(RESULTS_FILE), results, StandardCharsets.UTF_8);
+	}
+
+	// Runs a benchmark in a JVM of its own and returns its result line, without the prefix, or null if it failed
+	private static String fork(final Benchmark benchmark, final String size, final String walls)
+	throws IOException, InterruptedException {
+
+		List<String> command = new ArrayList<>();
+		command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+		command.add("-Dcols=" + size);
+		command.add("-Drows=" + size);
+		command.addAll(DEFAULT_FORK_ARGS);
+		if (!FORK_ARGS.trim().isEmpty()) {
+			command.addAll(Arrays.asList(FORK_ARGS.trim().split("\\s+")));
+		}
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(BenchmarkFork.class.getName());
+		command.add(benchmark.name());
+		command.add(walls);
+		command.add(Integer.toString(WARMUP_ITERATIONS));
+		command.add(Integer.toString(MEASURED_ITERATIONS));
+		command.add(Integer.toString(ITERATION_MILLIS));
+
+		Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+		String result = null;
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.startsWith(BenchmarkFork.RESULT_PREFIX)) {
+					result = line.substring(BenchmarkFork.RESULT_PREFIX.length());
+				}
+			}
+		}
+		return process.waitFor() == 0 ? result : null;
+	}
+
+	// Prints a result, with the ratio of its time to the one of the baseline if there is one
+	private static void printResult(final String result, final Map<String, Double> baseline) {
+		String[] columns = result.split(",");
+		Double baseline_millis = baseline.get(key(columns));
+		double millis = Double.parseDouble(columns[4]);
+		System.out.println(String.format(Locale.ROOT, "%-18s%7s%7s%14.3f%12.3f%16s%12s%6s%8s%10s", columns[0], columns[1],
+		columns[2], millis, Double.parseDouble(columns[5]), columns[6], columns[7], columns[8], columns[9],
+		baseline_millis == null ? "-" : String.format(Locale.ROOT, "%.2fx", millis / baseline_millis)));
+	}
+
+	// Time per operation of every benchmark, size and walls of a results file, none if there is no file
+	private static Map<String, Double> readBaseline(final Path file) {
+		Map<String, Double> baseline = new HashMap<>();
+		if (!Files.exists(file)) {
+			return baseline;
+		}
+		try {
+			for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+				String[] columns = line.split(",");
+				if (columns.length == RESULT_HEADER.split(",").length && !line.equals(RESULT_HEADER)) {
+					baseline.put(key(columns), Double.parseDouble(columns[4]));
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return baseline;
+	}
+
+	// Benchmark, size and walls of a result
+	private static String key(final String[] columns) {
+		return columns[0] + "," + columns[1] + "," + columns[2];
+	}
+
+}
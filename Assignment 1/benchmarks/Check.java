@@ -0,0 +1,37 @@
+/*
+ * The checks of the solvers, each comparing a fast path with the reference it replaces, run by Checks on the
+ * built-in maze and on random mazes of the size of GridConstants.
+ */
+
+package benchmarks;
+
+public enum Check {
+
+	// UtilityController.backupBestUtil and calcPolicyUtil against calcBestUtil and calcActionUtil, state by state
+	BELLMAN_BACKUP,
+
+	// UtilityFormatter against new DecimalFormat("00.000") cut to 6 characters, on random, halfway and near-halfway values
+	UTILITY_FORMAT,
+
+	// Value and policy iteration of the built-in maze by the solvers against calcBestUtil and calcActionUtil, as written
+	REFERENCE_SOLVE,
+
+	// Value and policy iteration warm-started from a cached solution of other walls, against a solve from scratch
+	WARM_START,
+
+	// Jacobi sweeps of VectorBellmanKernel against the scalar backups, on models of several discounts and rewards
+	VECTOR_SWEEPS,
+
+	// Value iteration by OffHeapSolver, on a grid and utilities outside the heap, against a Jacobi ValueIteration
+	OFF_HEAP_SOLVE,
+
+	// Jacobi and red-black sweeps of ParallelSweep on several threads against the same sweeps on one thread
+	PARALLEL_SWEEPS,
+
+	// Policies packed by PolicyIndex and mapped back, cell by cell and path by path, on grids of several shapes
+	POLICY_INDEX,
+
+	// Value and policy iteration interrupted part way and resumed from their checkpoints, against solves straight through
+	CHECKPOINT_RESUME;
+
+}
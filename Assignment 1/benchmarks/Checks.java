@@ -0,0 +1,1119 @@
+/*
+ * Runs the checks of the solvers (see Check) on the built-in maze and on random mazes, prints whether each one
+ * passed with a summary of what it compared, and exits with status 1 if any failed, so a change to a kernel or
+ * a solver can be checked against the reference it replaces before it is committed.
+ *
+ * Usage: java --add-modules jdk.incubator.vector -Dcols=60 -Drows=60 [-Dcheck=NAME,...] [-Dmazes=N] benchmarks.Checks
+ * VECTOR_SWEEPS fails without the Vector API, the other checks do not need it.
+ */
+
+package benchmarks;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import controller.BellmanKernel;
+import controller.IterationMetrics;
+import controller.OffHeapSolver;
+import controller.ParallelSweep;
+import controller.PolicyEvaluator;
+import controller.SnapshotPublisher;
+import controller.SolutionCache;
+import controller.SolverCheckpoint;
+import controller.SolverInstrumentation;
+import controller.SolverListener;
+import controller.TransitionModel;
+import controller.UtilityController;
+import controller.UtilityFormatter;
+import controller.UtilityHistory;
+import globals.EvaluationMode;
+import globals.GridConstants;
+import globals.IterationConstants;
+import globals.SweepMode;
+import grid.AgentAction;
+import grid.AgentState;
+import grid.Grid;
+import grid.GridStore;
+import grid.MappedGrid;
+import grid.OffHeapUtilityStore;
+import grid.PolicyIndex;
+import grid.Utility;
+import grid.UtilityStore;
+import iterations.PolicyIteration;
+import iterations.ValueIteration;
+
+public class Checks {
+
+	// Define the checks to run, all by default (override with -Dcheck=NAME,...)
+	public static final String CHECKS = System.getProperty("check", "");
+
+	// Define the number of random mazes each check runs on, besides the built-in maze (override with -Dmazes=N)
+	public static final int RANDOM_MAZES = Integer.getInteger("mazes", 8);
+
+	// Seed of the first random maze and of the random utilities, the same mazes in every run
+	private static final long SEED = 42;
+
+	// Largest share of walls of the random mazes, the mazes spreading evenly up to it
+	private static final double MAX_WALL_SHARE = 0.5;
+
+	// Define the number of random values UTILITY_FORMAT formats, besides the listed ones (override with -Dformats=N)
+	public static final int RANDOM_FORMATS = Integer.getInteger("formats", 1000000);
+
+	// Utilities UTILITY_FORMAT formats besides the random ones, each with its neighbours a few ulps away: zeros, values
+	// of 3 decimals and 5 in the fourth one, halfway in decimal but not in binary, around the widths of the text, and
+	// around the limit of the fast path, with the values DecimalFormat formats from its own path
+	private static final double[] LISTED_FORMATS = { 0.000, -0.000, 0.0005, -0.0005, 0.0015, 0.0025, 0.0035, 0.0045,
+		0.1235, 0.9995, -0.9995, 1.0005, 2.5005, 4.4445, 9.9995, 10.0005, 12.3455, 76.9812995, 76.9813005, 99.9985,
+		99.9995, -99.9995, 100.0005, 999.9995, 1234.5675, 99999.9995, 1e9 - 0.0005, 1e9, -1e9, 1e12 + 0.5,
+		Double.MIN_VALUE, -Double.MIN_VALUE, Double.MAX_VALUE, Double.NaN, Double.POSITIVE_INFINITY,
+		Double.NEGATIVE_INFINITY };
+
+	// Ulps either side of each listed utility that UTILITY_FORMAT formats too
+	private static final int LISTED_ULPS = 8;
+
+	// Numbers of threads PARALLEL_SWEEPS sweeps with, besides one
+	private static final int[] PARALLEL_THREADS = { 2, 3, 7 };
+
+	// Columns and rows of the grids POLICY_INDEX packs besides the one of GridConstants, most of them not multiples of
+	// the 4 actions or 8 walls packed in a byte, so that rows end inside a byte
+	private static final int[][] POLICY_SHAPES = { { 1, 1 }, { 1, 9 }, { 9, 1 }, { 3, 5 }, { 5, 3 }, { 4, 4 }, { 7, 7 },
+		{ 8, 8 }, { 13, 11 }, { 17, 3 } };
+
+	// Units in the last place of the largest term of a backup within which two sums of the same terms must agree
+	private static final double BACKUP_ULPS = 8.000;
+
+	// Sweeps or improvements between two checkpoints of CHECKPOINT_RESUME
+	private static final int CHECKPOINT_EVERY = 2;
+
+	/*
+	 * Check that did not hold, with the reason.
+	 */
+
+	private static final class CheckFailure extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		CheckFailure(String message) {
+			super(message);
+		}
+
+	}
+
+	/*
+	 * Solve stopped by a listener of its iterations, as a killed run would stop.
+	 */
+
+	private static final class SolveInterrupted extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+	}
+
+	/*
+	 * Listener of the iterations of a solve, counting them and interrupting the solve after the given number.
+	 */
+
+	private static final class Interrupter implements SolverListener {
+
+		private final int limit;
+		private int steps = 0;
+
+		Interrupter(int limit) {
+			this.limit = limit;
+		}
+
+		@Override
+		public void iterationCompleted(IterationMetrics metrics) {
+			steps = metrics.getIteration();
+			if (steps == limit) {
+				throw new SolveInterrupted();
+			}
+		}
+
+	}
+
+	/*
+	 * Solve with checkpoints, from the start or from a checkpointed state, returning its number of backups.
+	 */
+
+	private interface ResumableSolve {
+
+		long run(SolverCheckpoint checkpoint, SolverCheckpoint.State state);
+
+	}
+
+	public static void main(String[] args) {
+
+		List<Check> checks = new ArrayList<>();
+		if (CHECKS.isEmpty()) {
+			checks.addAll(Arrays.asList(Check.values()));
+		} else {
+			for (String name : CHECKS.split(",")) {
+				checks.add(Check.valueOf(name.trim().toUpperCase()));
+			}
+		}
+
+		int failed = 0;
+		for (Check check : checks) {
+			long startTime = System.nanoTime();
+			String result;
+			boolean passed = true;
+			try {
+				result = run(check);
+			} catch (CheckFailure e) {
+				result = e.getMessage();
+				passed = false;
+				failed++;
+			}
+			System.out.println(String.format(Locale.ROOT, "%-22s%-6s%8d ms  %s", check, passed ? "PASS" : "FAIL",
+			(System.nanoTime() - startTime) / 1000000, result));
+		}
+		System.exit(failed == 0 ? 0 : 1);
+	}
+
+	// Runs a check, returning a summary of what it compared, or throwing CheckFailure
+	private static String run(final Check check) {
+		switch (check) {
+			case BELLMAN_BACKUP:
+			return checkBellmanBackup();
+
+			case UTILITY_FORMAT:
+			return checkUtilityFormat();
+
+			case REFERENCE_SOLVE:
+			return checkReferenceSolve();
+
+			case WARM_START:
+			return checkWarmStart();
+
+			case VECTOR_SWEEPS:
+			return checkVectorSweeps();
+
+			case OFF_HEAP_SOLVE:
+			return checkOffHeapSolve();
+
+			case PARALLEL_SWEEPS:
+			return checkParallelSweeps();
+
+			case POLICY_INDEX:
+			return checkPolicyIndex();
+
+			case CHECKPOINT_RESUME:
+			return checkCheckpointResume();
+
+			default:
+			throw new IllegalArgumentException("No check " + check);
+		}
+	}
+
+	/*
+	 * Backups of every state of every maze, from utilities that are all 0 so that every action ties exactly,
+	 * from utilities of -1, 0 and 1 so that many actions tie, and from random utilities. The compiled transitions
+	 * merge the outcomes landing on one cell and sum them by successor, so a utility may differ from the reference
+	 * in the last places, and an action only where the reference has a tie within that difference. The policy
+	 * utilities and improvements of policy iteration sum like the reference, so they must give its bits and actions.
+	 */
+
+	private static String checkBellmanBackup() {
+		int states = 0;
+		int ties = 0;
+		int ties_broken_apart = 0;
+		double max_difference = 0.000;
+
+		for (int maze = 0; maze <= RANDOM_MAZES; maze++) {
+			Grid gridEnvironment = maze == 0 ? new Grid() : randomMaze(maze);
+			AgentState[][] grid = gridEnvironment.getGrid();
+			TransitionModel model = new TransitionModel(gridEnvironment.getStore());
+			Random random = new Random(SEED + maze);
+
+			for (int fill = 0; fill < 3; fill++) {
+				UtilityStore utils = new UtilityStore();
+				for (int cell = 0; cell < utils.size(); cell++) {
+					utils.setUtil(cell, fill == 0 ? 0.000 : fill == 1 ? random.nextInt(3) - 1 : 100.000 * random.nextGaussian());
+				}
+				UtilityStore new_utils = new UtilityStore();
+				UtilityStore policy = utils.copy();
+
+				for (int state = 0; state < model.getNumStates(); state++) {
+					int cell = model.getCell(state);
+					int col = cell % model.getNumCols();
+					int row = cell / model.getNumCols();
+
+					// Every action of the state, as the reference calculates it
+					double[] action_utils = new double[AgentAction.values().length];
+					double largest_term = Math.abs(grid[col][row].getReward());
+					for (AgentAction action : AgentAction.values()) {
+						Utility reference = UtilityController.calcActionUtil(action, col, row, utils, grid);
+						action_utils[action.ordinal()] = reference.getUtil();
+						largest_term = Math.max(largest_term, Math.abs(reference.getUtil()));
+					}
+					double tolerance = BACKUP_ULPS * Math.ulp(largest_term);
+
+					// The utility of each action stated in a policy, and the action improving it
+					Utility reference = UtilityController.calcBestUtil(col, row, utils, grid);
+					for (AgentAction action : AgentAction.values()) {
+						policy.setAction(col, row, action);
+						double policy_util = UtilityController.calcPolicyUtil(model, state, policy);
+						compare("calcPolicyUtil of " + action, col, row, maze, policy_util, action_utils[action.ordinal()], 0.000);
+						UtilityController.improvePolicyAction(model, state, policy);
+						AgentAction improved = reference.getUtil() > action_utils[action.ordinal()] ? reference.getAction() : action;
+						if (policy.getAction(col, row) != improved) {
+							throw new CheckFailure(String.format(Locale.ROOT, "improvePolicyAction turns %s into %s at (%d,%d) "
+							+ "of maze %d, the reference into %s", action, policy.getAction(col, row), col, row, maze, improved));
+						}
+					}
+
+					// The best action, which must be the reference's or tie with it
+					double best_util = UtilityController.backupBestUtil(model, state, utils, new_utils);
+					max_difference = Math.max(max_difference, compare("backupBestUtil", col, row, maze, best_util,
+					reference.getUtil(), tolerance));
+					AgentAction best_action = new_utils.getAction(col, row);
+					int tied = 0;
+					for (double action_util : action_utils) {
+						tied += reference.getUtil() - action_util <= tolerance ? 1 : 0;
+					}
+					ties += tied > 1 ? 1 : 0;
+					if (best_action != reference.getAction()) {
+						if (reference.getUtil() - action_utils[best_action.ordinal()] > tolerance) {
+							throw new CheckFailure(String.format(Locale.ROOT, "backupBestUtil takes %s at (%d,%d) of maze %d, "
+							+ "the reference %s, which is better by %g", best_action, col, row, maze, reference.getAction(),
+							reference.getUtil() - action_utils[best_action.ordinal()]));
+						}
+						ties_broken_apart++;
+					}
+					if (fill == 0 && best_action != reference.getAction()) {
+						throw new CheckFailure(String.format(Locale.ROOT, "backupBestUtil breaks the exact tie at (%d,%d) of "
+						+ "maze %d with %s, the reference with %s", col, row, maze, best_action, reference.getAction()));
+					}
+					states++;
+				}
+			}
+		}
+		return String.format(Locale.ROOT, "%d backups on %d mazes, %d with tied actions, %d of them broken apart by "
+		+ "rounding, largest difference %g", states, RANDOM_MAZES + 1, ties, ties_broken_apart, max_difference);
+	}
+
+	/*
+	 * Text of the csv file of many utilities by UtilityFormatter and by the DecimalFormat SaveOutput used to format
+	 * them with, which must be the same: the listed utilities and their neighbours, random utilities of the range of the
+	 * solvers, random magnitudes from 1e-4 to 1e12 of either sign, and random numbers of thousandths and a half,
+	 * halfway in decimal, with their neighbours, all from a fixed seed.
+	 */
+
+	private static String checkUtilityFormat() {
+		DecimalFormat reference = new DecimalFormat("00.000");
+		Random random = new Random(SEED);
+		int formats = 0;
+
+		for (double listed : LISTED_FORMATS) {
+			double utility = listed;
+			for (int ulp = 0; ulp < LISTED_ULPS; ulp++) {
+				utility = Math.nextDown(utility);
+			}
+			for (int ulp = -LISTED_ULPS; ulp <= LISTED_ULPS; ulp++) {
+				compareFormat(reference, utility);
+				utility = Math.nextUp(utility);
+				formats++;
+			}
+		}
+
+		for (int i = 0; i < RANDOM_FORMATS; i++) {
+			double utility;
+			switch (i % 4) {
+				case 0:
+				utility = 200.000 * random.nextDouble() - 100.000;
+				break;
+
+				case 1:
+				utility = (random.nextBoolean() ? -1 : 1) * Math.pow(10, 16 * random.nextDouble() - 4);
+				break;
+
+				case 2:
+				utility = (random.nextInt(2000000) - 1000000 + 0.5) / 1000;
+				break;
+
+				default:
+				utility = (random.nextInt(2000000) - 1000000 + 0.5) / 1000;
+				utility = random.nextBoolean() ? Math.nextUp(utility) : Math.nextDown(utility);
+				break;
+			}
+			compareFormat(reference, utility);
+			formats++;
+		}
+		return String.format(Locale.ROOT, "%d utilities, %d of them listed with their neighbours, the same text as "
+		+ "DecimalFormat", formats, LISTED_FORMATS.length * (2 * LISTED_ULPS + 1));
+	}
+
+	// Throws CheckFailure if UtilityFormatter writes another text for a utility than DecimalFormat, or fails otherwise,
+	// as NaN and infinities, whose text is shorter than the width, fail in both
+	private static void compareFormat(final DecimalFormat reference, final double utility) {
+		String text;
+		String reference_text;
+		try {
+			text = UtilityFormatter.format(utility);
+		} catch (RuntimeException e) {
+			text = e.getClass().getSimpleName();
+		}
+		try {
+			reference_text = reference.format(utility).substring(0, UtilityFormatter.WIDTH);
+		} catch (RuntimeException e) {
+			reference_text = e.getClass().getSimpleName();
+		}
+		if (!text.equals(reference_text)) {
+			throw new CheckFailure(String.format(Locale.ROOT, "UtilityFormatter writes %s for %.17g, DecimalFormat %s", text,
+			utility, reference_text));
+		}
+	}
+
+	/*
+	 * Value iteration of the built-in maze from 0, by the backups of calcBestUtil on the grid of states and by the
+	 * Jacobi sweeps of the solvers on the transition model, every sweep of both reading the previous one. The two must
+	 * take as many sweeps and give every cell the same action and the same text in the csv file, which is what keeps
+	 * the output of the solvers byte-identical to the reference although their sums are not in the same order.
+	 * Policy iteration is checked on the same maze too, see checkReferencePolicySolve.
+	 */
+
+	private static String checkReferenceSolve() {
+		Grid gridEnvironment = new Grid();
+		AgentState[][] grid = gridEnvironment.getGrid();
+		TransitionModel model = new TransitionModel(gridEnvironment.getStore());
+		double threshold = IterationConstants.MAXIMUM_ALLOWABLE_DISCOUNTED_ERROR
+		* ((1.000 - IterationConstants.DISCOUNT_FACTOR) / IterationConstants.DISCOUNT_FACTOR);
+
+		UtilityStore reference = new UtilityStore();
+		int reference_sweeps = 0;
+		double delta;
+		do {
+			UtilityStore next = reference.copy();
+			delta = Double.MIN_VALUE;
+			for (int state = 0; state < model.getNumStates(); state++) {
+				int cell = model.getCell(state);
+				Utility best = UtilityController.calcBestUtil(cell % model.getNumCols(), cell / model.getNumCols(), reference, grid);
+				next.setUtil(cell, best.getUtil());
+				next.setActionCode(cell, AgentAction.toCode(best.getAction()));
+				delta = Math.max(delta, Math.abs(best.getUtil() - reference.getUtil(cell)));
+			}
+			reference = next;
+			reference_sweeps++;
+		} while (delta >= threshold);
+
+		UtilityStore curr_utils = new UtilityStore();
+		UtilityStore new_utils = new UtilityStore();
+		int sweeps = 0;
+		do {
+			delta = UtilityController.sweepBestUtils(SweepMode.JACOBI, null, model, curr_utils, new_utils);
+			UtilityStore temp = curr_utils;
+			curr_utils = new_utils;
+			new_utils = temp;
+			sweeps++;
+		} while (delta >= threshold);
+
+		if (sweeps != reference_sweeps) {
+			throw new CheckFailure("The solvers converge in " + sweeps + " sweeps, the reference in " + reference_sweeps);
+		}
+		byte[] text = new byte[UtilityFormatter.WIDTH];
+		byte[] reference_text = new byte[UtilityFormatter.WIDTH];
+		double max_difference = 0.000;
+		for (int cell = 0; cell < curr_utils.size(); cell++) {
+			int col = cell % model.getNumCols();
+			int row = cell / model.getNumCols();
+			UtilityFormatter.format(curr_utils.getUtil(cell), text, 0);
+			UtilityFormatter.format(reference.getUtil(cell), reference_text, 0);
+			if (!Arrays.equals(text, reference_text) || curr_utils.getActionCode(cell) != reference.getActionCode(cell)) {
+				throw new CheckFailure(String.format(Locale.ROOT, "(%d,%d) is %.17g %s, the reference %.17g %s", col, row,
+				curr_utils.getUtil(cell), curr_utils.getAction(col, row), reference.getUtil(cell), reference.getAction(col, row)));
+			}
+			max_difference = Math.max(max_difference, Math.abs(curr_utils.getUtil(cell) - reference.getUtil(cell)));
+		}
+		return String.format(Locale.ROOT, "%d x %d maze, value iteration in %d sweeps, the same text and action in every "
+		+ "cell, largest difference %g, %s", model.getNumCols(), model.getNumRows(), sweeps, max_difference,
+		checkReferencePolicySolve(grid, model));
+	}
+
+	/*
+	 * Policy iteration of the built-in maze from a random policy, by the K sweeps of calcActionUtil and the
+	 * improvements comparing calcBestUtil with calcActionUtil on the grid of states, as written, and by the fixed
+	 * evaluation and the improvements of PolicyEvaluator on the transition model. Its policies change on near-ties,
+	 * so both must take as many improvements and give every cell the same bits and the same action.
+	 */
+
+	private static String checkReferencePolicySolve(final AgentState[][] grid, final TransitionModel model) {
+		UtilityStore policy = new UtilityStore();
+		Random random = new Random(SEED);
+		for (int state = 0; state < model.getNumStates(); state++) {
+			policy.setActionCode(model.getCell(state), TransitionModel.getActionCode(random.nextInt(TransitionModel.NUM_ACTIONS)));
+		}
+
+		UtilityStore reference = policy.copy();
+		int reference_iterations = 0;
+		boolean unchanged;
+		do {
+			for (int k = 0; k < IterationConstants.K; k++) {
+				UtilityStore prev = reference.copy();
+				for (int state = 0; state < model.getNumStates(); state++) {
+					int cell = model.getCell(state);
+					int col = cell % model.getNumCols();
+					int row = cell / model.getNumCols();
+					reference.setUtil(cell, UtilityController.calcActionUtil(prev.getAction(col, row), col, row, prev, grid).getUtil());
+				}
+			}
+			unchanged = true;
+			for (int state = 0; state < model.getNumStates(); state++) {
+				int cell = model.getCell(state);
+				int col = cell % model.getNumCols();
+				int row = cell / model.getNumCols();
+				Utility best = UtilityController.calcBestUtil(col, row, reference, grid);
+				Utility policy_util = UtilityController.calcActionUtil(reference.getAction(col, row), col, row, reference, grid);
+				if (best.getUtil() > policy_util.getUtil()) {
+					reference.setAction(col, row, best.getAction());
+					unchanged = false;
+				}
+			}
+			reference_iterations++;
+		} while (!unchanged);
+
+		PolicyEvaluator evaluator = new PolicyEvaluator(model, EvaluationMode.FIXED);
+		UtilityStore utils = policy.copy();
+		int iterations = 0;
+		do {
+			utils = evaluator.evaluate(utils);
+			iterations++;
+		} while (evaluator.improve(utils));
+
+		if (iterations != reference_iterations) {
+			throw new CheckFailure("Policy iteration converges in " + iterations + " improvements, the reference in "
+			+ reference_iterations);
+		}
+		for (int cell = 0; cell < utils.size(); cell++) {
+			if (Double.doubleToLongBits(utils.getUtil(cell)) != Double.doubleToLongBits(reference.getUtil(cell))
+			|| utils.getActionCode(cell) != reference.getActionCode(cell)) {
+				int col = cell % model.getNumCols();
+				int row = cell / model.getNumCols();
+				throw new CheckFailure(String.format(Locale.ROOT, "Policy iteration leaves (%d,%d) at %.17g %s, the reference "
+				+ "at %.17g %s", col, row, utils.getUtil(cell), utils.getAction(col, row), reference.getUtil(cell),
+				reference.getAction(col, row)));
+			}
+		}
+		return String.format(Locale.ROOT, "policy iteration in %d improvements, the same bits and action in every cell",
+		iterations);
+	}
+
+	/*
+	 * Solves the built-in maze with some of its walls opened and some open cells walled up, caches the solution,
+	 * then solves the built-in maze from it by value and policy iteration, which must not keep anything on a wall,
+	 * must give every open cell an action, and, for value iteration, must be as close to the optimal utilities as
+	 * a solve from scratch, i.e. within twice the maximum error of it.
+	 */
+
+	private static String checkWarmStart() {
+		Grid gridEnvironment = new Grid();
+		GridStore store = gridEnvironment.getStore();
+
+		// Other walls: every wall of the base grid opened in the first block, an open cell walled up next to it
+		Grid other_environment = new Grid();
+		GridStore other_store = other_environment.getStore();
+		int opened = 0;
+		for (int row = 0; row < GridConstants.BASE_NUM_ROWS; row++) {
+			for (int col = 0; col < GridConstants.BASE_NUM_COLS; col++) {
+				if (store.isWall(col, row)) {
+					other_store.setWall(col, row, false);
+					opened++;
+				}
+			}
+		}
+		other_store.setWall(2, 1, true);
+		other_store.setWall(0, 3, true);
+
+		Path directory = null;
+		try {
+			directory = Files.createTempDirectory("checks");
+			SolutionCache cache = new SolutionCache(directory, Long.MAX_VALUE);
+			ValueIteration.runValueIteration(other_store, SweepMode.JACOBI);
+			cache.store(other_store, "value_iteration", ValueIteration.getLatestUtils(), 0);
+			cache.store(other_store, "policy_iteration", ValueIteration.getLatestUtils(), 0);
+
+			ValueIteration.runValueIteration(store, SweepMode.JACOBI);
+			UtilityStore cold = ValueIteration.getLatestUtils().copy();
+
+			SolutionCache.Solution cached = cache.lookup(store, "value_iteration");
+			if (cached == null || cached.isExact()) {
+				throw new CheckFailure("The cache gives " + (cached == null ? "no solution" : "an exact solution")
+				+ " for other walls");
+			}
+			checkFitted("The cached solution", cached.getUtils(), store);
+			int sweeps = ValueIteration.runValueIteration(store, SweepMode.JACOBI, cached.getUtils());
+			UtilityStore warm = ValueIteration.getLatestUtils();
+			checkFitted("Value iteration", warm, store);
+			double max_difference = 0.000;
+			for (int cell = 0; cell < warm.size(); cell++) {
+				max_difference = Math.max(max_difference, Math.abs(warm.getUtil(cell) - cold.getUtil(cell)));
+			}
+			if (max_difference > 2 * IterationConstants.MAXIMUM_ALLOWABLE_DISCOUNTED_ERROR) {
+				throw new CheckFailure(String.format(Locale.ROOT, "Value iteration warm-started is %g from the solve "
+				+ "from scratch", max_difference));
+			}
+
+			PolicyIteration.runPolicyIteration(store, IterationConstants.EVALUATION_MODE,
+			cache.lookup(store, "policy_iteration").getUtils());
+			checkFitted("Policy iteration", PolicyIteration.getLatestUtils(), store);
+
+			return String.format(Locale.ROOT, "%d walls opened and 2 open cells walled up, value iteration in %d sweeps "
+			+ "and %g from the solve from scratch, policy iteration without actions on walls", opened, sweeps, max_difference);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			deleteDirectory(directory);
+		}
+	}
+
+	/*
+	 * Value iteration by the vectorized kernel and by the scalar backups, on every maze with the discount and rewards
+	 * of IterationConstants, with the discounts of the coarse grids of MultigridSolver, and with a smaller discount and
+	 * larger rewards, as the models of the batched solver may have. Both run as many sweeps as the scalar backups take
+	 * to converge, and must end within the tolerance of the kernel for the model.
+	 */
+
+	private static String checkVectorSweeps() {
+		BellmanKernel kernel = BellmanKernel.loadVector();
+		if (kernel == null) {
+			throw new CheckFailure("No vector kernel, run with --add-modules jdk.incubator.vector");
+		}
+		double discount = IterationConstants.DISCOUNT_FACTOR;
+		double[] discounts = { discount, discount * discount, Math.pow(discount, 4), 0.900 };
+		double[] reward_scales = { 1.000, 1.000, 1.000, 5.000 };
+
+		int models = 0;
+		double max_ratio = 0.000;
+		for (int maze = 0; maze <= RANDOM_MAZES; maze++) {
+			GridStore store = (maze == 0 ? new Grid() : randomMaze(maze)).getStore();
+			for (int i = 0; i < discounts.length; i++) {
+				double reward_scale = reward_scales[i];
+				TransitionModel model = new TransitionModel(store, (col, row) -> reward_scale * store.getReward(col, row),
+				discounts[i]);
+				double threshold = IterationConstants.MAXIMUM_ALLOWABLE_DISCOUNTED_ERROR
+				* ((1.000 - model.getDiscount()) / model.getDiscount());
+
+				// The scalar backups until convergence
+				UtilityStore scalar = new UtilityStore(model.getNumCols(), model.getNumRows());
+				UtilityStore scalar_new = scalar.copy();
+				int sweeps = 0;
+				double delta;
+				do {
+					delta = Double.MIN_VALUE;
+					for (int state = 0; state < model.getNumStates(); state++) {
+						double updated_util = UtilityController.backupBestUtil(model, state, scalar, scalar_new);
+						delta = Math.max(delta, Math.abs(updated_util - scalar.getUtil(model.getCell(state))));
+					}
+					UtilityStore temp = scalar;
+					scalar = scalar_new;
+					scalar_new = temp;
+					sweeps++;
+				} while (delta >= threshold);
+
+				// As many sweeps of the vectorized kernel
+				UtilityStore vector = new UtilityStore(model.getNumCols(), model.getNumRows());
+				UtilityStore vector_new = vector.copy();
+				for (int sweep = 0; sweep < sweeps; sweep++) {
+					kernel.calcBestUtils(model, 0, model.getNumRows(), vector, vector_new);
+					UtilityStore temp = vector;
+					vector = vector_new;
+					vector_new = temp;
+				}
+
+				double tolerance = kernel.getTolerance(model);
+				double max_difference = UtilityController.calcMaxDelta(model, scalar, vector);
+				if (!(max_difference <= tolerance)) {
+					throw new CheckFailure(String.format(Locale.ROOT, "The vector kernel ends %g from the scalar backups "
+					+ "on maze %d with discount %.5f, beyond its tolerance %g", max_difference, maze, model.getDiscount(), tolerance));
+				}
+				max_ratio = Math.max(max_ratio, max_difference / tolerance);
+				models++;
+			}
+		}
+		return String.format(Locale.ROOT, "%d models on %d mazes, discounts %.5f to %.5f, largest difference %.2g of "
+		+ "the tolerance", models, RANDOM_MAZES + 1, discounts[discounts.length - 1], discounts[0], max_ratio);
+	}
+
+	/*
+	 * Value iteration of every maze by OffHeapSolver, the grid copied into direct buffers, against a Jacobi sweep of
+	 * ValueIteration. Both back up every state by UtilityController.backupBestUtil from the same outcomes, so they must
+	 * take as many sweeps and give the same bits and actions, unless ValueIteration sweeps with the vectorized kernel,
+	 * whose utilities are only within its tolerance of the scalar ones. The last sweep OffHeapSolver publishes must be
+	 * the solution it leaves in its store.
+	 */
+
+	private static String checkOffHeapSolve() {
+		BellmanKernel kernel = IterationConstants.VECTOR_KERNEL ? BellmanKernel.loadVector() : null;
+		double threshold = IterationConstants.MAXIMUM_ALLOWABLE_DISCOUNTED_ERROR
+		* ((1.000 - IterationConstants.DISCOUNT_FACTOR) / IterationConstants.DISCOUNT_FACTOR);
+
+		int cells = 0;
+		int sweeps = 0;
+		for (int maze = 0; maze <= RANDOM_MAZES; maze++) {
+			Grid gridEnvironment = maze == 0 ? new Grid() : randomMaze(maze);
+			GridStore store = gridEnvironment.getStore();
+
+			// A maze file has no open cells with the reward of a wall, the cells opened from walls take the white one
+			for (int row = 0; row < store.getNumRows(); row++) {
+				for (int col = 0; col < store.getNumCols(); col++) {
+					if (!store.isWall(col, row) && store.getRewardClass(col, row) == GridStore.WALL) {
+						store.setReward(col, row, IterationConstants.REWARD_WHITE);
+					}
+				}
+			}
+			double tolerance = kernel == null ? 0.000 : kernel.getTolerance(new TransitionModel(store));
+
+			// The history holds the utilities each sweep started from, the publisher the ones of the last sweep
+			int reference_sweeps;
+			UtilityStore reference;
+			try (SnapshotPublisher.Reader reader = ValueIteration.getSnapshots().attach()) {
+				reference_sweeps = ValueIteration.runValueIteration(store, SweepMode.JACOBI);
+				reader.read();
+				reference = reader.getUtils();
+			}
+
+			MappedGrid grid = MappedGrid.tile(store, store.getNumCols(), store.getNumRows(), null);
+			OffHeapUtilityStore utils = OffHeapUtilityStore.allocate(store.getNumCols(), store.getNumRows());
+			OffHeapSolver solver = new OffHeapSolver(grid, utils);
+			int off_heap_sweeps;
+			UtilityStore published;
+			try (SnapshotPublisher.Reader reader = solver.getSnapshots().attach()) {
+				off_heap_sweeps = solver.solve(threshold);
+				reader.read();
+				published = reader.getUtils();
+				if (reader.getSweep() != off_heap_sweeps) {
+					throw new CheckFailure(String.format(Locale.ROOT, "OffHeapSolver publishes sweep %d of %d on maze %d",
+					reader.getSweep(), off_heap_sweeps, maze));
+				}
+			}
+			if (tolerance == 0.000 && off_heap_sweeps != reference_sweeps) {
+				throw new CheckFailure(String.format(Locale.ROOT, "OffHeapSolver takes %d sweeps on maze %d, ValueIteration %d",
+				off_heap_sweeps, maze, reference_sweeps));
+			}
+
+			for (int row = 0; row < store.getNumRows(); row++) {
+				for (int col = 0; col < store.getNumCols(); col++) {
+					compare("OffHeapSolver", col, row, maze, utils.getUtil(col, row), reference.getUtil(col, row), tolerance);
+					compare("OffHeapSolver snapshot", col, row, maze, published.getUtil(col, row), utils.getUtil(col, row), 0.000);
+					if (published.getAction(col, row) != utils.getAction(col, row)) {
+						throw new CheckFailure(String.format(Locale.ROOT, "OffHeapSolver publishes %s at (%d,%d) of maze %d, "
+						+ "solves %s", published.getAction(col, row), col, row, maze, utils.getAction(col, row)));
+					}
+					if (tolerance == 0.000 && utils.getAction(col, row) != reference.getAction(col, row)) {
+						throw new CheckFailure(String.format(Locale.ROOT, "OffHeapSolver picks %s at (%d,%d) of maze %d, "
+						+ "ValueIteration %s", utils.getAction(col, row), col, row, maze, reference.getAction(col, row)));
+					}
+					cells++;
+				}
+			}
+			sweeps += off_heap_sweeps;
+		}
+		return String.format(Locale.ROOT, "%d cells of %d mazes in %d sweeps, %s", cells, RANDOM_MAZES + 1, sweeps,
+		kernel == null ? "the same bits and actions" : "within the tolerance of the vector kernel");
+	}
+
+	/*
+	 * Value iteration of every maze from 0 in the Jacobi and red-black orders, on this thread as with NUM_THREADS of 1,
+	 * and on pools of several threads, the Jacobi sweeps in the order of SWEEP_ORDER. Every band of a sweep writes its
+	 * own states only, reading the previous sweep or the other colour, and the largest change is reduced exactly, so
+	 * the pools must take as many sweeps and give the same bits and actions. 3 and 7 threads do not divide the rows,
+	 * so the bands have unequal numbers of rows.
+	 */
+
+	private static String checkParallelSweeps() {
+		double threshold = IterationConstants.MAXIMUM_ALLOWABLE_DISCOUNTED_ERROR
+		* ((1.000 - IterationConstants.DISCOUNT_FACTOR) / IterationConstants.DISCOUNT_FACTOR);
+		SweepMode[] sweep_modes = { SweepMode.JACOBI, SweepMode.RED_BLACK };
+
+		int solves = 0;
+		int sweeps = 0;
+		for (int maze = 0; maze <= RANDOM_MAZES; maze++) {
+			Grid gridEnvironment = maze == 0 ? new Grid() : randomMaze(maze);
+			TransitionModel model = new TransitionModel(gridEnvironment.getStore());
+
+			for (SweepMode sweep_mode : sweep_modes) {
+				UtilityStore reference = new UtilityStore();
+				int reference_sweeps = solveSweeps(sweep_mode, null, model, threshold, reference);
+
+				for (int threads : PARALLEL_THREADS) {
+					UtilityStore utils = new UtilityStore();
+					int parallel_sweeps;
+					try (ParallelSweep parallel_sweep = new ParallelSweep(threads)) {
+						parallel_sweeps = solveSweeps(sweep_mode, parallel_sweep, model, threshold, utils);
+					}
+					if (parallel_sweeps != reference_sweeps) {
+						throw new CheckFailure(String.format(Locale.ROOT, "%s on %d threads takes %d sweeps on maze %d, "
+						+ "on one thread %d", sweep_mode, threads, parallel_sweeps, maze, reference_sweeps));
+					}
+					for (int cell = 0; cell < utils.size(); cell++) {
+						if (Double.doubleToLongBits(utils.getUtil(cell)) != Double.doubleToLongBits(reference.getUtil(cell))
+						|| utils.getActionCode(cell) != reference.getActionCode(cell)) {
+							int col = cell % model.getNumCols();
+							int row = cell / model.getNumCols();
+							throw new CheckFailure(String.format(Locale.ROOT, "%s on %d threads leaves (%d,%d) of maze %d at "
+							+ "%.17g %s, on one thread at %.17g %s", sweep_mode, threads, col, row, maze, utils.getUtil(cell),
+							utils.getAction(col, row), reference.getUtil(cell), reference.getAction(col, row)));
+						}
+					}
+					solves++;
+					sweeps += parallel_sweeps;
+				}
+			}
+		}
+		return String.format(Locale.ROOT, "%d solves of %d mazes on %s threads in %d sweeps, %s order, the same bits "
+		+ "and actions as on one thread", solves, RANDOM_MAZES + 1, Arrays.toString(PARALLEL_THREADS), sweeps,
+		IterationConstants.SWEEP_ORDER);
+	}
+
+	/*
+	 * Packs a random policy of every shape, walls and actions from a fixed seed, maps it back, and compares every cell,
+	 * one at a time and all at once, with the store it was packed from. Cells a column or a row past the grid must be
+	 * refused rather than read as other cells. The path from every cell, once in full and once cut short, must follow
+	 * the intended move of each action, staying put on a bump, visit no cell twice, and stop only at a wall, at a cell
+	 * whose move leads back to the path, or after the steps asked for.
+	 */
+
+	private static String checkPolicyIndex() {
+		Random random = new Random(SEED);
+		int[][] shapes = Arrays.copyOf(POLICY_SHAPES, POLICY_SHAPES.length + 1);
+		shapes[POLICY_SHAPES.length] = new int[] { GridConstants.TOTAL_NUM_COLS, GridConstants.TOTAL_NUM_ROWS };
+
+		int cells = 0;
+		int steps = 0;
+		Path file = null;
+		try {
+			file = Files.createTempFile("checks", ".policy");
+			for (int[] shape : shapes) {
+				int num_cols = shape[0];
+				int num_rows = shape[1];
+				UtilityStore utils = new UtilityStore(num_cols, num_rows);
+				for (int cell = 0; cell < utils.size(); cell++) {
+					utils.setActionCode(cell, random.nextInt(10) < 3 ? UtilityStore.NO_ACTION
+					: TransitionModel.getActionCode(random.nextInt(TransitionModel.NUM_ACTIONS)));
+				}
+				PolicyIndex.write(file, utils);
+				PolicyIndex index = PolicyIndex.open(file);
+				if (index.getNumCols() != num_cols || index.getNumRows() != num_rows) {
+					throw new CheckFailure(String.format(Locale.ROOT, "A policy of %d x %d cells opens as %d x %d", num_cols,
+					num_rows, index.getNumCols(), index.getNumRows()));
+				}
+
+				int[] cols = new int[utils.size()];
+				int[] rows = new int[utils.size()];
+				for (int row = 0; row < num_rows; row++) {
+					for (int col = 0; col < num_cols; col++) {
+						int cell = utils.stateId(col, row);
+						cols[cell] = col;
+						rows[cell] = row;
+						if (index.getActionCode(col, row) != utils.getActionCode(cell)
+						|| index.isWall(col, row) != (utils.getActionCode(cell) == UtilityStore.NO_ACTION)) {
+							throw new CheckFailure(String.format(Locale.ROOT, "(%d,%d) of %d x %d cells unpacks as %s, packed "
+							+ "as %s", col, row, num_cols, num_rows, index.getAction(col, row), utils.getAction(col, row)));
+						}
+					}
+				}
+				AgentAction[] actions = new AgentAction[utils.size()];
+				index.getActions(cols, rows, actions);
+				for (int cell = 0; cell < utils.size(); cell++) {
+					if (actions[cell] != utils.getAction(cols[cell], rows[cell])) {
+						throw new CheckFailure(String.format(Locale.ROOT, "getActions gives %s at (%d,%d) of %d x %d cells, "
+						+ "packed as %s", actions[cell], cols[cell], rows[cell], num_cols, num_rows,
+						utils.getAction(cols[cell], rows[cell])));
+					}
+				}
+
+				int[][] outside = { { num_cols, 0 }, { -1, num_rows - 1 }, { 0, num_rows }, { num_cols - 1, -1 } };
+				for (int[] cell : outside) {
+					checkOutside(index, cell[0], cell[1]);
+				}
+
+				for (int cell = 0; cell < utils.size(); cell++) {
+					steps += checkPath(index, utils, cols[cell], rows[cell], utils.size());
+					steps += checkPath(index, utils, cols[cell], rows[cell], 2);
+				}
+				cells += utils.size();
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			try {
+				if (file != null) {
+					Files.deleteIfExists(file);
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		return String.format(Locale.ROOT, "%d cells of %d grids, from 1 x 1 to %d x %d, the packed actions and walls, "
+		+ "paths of %d steps, cells outside refused", cells, shapes.length, GridConstants.TOTAL_NUM_COLS,
+		GridConstants.TOTAL_NUM_ROWS, steps);
+	}
+
+	// Throws CheckFailure unless every query of a packed policy refuses a cell outside its grid
+	private static void checkOutside(final PolicyIndex index, final int col, final int row) {
+		List<Runnable> queries = Arrays.asList(() -> index.isWall(col, row), () -> index.getActionCode(col, row),
+		() -> index.getAction(col, row), () -> index.path(col, row, 1),
+		() -> index.getActions(new int[] { col }, new int[] { row }, new AgentAction[1]));
+		for (Runnable query : queries) {
+			try {
+				query.run();
+			} catch (IllegalArgumentException e) {
+				continue;
+			}
+			throw new CheckFailure(String.format(Locale.ROOT, "A policy of %d x %d cells answers for (%d,%d)",
+			index.getNumCols(), index.getNumRows(), col, row));
+		}
+	}
+
+	// Throws CheckFailure unless the path of a packed policy from a cell follows the actions of the store, returning
+	// the number of steps of the path
+	private static int checkPath(final PolicyIndex index, final UtilityStore utils, final int col, final int row,
+	final int max_steps) {
+		int[] path = index.path(col, row, max_steps);
+		String name = String.format(Locale.ROOT, "The path of at most %d steps from (%d,%d) of %d x %d cells", max_steps,
+		col, row, utils.getNumCols(), utils.getNumRows());
+		if (path.length == 0 || path[0] != utils.stateId(col, row) || path.length > max_steps + 1) {
+			throw new CheckFailure(name + " is " + Arrays.toString(path));
+		}
+		List<Integer> visited = new ArrayList<>();
+		for (int i = 0; i < path.length; i++) {
+			if (visited.contains(path[i])) {
+				throw new CheckFailure(name + " comes back to " + path[i]);
+			}
+			visited.add(path[i]);
+			AgentAction action = utils.getAction(path[i] % utils.getNumCols(), path[i] / utils.getNumCols());
+			if (i < path.length - 1) {
+				if (action == null || path[i + 1] != intendedCell(utils, path[i], action)) {
+					throw new CheckFailure(name + " goes from " + path[i] + " to " + path[i + 1] + " by " + action);
+				}
+			} else if (action != null && path.length <= max_steps && !visited.contains(intendedCell(utils, path[i], action))) {
+				throw new CheckFailure(name + " stops at " + path[i] + " although " + action + " leads on");
+			}
+		}
+		return path.length - 1;
+	}
+
+	// Cell reached by the intended move of an action, the cell itself on a bump into a wall or the border
+	private static int intendedCell(final UtilityStore utils, final int cell, final AgentAction action) {
+		int col = cell % utils.getNumCols() + (action == AgentAction.LEFT ? -1 : action == AgentAction.RIGHT ? 1 : 0);
+		int row = cell / utils.getNumCols() + (action == AgentAction.UP ? -1 : action == AgentAction.DOWN ? 1 : 0);
+		boolean open = col >= 0 && col < utils.getNumCols() && row >= 0 && row < utils.getNumRows()
+		&& utils.getAction(col, row) != null;
+		return open ? utils.stateId(col, row) : cell;
+	}
+
+	/*
+	 * Value iteration of every maze in the orders that are checkpointed, and policy iteration of every maze in every
+	 * evaluation mode from one random policy, each solved straight through, then interrupted half way and resumed from
+	 * its latest checkpoint. The resumed solve must take as many sweeps or improvements and backups, record as many
+	 * iterations in its history, and end with the same bits and actions. Solves too short to have a checkpoint before
+	 * half way are not interrupted.
+	 */
+
+	private static String checkCheckpointResume() {
+		SweepMode[] sweep_modes = { SweepMode.JACOBI, SweepMode.GAUSS_SEIDEL, SweepMode.RED_BLACK };
+
+		int solves = 0;
+		int interrupted = 0;
+		int resumed_steps = 0;
+		Path directory = null;
+		try {
+			directory = Files.createTempDirectory("checks");
+			for (int maze = 0; maze <= RANDOM_MAZES; maze++) {
+				final GridStore store = (maze == 0 ? new Grid() : randomMaze(maze)).getStore();
+
+				for (SweepMode sweep_mode : sweep_modes) {
+					int steps = checkResume(String.format(Locale.ROOT, "Value iteration in the %s order on maze %d",
+					sweep_mode, maze), directory, (checkpoint, state) -> {
+						ValueIteration.runValueIteration(store, sweep_mode, null, checkpoint, state);
+						return ValueIteration.getBackups();
+					}, ValueIteration::getHistory);
+					solves++;
+					interrupted += steps > 0 ? 1 : 0;
+					resumed_steps += steps;
+				}
+
+				final UtilityStore policy = PolicyIteration.randomPolicy(store);
+				for (EvaluationMode evaluation_mode : EvaluationMode.values()) {
+					int steps = checkResume(String.format(Locale.ROOT, "Policy iteration in the %s mode on maze %d",
+					evaluation_mode, maze), directory, (checkpoint, state) -> PolicyIteration.runPolicyIteration(store,
+					evaluation_mode, state != null ? state.getStart() : policy, checkpoint, state),
+					PolicyIteration::getHistory);
+					solves++;
+					interrupted += steps > 0 ? 1 : 0;
+					resumed_steps += steps;
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			deleteDirectory(directory);
+		}
+		return String.format(Locale.ROOT, "%d of %d solves of %d mazes interrupted half way, %d steps resumed from "
+		+ "checkpoints every %d, the same steps, backups and history, the same bits and actions", interrupted, solves,
+		RANDOM_MAZES + 1, resumed_steps, CHECKPOINT_EVERY);
+	}
+
+	// Throws CheckFailure unless a solve interrupted half way and resumed from its checkpoint ends like the solve
+	// straight through, returning the number of steps after the checkpoint, or 0 if the solve is too short
+	private static int checkResume(final String name, final Path directory, final ResumableSolve solve,
+	final Supplier<UtilityHistory> history) {
+
+		Interrupter counter = new Interrupter(-1);
+		SolverInstrumentation.addListener(counter);
+		long reference_backups;
+		try {
+			reference_backups = solve.run(null, null);
+		} finally {
+			SolverInstrumentation.removeListener(counter);
+		}
+		int reference_steps = counter.steps;
+		int reference_size = history.get().size();
+		UtilityStore reference = history.get().getLatest().copy();
+		history.get().close();
+		if (reference_steps / 2 <= CHECKPOINT_EVERY) {
+			return 0;
+		}
+
+		SolverCheckpoint checkpoint = new SolverCheckpoint(directory, "resume", CHECKPOINT_EVERY);
+		try {
+			Interrupter interrupter = new Interrupter(reference_steps / 2);
+			SolverInstrumentation.addListener(interrupter);
+			try {
+				solve.run(checkpoint, null);
+				throw new CheckFailure(name + " is not interrupted after " + interrupter.limit + " steps");
+			} catch (SolveInterrupted e) {
+				// The history is left open, as a killed run leaves its file
+			} finally {
+				SolverInstrumentation.removeListener(interrupter);
+			}
+
+			// Loading waits for the checkpoint being written, which may still be forcing the file of the history
+			SolverCheckpoint.State state = checkpoint.load();
+			history.get().close();
+			if (state == null || state.isConverged() || state.getSteps() >= interrupter.limit) {
+				throw new CheckFailure(name + " has " + (state == null ? "no checkpoint" : "a checkpoint after "
+				+ state.getSteps() + " steps") + " when interrupted after " + interrupter.limit);
+			}
+
+			Interrupter resumed_counter = new Interrupter(-1);
+			SolverInstrumentation.addListener(resumed_counter);
+			long backups;
+			try {
+				backups = solve.run(checkpoint, state);
+			} finally {
+				SolverInstrumentation.removeListener(resumed_counter);
+			}
+			UtilityStore utils = history.get().getLatest();
+			if (resumed_counter.steps != reference_steps || backups != reference_backups
+			|| history.get().size() != reference_size) {
+				throw new CheckFailure(String.format(Locale.ROOT, "%s resumed after %d steps ends after %d steps, %d backups "
+				+ "and %d iterations in its history, straight through after %d, %d and %d", name, state.getSteps(),
+				resumed_counter.steps, backups, history.get().size(), reference_steps, reference_backups, reference_size));
+			}
+			for (int cell = 0; cell < utils.size(); cell++) {
+				if (Double.doubleToLongBits(utils.getUtil(cell)) != Double.doubleToLongBits(reference.getUtil(cell))
+				|| utils.getActionCode(cell) != reference.getActionCode(cell)) {
+					int col = cell % utils.getNumCols();
+					int row = cell / utils.getNumCols();
+					throw new CheckFailure(String.format(Locale.ROOT, "%s resumed after %d steps leaves (%d,%d) at %.17g %s, "
+					+ "straight through at %.17g %s", name, state.getSteps(), col, row, utils.getUtil(cell),
+					utils.getAction(col, row), reference.getUtil(cell), reference.getAction(col, row)));
+				}
+			}
+			return reference_steps - state.getSteps();
+		} finally {
+			// The checkpoint is written before the history it snapshots is closed
+			checkpoint.close();
+			history.get().close();
+			checkpoint.discard();
+		}
+	}
+
+	// Sweeps a store from 0 until the largest change is below the threshold, leaving the result in it, and returns
+	// the number of sweeps
+	private static int solveSweeps(final SweepMode sweep_mode, final ParallelSweep parallel_sweep,
+	final TransitionModel model, final double threshold, final UtilityStore utils) {
+		UtilityStore curr_utils = new UtilityStore();
+		UtilityStore new_utils = new UtilityStore();
+		int sweeps = 0;
+		double delta;
+		do {
+			delta = UtilityController.sweepBestUtils(sweep_mode, parallel_sweep, model, curr_utils, new_utils);
+			if (sweep_mode == SweepMode.JACOBI) {
+				UtilityStore temp = curr_utils;
+				curr_utils = new_utils;
+				new_utils = temp;
+			}
+			sweeps++;
+		} while (delta >= threshold);
+		utils.copyFrom(curr_utils);
+		return sweeps;
+	}
+
+	// Throws CheckFailure if a store has a utility or an action on a wall, or an open cell without an action
+	private static void checkFitted(final String name, final UtilityStore utils, final GridStore store) {
+		for (int row = 0; row < store.getNumRows(); row++) {
+			for (int col = 0; col < store.getNumCols(); col++) {
+				if (store.isWall(col, row) && (utils.getUtil(col, row) != 0.000 || utils.getAction(col, row) != null)) {
+					throw new CheckFailure(String.format(Locale.ROOT, "%s has %.5f %s on the wall at (%d,%d)", name,
+					utils.getUtil(col, row), utils.getAction(col, row), col, row));
+				}
+				if (!store.isWall(col, row) && utils.getAction(col, row) == null) {
+					throw new CheckFailure(String.format(Locale.ROOT, "%s has no action at the open cell (%d,%d)", name, col, row));
+				}
+			}
+		}
+	}
+
+	// Deletes a directory of files, if there is one
+	private static void deleteDirectory(final Path directory) {
+		if (directory == null) {
+			return;
+		}
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+			for (Path file : files) {
+				Files.deleteIfExists(file);
+			}
+			Files.deleteIfExists(directory);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	// Difference of a utility from the reference, throwing CheckFailure if it is beyond the tolerance
+	private static double compare(final String name, final int col, final int row, final int maze, final double util,
+	final double reference, final double tolerance) {
+		double difference = Math.abs(util - reference);
+		if (!(difference <= tolerance)) {
+			throw new CheckFailure(String.format(Locale.ROOT, "%s gives %.17g at (%d,%d) of maze %d, the reference %.17g",
+			name, util, col, row, maze, reference));
+		}
+		return difference;
+	}
+
+	// Built-in grid with walls at random instead, the share of walls growing with the number of the maze
+	private static Grid randomMaze(final int maze) {
+		Grid gridEnvironment = new Grid();
+		GridStore store = gridEnvironment.getStore();
+		double share = MAX_WALL_SHARE * maze / RANDOM_MAZES;
+		Random random = new Random(SEED + maze);
+		for (int row = 0; row < store.getNumRows(); row++) {
+			for (int col = 0; col < store.getNumCols(); col++) {
+				store.setWall(col, row, random.nextDouble() < share);
+			}
+		}
+		return gridEnvironment;
+	}
+
+}
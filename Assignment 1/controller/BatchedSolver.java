@@ -0,0 +1,270 @@
+/*
+ * Value iteration of many scenarios of the same grid at once, for sweeps over the MDP parameters. The scenarios share
+ * the walls, so the cell reached by each move of each state is looked up once for all of them. Their utilities are
+ * stored scenario-innermost, utils[state * width + slot], so the utilities of a neighbour for every scenario are
+ * adjacent and one fetch of the neighbour feeds the whole batch, the inner loop running over the scenarios.
+ *
+ * Every sweep is a Gauss-Seidel sweep of each scenario, and each scenario stops at the convergence threshold of its
+ * own discount. A scenario that converges drops out of the batch: its utilities and policy are copied out and the
+ * utilities of the others are packed, so later sweeps only read the scenarios still running.
+ */
+
+package controller;
+
+import java.util.Arrays;
+import java.util.List;
+
+import grid.GridStore;
+import grid.UtilityStore;
+
+public class BatchedSolver {
+
+	// Moves of each action, in the order of the slots of TransitionModel: the intended direction, then the directions
+	// slipped to with the left and the right probability
+	private static final int UP = 0, DOWN = 1, LEFT = 2, RIGHT = 3;
+	private static final int[][] SLOT_MOVES = { { UP, LEFT, RIGHT }, { DOWN, LEFT, RIGHT }, { LEFT, DOWN, UP }, { RIGHT, UP, DOWN } };
+
+	private final int num_cols;
+	private final int num_rows;
+	private final int num_states;
+
+	// UtilityStore id of each state, the open cells numbered row by row as in TransitionModel
+	private final int[] cell_of;
+
+	// State reached by moving up, down, left and right from each state, itself when the move bumps
+	private final int[] moves;
+
+	// Reward class of each state, and the reward of each class in each scenario
+	private final byte[] state_class;
+	private final double[][] class_rewards;
+
+	private final Scenario[] scenarios;
+
+	// Results of each scenario
+	private final UtilityStore[] results;
+	private final int[] sweeps;
+	private long backups = 0;
+
+    /**
+     * Prepares the scenarios of a grid, only the walls and the reward classes of the cells are read.
+     * @param grid The compact grid
+     * @param scenarios The scenarios to solve
+     */
+
+	public BatchedSolver(final GridStore grid, final List<Scenario> scenarios) {
+
+		num_cols = grid.getNumCols();
+		num_rows = grid.getNumRows();
+		this.scenarios = scenarios.toArray(new Scenario[0]);
+		results = new UtilityStore[this.scenarios.length];
+		sweeps = new int[this.scenarios.length];
+
+		// Number the non-wall states row by row
+		int[] state_of = new int[num_cols * num_rows];
+		int count = 0;
+		for (int row = 0; row < num_rows; row++) {
+			for (int col = 0; col < num_cols; col++) {
+				state_of[row * num_cols + col] = grid.isWall(col, row) ? -1 : count++;
+			}
+		}
+		num_states = count;
+
+		cell_of = new int[num_states];
+		moves = new int[num_states * 4];
+		state_class = new byte[num_states];
+		for (int row = 0; row < num_rows; row++) {
+			for (int col = 0; col < num_cols; col++) {
+				int state = state_of[row * num_cols + col];
+				if (state < 0) {
+					continue;
+				}
+				cell_of[state] = row * num_cols + col;
+				state_class[state] = grid.getRewardClass(col, row);
+				moves[state * 4 + UP] = row - 1 >= 0 && state_of[(row - 1) * num_cols + col] >= 0
+				? state_of[(row - 1) * num_cols + col] : state;
+				moves[state * 4 + DOWN] = row + 1 < num_rows && state_of[(row + 1) * num_cols + col] >= 0
+				? state_of[(row + 1) * num_cols + col] : state;
+				moves[state * 4 + LEFT] = col - 1 >= 0 && state_of[row * num_cols + col - 1] >= 0
+				? state_of[row * num_cols + col - 1] : state;
+				moves[state * 4 + RIGHT] = col + 1 < num_cols && state_of[row * num_cols + col + 1] >= 0
+				? state_of[row * num_cols + col + 1] : state;
+			}
+		}
+
+		// White, green and brown cells take the rewards of each scenario, the other classes keep theirs
+		double[] reward_table = grid.getRewardTable();
+		class_rewards = new double[reward_table.length][this.scenarios.length];
+		for (int s = 0; s < this.scenarios.length; s++) {
+			for (int reward_class = 0; reward_class < reward_table.length; reward_class++) {
+				class_rewards[reward_class][s] = reward_table[reward_class];
+			}
+			class_rewards[GridStore.WHITE][s] = this.scenarios[s].getRewardWhite();
+			class_rewards[GridStore.GREEN][s] = this.scenarios[s].getRewardGreen();
+			class_rewards[GridStore.BROWN][s] = this.scenarios[s].getRewardBrown();
+		}
+	}
+
+    /**
+     * Solves every scenario from zero utilities, sweeping them together until each one converges.
+     */
+
+	public void solve() {
+
+		// Slot of the batch of each running scenario, and the parameters of each slot
+		int width = scenarios.length;
+		int[] running = new int[width];
+		for (int s = 0; s < width; s++) {
+			running[s] = s;
+		}
+		double[] utils = new double[num_states * width];
+		double[] delta = new double[width];
+		double[] intended = new double[width];
+		double[] left = new double[width];
+		double[] right = new double[width];
+		double[] discount = new double[width];
+		double[][] rewards = new double[class_rewards.length][width];
+		setParameters(running, width, intended, left, right, discount, rewards);
+
+		while (width > 0) {
+			sweep(utils, width, delta, intended, left, right, discount, rewards);
+			backups += (long) width * num_states;
+
+			// Copy out the scenarios that converged, then pack the utilities of the others to the front of each state
+			int kept = 0;
+			int[] packed_slots = new int[width];
+			for (int slot = 0; slot < width; slot++) {
+				int s = running[slot];
+				sweeps[s]++;
+				if (delta[slot] < scenarios[s].getConvergeThreshold()) {
+					results[s] = extractResult(utils, width, slot, intended[slot], left[slot], right[slot]);
+				} else {
+					packed_slots[kept] = slot;
+					running[kept++] = s;
+				}
+			}
+			if (kept < width) {
+				for (int state = 0; state < num_states; state++) {
+					for (int slot = 0; slot < kept; slot++) {
+						utils[state * kept + slot] = utils[state * width + packed_slots[slot]];
+					}
+				}
+				width = kept;
+				setParameters(running, width, intended, left, right, discount, rewards);
+			}
+		}
+	}
+
+    /**
+     * Returns the utilities and policy of a scenario, once solved.
+     * @param scenario The index of the scenario in the list it was given in
+     * @return The utility store of the scenario
+     */
+
+	public UtilityStore getResult(int scenario) {
+		return results[scenario];
+	}
+
+    /**
+     * Returns the number of sweeps a scenario took to converge.
+     * @param scenario The index of the scenario in the list it was given in
+     * @return The number of sweeps
+     */
+
+	public int getSweeps(int scenario) {
+		return sweeps[scenario];
+	}
+
+    /**
+     * Returns the number of Bellman backups of all the scenarios, one per state, scenario and sweep.
+     * @return The number of backups
+     */
+
+	public long getBackups() {
+		return backups;
+	}
+
+    /**
+     * Returns the number of non-wall states of the grid.
+     * @return The number of states
+     */
+
+	public int getNumStates() {
+		return num_states;
+	}
+
+	// Gauss-Seidel sweep of the first width slots, setting the largest change of each slot
+	private void sweep(final double[] utils, final int width, final double[] delta, final double[] intended,
+	final double[] left, final double[] right, final double[] discount, final double[][] rewards) {
+
+		Arrays.fill(delta, 0, width, 0.000);
+		for (int state = 0; state < num_states; state++) {
+			int base = state * width;
+			int up = moves[state * 4 + UP] * width;
+			int down = moves[state * 4 + DOWN] * width;
+			int lt = moves[state * 4 + LEFT] * width;
+			int rt = moves[state * 4 + RIGHT] * width;
+			double[] reward = rewards[state_class[state]];
+
+			for (int slot = 0; slot < width; slot++) {
+				double u_up = utils[up + slot];
+				double u_down = utils[down + slot];
+				double u_left = utils[lt + slot];
+				double u_right = utils[rt + slot];
+				double p = intended[slot];
+				double pl = left[slot];
+				double pr = right[slot];
+
+				// Expected utility of each action, the order of the outcomes as in SLOT_MOVES
+				double best = p * u_up + pl * u_left + pr * u_right;
+				best = Math.max(best, p * u_down + pl * u_left + pr * u_right);
+				best = Math.max(best, p * u_left + pl * u_down + pr * u_up);
+				best = Math.max(best, p * u_right + pl * u_up + pr * u_down);
+
+				double util = reward[slot] + discount[slot] * best;
+				delta[slot] = Math.max(delta[slot], Math.abs(util - utils[base + slot]));
+				utils[base + slot] = util;
+			}
+		}
+	}
+
+	// Utilities of one slot and the action of each state, ties broken in the order of the slots of TransitionModel
+	private UtilityStore extractResult(final double[] utils, final int width, final int slot, final double intended,
+	final double left, final double right) {
+
+		UtilityStore result = new UtilityStore(num_cols, num_rows);
+		double[] probabilities = { intended, left, right };
+		for (int state = 0; state < num_states; state++) {
+			int best_action = 0;
+			double best_util = Double.NEGATIVE_INFINITY;
+			for (int action = 0; action < TransitionModel.NUM_ACTIONS; action++) {
+				double action_util = 0.000;
+				for (int outcome = 0; outcome < 3; outcome++) {
+					action_util += probabilities[outcome] * utils[moves[state * 4 + SLOT_MOVES[action][outcome]] * width + slot];
+				}
+				if (action == 0 || action_util > best_util) {
+					best_action = action;
+					best_util = action_util;
+				}
+			}
+			result.setUtil(cell_of[state], utils[state * width + slot]);
+			result.setActionCode(cell_of[state], TransitionModel.getActionCode(best_action));
+		}
+		return result;
+	}
+
+	// Parameters of the running scenarios, by slot
+	private void setParameters(final int[] running, final int width, final double[] intended, final double[] left,
+	final double[] right, final double[] discount, final double[][] rewards) {
+		for (int slot = 0; slot < width; slot++) {
+			Scenario scenario = scenarios[running[slot]];
+			intended[slot] = scenario.getIntendedProbability();
+			left[slot] = scenario.getLeftProbability();
+			right[slot] = scenario.getRightProbability();
+			discount[slot] = scenario.getDiscount();
+			for (int reward_class = 0; reward_class < class_rewards.length; reward_class++) {
+				rewards[reward_class][slot] = class_rewards[reward_class][running[slot]];
+			}
+		}
+	}
+
+}
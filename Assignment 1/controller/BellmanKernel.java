@@ -0,0 +1,67 @@
+/*
+ * A kernel for the Jacobi value iteration sweep over a band of rows, an alternative to the scalar backups of
+ * UtilityController.calcBestUtils. The vectorized kernel, VectorBellmanKernel, needs the incubating Vector API,
+ * so it sits in a source root of its own, vector, and is only loaded by name. The rest of the code compiles and runs
+ * without the jdk.incubator.vector module:
+ *
+ *   javac -d out $(find controller globals grid iterations benchmarks -name '*.java')
+ *
+ * and the kernel is compiled into the same output after it, with the module:
+ *
+ *   javac --add-modules jdk.incubator.vector -cp out -d out vector/controller/VectorBellmanKernel.java
+ */
+
+package controller;
+
+import grid.UtilityStore;
+
+public interface BellmanKernel {
+
+	// Module of the Vector API and the kernel built on it
+	String VECTOR_MODULE = "jdk.incubator.vector";
+	String VECTOR_KERNEL_CLASS = "controller.VectorBellmanKernel";
+
+    /**
+     * Jacobi value iteration sweep over a band of rows: Bellman backup of every state in the rows,
+     * reading the current utility store and writing the best utility and action to the new one.
+     *
+     * @param model       The transition model of the grid
+     * @param from_row    The first row of the band
+     * @param to_row      The row after the last row of the band
+     * @param curr_utils  The current utility store
+     * @param new_utils   The utility store the best utilities and actions are written to, not the current one
+     * @return            The largest change in utility within the band
+     */
+
+	double calcBestUtils(TransitionModel model, int from_row, int to_row, UtilityStore curr_utils, UtilityStore new_utils);
+
+    /**
+     * Returns the largest difference between the utilities the sweeps of this kernel and the scalar backups converge
+     * to on a model, which depends on the rewards and discount of the model, not those of IterationConstants.
+     *
+     * @param model       The transition model of the grid
+     * @return            The largest difference in utility
+     */
+
+	double getTolerance(TransitionModel model);
+
+    /**
+     * Loads the vectorized kernel if the Vector API is there, i.e. the JVM runs with --add-modules jdk.incubator.vector.
+     * @return The vectorized kernel, or null to fall back to the scalar backups
+     */
+
+	static BellmanKernel loadVector() {
+		if (!ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent()) {
+			System.err.println("The Vector API is missing, run with --add-modules " + VECTOR_MODULE
+			+ " to use it, sweeping with the scalar kernel");
+			return null;
+		}
+		try {
+			return (BellmanKernel) Class.forName(VECTOR_KERNEL_CLASS).getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | LinkageError e) {
+			System.err.println("The vector kernel cannot be loaded (" + e + "), sweeping with the scalar kernel");
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,142 @@
+/*
+ * Reads a binary file written by BinaryOutputWriter through read-only memory-mapped windows of the same size each,
+ * so any utility of any iteration can be read without loading the file, even an iteration larger than a mapping.
+ */
+
+package controller;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+public class BinaryOutputReader {
+
+	// Size of the windows mapped at once, a multiple of both sizes of a utility so that none straddles two windows
+	private static final long WINDOW_BYTES = 1L << 30;
+
+	private final int item_bytes;
+	private final int num_cols;
+	private final int num_rows;
+	private final int num_cells;
+	private final long iterations;
+	private final long row_bytes;
+
+	// Windows of the utilities, the first starting at the first utility and the last one ending with the last
+	private final MappedByteBuffer[] windows;
+
+    /**
+     * Opens a binary file and checks its header.
+     * @param file The path of the file
+     */
+
+	public BinaryOutputReader(Path file) {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, BinaryOutputWriter.HEADER_BYTES);
+			header.order(ByteOrder.LITTLE_ENDIAN);
+			byte[] magic = new byte[BinaryOutputWriter.MAGIC.length];
+			header.get(magic);
+			int version = header.getInt();
+			if (!Arrays.equals(magic, BinaryOutputWriter.MAGIC) || version != BinaryOutputWriter.VERSION) {
+				throw new IllegalArgumentException(file + " is not a utility file of version " + BinaryOutputWriter.VERSION);
+			}
+			item_bytes = header.getInt();
+			num_cols = header.getInt();
+			num_rows = header.getInt();
+			iterations = header.getLong();
+			long data_offset = header.getLong();
+
+			num_cells = num_cols * num_rows;
+			row_bytes = (long) item_bytes * num_cells;
+			long data_bytes = iterations * row_bytes;
+			windows = new MappedByteBuffer[(int) ((data_bytes + WINDOW_BYTES - 1) / WINDOW_BYTES)];
+			for (int i = 0; i < windows.length; i++) {
+				long start = i * WINDOW_BYTES;
+				windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, data_offset + start, Math.min(WINDOW_BYTES, data_bytes - start));
+				windows[i].order(ByteOrder.LITTLE_ENDIAN);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+    /**
+     * Reads the utilities of consecutive cells of an iteration.
+     * @param iteration The iteration
+     * @param firstCell The first cell, in the order of the file
+     * @param values The array the utilities are written to
+     * @param count The number of cells to read
+     */
+
+	public void read(long iteration, int firstCell, double[] values, int count) {
+		long position = iteration * row_bytes + (long) item_bytes * firstCell;
+		int i = 0;
+		while (i < count) {
+
+			// The cells up to the end of the window holding the position
+			MappedByteBuffer window = windows[(int) (position / WINDOW_BYTES)];
+			int offset = (int) (position % WINDOW_BYTES);
+			int end = Math.min(count, i + (window.limit() - offset) / item_bytes);
+			if (item_bytes == 8) {
+				for (int k = 0; i < end; i++, k++) {
+					values[i] = window.getDouble(offset + 8 * k);
+				}
+			} else {
+				for (int k = 0; i < end; i++, k++) {
+					values[i] = window.getFloat(offset + 4 * k);
+				}
+			}
+			position = iteration * row_bytes + (long) item_bytes * (firstCell + i);
+		}
+	}
+
+    /**
+     * Returns the bytes per utility of the file.
+     * @return The bytes per utility, 8 for float64 or 4 for float32
+     */
+
+	public int getItemBytes() {
+		return item_bytes;
+	}
+
+    /**
+     * Returns the number of columns of the grid.
+     * @return The number of columns
+     */
+
+	public int getNumCols() {
+		return num_cols;
+	}
+
+    /**
+     * Returns the number of rows of the grid.
+     * @return The number of rows
+     */
+
+	public int getNumRows() {
+		return num_rows;
+	}
+
+    /**
+     * Returns the number of cells of every iteration.
+     * @return The number of cells
+     */
+
+	public int getNumCells() {
+		return num_cells;
+	}
+
+    /**
+     * Returns the number of iterations in the file.
+     * @return The number of iterations
+     */
+
+	public long getIterations() {
+		return iterations;
+	}
+
+}
@@ -0,0 +1,228 @@
+/*
+ * Writes the utilities of every iteration to a binary file through memory-mapped windows of a FileChannel.
+ * The file starts with a header of HEADER_BYTES bytes, all little-endian:
+ *
+ *   offset  0  8 bytes  magic "UTILHIST"
+ *   offset  8  int32    version, 1
+ *   offset 12  int32    bytes per utility, 8 for float64 or 4 for float32
+ *   offset 16  int32    number of columns of the grid
+ *   offset 20  int32    number of rows of the grid
+ *   offset 24  int64    number of iterations
+ *   offset 32  int64    offset of the first utility, HEADER_BYTES
+ *
+ * followed by a dense matrix with one row per iteration and one column per cell, the cells in the order of
+ * the lines of the csv file (column by column), so numpy can read it with
+ * np.memmap(path, dtype="<f8", mode="r", offset=64, shape=(iterations, cols * rows)).
+ */
+
+package controller;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import grid.UtilityStore;
+
+public class BinaryOutputWriter implements AutoCloseable {
+
+	public static final byte[] MAGIC = "UTILHIST".getBytes(StandardCharsets.US_ASCII);
+	public static final int VERSION = 1;
+	public static final int HEADER_BYTES = 64;
+
+	// Size of the windows mapped at once, a multiple of both sizes of a utility so that none straddles two windows,
+	// the windows starting at multiples of it after the header whatever the size of an iteration
+	private static final long WINDOW_BYTES = 1L << 26;
+
+	private final FileChannel channel;
+	private final int item_bytes;
+	private final int num_cols;
+	private final int num_rows;
+	private final int num_cells;
+	private final long row_bytes;
+
+	// Utilities of one iteration, in the order of the file, allocated on the first store appended
+	private double[] row_values;
+
+	// Window being written, and its offset from the first utility
+	private MappedByteBuffer window;
+	private long window_start;
+
+	private long iterations = 0;
+
+    /**
+     * Creates a binary file, replacing any file with the same name.
+     * @param file The path of the file
+     * @param itemBytes The bytes per utility, 8 for float64 or 4 for float32
+     * @param numCols The number of columns of the grid
+     * @param numRows The number of rows of the grid
+     */
+
+	public BinaryOutputWriter(Path file, int itemBytes, int numCols, int numRows) {
+		this(file, itemBytes, numCols, numRows, 0);
+	}
+
+    /**
+     * Opens a binary file to append to it, keeping its first iterations and dropping any after them,
+     * such as the iterations recorded after the checkpoint a solver resumes from. Creates the file if there is none.
+     * @param file The path of the file
+     * @param itemBytes The bytes per utility, 8 for float64 or 4 for float32
+     * @param numCols The number of columns of the grid
+     * @param numRows The number of rows of the grid
+     * @param keptIterations The number of iterations kept, 0 for an empty file
+     */
+
+	public BinaryOutputWriter(Path file, int itemBytes, int numCols, int numRows, long keptIterations) {
+		if (itemBytes != 8 && itemBytes != 4) {
+			throw new IllegalArgumentException("Bytes per utility must be 8 or 4, not " + itemBytes);
+		}
+		this.item_bytes = itemBytes;
+		this.num_cols = numCols;
+		this.num_rows = numRows;
+		this.num_cells = numCols * numRows;
+		this.row_bytes = (long) itemBytes * num_cells;
+		try {
+			this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			if (keptIterations > 0 && HEADER_BYTES + keptIterations * row_bytes > channel.size()) {
+				throw new IllegalArgumentException(file + " holds fewer than " + keptIterations + " iterations");
+			}
+			this.iterations = keptIterations;
+			channel.truncate(getLength());
+			writeHeader();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+    /**
+     * Appends the utilities of an iteration.
+     * @param utils The utility store of the iteration
+     */
+
+	public void append(UtilityStore utils) {
+		if (row_values == null) {
+			row_values = new double[num_cells];
+		}
+		int cell = 0;
+		for (int col = 0; col < num_cols; col++) {
+			for (int row = 0; row < num_rows; row++) {
+				row_values[cell++] = utils.getUtil(col, row);
+			}
+		}
+		append(row_values);
+	}
+
+    /**
+     * Appends the utilities of an iteration, given in the order of the file.
+     * @param values The utilities of every cell, column by column
+     */
+
+	public void append(double[] values) {
+		try {
+			// An iteration may span several windows, or be larger than a whole mapping can be
+			long position = iterations * row_bytes;
+			int cell = 0;
+			while (cell < num_cells) {
+
+				// Map the window holding the position once past the current one, or the one after the kept iterations,
+				// mapping past the end grows the file
+				if (window == null || position < window_start || position >= window_start + WINDOW_BYTES) {
+					window_start = position - position % WINDOW_BYTES;
+					window = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_BYTES + window_start, WINDOW_BYTES);
+					window.order(ByteOrder.LITTLE_ENDIAN);
+				}
+
+				int offset = (int) (position - window_start);
+				int count = (int) Math.min(num_cells - cell, (WINDOW_BYTES - offset) / item_bytes);
+				if (item_bytes == 8) {
+					for (int i = 0; i < count; i++) {
+						window.putDouble(offset + 8 * i, values[cell + i]);
+					}
+				} else {
+					for (int i = 0; i < count; i++) {
+						window.putFloat(offset + 4 * i, (float) values[cell + i]);
+					}
+				}
+				cell += count;
+				position += (long) count * item_bytes;
+			}
+			iterations++;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+    /**
+     * Writes the number of iterations appended so far to the header, so the file can be read while more are appended.
+     */
+
+	public void flush() {
+		try {
+			writeHeader();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+    /**
+     * Writes the iterations appended so far and the header to the storage device, so they survive a crash.
+     * May be called from another thread than the one appending.
+     */
+
+	public void force() {
+		try {
+			channel.force(false);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+    /**
+     * Returns the number of bytes holding the header and the iterations appended so far,
+     * the mapped windows may have grown the file past them.
+     * @return The length of the file contents
+     */
+
+	public long getLength() {
+		return HEADER_BYTES + iterations * row_bytes;
+	}
+
+    /**
+     * Returns the number of iterations appended so far.
+     * @return The number of iterations
+     */
+
+	public long getIterations() {
+		return iterations;
+	}
+
+	// Writes the header and cuts the file after the last iteration
+	@Override
+	public void close() {
+		try {
+			writeHeader();
+			window = null;
+			channel.truncate(getLength());
+			channel.close();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void writeHeader() throws IOException {
+		MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+		header.order(ByteOrder.LITTLE_ENDIAN);
+		header.put(MAGIC);
+		header.putInt(VERSION);
+		header.putInt(item_bytes);
+		header.putInt(num_cols);
+		header.putInt(num_rows);
+		header.putLong(iterations);
+		header.putLong(HEADER_BYTES);
+	}
+
+}
@@ -0,0 +1,42 @@
+/*
+ * Converts a binary file written by BinaryOutputWriter into the csv file read by the plotting notebook,
+ * with one line per cell and one column per iteration, each utility formatted as 00.000.
+ * The csv file is the transpose of the binary one, so CsvExporter reads the utilities of a block of cells
+ * of every iteration at a time. A csv file name ending in .gz is gzipped.
+ *
+ * Usage: java controller.CsvConverter <binary file> [<csv file>]
+ */
+
+package controller;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+public class CsvConverter {
+
+	public static void main(String[] args) {
+		if (args.length < 1 || args.length > 2) {
+			System.err.println("Usage: java controller.CsvConverter <binary file> [<csv file>]");
+			System.exit(1);
+		}
+		String csvFile = args.length == 2 ? args[1] : args[0].replaceFirst("\\.bin$", "") + ".csv";
+		convert(new BinaryOutputReader(Paths.get(args[0])), Paths.get(csvFile));
+	}
+
+    /**
+     * Writes the utilities of a binary file to a csv file, see CsvExporter.
+     *
+     * @param reader the reader of the binary file
+     * @param csvFile the path of the csv file to write to
+    */
+
+	public static void convert(BinaryOutputReader reader, Path csvFile) {
+		try {
+			CsvExporter.export(CsvExporter.fromReader(reader), csvFile);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+}
@@ -0,0 +1,233 @@
+/*
+ * Streams the utilities of every iteration to a csv file, with one line per cell and one column per iteration.
+ * The cells are split into blocks, each formatted by UtilityFormatter into its own buffer on a pool of threads,
+ * and the buffers are written to the file in the order of the blocks as soon as they are done, so neither the
+ * whole text nor all the utilities of the file are ever held in memory. A file name ending in .gz is gzipped.
+ */
+
+package controller;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+import globals.IterationConstants;
+import grid.UtilityStore;
+
+public class CsvExporter {
+
+	// Number of blocks being formatted or waiting to be written per thread
+	private static final int BLOCKS_PER_THREAD = 2;
+
+	// Size of the buffer of the file
+	private static final int BUFFER_BYTES = 1 << 16;
+
+	/*
+	 * Utilities of every iteration, read a block of cells at a time. Blocks are read from several threads at once.
+	 */
+
+	public interface UtilitySource {
+
+		// Number of cells, the lines of the csv file
+		int getNumCells();
+
+		// Number of iterations, the columns of the csv file
+		int getIterations();
+
+		// Reads the utilities of the cells firstCell to firstCell + numCells - 1 of every iteration,
+		// the utility of a cell at an iteration going to values[cell * iterations + iteration]
+		void read(int firstCell, int numCells, double[] values);
+
+	}
+
+    /**
+     * Returns the utilities of a list of utility stores, one per iteration, the cells in the order of the csv lines.
+     * @param utilityList The list of utility stores
+     * @return The source of the utilities
+     */
+
+	public static UtilitySource fromList(final List<UtilityStore> utilityList) {
+		return new UtilitySource() {
+
+			@Override
+			public int getNumCells() {
+				return utilityList.isEmpty() ? 0 : utilityList.get(0).size();
+			}
+
+			@Override
+			public int getIterations() {
+				return utilityList.size();
+			}
+
+			@Override
+			public void read(int firstCell, int numCells, double[] values) {
+				int count = utilityList.size();
+				for (int iteration = 0; iteration < count; iteration++) {
+					UtilityStore utils = utilityList.get(iteration);
+					int num_rows = utils.getNumRows();
+					for (int cell = 0; cell < numCells; cell++) {
+						int line = firstCell + cell;
+						values[cell * count + iteration] = utils.getUtil(line / num_rows, line % num_rows);
+					}
+				}
+			}
+		};
+	}
+
+    /**
+     * Returns the utilities of a binary file written by BinaryOutputWriter.
+     * @param reader The reader of the binary file
+     * @return The source of the utilities
+     */
+
+	public static UtilitySource fromReader(final BinaryOutputReader reader) {
+		return new UtilitySource() {
+
+			@Override
+			public int getNumCells() {
+				return reader.getNumCells();
+			}
+
+			@Override
+			public int getIterations() {
+				return (int) reader.getIterations();
+			}
+
+			@Override
+			public void read(int firstCell, int numCells, double[] values) {
+				int count = (int) reader.getIterations();
+				double[] row_values = new double[numCells];
+				for (int iteration = 0; iteration < count; iteration++) {
+					reader.read(iteration, firstCell, row_values, numCells);
+					for (int cell = 0; cell < numCells; cell++) {
+						values[cell * count + iteration] = row_values[cell];
+					}
+				}
+			}
+		};
+	}
+
+    /**
+     * Writes the utilities of a source to a csv file, on NUM_THREADS threads.
+     * The file has the same text SaveOutput always wrote, without a line break after the last cell.
+     *
+     * @param source the source of the utilities
+     * @param file the path of the file to write to, gzipped if it ends in .gz
+     * @throws IOException if the file cannot be written
+    */
+
+	public static void export(final UtilitySource source, final Path file) throws IOException {
+
+		int cells = source.getNumCells();
+		int count = source.getIterations();
+		int threads = Math.max(1, IterationConstants.NUM_THREADS);
+		int in_flight = threads * BLOCKS_PER_THREAD;
+		int block = Math.max(1, Math.min(cells, IterationConstants.HISTORY_BUFFER_VALUES / Math.max(1, count * in_flight)));
+
+		try (OutputStream out = open(file)) {
+
+			// Same as SaveOutput, an empty history has no lines left once trimmed
+			if (count == 0) {
+				return;
+			}
+
+			if (threads == 1) {
+				for (int first = 0; first < cells; first += block) {
+					Block formatted = formatBlock(source, first, Math.min(block, cells - first), cells, count);
+					out.write(formatted.text, 0, formatted.length);
+				}
+				return;
+			}
+
+			ExecutorService pool = Executors.newFixedThreadPool(threads);
+			try {
+				ArrayDeque<Future<Block>> pending = new ArrayDeque<>();
+				for (int first = 0; first < cells; first += block) {
+					final int block_first = first;
+					final int block_cells = Math.min(block, cells - first);
+					pending.add(pool.submit(() -> formatBlock(source, block_first, block_cells, cells, count)));
+
+					// Write the oldest block once enough are on the way, keeping the memory bounded
+					if (pending.size() >= in_flight) {
+						write(out, pending.poll());
+					}
+				}
+				while (!pending.isEmpty()) {
+					write(out, pending.poll());
+				}
+			} finally {
+				pool.shutdownNow();
+			}
+		}
+	}
+
+	// Opens the file through a buffer, gzipping it if its name ends in .gz
+	private static OutputStream open(final Path file) throws IOException {
+		OutputStream out = Files.newOutputStream(file);
+		if (file.getFileName().toString().endsWith(".gz")) {
+			return new BufferedOutputStream(new GZIPOutputStream(out, BUFFER_BYTES), BUFFER_BYTES);
+		}
+		return new BufferedOutputStream(out, BUFFER_BYTES);
+	}
+
+	// Waits for a block to be formatted and writes it
+	private static void write(final OutputStream out, final Future<Block> future) throws IOException {
+		try {
+			Block formatted = future.get();
+			out.write(formatted.text, 0, formatted.length);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while exporting utilities");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+
+	// Formats the lines of a block of cells, each utility followed by a comma or a line break
+	private static Block formatBlock(final UtilitySource source, int firstCell, int numCells, int cells, int count) {
+		double[] values = new double[numCells * count];
+		source.read(firstCell, numCells, values);
+
+		byte[] text = new byte[numCells * count * (UtilityFormatter.WIDTH + 1)];
+		int length = 0;
+		for (int cell = 0; cell < numCells; cell++) {
+			for (int iteration = 0; iteration < count; iteration++) {
+				length = UtilityFormatter.format(values[cell * count + iteration], text, length);
+				if (iteration < count - 1) {
+					text[length++] = ',';
+				}
+			}
+			if (firstCell + cell < cells - 1) {
+				text[length++] = '\n';
+			}
+		}
+		return new Block(text, length);
+	}
+
+	// Formatted text of a block of cells
+	private static final class Block {
+
+		private final byte[] text;
+		private final int length;
+
+		Block(byte[] text, int length) {
+			this.text = text;
+			this.length = length;
+		}
+
+	}
+
+}
@@ -0,0 +1,156 @@
+/*
+ * Re-solves a converged utility store after a few cells of the grid change, instead of running value iteration again.
+ * Only the residuals of the changed cells and of their neighbours, the only states whose Bellman update reads them,
+ * can have changed, so prioritized sweeping starts from these states alone and spreads the updates outwards through
+ * the predecessors of every state it backs up, until the largest residual is back under the convergence threshold.
+ * Every other state keeps a residual under the threshold, so the result has the same error bound as a full solve.
+ *
+ * A changed reward is written into the transition model, and a new wall is blocked in it, its state kept with every
+ * move into it turned into a bump. A removed wall needs a new state, so the model is compiled again, which reads
+ * the whole grid but does no backups. The utilities are kept by cell, not by state, so they carry over to the new model.
+ */
+
+package controller;
+
+import java.util.Arrays;
+import java.util.List;
+
+import grid.AgentState;
+import grid.GridStore;
+import grid.UtilityStore;
+
+public class IncrementalPlanner {
+
+	private final GridStore grid;
+	private final UtilityStore utils;
+	private final double converge_threshold;
+	private TransitionModel model;
+
+	// Work done by the latest re-solve
+	private long backups = 0;
+	private int touched_states = 0;
+	private boolean recompiled = false;
+
+    /**
+     * Creates a planner for a converged utility store of a grid.
+     * @param grid The compact grid, changed through the states of the grid before each re-solve
+     * @param model The transition model the utilities converged for
+     * @param utils The converged utility store, updated in place
+     * @param convergeThreshold The largest residual the utilities may be left with
+     */
+
+	public IncrementalPlanner(final GridStore grid, final TransitionModel model, final UtilityStore utils,
+	final double convergeThreshold) {
+		this.grid = grid;
+		this.model = model;
+		this.utils = utils;
+		this.converge_threshold = convergeThreshold;
+	}
+
+    /**
+     * Re-solves the utilities after the reward or wall flag of some states were changed.
+     * @param changes The states that changed, already holding their new reward and wall flag
+     * @return The largest residual left, under the convergence threshold
+     */
+
+	public double replan(final List<AgentState> changes) {
+
+		// A removed wall has no state in the model, so the states are numbered again
+		recompiled = false;
+		for (AgentState change : changes) {
+			if (!change.isWall() && isWall(utils.stateId(change.getCol(), change.getRow()))) {
+				recompiled = true;
+			}
+		}
+		if (recompiled) {
+			model = new TransitionModel(grid);
+		}
+
+		// The changed cells and their neighbours are the only states whose residuals changed
+		int[] dirty = new int[changes.size() * 5];
+		int count = 0;
+		for (AgentState change : changes) {
+			int cell = utils.stateId(change.getCol(), change.getRow());
+			if (change.isWall()) {
+				// Walls keep no utility and no action, like the cells that were walls from the start
+				if (!isWall(cell)) {
+					model.blockState(model.getState(cell));
+				}
+				utils.setUtil(cell, 0.000);
+				utils.setActionCode(cell, UtilityStore.NO_ACTION);
+			} else if (!recompiled) {
+				model.setReward(model.getState(cell), change.getReward());
+			}
+			count = addState(dirty, count, change.getCol(), change.getRow());
+			count = addState(dirty, count, change.getCol(), change.getRow() - 1);
+			count = addState(dirty, count, change.getCol(), change.getRow() + 1);
+			count = addState(dirty, count, change.getCol() - 1, change.getRow());
+			count = addState(dirty, count, change.getCol() + 1, change.getRow());
+		}
+
+		PrioritizedSweep prioritizedSweep = new PrioritizedSweep(utils, model, Arrays.copyOf(dirty, count));
+		double residual = prioritizedSweep.backupStates(Long.MAX_VALUE, converge_threshold);
+		prioritizedSweep.extractTouchedPolicy();
+		for (AgentState change : changes) {
+			if (change.isWall()) {
+				utils.setActionCode(utils.stateId(change.getCol(), change.getRow()), UtilityStore.NO_ACTION);
+			}
+		}
+		backups = prioritizedSweep.getBackups();
+		touched_states = prioritizedSweep.getTouchedStates();
+		return residual;
+	}
+
+    /**
+     * Returns the transition model of the grid as it is now, where cells that became walls may be blocked states.
+     * @return The transition model
+     */
+
+	public TransitionModel getModel() {
+		return model;
+	}
+
+    /**
+     * Returns the number of Bellman backups of the latest re-solve.
+     * @return The number of backups
+     */
+
+	public long getBackups() {
+		return backups;
+	}
+
+    /**
+     * Returns the number of states whose residual was calculated by the latest re-solve.
+     * @return The number of states
+     */
+
+	public int getTouchedStates() {
+		return touched_states;
+	}
+
+    /**
+     * Returns whether the latest re-solve compiled the transition model again, for a removed wall.
+     * @return True if the model was compiled again
+     */
+
+	public boolean isRecompiled() {
+		return recompiled;
+	}
+
+	// Whether a cell is a wall in the model, from the start or blocked since
+	private boolean isWall(int cell) {
+		int state = model.getState(cell);
+		return state < 0 || model.isBlocked(state);
+	}
+
+	// Adds the state of a cell, if the cell is in the grid and not a wall
+	private int addState(int[] states, int count, int col, int row) {
+		if (col < 0 || row < 0 || col >= model.getNumCols() || row >= model.getNumRows()
+		|| isWall(utils.stateId(col, row))) {
+			return count;
+		}
+		states[count++] = model.getState(utils.stateId(col, row));
+		return count;
+	}
+
+}
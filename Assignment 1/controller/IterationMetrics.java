@@ -0,0 +1,84 @@
+/*
+ * Metrics of one iteration of a solver: a sweep of value iteration, or an evaluation and improvement of policy iteration.
+ */
+
+package controller;
+
+public final class IterationMetrics {
+
+	// Policy changes of a solver that has no policy step, such as value iteration
+	public static final int NO_POLICY_STEP = -1;
+
+	private final String solver;
+	private final int iteration;
+	private final double max_delta;
+	private final long nanos;
+	private final long backups;
+	private final int policy_changes;
+	private final long allocated_bytes;
+
+    /**
+     * Creates the metrics of an iteration.
+     * @param solver The name of the solver
+     * @param iteration The iteration, counted from 1
+     * @param maxDelta The largest change in utility of any state
+     * @param nanos The wall time of the iteration in nanoseconds
+     * @param backups The number of Bellman backups of the iteration
+     * @param policyChanges The number of states whose action changed, or NO_POLICY_STEP
+     * @param allocatedBytes The bytes allocated by the solver thread during the iteration
+     */
+
+	public IterationMetrics(String solver, int iteration, double maxDelta, long nanos, long backups, int policyChanges,
+	long allocatedBytes) {
+		this.solver = solver;
+		this.iteration = iteration;
+		this.max_delta = maxDelta;
+		this.nanos = nanos;
+		this.backups = backups;
+		this.policy_changes = policyChanges;
+		this.allocated_bytes = allocatedBytes;
+	}
+
+    // Get method for the name of the solver
+	public String getSolver() {
+		return solver;
+	}
+
+    // Get method for the iteration, counted from 1
+	public int getIteration() {
+		return iteration;
+	}
+
+    // Get method for the largest change in utility of any state
+	public double getMaxDelta() {
+		return max_delta;
+	}
+
+    // Get method for the wall time of the iteration in nanoseconds
+	public long getNanos() {
+		return nanos;
+	}
+
+    // Get method for the number of Bellman backups of the iteration
+	public long getBackups() {
+		return backups;
+	}
+
+    // Get method for the number of states whose action changed, or NO_POLICY_STEP
+	public int getPolicyChanges() {
+		return policy_changes;
+	}
+
+    // Get method for the bytes allocated by the solver thread during the iteration
+	public long getAllocatedBytes() {
+		return allocated_bytes;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s iteration %d: max delta %.6f, %.3f ms, %d backups%s, %d bytes allocated", solver, iteration,
+		max_delta, nanos / 1e6, backups, policy_changes == NO_POLICY_STEP ? "" : ", " + policy_changes + " policy changes",
+		allocated_bytes);
+	}
+
+}
@@ -0,0 +1,131 @@
+/*
+ * History that keeps a copy of every iteration in memory, so the memory used grows with the number of iterations.
+ *
+ * A solver that checkpoints gives a file next to its checkpoint, see UtilityHistory.create. Each snapshot then appends
+ * only the iterations recorded since the previous one to the file, like StreamHistory, and the checkpoint holds their
+ * number and the latest iteration, so checkpointing costs as much as the iterations themselves rather than growing
+ * with every checkpoint. Restoring reads the iterations back from the file. The file keeps the utilities only, which
+ * is all the saved file needs, so the iterations before the latest one come back without actions.
+ */
+
+package controller;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import grid.UtilityStore;
+
+public class MemoryHistory implements UtilityHistory {
+
+	private final List<UtilityStore> utilityList = new ArrayList<>();
+
+	// File the snapshots append the iterations to, null if the history is not checkpointed
+	private final Path spill_file;
+
+	// Number of iterations handed to the snapshots so far, the ones in the file once they are written
+	private int spilled = 0;
+
+    /**
+     * Creates a history kept in memory only.
+     */
+
+	public MemoryHistory() {
+		this(null);
+	}
+
+    /**
+     * Creates a history kept in memory whose snapshots append the iterations to a file, replacing it on the first
+     * snapshot. The file is left for its owner to delete, such as the checkpoint it belongs to.
+     * @param spillFile The file, or null if the history is not checkpointed
+     */
+
+	public MemoryHistory(Path spillFile) {
+		this.spill_file = spillFile;
+	}
+
+	@Override
+	public void add(UtilityStore utils) {
+		utilityList.add(utils.copy());
+	}
+
+	@Override
+	public UtilityStore getLatest() {
+		return utilityList.get(utilityList.size() - 1);
+	}
+
+	@Override
+	public int size() {
+		return utilityList.size();
+	}
+
+	@Override
+	public void writeToFile(String fileName) {
+		SaveOutput.writeUtilities(utilityList, fileName);
+	}
+
+	// The copies go with the history, so the latest iteration stays readable
+	@Override
+	public void close() {
+	}
+
+	// The copies are never changed, so the snapshot shares the ones it appends, written after the previous snapshot
+	// on the thread of the checkpoints
+	@Override
+	public Snapshot snapshot() {
+		if (spill_file == null) {
+			throw new IllegalStateException("A history kept in memory is only checkpointed with a file, see UtilityHistory.create");
+		}
+		int appended = spilled;
+		int recorded = utilityList.size();
+		List<UtilityStore> added = new ArrayList<>(utilityList.subList(appended, recorded));
+		UtilityStore latest_copy = recorded == 0 ? null : getLatest();
+		spilled = recorded;
+		return out -> {
+			if (!added.isEmpty()) {
+				try (BinaryOutputWriter writer = new BinaryOutputWriter(spill_file, 8, latest_copy.getNumCols(),
+				latest_copy.getNumRows(), appended)) {
+					for (UtilityStore utils : added) {
+						writer.append(utils);
+					}
+					writer.flush();
+					writer.force();
+				}
+			}
+			out.writeInt(recorded);
+			if (latest_copy != null) {
+				SolverCheckpoint.writeStore(out, latest_copy);
+			}
+		};
+	}
+
+	@Override
+	public void restore(DataInputStream in) throws IOException {
+		utilityList.clear();
+		int recorded = in.readInt();
+		if (recorded > 0) {
+			if (spill_file == null) {
+				throw new IllegalStateException("A history kept in memory can only be restored from the file it was checkpointed to");
+			}
+			UtilityStore latest = SolverCheckpoint.readStore(in);
+			BinaryOutputReader reader = new BinaryOutputReader(spill_file);
+			double[] values = new double[reader.getNumCells()];
+			for (int iteration = 0; iteration < recorded - 1; iteration++) {
+				reader.read(iteration, 0, values, values.length);
+				UtilityStore utils = new UtilityStore(reader.getNumCols(), reader.getNumRows());
+				int cell = 0;
+				for (int col = 0; col < utils.getNumCols(); col++) {
+					for (int row = 0; row < utils.getNumRows(); row++) {
+						utils.setUtil(utils.stateId(col, row), values[cell++]);
+					}
+				}
+				utilityList.add(utils);
+			}
+			utilityList.add(latest);
+		}
+		spilled = recorded;
+	}
+
+}
@@ -0,0 +1,213 @@
+/*
+ * Coarse-to-fine value iteration. The grid is coarsened a number of times, each coarse cell standing for a 2 x 2 block
+ * of the finer grid: it is a wall if the whole block is, and its reward is the best reward of the open cells of the
+ * block, where an agent can stay rather than cross the others. Crossing a coarse cell takes about two moves of the
+ * finer grid, so a coarse grid discounts by the square of the finer discount and collects the rewards of both moves,
+ * r * (1 + discount), which keeps the utilities of every level on the same scale.
+ *
+ * The coarsest grid is solved from zero, then the utilities of each level are copied to the cells of its blocks
+ * as the starting point of the finer level, down to the grid itself. Value information crosses the coarse grids
+ * in a fraction of the sweeps, so the full grid starts close to its solution. The full grid is still swept
+ * until the usual convergence threshold, so the result has the same error bound as without the coarse grids.
+ */
+
+package controller;
+
+import globals.IterationConstants;
+import globals.SweepMode;
+import grid.GridStore;
+import grid.UtilityStore;
+
+public class MultigridSolver {
+
+	// Transition model of every level, the grid itself first, then coarser and coarser grids
+	private final TransitionModel[] models;
+
+	// Sweeps and wall time spent on each level
+	private final int[] sweeps;
+	private final long[] nanos;
+
+	private long backups = 0;
+
+    /**
+     * Compiles the transition models of a grid and of its coarse grids.
+     * @param grid The compact grid
+     * @param coarseLevels The number of coarse grids, fewer if the grid cannot be halved that often
+     */
+
+	public MultigridSolver(final GridStore grid, final int coarseLevels) {
+
+		int levels = 1;
+		for (int cols = grid.getNumCols(), rows = grid.getNumRows(); levels <= coarseLevels && cols > 1 && rows > 1; levels++) {
+			cols = (cols + 1) / 2;
+			rows = (rows + 1) / 2;
+		}
+		models = new TransitionModel[levels];
+		sweeps = new int[levels];
+		nanos = new long[levels];
+
+		models[0] = new TransitionModel(grid);
+		GridStore fine_grid = grid;
+		double[] fine_rewards = null;
+		double discount = IterationConstants.DISCOUNT_FACTOR;
+
+		for (int level = 1; level < levels; level++) {
+			int num_cols = (fine_grid.getNumCols() + 1) / 2;
+			int num_rows = (fine_grid.getNumRows() + 1) / 2;
+			GridStore coarse_grid = new GridStore(num_cols, num_rows);
+			double[] coarse_rewards = new double[num_cols * num_rows];
+
+			for (int row = 0; row < num_rows; row++) {
+				for (int col = 0; col < num_cols; col++) {
+
+					// Best reward of the open cells of the block, a wall if there are none
+					double reward = Double.NEGATIVE_INFINITY;
+					int open = 0;
+					for (int fine_row = 2 * row; fine_row < Math.min(2 * row + 2, fine_grid.getNumRows()); fine_row++) {
+						for (int fine_col = 2 * col; fine_col < Math.min(2 * col + 2, fine_grid.getNumCols()); fine_col++) {
+							if (!fine_grid.isWall(fine_col, fine_row)) {
+								reward = Math.max(reward, fine_rewards == null ? fine_grid.getReward(fine_col, fine_row)
+								: fine_rewards[fine_row * fine_grid.getNumCols() + fine_col]);
+								open++;
+							}
+						}
+					}
+					coarse_grid.setWall(col, row, open == 0);
+					coarse_rewards[row * num_cols + col] = open == 0 ? 0.000 : (1 + discount) * reward;
+				}
+			}
+
+			discount *= discount;
+			final double[] rewards = coarse_rewards;
+			models[level] = new TransitionModel(coarse_grid, (col, row) -> rewards[row * num_cols + col], discount);
+			fine_grid = coarse_grid;
+			fine_rewards = coarse_rewards;
+		}
+	}
+
+    /**
+     * Returns the number of levels, the grid itself and its coarse grids.
+     * @return The number of levels
+     */
+
+	public int getNumLevels() {
+		return models.length;
+	}
+
+    /**
+     * Returns the transition model of a level.
+     * @param level The level, 0 for the grid itself
+     * @return The transition model
+     */
+
+	public TransitionModel getModel(int level) {
+		return models[level];
+	}
+
+    /**
+     * Returns the number of sweeps spent on a level.
+     * @param level The level, 0 for the grid itself
+     * @return The number of sweeps
+     */
+
+	public int getSweeps(int level) {
+		return sweeps[level];
+	}
+
+    /**
+     * Returns the wall time spent sweeping a level.
+     * @param level The level, 0 for the grid itself
+     * @return The wall time in nanoseconds
+     */
+
+	public long getNanos(int level) {
+		return nanos[level];
+	}
+
+    /**
+     * Returns the number of Bellman backups of the coarse grids.
+     * @return The number of backups
+     */
+
+	public long getBackups() {
+		return backups;
+	}
+
+    /**
+     * Records the sweeps and wall time spent on a level, for the grid itself which the caller sweeps.
+     * @param level The level, 0 for the grid itself
+     * @param levelSweeps The number of sweeps
+     * @param levelNanos The wall time in nanoseconds
+     */
+
+	public void recordLevel(int level, int levelSweeps, long levelNanos) {
+		sweeps[level] = levelSweeps;
+		nanos[level] = levelNanos;
+	}
+
+    /**
+     * Solves the coarse grids from the coarsest one and copies the utilities of the finest of them to the grid.
+     * Each coarse grid is swept until a looser threshold than the one of its own discount, as its utilities
+     * are only a starting point. The prioritized order has no
+     * queue on the coarse grids and sweeps them in the Gauss-Seidel order instead.
+     *
+     * @param sweepMode The order to sweep the coarse grids in
+     * @param parallelSweep The pool of threads to sweep with, or null to sweep on this thread
+     * @param utils The utility store of the grid, set to the utilities of the first coarse grid
+     */
+
+	public void solveCoarseLevels(final SweepMode sweepMode, final ParallelSweep parallelSweep, final UtilityStore utils) {
+
+		SweepMode coarse_mode = sweepMode == SweepMode.PRIORITIZED ? SweepMode.GAUSS_SEIDEL : sweepMode;
+		UtilityStore coarser_utils = null;
+
+		for (int level = models.length - 1; level >= 1; level--) {
+			long start = System.nanoTime();
+			TransitionModel model = models[level];
+			double discount = model.getDiscount();
+			double threshold = IterationConstants.MULTIGRID_TOLERANCE_RATIO * 
+			IterationConstants.MAXIMUM_ALLOWABLE_DISCOUNTED_ERROR * ((1.000 - discount) / discount);
+
+			// Both stores start from the utilities of the coarser grid, or from zero on the coarsest one
+			UtilityStore curr_utils = new UtilityStore(model.getNumCols(), model.getNumRows());
+			if (coarser_utils != null) {
+				prolong(coarser_utils, model, curr_utils);
+			}
+			UtilityStore new_utils = curr_utils.copy();
+
+			double delta;
+			int level_sweeps = 0;
+			do {
+				if (coarse_mode == SweepMode.JACOBI) {
+					UtilityStore temp_utils = curr_utils;
+					curr_utils = new_utils;
+					new_utils = temp_utils;
+				}
+				delta = UtilityController.sweepBestUtils(coarse_mode, parallelSweep, model, curr_utils, new_utils);
+				level_sweeps++;
+			} while (delta >= threshold);
+
+			backups += (long) level_sweeps * model.getNumStates();
+			recordLevel(level, level_sweeps, System.nanoTime() - start);
+
+			// A Jacobi sweep writes the new store, the other orders update the current one in place
+			coarser_utils = coarse_mode == SweepMode.JACOBI ? new_utils : curr_utils;
+		}
+
+		if (coarser_utils != null) {
+			prolong(coarser_utils, models[0], utils);
+		}
+	}
+
+	// Copies the utility and action of every coarse cell to the open cells of its block in the finer grid
+	private static void prolong(final UtilityStore coarseUtils, final TransitionModel fineModel, final UtilityStore fineUtils) {
+		int num_cols = fineModel.getNumCols();
+		for (int state = 0; state < fineModel.getNumStates(); state++) {
+			int cell = fineModel.getCell(state);
+			int coarse_cell = coarseUtils.stateId((cell % num_cols) / 2, (cell / num_cols) / 2);
+			fineUtils.setUtil(cell, coarseUtils.getUtil(coarse_cell));
+			fineUtils.setActionCode(cell, coarseUtils.getActionCode(coarse_cell));
+		}
+	}
+
+}
@@ -0,0 +1,223 @@
+/*
+ * Jacobi value iteration on a grid and utilities held outside the Java heap, see MappedGrid and OffHeapUtilityStore,
+ * for grids too large for the heap. There is no compiled transition model: every sweep reads the reward classes of a
+ * row and of the rows above and below it, and writes the best utility and action of the row to the other plane.
+ * Only a few rows of each buffer are in use at any time, so the operating system can page a file-backed grid and
+ * store in and out as the sweep moves down.
+ *
+ * The outcomes of the actions of a state are the move outcomes of TransitionModel for its open neighbours, and are
+ * backed up by UtilityController.backupBestUtil from the utilities of the five cells it moves to, the same backup as
+ * the one of a compiled model. The utilities, actions and number of sweeps are therefore those of a Jacobi sweep of
+ * ValueIteration with the scalar backups, as Check.OFF_HEAP_SOLVE checks, and so is the cost of a backup. The rows a
+ * backup reads are copied to arrays on the heap a row at a time, and the new row written back at once.
+ *
+ * The rows are split into bands swept on NUM_THREADS threads, each band writing only its own rows of the new plane.
+ */
+
+package controller;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import globals.IterationConstants;
+import grid.GridStore;
+import grid.MappedGrid;
+import grid.OffHeapUtilityStore;
+import grid.UtilityStore;
+
+public class OffHeapSolver {
+
+	// Name of the solver in the solver metrics and the monitor
+	public static final String SOLVER = "offheap_value_iteration";
+
+	// Number of bands of rows given to each thread, so that threads finishing early can take more
+	private static final int BANDS_PER_THREAD = 4;
+
+	private final MappedGrid grid;
+	private final OffHeapUtilityStore utils;
+	private final double discount;
+	private long backups = 0;
+
+	// Latest completed sweep, published for readers on other threads, copied to the heap only while one is attached
+	private final SnapshotPublisher snapshots = new SnapshotPublisher();
+	private UtilityStore snapshot_utils;
+
+    /**
+     * Creates the solver of a grid, sweeping from the latest plane of a store.
+     * @param grid The grid
+     * @param utils The store of the utilities, of the same dimensions
+     */
+
+	public OffHeapSolver(MappedGrid grid, OffHeapUtilityStore utils) {
+		if (grid.getNumCols() != utils.getNumCols() || grid.getNumRows() != utils.getNumRows()) {
+			throw new IllegalArgumentException("A store of " + utils.getNumCols() + " x " + utils.getNumRows()
+			+ " cells cannot hold the utilities of a grid of " + grid.getNumCols() + " x " + grid.getNumRows());
+		}
+		this.grid = grid;
+		this.utils = utils;
+		this.discount = IterationConstants.DISCOUNT_FACTOR;
+	}
+
+    /**
+     * Sweeps until the largest change in utility of a sweep is below a threshold, each sweep marking its plane
+     * as the latest one of the store.
+     * @param convergeThreshold The largest change in utility at which the utilities have converged
+     * @return The number of sweeps until convergence
+     */
+
+	public int solve(double convergeThreshold) {
+		int threads = Math.max(1, IterationConstants.NUM_THREADS);
+		ExecutorService pool = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+		int band_rows = Math.max(1, grid.getNumRows() / (threads * BANDS_PER_THREAD));
+		int sweeps = 0;
+		double delta;
+		snapshots.reset();
+		try {
+			do {
+				SolverInstrumentation.Probe probe = SolverInstrumentation.start();
+				int curr = utils.getLatestPlane();
+				delta = pool == null ? calcBestUtils(0, grid.getNumRows(), curr) : sweepBands(pool, band_rows, curr);
+				backups += (long) grid.getNumCols() * grid.getNumRows();
+				sweeps++;
+				utils.setLatest(1 - curr, utils.getSweeps() + 1);
+
+				if (probe != null) {
+					probe.finish(SOLVER, sweeps, delta, (long) grid.getNumCols() * grid.getNumRows(), IterationMetrics.NO_POLICY_STEP);
+				}
+
+				// Publish the sweep, the grid only copied onto the heap while a reader is attached
+				if (snapshots.isWatched()) {
+					if (snapshot_utils == null) {
+						snapshot_utils = new UtilityStore(grid.getNumCols(), grid.getNumRows());
+					}
+					utils.copyTo(snapshot_utils);
+					snapshots.publish(snapshot_utils, sweeps, delta);
+				}
+			} while (delta >= convergeThreshold);
+		} finally {
+			if (pool != null) {
+				pool.shutdownNow();
+			}
+		}
+		utils.force();
+		return sweeps;
+	}
+
+    /**
+     * Returns the publisher of the latest completed sweep, for reading the utilities and policy from another thread
+     * while the solver runs. Each published sweep is a copy of the whole grid on the heap, so only a grid small enough
+     * for the heap can be watched.
+     * @return The publisher
+     */
+
+	public SnapshotPublisher getSnapshots() {
+		return snapshots;
+	}
+
+    /**
+     * Returns the number of Bellman backups done so far, one per cell and sweep, walls included.
+     * @return The number of backups
+     */
+
+	public long getBackups() {
+		return backups;
+	}
+
+	// Sweeps the bands of rows on the pool and reduces their largest changes
+	private double sweepBands(ExecutorService pool, int bandRows, int curr) {
+		List<Future<Double>> bands = new ArrayList<>();
+		for (int first = 0; first < grid.getNumRows(); first += bandRows) {
+			final int from_row = first;
+			final int to_row = Math.min(grid.getNumRows(), first + bandRows);
+			bands.add(pool.submit(() -> calcBestUtils(from_row, to_row, curr)));
+		}
+		double delta = Double.MIN_VALUE;
+		try {
+			for (Future<Double> band : bands) {
+				delta = Math.max(delta, band.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while sweeping the grid", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+		return delta;
+	}
+
+	// Bellman backup of every cell of the rows fromRow to toRow - 1, from the current plane to the other one
+	private double calcBestUtils(int fromRow, int toRow, int curr) {
+		int num_cols = grid.getNumCols();
+		int last_row = grid.getNumRows() - 1;
+		int[] outcome_start = TransitionModel.getMoveOutcomeStart();
+		int[] moves = TransitionModel.getMoveOutcomes();
+		double[] probabilities = TransitionModel.getMoveProbabilities();
+		double delta = Double.MIN_VALUE;
+
+		// Reward classes and utilities of the row and of the rows above and below it, read a row at a time
+		byte[] cells = new byte[num_cols];
+		byte[] up_cells = new byte[num_cols];
+		byte[] down_cells = new byte[num_cols];
+		double[] row_utils = new double[num_cols];
+		double[] up_utils = new double[num_cols];
+		double[] down_utils = new double[num_cols];
+
+		// Utilities of the cells a state moves to, and the new utilities and actions of a row, written at once
+		double[] move_utils = new double[TransitionModel.NUM_MOVES];
+		double[] new_utils = new double[num_cols];
+		byte[] new_actions = new byte[num_cols];
+
+		for (int row = fromRow; row < toRow; row++) {
+			grid.getSegment(row).get(grid.getOffset(row), cells);
+			utils.getPlane(curr, row).get(utils.getOffset(row), row_utils);
+
+			// The rows above and below, none at the border, where every move bumps
+			boolean has_up = row > 0;
+			boolean has_down = row < last_row;
+			if (has_up) {
+				grid.getSegment(row - 1).get(grid.getOffset(row - 1), up_cells);
+				utils.getPlane(curr, row - 1).get(utils.getOffset(row - 1), up_utils);
+			}
+			if (has_down) {
+				grid.getSegment(row + 1).get(grid.getOffset(row + 1), down_cells);
+				utils.getPlane(curr, row + 1).get(utils.getOffset(row + 1), down_utils);
+			}
+
+			for (int col = 0; col < num_cols; col++) {
+				double u = row_utils[col];
+				if (cells[col] == GridStore.WALL) {
+					new_utils[col] = u;
+					new_actions[col] = UtilityStore.NO_ACTION;
+					continue;
+				}
+
+				// Open neighbours, the moves into the others bump and are never read
+				boolean up = has_up && up_cells[col] != GridStore.WALL;
+				boolean down = has_down && down_cells[col] != GridStore.WALL;
+				boolean left = col > 0 && cells[col - 1] != GridStore.WALL;
+				boolean right = col < num_cols - 1 && cells[col + 1] != GridStore.WALL;
+				move_utils[TransitionModel.MOVE_UP] = up ? up_utils[col] : u;
+				move_utils[TransitionModel.MOVE_LEFT] = left ? row_utils[col - 1] : u;
+				move_utils[TransitionModel.MOVE_STAY] = u;
+				move_utils[TransitionModel.MOVE_RIGHT] = right ? row_utils[col + 1] : u;
+				move_utils[TransitionModel.MOVE_DOWN] = down ? down_utils[col] : u;
+
+				int open_moves = TransitionModel.getOpenMoves(up, down, left, right);
+				double util = UtilityController.backupBestUtil(grid.getReward(cells[col]), discount, outcome_start,
+				moves, probabilities, open_moves * TransitionModel.NUM_ACTIONS, move_utils, col, new_utils, new_actions);
+				delta = Math.max(delta, Math.abs(util - u));
+			}
+			utils.getPlane(1 - curr, row).put(utils.getOffset(row), new_utils);
+			utils.getActions(row).put(utils.getOffset(row), new_actions);
+		}
+		return delta;
+	}
+
+}
@@ -0,0 +1,186 @@
+/*
+ * Runs the sweeps of the Bellman update over the grid on a pool of threads.
+ * The rows of the grid are split into bands and each band is swept by UtilityController on its own,
+ * then the largest change in utility of every band is reduced into the one of the whole sweep.
+ * As every state only reads the current utility store and writes its own entry of the new one,
+ * or, for the red-black order, only reads cells of the other colour, the result is bit-identical
+ * to a sweep on a single thread.
+ */
+
+package controller;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import grid.UtilityStore;
+
+public class ParallelSweep implements AutoCloseable {
+
+	// Number of bands given to each thread, so that threads finishing early can steal work
+	private static final int BANDS_PER_THREAD = 4;
+
+	// Colour of a band that sweeps every cell instead of one colour of the checkerboard
+	private static final int ALL_COLOURS = -1;
+
+	private final ForkJoinPool pool;
+	private final int num_threads;
+
+    /**
+     * Creates a pool of threads to sweep the grid with.
+     * @param numThreads The number of threads
+     */
+
+	public ParallelSweep(int numThreads) {
+		this.pool = new ForkJoinPool(numThreads);
+		this.num_threads = numThreads;
+	}
+
+    /**
+     * Value iteration sweep over the whole grid, see UtilityController.calcBestUtils.
+     *
+     * @param model       The transition model of the grid
+     * @param curr_utils  The current utility store
+     * @param new_utils   The utility store the best utilities and actions are written to
+     * @return            The largest change in utility over the grid
+     */
+
+	public double calcBestUtils(final TransitionModel model, final UtilityStore curr_utils, final UtilityStore new_utils) {
+		return pool.invoke(new ValueBand(0, model.getNumRows(), bandRows(model), ALL_COLOURS, model, curr_utils, new_utils));
+	}
+
+    /**
+     * Value iteration sweep over the whole grid in a sweep order, see UtilityController.calcBestUtilsInOrder.
+     *
+     * @param model       The transition model of the grid
+     * @param states      The states in the order of the sweep
+     * @param curr_utils  The current utility store
+     * @param new_utils   The utility store the best utilities and actions are written to
+     * @return            The largest change in utility over the grid
+     */
+
+	public double calcBestUtilsInOrder(final TransitionModel model, final int[] states, final UtilityStore curr_utils, 
+	final UtilityStore new_utils) {
+		int band_states = Math.max(1, states.length / (num_threads * BANDS_PER_THREAD));
+		return pool.invoke(new OrderBand(0, states.length, band_states, model, states, curr_utils, new_utils));
+	}
+
+    /**
+     * In-place red-black value iteration sweep over the whole grid, one colour after the other,
+     * see UtilityController.calcBestUtilsOfColour.
+     *
+     * @param model       The transition model of the grid
+     * @param utils       The utility store, updated in place
+     * @return            The largest change in utility over the grid
+     */
+
+	public double calcBestUtilsRedBlack(final TransitionModel model, final UtilityStore utils) {
+		int band_rows = bandRows(model);
+		double red_delta = pool.invoke(new ValueBand(0, model.getNumRows(), band_rows, 0, model, utils, utils));
+		double black_delta = pool.invoke(new ValueBand(0, model.getNumRows(), band_rows, 1, model, utils, utils));
+		return Math.max(red_delta, black_delta);
+	}
+
+	// Number of rows of a band small enough to sweep without splitting it
+	private int bandRows(final TransitionModel model) {
+		return Math.max(1, model.getNumRows() / (num_threads * BANDS_PER_THREAD));
+	}
+
+	// Shuts the pool of threads down
+	@Override
+	public void close() {
+		pool.shutdown();
+	}
+
+	/*
+	 * Splits a band of rows in halves until it is small enough, then sweeps it, 
+	 * either every cell or the cells of one colour of the checkerboard.
+	 */
+
+	private class ValueBand extends RecursiveTask<Double> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int from_row;
+		private final int to_row;
+		private final int band_rows;
+		private final int colour;
+		private final TransitionModel model;
+		private final UtilityStore curr_utils;
+		private final UtilityStore new_utils;
+
+		ValueBand(int fromRow, int toRow, int bandRows, int colour, TransitionModel model, UtilityStore currUtils, 
+		UtilityStore newUtils) {
+			this.from_row = fromRow;
+			this.to_row = toRow;
+			this.band_rows = bandRows;
+			this.colour = colour;
+			this.model = model;
+			this.curr_utils = currUtils;
+			this.new_utils = newUtils;
+		}
+
+		@Override
+		protected Double compute() {
+			if (to_row - from_row <= band_rows) {
+				if (colour == ALL_COLOURS) {
+					return UtilityController.calcBestUtils(model, from_row, to_row, curr_utils, new_utils);
+				}
+				return UtilityController.calcBestUtilsOfColour(model, from_row, to_row, colour, new_utils);
+			}
+
+			int mid_row = (from_row + to_row) >>> 1;
+			ValueBand upper = new ValueBand(from_row, mid_row, band_rows, colour, model, curr_utils, new_utils);
+			ValueBand lower = new ValueBand(mid_row, to_row, band_rows, colour, model, curr_utils, new_utils);
+			upper.fork();
+			double lower_delta = lower.compute();
+
+			// The maximum is exact, so the order the bands finish in does not change the result
+			return Math.max(upper.join(), lower_delta);
+		}
+
+	}
+
+	/*
+	 * Splits a range of the states of a sweep order in halves until it is small enough, then sweeps it.
+	 */
+
+	private class OrderBand extends RecursiveTask<Double> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int from_index;
+		private final int to_index;
+		private final int band_states;
+		private final TransitionModel model;
+		private final int[] states;
+		private final UtilityStore curr_utils;
+		private final UtilityStore new_utils;
+
+		OrderBand(int fromIndex, int toIndex, int bandStates, TransitionModel model, int[] states, UtilityStore currUtils,
+		UtilityStore newUtils) {
+			this.from_index = fromIndex;
+			this.to_index = toIndex;
+			this.band_states = bandStates;
+			this.model = model;
+			this.states = states;
+			this.curr_utils = currUtils;
+			this.new_utils = newUtils;
+		}
+
+		@Override
+		protected Double compute() {
+			if (to_index - from_index <= band_states) {
+				return UtilityController.calcBestUtilsInOrder(model, states, from_index, to_index, curr_utils, new_utils);
+			}
+
+			int mid_index = (from_index + to_index) >>> 1;
+			OrderBand first = new OrderBand(from_index, mid_index, band_states, model, states, curr_utils, new_utils);
+			OrderBand second = new OrderBand(mid_index, to_index, band_states, model, states, curr_utils, new_utils);
+			first.fork();
+			double second_delta = second.compute();
+			return Math.max(first.join(), second_delta);
+		}
+
+	}
+
+}
@@ -0,0 +1,185 @@
+/*
+ * Policy evaluation and improvement steps of policy iteration, with the number of evaluation sweeps
+ * chosen by an EvaluationMode. The fixed mode always runs K sweeps, like UtilityController.calcNextUtil.
+ * The adaptive modes stop evaluating once the largest change of a sweep is a fraction of the Bellman residual
+ * seen by the last improvement step: early on, while the policy is far from optimal, the evaluation does
+ * not need to be precise, and once the policy settles the residual shrinks and the evaluation tightens with it.
+ * The exact modes solve the linear system of the policy with a PolicySolver instead.
+ * The number of Bellman backups is counted, so the modes can be compared.
+ */
+
+package controller;
+
+import globals.EvaluationMode;
+import globals.IterationConstants;
+import grid.UtilityStore;
+
+public class PolicyEvaluator {
+
+	private final TransitionModel model;
+	private final EvaluationMode mode;
+
+	// Solver of the exact modes, null for the others
+	private final PolicySolver solver;
+
+	// Largest change at which an adaptive evaluation stops, NaN until the first one
+	private double tolerance = Double.NaN;
+
+	// Maximum number of sweeps of the next adaptive evaluation
+	private int sweep_budget;
+
+	// Number of Bellman backups done so far
+	private long backups = 0;
+
+	// Number of states whose action the last improvement changed
+	private int policy_changes = 0;
+
+    /**
+     * Creates the evaluator of the policies of a grid.
+     * @param model The transition model of the grid
+     * @param mode How to decide the number of sweeps of each evaluation
+     */
+
+	public PolicyEvaluator(TransitionModel model, EvaluationMode mode) {
+		this.model = model;
+		this.mode = mode;
+		this.sweep_budget = mode == EvaluationMode.SCHEDULED ? IterationConstants.K : IterationConstants.MAXIMUM_EVALUATION_SWEEPS;
+		this.solver = mode == EvaluationMode.BICGSTAB || mode == EvaluationMode.SOR ? new PolicySolver(model) : null;
+	}
+
+    /**
+     * Evaluates the policy held by a utility store.
+     * @param utils The current utility store, holding the policy
+     * @return The new utility store, holding the same policy
+     */
+
+	public UtilityStore evaluate(final UtilityStore utils) {
+
+		if (mode == EvaluationMode.FIXED) {
+			backups += (long) IterationConstants.K * model.getNumStates();
+			return UtilityController.calcNextUtil(utils, model);
+		}
+
+		// Solve exactly, starting from the utilities of the previous policy
+		if (solver != null) {
+			UtilityStore new_utils = utils.copy();
+			long products = solver.getProducts();
+			if (mode == EvaluationMode.BICGSTAB) {
+				solver.solveBiCGStab(new_utils);
+			} else {
+				solver.solveSor(new_utils);
+			}
+			backups += (solver.getProducts() - products) * model.getNumStates();
+			return new_utils;
+		}
+
+		// The first evaluation has no improvement step before it, so use the residual of the initial utilities
+		if (Double.isNaN(tolerance)) {
+			tolerance = IterationConstants.EVALUATION_TOLERANCE_RATIO * bellmanResidual(utils);
+		}
+
+		UtilityStore curr_utils = utils.copy();
+		UtilityStore new_utils = utils.copy();
+		double delta;
+		int sweeps = 0;
+		do {
+			UtilityStore temp = curr_utils;
+			curr_utils = new_utils;
+			new_utils = temp;
+
+			delta = UtilityController.calcPolicyUtils(model, curr_utils, new_utils);
+			sweeps++;
+		} while (delta >= tolerance && sweeps < sweep_budget);
+		backups += (long) sweeps * model.getNumStates();
+
+		// Grow the budget when it was too small to reach the tolerance, shrink it when it was far too large
+		if (mode == EvaluationMode.SCHEDULED) {
+			if (delta >= tolerance) {
+				sweep_budget = Math.min(2 * sweep_budget, IterationConstants.MAXIMUM_EVALUATION_SWEEPS);
+			} else if (2 * sweeps < sweep_budget) {
+				sweep_budget = Math.max(sweep_budget / 2, 1);
+			}
+		}
+		return new_utils;
+
+	}
+
+    /**
+     * Improves the policy held by a utility store, switching each state to the best action
+     * if it has a strictly higher utility than the action stated in the policy.
+     * @param utils The utility store holding the evaluated policy, updated in place
+     * @return True if the action of any state was changed
+     */
+
+	public boolean improve(final UtilityStore utils) {
+
+		if (mode == EvaluationMode.ADAPTIVE || mode == EvaluationMode.SCHEDULED) {
+			tolerance = IterationConstants.EVALUATION_TOLERANCE_RATIO * bellmanResidual(utils);
+		}
+
+		// An exact evaluation is only exact up to its tolerance, so ignore gains within the error it leaves
+		double margin = solver != null ? IterationConstants.EXACT_IMPROVEMENT_MARGIN : 0.000;
+
+		policy_changes = 0;
+		for (int state = 0; state < model.getNumStates(); state++) {
+
+			// Switch to the best calculated action if it beats the utility of the current policy
+			if (UtilityController.improvePolicyAction(model, state, utils, margin)) {
+				policy_changes++;
+			}
+		}
+		backups += model.getNumStates();
+		return policy_changes > 0;
+
+	}
+
+    /**
+     * Returns the number of Bellman backups done so far, by both evaluation and improvement.
+     * @return The number of backups
+     */
+
+	public long getBackups() {
+		return backups;
+	}
+
+    /**
+     * Returns the number of states whose action the last improvement changed.
+     * @return The number of policy changes
+     */
+
+	public int getPolicyChanges() {
+		return policy_changes;
+	}
+
+    /**
+     * Returns what the evaluator carries from one policy to the next, for a checkpoint of policy iteration.
+     * @return The backups done so far, the tolerance and the sweep budget of the next adaptive evaluation
+     */
+
+	public double[] getState() {
+		return new double[] { backups, tolerance, sweep_budget };
+	}
+
+    /**
+     * Restores what getState returned, for policy iteration resuming from a checkpoint.
+     * @param state The backups done so far, the tolerance and the sweep budget of the next adaptive evaluation
+     */
+
+	public void setState(final double[] state) {
+		backups = (long) state[0];
+		tolerance = state[1];
+		sweep_budget = (int) state[2];
+	}
+
+	// Largest difference between the best action utility and the utility of a state, costing a backup per state
+	private double bellmanResidual(final UtilityStore utils) {
+		backups += model.getNumStates();
+		double residual = 0.000;
+		for (int state = 0; state < model.getNumStates(); state++) {
+			residual = Math.max(residual,
+			Math.abs(UtilityController.calcMaxUtil(model, state, utils) - utils.getUtil(model.getCell(state))));
+		}
+		return residual;
+	}
+
+}
@@ -0,0 +1,215 @@
+/*
+ * Answers queries of a packed policy over HTTP on localhost only, see PolicyIndex, which is also the in-process API.
+ * Every answer is plain text, one line per cell, "col,row,ACTION" with ACTION the name of the action or WALL:
+ *
+ *   GET  /action?col=C&row=R          the action of one cell
+ *   GET  /actions?cells=C,R;C,R;...   the actions of several cells, the cells separated as in GridConstants
+ *   POST /actions                     the same, with the cells as the body, for batches too long for a URL
+ *   GET  /path[?col=C&row=R]          the cells visited following the policy, from the agent's start by default
+ *
+ * A malformed query or a cell outside the grid is answered with 400 and the reason. The queries only read the mapped
+ * policy, so they are answered on the thread of the server without queueing them to a pool.
+ */
+
+package controller;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import globals.GridConstants;
+import globals.IterationConstants;
+import grid.AgentAction;
+import grid.PolicyIndex;
+
+public class PolicyServer implements AutoCloseable {
+
+	// Name of a cell without an action in the answers
+	private static final String WALL = "WALL";
+
+	private final PolicyIndex policy;
+	private final HttpServer server;
+
+	/*
+	 * Query the client got wrong, answered with 400.
+	 */
+
+	private static final class BadQuery extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		BadQuery(String message) {
+			super(message);
+		}
+
+	}
+
+	/*
+	 * Answer of a query, text written to the client.
+	 */
+
+	private interface Handler {
+
+		String answer(HttpExchange exchange) throws IOException;
+
+	}
+
+    /**
+     * Starts answering queries of a policy on a port of the loopback address.
+     * @param policy The policy
+     * @param port The port, or 0 for any free port
+     */
+
+	public PolicyServer(PolicyIndex policy, int port) {
+		this.policy = policy;
+		try {
+			this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		server.createContext("/action", exchange -> respond(exchange, this::action));
+		server.createContext("/actions", exchange -> respond(exchange, this::actions));
+		server.createContext("/path", exchange -> respond(exchange, this::path));
+		server.start();
+	}
+
+    /**
+     * Returns the port the queries are answered on.
+     * @return The port
+     */
+
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	// Stops answering, without waiting for the queries being answered
+	@Override
+	public void close() {
+		server.stop(0);
+	}
+
+	// Action of one cell
+	private String action(HttpExchange exchange) {
+		Map<String, String> query = parseQuery(exchange.getRequestURI());
+		StringBuilder sb = new StringBuilder();
+		appendCell(sb, parseInt(query, "col", null), parseInt(query, "row", null));
+		return sb.toString();
+	}
+
+	// Actions of the cells of the query, or of the body of a POST
+	private String actions(HttpExchange exchange) throws IOException {
+		String cells;
+		if ("POST".equals(exchange.getRequestMethod())) {
+			try (InputStream body = exchange.getRequestBody()) {
+				cells = new String(body.readAllBytes(), StandardCharsets.UTF_8);
+			}
+		} else {
+			cells = parseQuery(exchange.getRequestURI()).get("cells");
+		}
+		if (cells == null || cells.trim().isEmpty()) {
+			throw new BadQuery("No cells to answer, give them as cells=col,row;col,row");
+		}
+
+		StringBuilder sb = new StringBuilder();
+		for (String cell : cells.split(GridConstants.CELL_SEPARATOR)) {
+			String[] coordinates = cell.trim().split(GridConstants.ROW_COLUMN_SEPARATOR);
+			if (coordinates.length != 2) {
+				throw new BadQuery("Cell \"" + cell.trim() + "\" is not col,row");
+			}
+			appendCell(sb, parseInt(coordinates[0], "col"), parseInt(coordinates[1], "row"));
+		}
+		return sb.toString();
+	}
+
+	// Cells visited following the policy
+	private String path(HttpExchange exchange) {
+		Map<String, String> query = parseQuery(exchange.getRequestURI());
+		int col = parseInt(query, "col", GridConstants.AGENT_INIT_COL);
+		int row = parseInt(query, "row", GridConstants.AGENT_INIT_ROW);
+		checkCell(col, row);
+
+		StringBuilder sb = new StringBuilder();
+		for (int cell : policy.path(col, row, IterationConstants.PATH_MAX_STEPS)) {
+			appendCell(sb, cell % policy.getNumCols(), cell / policy.getNumCols());
+		}
+		return sb.toString();
+	}
+
+	// Writes the answer of a handler, or the reason a query cannot be answered
+	private static void respond(HttpExchange exchange, Handler handler) throws IOException {
+		int status = 200;
+		String answer;
+		try {
+			answer = handler.answer(exchange);
+		} catch (BadQuery e) {
+			status = 400;
+			answer = e.getMessage() + "\n";
+		}
+		byte[] bytes = answer.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream body = exchange.getResponseBody()) {
+			body.write(bytes);
+		}
+	}
+
+	private void appendCell(StringBuilder sb, int col, int row) {
+		checkCell(col, row);
+		AgentAction action = policy.getAction(col, row);
+		sb.append(col).append(GridConstants.ROW_COLUMN_SEPARATOR).append(row).append(GridConstants.ROW_COLUMN_SEPARATOR)
+		.append(action == null ? WALL : action.name()).append('\n');
+	}
+
+	private void checkCell(int col, int row) {
+		if (!policy.contains(col, row)) {
+			throw new BadQuery("Cell " + col + "," + row + " is outside the grid of " + policy.getNumCols() + " x "
+			+ policy.getNumRows() + " cells");
+		}
+	}
+
+	// Parameters of the decoded query string
+	private static Map<String, String> parseQuery(URI uri) {
+		Map<String, String> parameters = new HashMap<>();
+		String query = uri.getQuery();
+		if (query == null) {
+			return parameters;
+		}
+		for (String parameter : query.split("&")) {
+			int equals = parameter.indexOf('=');
+			if (equals > 0) {
+				parameters.put(parameter.substring(0, equals), parameter.substring(equals + 1));
+			}
+		}
+		return parameters;
+	}
+
+	private static int parseInt(Map<String, String> query, String name, Integer defaultValue) {
+		String value = query.get(name);
+		if (value == null) {
+			if (defaultValue == null) {
+				throw new BadQuery("Missing " + name);
+			}
+			return defaultValue;
+		}
+		return parseInt(value, name);
+	}
+
+	private static int parseInt(String value, String name) {
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			throw new BadQuery(name + " \"" + value.trim() + "\" is not a whole number");
+		}
+	}
+
+}
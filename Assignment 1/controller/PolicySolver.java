@@ -0,0 +1,266 @@
+/*
+ * Exact policy evaluation: solves the linear system (I - γP)U = R of a fixed policy, where P holds the
+ * transitions of the action each state takes, instead of approximating U with K sweeps of the Bellman update.
+ * The matrix is gathered from the transition model, so it has the same neighbours as goUp, goDown, turnLeft
+ * and turnRight, with at most 3 entries per row. It is not symmetric, so the system is solved either with
+ * BiCGSTAB, preconditioned by the diagonal of the matrix, or with successive over-relaxation (SOR).
+ * Both stop once the Bellman residual of the policy, max |R + γPU - U|, is below EXACT_EVALUATION_TOLERANCE.
+ */
+
+package controller;
+
+import globals.IterationConstants;
+import grid.UtilityStore;
+
+public class PolicySolver {
+
+	private final TransitionModel model;
+	private final int num_states;
+
+	// State of the successor of every transition of the model
+	private final int[] successor_states;
+
+	// Matrix of the policy being solved, in compressed sparse row form without the diagonal
+	private final int[] row_start;
+	private final int[] columns;
+	private final double[] values;
+	private final double[] diagonal;
+
+	// Vectors of the solver, indexed by state
+	private final double[] x;
+	private final double[] r;
+	private final double[] r_hat;
+	private final double[] p;
+	private final double[] v;
+	private final double[] s;
+	private final double[] t;
+	private final double[] y;
+	private final double[] z;
+
+	// Number of products of the matrix with a vector, or sweeps for SOR, done so far
+	private long products = 0;
+
+    /**
+     * Creates the solver of the policies of a grid.
+     * @param model The transition model of the grid
+     */
+
+	public PolicySolver(TransitionModel model) {
+		this.model = model;
+		this.num_states = model.getNumStates();
+
+		int[] successors = model.getSuccessors();
+		successor_states = new int[successors.length];
+		for (int k = 0; k < successors.length; k++) {
+			successor_states[k] = model.getState(successors[k]);
+		}
+
+		// At most 3 outcomes per action
+		row_start = new int[num_states + 1];
+		columns = new int[3 * num_states];
+		values = new double[3 * num_states];
+		diagonal = new double[num_states];
+
+		x = new double[num_states];
+		r = new double[num_states];
+		r_hat = new double[num_states];
+		p = new double[num_states];
+		v = new double[num_states];
+		s = new double[num_states];
+		t = new double[num_states];
+		y = new double[num_states];
+		z = new double[num_states];
+	}
+
+    /**
+     * Evaluates the policy held by a utility store with preconditioned BiCGSTAB,
+     * starting from the utilities it holds.
+     * @param utils The utility store holding the policy, its utilities are replaced with the ones of the policy
+     * @return The number of iterations of the solver
+     */
+
+	public int solveBiCGStab(final UtilityStore utils) {
+
+		gatherPolicy(utils);
+		double[] rewards = model.getRewards();
+
+		// r = R - A x, compared against itself to build the Krylov space
+		multiply(x, r);
+		for (int i = 0; i < num_states; i++) {
+			r[i] = rewards[i] - r[i];
+			r_hat[i] = r[i];
+			p[i] = 0.000;
+			v[i] = 0.000;
+		}
+
+		double rho = 1.000;
+		double alpha = 1.000;
+		double omega = 1.000;
+		int iteration = 0;
+		while (maxNorm(r) >= IterationConstants.EXACT_EVALUATION_TOLERANCE
+		&& iteration < IterationConstants.MAXIMUM_SOLVER_ITERATIONS) {
+			iteration++;
+
+			double rho_next = dot(r_hat, r);
+
+			// The Krylov space broke down, so start a new one from the current residual
+			if (rho_next == 0.000 || omega == 0.000) {
+				for (int i = 0; i < num_states; i++) {
+					r_hat[i] = r[i];
+					p[i] = 0.000;
+					v[i] = 0.000;
+				}
+				rho = alpha = omega = 1.000;
+				rho_next = dot(r_hat, r);
+			}
+
+			double beta = (rho_next / rho) * (alpha / omega);
+			rho = rho_next;
+			for (int i = 0; i < num_states; i++) {
+				p[i] = r[i] + beta * (p[i] - omega * v[i]);
+				y[i] = p[i] / diagonal[i];
+			}
+			multiply(y, v);
+			alpha = rho / dot(r_hat, v);
+
+			for (int i = 0; i < num_states; i++) {
+				s[i] = r[i] - alpha * v[i];
+				x[i] += alpha * y[i];
+			}
+			if (maxNorm(s) < IterationConstants.EXACT_EVALUATION_TOLERANCE) {
+				System.arraycopy(s, 0, r, 0, num_states);
+				break;
+			}
+
+			for (int i = 0; i < num_states; i++) {
+				z[i] = s[i] / diagonal[i];
+			}
+			multiply(z, t);
+			double t_t = dot(t, t);
+			omega = t_t == 0.000 ? 0.000 : dot(t, s) / t_t;
+			for (int i = 0; i < num_states; i++) {
+				x[i] += omega * z[i];
+				r[i] = s[i] - omega * t[i];
+			}
+		}
+
+		scatterUtils(utils);
+		return iteration;
+
+	}
+
+    /**
+     * Evaluates the policy held by a utility store with successive over-relaxation,
+     * starting from the utilities it holds. Each sweep updates the states in place, row by row.
+     * @param utils The utility store holding the policy, its utilities are replaced with the ones of the policy
+     * @return The number of sweeps of the solver
+     */
+
+	public int solveSor(final UtilityStore utils) {
+
+		gatherPolicy(utils);
+		double[] rewards = model.getRewards();
+		double relaxation = IterationConstants.SOR_RELAXATION;
+
+		double residual;
+		int sweep = 0;
+		do {
+			residual = 0.000;
+			for (int i = 0; i < num_states; i++) {
+				double sum = rewards[i];
+				for (int k = row_start[i]; k < row_start[i + 1]; k++) {
+					sum += values[k] * x[columns[k]];
+				}
+
+				// Residual of the state, with the states before it already updated in this sweep
+				double state_residual = sum - diagonal[i] * x[i];
+				residual = Math.max(residual, Math.abs(state_residual));
+				x[i] += relaxation * state_residual / diagonal[i];
+			}
+			products++;
+			sweep++;
+		} while (residual >= IterationConstants.EXACT_EVALUATION_TOLERANCE
+		&& sweep < IterationConstants.MAXIMUM_SOLVER_ITERATIONS);
+
+		scatterUtils(utils);
+		return sweep;
+
+	}
+
+    /**
+     * Returns the number of products of the matrix with a vector done so far, each costing a backup per state.
+     * A sweep of SOR counts as one product.
+     * @return The number of products
+     */
+
+	public long getProducts() {
+		return products;
+	}
+
+	// Gathers the matrix I - γP of the policy held by the utility store, and its utilities as the first guess
+	private void gatherPolicy(final UtilityStore utils) {
+		int[] transition_start = model.getTransitionStart();
+		double[] probabilities = model.getProbabilities();
+
+		int entries = 0;
+		for (int i = 0; i < num_states; i++) {
+			row_start[i] = entries;
+			int cell = model.getCell(i);
+
+			// A state without an action is evaluated as if it went up, the first action ties are broken in
+			byte action = utils.getActionCode(cell);
+			int slot = action == UtilityStore.NO_ACTION ? 0 : TransitionModel.getSlot(action);
+
+			diagonal[i] = 1.000;
+			for (int k = transition_start[i * TransitionModel.NUM_ACTIONS + slot];
+			k < transition_start[i * TransitionModel.NUM_ACTIONS + slot + 1]; k++) {
+				double value = model.getDiscount() * probabilities[k];
+				if (successor_states[k] == i) {
+					diagonal[i] -= value;
+				} else {
+					columns[entries] = successor_states[k];
+					values[entries] = value;
+					entries++;
+				}
+			}
+			x[i] = utils.getUtil(cell);
+		}
+		row_start[num_states] = entries;
+	}
+
+	// Writes the solution back to the utility store
+	private void scatterUtils(final UtilityStore utils) {
+		for (int i = 0; i < num_states; i++) {
+			utils.setUtil(model.getCell(i), x[i]);
+		}
+	}
+
+	// out = (I - γP) in
+	private void multiply(final double[] in, final double[] out) {
+		for (int i = 0; i < num_states; i++) {
+			double sum = diagonal[i] * in[i];
+			for (int k = row_start[i]; k < row_start[i + 1]; k++) {
+				sum -= values[k] * in[columns[k]];
+			}
+			out[i] = sum;
+		}
+		products++;
+	}
+
+	private double dot(final double[] a, final double[] b) {
+		double sum = 0.000;
+		for (int i = 0; i < num_states; i++) {
+			sum += a[i] * b[i];
+		}
+		return sum;
+	}
+
+	private double maxNorm(final double[] a) {
+		double norm = 0.000;
+		for (int i = 0; i < num_states; i++) {
+			norm = Math.max(norm, Math.abs(a[i]));
+		}
+		return norm;
+	}
+
+}
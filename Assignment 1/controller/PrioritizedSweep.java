@@ -0,0 +1,138 @@
+/*
+ * Prioritized sweeping: instead of sweeping every state, backs up the state with the largest Bellman residual
+ * (the difference between its best action utility and its current utility) first, and after each backup only
+ * recalculates the residuals of its predecessors in the transition model, i.e. the states that read the changed utility.
+ * It stops once the largest residual is below the convergence threshold, which is the same stopping condition
+ * as a value iteration sweep whose largest change is below it, so the same error bound holds.
+ */
+
+package controller;
+
+import java.util.BitSet;
+
+import grid.UtilityStore;
+
+public class PrioritizedSweep {
+
+	private final UtilityStore utils;
+	private final TransitionModel model;
+	private final StatePriorityQueue queue;
+
+	// States whose residual was calculated, whose best action may have changed
+	private final BitSet touched;
+
+	// Number of Bellman backups done so far
+	private long backups = 0;
+
+    /**
+     * Creates the queue of states with the residual of every state of the utility store.
+     * @param utils The utility store, updated in place
+     * @param model The transition model of the grid
+     */
+
+	public PrioritizedSweep(UtilityStore utils, TransitionModel model) {
+		this(utils, model, null);
+	}
+
+    /**
+     * Creates the queue of states with the residual of some states only, every other state being taken as converged,
+     * such as the states around the cells that changed in a converged utility store.
+     * @param utils The utility store, updated in place
+     * @param model The transition model of the grid
+     * @param states The states to calculate the residual of, or null for every state
+     */
+
+	public PrioritizedSweep(UtilityStore utils, TransitionModel model, int[] states) {
+		this.utils = utils;
+		this.model = model;
+		this.queue = new StatePriorityQueue(model.getNumStates());
+		this.touched = new BitSet(model.getNumStates());
+
+		if (states == null) {
+			for (int state = 0; state < model.getNumStates(); state++) {
+				updateResidual(state);
+			}
+		} else {
+			for (int state : states) {
+				updateResidual(state);
+			}
+		}
+	}
+
+    /**
+     * Backs up states in order of their residuals, until the given number of backups is done or
+     * the largest residual is below the convergence threshold.
+     *
+     * @param maxBackups The maximum number of backups to do
+     * @param convergeThreshold The convergence threshold
+     * @return The largest residual left
+     */
+
+	public double backupStates(long maxBackups, double convergeThreshold) {
+		int[] predecessor_start = model.getPredecessorStart();
+		int[] predecessors = model.getPredecessors();
+
+		for (long i = 0; i < maxBackups && queue.peekPriority() >= convergeThreshold; i++) {
+			int state = queue.peek();
+			UtilityController.backupBestUtil(model, state, utils, utils);
+			backups++;
+
+			// Every state that may move into the backed up state reads the changed utility
+			for (int k = predecessor_start[state]; k < predecessor_start[state + 1]; k++) {
+				updateResidual(predecessors[k]);
+			}
+
+			// The state itself no longer has a residual unless it reads its own utility on a bump
+			updateResidual(state);
+		}
+		return queue.peekPriority();
+	}
+
+    /**
+     * Sets the action of every state to the best action for the current utilities, without changing the utilities.
+     * States that were last backed up before their successors changed may otherwise keep an outdated action.
+     */
+
+	public void extractPolicy() {
+		for (int state = 0; state < model.getNumStates(); state++) {
+			UtilityController.improvePolicyAction(model, state, utils);
+		}
+	}
+
+    /**
+     * Sets the action of every state whose residual was calculated to the best action for the current utilities.
+     * The other states never saw a successor change, so their actions are the same as before.
+     */
+
+	public void extractTouchedPolicy() {
+		for (int state = touched.nextSetBit(0); state >= 0; state = touched.nextSetBit(state + 1)) {
+			UtilityController.improvePolicyAction(model, state, utils);
+		}
+	}
+
+    /**
+     * Returns the number of states whose residual was calculated.
+     * @return The number of states
+     */
+
+	public int getTouchedStates() {
+		return touched.cardinality();
+	}
+
+    /**
+     * Returns the number of Bellman backups done so far.
+     * @return The number of backups
+     */
+
+	public long getBackups() {
+		return backups;
+	}
+
+	// Recalculates the residual of a state and updates its priority
+	private void updateResidual(int state) {
+		double residual = Math.abs(UtilityController.calcMaxUtil(model, state, utils) - utils.getUtil(model.getCell(state)));
+		queue.update(state, residual);
+		touched.set(state);
+	}
+
+}
@@ -0,0 +1,92 @@
+/*
+ * History that keeps only the latest iterations in a ring of utility stores allocated once,
+ * overwriting the oldest iteration when the ring is full. The csv file holds the kept iterations, oldest first.
+ */
+
+package controller;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import grid.UtilityStore;
+
+public class RingHistory implements UtilityHistory {
+
+	private final UtilityStore[] ring;
+
+	// Number of iterations recorded so far, the latest one being at (count - 1) % ring.length
+	private int count = 0;
+
+    /**
+     * Creates an empty ring.
+     * @param capacity The number of iterations kept
+     */
+
+	public RingHistory(int capacity) {
+		this.ring = new UtilityStore[Math.max(1, capacity)];
+	}
+
+	@Override
+	public void add(UtilityStore utils) {
+		int slot = count % ring.length;
+		if (ring[slot] == null) {
+			ring[slot] = utils.copy();
+		} else {
+			ring[slot].copyFrom(utils);
+		}
+		count++;
+	}
+
+	@Override
+	public UtilityStore getLatest() {
+		return ring[(count - 1) % ring.length];
+	}
+
+	@Override
+	public int size() {
+		return count;
+	}
+
+	@Override
+	public void writeToFile(String fileName) {
+		List<UtilityStore> utilityList = new ArrayList<>();
+		for (int i = Math.max(0, count - ring.length); i < count; i++) {
+			utilityList.add(ring[i % ring.length]);
+		}
+		SaveOutput.writeUtilities(utilityList, fileName);
+	}
+
+	// The ring is allocated once and goes with the history, so the latest iteration stays readable
+	@Override
+	public void close() {
+	}
+
+	// Copies of the kept iterations, oldest first, since the ring overwrites them
+	@Override
+	public Snapshot snapshot() {
+		int recorded = count;
+		List<UtilityStore> kept = new ArrayList<>();
+		for (int i = Math.max(0, recorded - ring.length); i < recorded; i++) {
+			kept.add(ring[i % ring.length].copy());
+		}
+		return out -> {
+			out.writeInt(recorded);
+			out.writeInt(kept.size());
+			for (UtilityStore utils : kept) {
+				SolverCheckpoint.writeStore(out, utils);
+			}
+		};
+	}
+
+	@Override
+	public void restore(DataInputStream in) throws IOException {
+		count = in.readInt();
+		int kept = in.readInt();
+		for (int i = count - kept; i < count; i++) {
+			ring[i % ring.length] = SolverCheckpoint.readStore(in);
+		}
+	}
+
+}
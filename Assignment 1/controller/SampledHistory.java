@@ -0,0 +1,101 @@
+/*
+ * History that passes only every Nth iteration on to another history, starting with the first one.
+ * The latest iteration is kept aside and passed on before writing if it was skipped,
+ * so the csv file always ends with the converged utilities.
+ */
+
+package controller;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+
+import grid.UtilityStore;
+
+public class SampledHistory implements UtilityHistory {
+
+	private final UtilityHistory history;
+	private final int interval;
+
+	// Copy of the latest iteration, allocated on the first one
+	private UtilityStore latest;
+
+	private int count = 0;
+
+	// Whether the latest iteration was passed on
+	private boolean latest_kept;
+
+    /**
+     * Creates a history passing every Nth iteration on.
+     * @param history The history the sampled iterations are passed on to
+     * @param interval The number N of iterations between two sampled ones
+     */
+
+	public SampledHistory(UtilityHistory history, int interval) {
+		this.history = history;
+		this.interval = Math.max(1, interval);
+	}
+
+	@Override
+	public void add(UtilityStore utils) {
+		if (latest == null) {
+			latest = utils.copy();
+		} else {
+			latest.copyFrom(utils);
+		}
+		latest_kept = count % interval == 0;
+		if (latest_kept) {
+			history.add(utils);
+		}
+		count++;
+	}
+
+	@Override
+	public UtilityStore getLatest() {
+		return latest;
+	}
+
+	@Override
+	public int size() {
+		return count;
+	}
+
+	@Override
+	public void writeToFile(String fileName) {
+		if (!latest_kept && latest != null) {
+			history.add(latest);
+			latest_kept = true;
+		}
+		history.writeToFile(fileName);
+	}
+
+	@Override
+	public void close() {
+		history.close();
+	}
+
+	@Override
+	public Snapshot snapshot() {
+		int recorded = count;
+		boolean kept = latest_kept;
+		UtilityStore latest_copy = latest == null ? null : latest.copy();
+		Snapshot sampled = history.snapshot();
+		return out -> {
+			out.writeInt(recorded);
+			out.writeBoolean(kept);
+			out.writeBoolean(latest_copy != null);
+			if (latest_copy != null) {
+				SolverCheckpoint.writeStore(out, latest_copy);
+			}
+			sampled.write(out);
+		};
+	}
+
+	@Override
+	public void restore(DataInputStream in) throws IOException {
+		count = in.readInt();
+		latest_kept = in.readBoolean();
+		latest = in.readBoolean() ? SolverCheckpoint.readStore(in) : null;
+		history.restore(in);
+	}
+
+}
@@ -7,47 +7,92 @@ package controller;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.text.DecimalFormat;
-import java.util.Iterator;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.List;
 
-import grid.Utility;
+import globals.GridConstants;
+import globals.IterationConstants;
+import globals.OutputFormat;
+import grid.UtilityStore;
 
 public class SaveOutput {
 
     /** 
-     * Writes a list of Utility arrays to a CSV file with the given file name.
+     * Writes a list of utility stores to a CSV file with the given file name, streaming it
+     * as it is formatted, see CsvExporter. The file is gzipped if CSV_GZIP is set.
      * 
-     * @param lstUtilitys the list of Utility arrays to write to the file
+     * @param lstUtilitys the list of utility stores to write to the file
      * @param fileName the name of the file to write to
     */
 
-    public static void writeToFile(List<Utility[][]> lstUtilitys, String fileName) {
+    public static void writeToFile(List<UtilityStore> lstUtilitys, String fileName) {
 
-		StringBuilder sb = new StringBuilder();
-		String pattern = "00.000";
-        DecimalFormat decimalFormat = new DecimalFormat(pattern);
+		try {
+			CsvExporter.export(CsvExporter.fromList(lstUtilitys), csvFile(fileName));
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+
+	}
 
-		for (int col = 0; col < globals.GridConstants.TOTAL_NUM_COLS; col++) {
-			for (int row = 0; row < globals.GridConstants.TOTAL_NUM_ROWS; row++) {
+    /**
+     * Writes a list of utility stores to a file with the given file name, in the format set by OUTPUT_FORMAT,
+     * a csv file or a binary file, see BinaryOutputWriter.
+     * 
+     * @param lstUtilitys the list of utility stores to write to the file
+     * @param fileName the name of the file to write to, without the extension
+    */
 
-				Iterator<Utility[][]> iter = lstUtilitys.iterator();
-				while(iter.hasNext()) {
+    public static void writeUtilities(List<UtilityStore> lstUtilitys, String fileName) {
 
-					Utility[][] actionUtil = iter.next();
-					sb.append(decimalFormat.format(
-							actionUtil[col][row].getUtil()).substring(0, 6));
+		if (IterationConstants.OUTPUT_FORMAT == OutputFormat.CSV) {
+			writeToFile(lstUtilitys, fileName);
+			return;
+		}
 
-					if(iter.hasNext()) {
-						sb.append(",");
-					}
-				}
-				sb.append("\n");
+		try (BinaryOutputWriter writer = new BinaryOutputWriter(Paths.get(fileName + ".bin"), itemBytes(),
+		GridConstants.TOTAL_NUM_COLS, GridConstants.TOTAL_NUM_ROWS)) {
+			for (UtilityStore utils : lstUtilitys) {
+				writer.append(utils);
 			}
 		}
 
-		writeToFile(sb.toString().trim(), fileName + ".csv");
+	}
+
+    /**
+     * Writes the utilities of a binary file to a file with the given file name, in the format set by OUTPUT_FORMAT.
+     * 
+     * @param reader the reader of the binary file
+     * @param fileName the name of the file to write to, without the extension
+    */
+
+    public static void writeUtilities(BinaryOutputReader reader, String fileName) {
+
+		if (IterationConstants.OUTPUT_FORMAT == OutputFormat.CSV) {
+			CsvConverter.convert(reader, csvFile(fileName));
+			return;
+		}
+
+		double[] values = new double[reader.getNumCells()];
+		try (BinaryOutputWriter writer = new BinaryOutputWriter(Paths.get(fileName + ".bin"), itemBytes(),
+		reader.getNumCols(), reader.getNumRows())) {
+			for (long iteration = 0; iteration < reader.getIterations(); iteration++) {
+				reader.read(iteration, 0, values, values.length);
+				writer.append(values);
+			}
+		}
+
+	}
+
+	// Path of the csv file with the given file name, gzipped if CSV_GZIP is set
+	private static Path csvFile(String fileName) {
+		return Paths.get(fileName + (IterationConstants.CSV_GZIP ? ".csv.gz" : ".csv"));
+	}
 
+	// Bytes per utility of the binary format set by OUTPUT_FORMAT
+	private static int itemBytes() {
+		return IterationConstants.OUTPUT_FORMAT == OutputFormat.FLOAT32 ? 4 : 8;
 	}
 
     /**
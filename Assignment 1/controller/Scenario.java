@@ -0,0 +1,107 @@
+/*
+ * One set of MDP parameters solved by BatchedSolver: the discount, the probabilities of the intended move and of
+ * slipping to either side, and the rewards of white, green and brown cells. Cells with any other reward keep it.
+ */
+
+package controller;
+
+import globals.IterationConstants;
+
+public final class Scenario {
+
+	private final double discount;
+	private final double intended_probability;
+	private final double left_probability;
+	private final double right_probability;
+	private final double reward_white;
+	private final double reward_green;
+	private final double reward_brown;
+
+    /**
+     * Creates a scenario.
+     * @param discount The discount factor, between 0 and 1 excluded
+     * @param intendedProbability The probability of the intended move
+     * @param leftProbability The probability of slipping left of the intended move
+     * @param rightProbability The probability of slipping right of the intended move
+     * @param rewardWhite The reward of white cells
+     * @param rewardGreen The reward of green cells
+     * @param rewardBrown The reward of brown cells
+     */
+
+	public Scenario(double discount, double intendedProbability, double leftProbability, double rightProbability,
+	double rewardWhite, double rewardGreen, double rewardBrown) {
+		if (!(discount > 0 && discount < 1)) {
+			throw new IllegalArgumentException("The discount " + discount + " is not between 0 and 1");
+		}
+		if (intendedProbability < 0 || leftProbability < 0 || rightProbability < 0
+		|| Math.abs(intendedProbability + leftProbability + rightProbability - 1) > 1e-9) {
+			throw new IllegalArgumentException("The probabilities " + intendedProbability + ", " + leftProbability
+			+ " and " + rightProbability + " do not add up to 1");
+		}
+		this.discount = discount;
+		this.intended_probability = intendedProbability;
+		this.left_probability = leftProbability;
+		this.right_probability = rightProbability;
+		this.reward_white = rewardWhite;
+		this.reward_green = rewardGreen;
+		this.reward_brown = rewardBrown;
+	}
+
+    /**
+     * Creates a scenario with the rewards of IterationConstants, slipping to either side equally often.
+     * @param discount The discount factor
+     * @param intendedProbability The probability of the intended move
+     * @return The scenario
+     */
+
+	public static Scenario of(double discount, double intendedProbability) {
+		double slip = (1.000 - intendedProbability) / 2;
+		return new Scenario(discount, intendedProbability, slip, slip, IterationConstants.REWARD_WHITE,
+		IterationConstants.REWARD_GREEN, IterationConstants.REWARD_BROWN);
+	}
+
+    // Get method for the discount factor
+	public double getDiscount() {
+		return discount;
+	}
+
+    // Get method for the probability of the intended move
+	public double getIntendedProbability() {
+		return intended_probability;
+	}
+
+    // Get method for the probability of slipping left
+	public double getLeftProbability() {
+		return left_probability;
+	}
+
+    // Get method for the probability of slipping right
+	public double getRightProbability() {
+		return right_probability;
+	}
+
+    // Get method for the reward of white cells
+	public double getRewardWhite() {
+		return reward_white;
+	}
+
+    // Get method for the reward of green cells
+	public double getRewardGreen() {
+		return reward_green;
+	}
+
+    // Get method for the reward of brown cells
+	public double getRewardBrown() {
+		return reward_brown;
+	}
+
+    /**
+     * Returns the largest residual of a sweep at which the utilities are within the allowed error, for this discount.
+     * @return The convergence threshold
+     */
+
+	public double getConvergeThreshold() {
+		return IterationConstants.MAXIMUM_ALLOWABLE_DISCOUNTED_ERROR * ((1.000 - discount) / discount);
+	}
+
+}
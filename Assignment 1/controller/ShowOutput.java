@@ -7,9 +7,16 @@
 package controller;
 
 import java.text.DecimalFormat;
+import java.util.List;
 
+import globals.EvaluationMode;
+import globals.SweepMode;
+import globals.SweepOrder;
+import grid.OffHeapUtilityStore;
+import grid.PolicyIndex;
 import grid.Utility;
 import grid.AgentState;
+import grid.GridStore;
 
 public class ShowOutput {
 
@@ -19,6 +26,15 @@ public class ShowOutput {
 	 */
 
 	public static void dispGrid(AgentState[][] grid) {
+		dispGrid(GridStore.fromStates(grid));
+	}
+
+    /**
+	 * Display the Grid
+	 * @param store The compact grid, with the walls and rewards of every cell
+	 */
+
+	public static void dispGrid(final GridStore store) {
 
         // Create a StringBuilder object with a title for the frame
 		StringBuilder sb = ShowOutput.frameTitle(" GIVEN GRID WORLD ENVIRONMENT ");
@@ -43,7 +59,6 @@ public class ShowOutput {
 			sb.append("|");
 			for(int col = 0 ; col < globals.GridConstants.TOTAL_NUM_COLS ; col++) {
 
-				AgentState state = grid[col][row];
 				String temp;
 
                 // If the current state is the agent's starting point, label it as "Start"
@@ -52,13 +67,13 @@ public class ShowOutput {
 				} 
                 
                 // If the current state is a wall, label it as "Wall"
-                else if(state.isWall()) {
+                else if(store.isWall(col, row)) {
 					temp = "WALL";
 				}
 
                 // If the current state has a reward different than the default white reward, display the reward
-				else if(state.getReward() != globals.IterationConstants.REWARD_WHITE) {
-					temp = Double.toString(state.getReward());
+				else if(store.getReward(col, row) != globals.IterationConstants.REWARD_WHITE) {
+					temp = Double.toString(store.getReward(col, row));
 					if (temp.charAt(0) != '-') {
 						temp = " " + temp;
 					}
@@ -152,11 +167,22 @@ public class ShowOutput {
     */
 
 	public static void displayUtilities(final AgentState[][] grid, final Utility[][] utilArr) {
+		displayUtilities(GridStore.fromStates(grid), utilArr);
+	}
+
+	/**
+     * Display the utilities of all the (non-wall) states in the grid.
+     * 
+     * @param store The compact grid, with the walls and rewards of every cell
+     * @param utilArr 2D array of Utility objects representing the utility values of the states in the grid
+    */
+
+	public static void displayUtilities(final GridStore store, final Utility[][] utilArr) {
 		StringBuilder sb = frameTitle(" OUTPUT: UTILITY VALUES OF ALL STATES ");
 		for (int col = 0; col < globals.GridConstants.TOTAL_NUM_COLS; col++) {
 			for (int row = 0; row < globals.GridConstants.TOTAL_NUM_ROWS; row++) {
 
-				if (!grid[col][row].isWall()) {
+				if (!store.isWall(col, row)) {
 					String util = String.format("%.8g", utilArr[col][row].getUtil());
 					sb.append("(" + col + ", " + row + "): " + util + "\n");
 				}
@@ -228,6 +254,245 @@ public class ShowOutput {
 		System.out.println(sb.toString());
 	}
 
+	/**
+     * Display the number of sweeps and Bellman backups value iteration needed to converge in the given order, 
+     * against the Jacobi order
+     * 
+     * @param sweepMode The order the grid was swept in
+     * @param sweeps The number of sweeps to converge in that order
+     * @param backups The number of backups to converge in that order
+     * @param jacobiSweeps The number of sweeps to converge in the Jacobi order
+     * @param jacobiBackups The number of backups to converge in the Jacobi order
+    */
+
+	public static void displaySweepComparison(SweepMode sweepMode, int sweeps, long backups, int jacobiSweeps, 
+	long jacobiBackups) {
+		StringBuilder sb = frameTitle("SWEEPS TO CONVERGE");
+		sb.append(String.format("%-14s%10s%14s%n", "", "SWEEPS", "BACKUPS"));
+		sb.append(String.format("%-14s%10d%14d%n", sweepMode, sweeps, backups));
+		sb.append(String.format("%-14s%10d%14d%n", SweepMode.JACOBI, jacobiSweeps, jacobiBackups));
+		sb.append(String.format("%-14s%10.3f%14.3f%n", "RATIO", (double) sweeps / jacobiSweeps, 
+		(double) backups / jacobiBackups));
+		System.out.println(sb.toString());
+	}
+
+	/**
+     * Display the number of iterations, Bellman backups and wall time policy iteration needed to converge
+     * with the given evaluation mode, against the fixed K evaluation
+     * 
+     * @param evaluationMode The evaluation mode
+     * @param iterations The number of iterations to converge with that mode
+     * @param backups The number of backups to converge with that mode
+     * @param nanos The fastest wall time in nanoseconds to converge with that mode, once warmed up
+     * @param fixedIterations The number of iterations to converge with fixed K
+     * @param fixedBackups The number of backups to converge with fixed K
+     * @param fixedNanos The fastest wall time in nanoseconds to converge with fixed K, once warmed up
+    */
+
+	public static void displayEvaluationComparison(EvaluationMode evaluationMode, int iterations, long backups, 
+	long nanos, int fixedIterations, long fixedBackups, long fixedNanos) {
+		StringBuilder sb = frameTitle("POLICY EVALUATION COST");
+		sb.append(String.format("%-14s%12s%14s%12s%n", "", "ITERATIONS", "BACKUPS", "TIME (ms)"));
+		sb.append(String.format("%-14s%12d%14d%12.3f%n", evaluationMode, iterations, backups, nanos / 1e6));
+		sb.append(String.format("%-14s%12d%14d%12.3f%n", EvaluationMode.FIXED, fixedIterations, fixedBackups, fixedNanos / 1e6));
+		sb.append(String.format("%-14s%12.3f%14.3f%12.3f%n", "RATIO", (double) iterations / fixedIterations, 
+		(double) backups / fixedBackups, (double) nanos / Math.max(fixedNanos, 1)));
+		System.out.println(sb.toString());
+	}
+
+	/**
+     * Display the size, sweeps and wall time of every level of a coarse-to-fine value iteration,
+     * from the coarsest grid to the grid itself
+     * 
+     * @param multigrid The solver of the coarse grids
+    */
+
+	public static void displayMultigridLevels(MultigridSolver multigrid) {
+		StringBuilder sb = frameTitle("SWEEPS PER LEVEL");
+		sb.append(String.format("%-8s%12s%10s%10s%12s%n", "LEVEL", "GRID", "DISCOUNT", "SWEEPS", "TIME (ms)"));
+		int sweeps = 0;
+		long nanos = 0;
+		for (int level = multigrid.getNumLevels() - 1; level >= 0; level--) {
+			TransitionModel model = multigrid.getModel(level);
+			sb.append(String.format("%-8d%12s%10.5f%10d%12d%n", level, model.getNumCols() + "x" + model.getNumRows(),
+			model.getDiscount(), multigrid.getSweeps(level), multigrid.getNanos(level) / 1000000));
+			sweeps += multigrid.getSweeps(level);
+			nanos += multigrid.getNanos(level);
+		}
+		sb.append(String.format("%-8s%12s%10s%10d%12d%n", "TOTAL", "", "", sweeps, nanos / 1000000));
+		System.out.println(sb.toString());
+	}
+
+	/**
+     * Display what the solution cache held for the problem
+     * 
+     * @param cached The solution found in the cache, or null if there was none of a grid of the same size
+    */
+
+	public static void displaySolutionCache(SolutionCache.Solution cached) {
+		StringBuilder sb = frameTitle("SOLUTION CACHE");
+		if (cached == null) {
+			sb.append("MISS, SOLVED FROM SCRATCH\n");
+		} else if (cached.isExact()) {
+			sb.append("EXACT HIT, SOLVED BEFORE IN " + cached.getIterations() + " ITERATIONS\n");
+		} else {
+			sb.append("WARM START FROM THE CLOSEST SOLUTION, SOLVED IN " + cached.getIterations() + " ITERATIONS\n");
+		}
+		System.out.println(sb.toString());
+	}
+
+	/**
+     * Display the work and wall time of re-solving the utilities after a change to the grid,
+     * against solving the changed grid from scratch
+     * 
+     * @param change The change to the grid
+     * @param backups The number of backups of the re-solve
+     * @param touchedStates The number of states whose residual the re-solve calculated
+     * @param recompiled Whether the re-solve compiled the transition model again
+     * @param nanos The wall time of the re-solve in nanoseconds
+     * @param fullBackups The number of backups of the solve from scratch
+     * @param fullNanos The wall time of the solve from scratch in nanoseconds
+     * @param maxDifference The largest difference between the re-solved and the solved utilities
+    */
+
+	public static void displayReplanning(String change, long backups, int touchedStates, boolean recompiled, 
+	long nanos, long fullBackups, long fullNanos, double maxDifference) {
+		StringBuilder sb = frameTitle("REPLANNING: " + change);
+		sb.append(String.format("%-14s%14s%10s%12s%n", "", "BACKUPS", "STATES", "TIME (ms)"));
+		sb.append(String.format("%-14s%14d%10d%12.3f%n", "INCREMENTAL", backups, touchedStates, nanos / 1e6));
+		sb.append(String.format("%-14s%14d%10s%12.3f%n", "FROM SCRATCH", fullBackups, "", fullNanos / 1e6));
+		sb.append("MODEL COMPILED AGAIN\t:\t" + (recompiled ? "YES" : "NO") + "\n");
+		sb.append("MAX UTILITY DIFFERENCE\t:\t" + String.format("%.5f", maxDifference) + "\n");
+		System.out.println(sb.toString());
+	}
+
+	/**
+     * Display the sweeps and best utility of every scenario of a parameter sweep, and the wall time of solving
+     * them in one batch against solving them one at a time
+     * 
+     * @param scenarios The scenarios
+     * @param batched The solver of the batch, after solving it
+     * @param nanos The wall time of the batch in nanoseconds
+     * @param aloneNanos The wall time of solving the scenarios one at a time in nanoseconds
+     * @param maxDifference The largest difference between the utilities of the batch and of the scenarios alone
+    */
+
+	public static void displayParameterSweep(List<Scenario> scenarios, BatchedSolver batched, long nanos, long aloneNanos,
+	double maxDifference) {
+		StringBuilder sb = frameTitle("PARAMETER SWEEP OF " + scenarios.size() + " SCENARIOS");
+		sb.append(String.format("%-10s%10s%8s%8s%10s%14s%n", "DISCOUNT", "INTENDED", "LEFT", "RIGHT", "SWEEPS", "MAX UTILITY"));
+		for (int s = 0; s < scenarios.size(); s++) {
+			Scenario scenario = scenarios.get(s);
+			double max_util = Double.NEGATIVE_INFINITY;
+			for (double util : batched.getResult(s).utils()) {
+				max_util = Math.max(max_util, util);
+			}
+			sb.append(String.format("%-10.3f%10.3f%8.3f%8.3f%10d%14.5f%n", scenario.getDiscount(),
+			scenario.getIntendedProbability(), scenario.getLeftProbability(), scenario.getRightProbability(),
+			batched.getSweeps(s), max_util));
+		}
+		sb.append("\n");
+		sb.append(String.format("%-14s%14s%12s%16s%n", "", "BACKUPS", "TIME (ms)", "BACKUPS / s"));
+		sb.append(String.format("%-14s%14d%12.3f%16.0f%n", "BATCHED", batched.getBackups(), nanos / 1e6,
+		batched.getBackups() / (nanos / 1e9)));
+		sb.append(String.format("%-14s%14d%12.3f%16.0f%n", "ONE AT A TIME", batched.getBackups(), aloneNanos / 1e6,
+		batched.getBackups() / (aloneNanos / 1e9)));
+		sb.append("MAX UTILITY DIFFERENCE\t:\t" + String.format("%.5f", maxDifference) + "\n");
+		System.out.println(sb.toString());
+	}
+
+	/**
+     * Display the sweeps, wall time and memory of a solve outside the heap, and the utility and action of the start cell
+     * 
+     * @param title The title, the solve or the reopened solution
+     * @param utils The store of the utilities
+     * @param file The file of the store, or null for direct buffers
+     * @param nanos The wall time of the solve, or of opening the solution, in nanoseconds
+    */
+
+	public static void displayOffHeapSolve(String title, OffHeapUtilityStore utils, String file, long nanos) {
+		long cells = (long) utils.getNumCols() * utils.getNumRows();
+		Runtime runtime = Runtime.getRuntime();
+		StringBuilder sb = frameTitle(title + " OF " + utils.getNumCols() + " x " + utils.getNumRows() + " CELLS");
+		sb.append("SWEEPS\t\t\t:\t" + utils.getSweeps() + "\n");
+		sb.append("TIME (ms)\t\t:\t" + String.format("%.3f", nanos / 1e6) + "\n");
+		// Two planes of utilities, the actions and the reward classes of the grid
+		sb.append("OFF-HEAP BYTES\t\t:\t" + cells * (2 * Double.BYTES + 2) + "\n");
+		sb.append("HEAP IN USE (bytes)\t:\t" + (runtime.totalMemory() - runtime.freeMemory()) + "\n");
+		sb.append("MAXIMUM HEAP (bytes)\t:\t" + runtime.maxMemory() + "\n");
+		sb.append("STORED IN\t\t:\t" + (file == null ? "DIRECT BUFFERS" : file) + "\n");
+		int col = globals.GridConstants.AGENT_INIT_COL;
+		int row = globals.GridConstants.AGENT_INIT_ROW;
+		sb.append("UTILITY AT (" + col + "," + row + ")\t:\t" + String.format("%.5f", utils.getUtil(col, row)) + " "
+		+ utils.getAction(col, row) + "\n");
+		System.out.println(sb.toString());
+	}
+
+	/**
+     * Display the wall time and effective memory bandwidth of a Jacobi sweep in every order, and whether each order
+     * gave the same utilities as sweeping row by row
+     * 
+     * @param orders The orders
+     * @param sweepNanos The wall time of a sweep in each order in nanoseconds
+     * @param sweepBytes The bytes a sweep in each order reads and writes
+     * @param identical Whether each order gave the same utilities and actions as sweeping row by row
+     * @param tileSide The side of the tiles of a tiled sweep
+    */
+
+	public static void displaySweepOrders(SweepOrder[] orders, double[] sweepNanos, long[] sweepBytes, boolean[] identical,
+	int tileSide) {
+		StringBuilder sb = frameTitle("JACOBI SWEEP ORDERS");
+		sb.append(String.format("%-10s%14s%14s%14s%12s%n", "ORDER", "SWEEP (ms)", "MB / SWEEP", "GB / s", "SAME"));
+		for (int i = 0; i < orders.length; i++) {
+			sb.append(String.format("%-10s%14.3f%14.2f%14.2f%12s%n", orders[i], sweepNanos[i] / 1e6, sweepBytes[i] / 1e6,
+			sweepBytes[i] / sweepNanos[i], identical[i] ? "YES" : "NO"));
+		}
+		sb.append("TILE SIDE\t:\t" + tileSide + "\n");
+		System.out.println(sb.toString());
+	}
+
+	/**
+     * Display the time to open a packed policy and to answer each kind of query, and the path from the start cell
+     * 
+     * @param file The file of the policy
+     * @param policy The policy
+     * @param openNanos The wall time of opening the policy in nanoseconds
+     * @param cellNanos The wall time of a query of one cell in nanoseconds
+     * @param batchNanos The wall time per cell of a query of every cell at once in nanoseconds
+     * @param pathNanos The wall time of a path query from the start cell in nanoseconds
+     * @param path The cells of the path from the start cell, as UtilityStore ids
+    */
+
+	public static void displayPolicyService(String file, PolicyIndex policy, long openNanos, double cellNanos,
+	double batchNanos, double pathNanos, int[] path) {
+		StringBuilder sb = frameTitle("POLICY SERVICE OF " + policy.getNumCols() + " x " + policy.getNumRows() + " CELLS");
+		sb.append("POLICY FILE\t\t:\t" + file + "\n");
+		sb.append("OPEN (us)\t\t:\t" + String.format("%.3f", openNanos / 1e3) + "\n");
+		sb.append("ONE CELL (ns)\t\t:\t" + String.format("%.1f", cellNanos) + "\n");
+		sb.append("BATCH PER CELL (ns)\t:\t" + String.format("%.1f", batchNanos) + "\n");
+		sb.append("PATH (us)\t\t:\t" + String.format("%.3f", pathNanos / 1e3) + "\n");
+		sb.append("PATH FROM (" + globals.GridConstants.AGENT_INIT_COL + "," + globals.GridConstants.AGENT_INIT_ROW
+		+ ")\t:\t" + (path.length - 1) + " STEPS\n");
+		for (int cell : path) {
+			int col = cell % policy.getNumCols();
+			int row = cell / policy.getNumCols();
+			sb.append("(" + col + "," + row + ") " + policy.getAction(col, row) + "\n");
+		}
+		System.out.println(sb.toString());
+	}
+
+	/**
+     * Display the number of Bellman backups
+     * 
+     * @param num The number of backups to display
+    */
+
+	public static void displayBackupsCount(long num) {
+		StringBuilder sb = frameTitle("NUMBER OF BACKUPS");
+		sb.append("TOTAL NUMBER OF BACKUPS: " + num + "\n");
+		System.out.println(sb.toString());
+	}
+
 	/**
      * Display the experiment setup for value iteration or policy iteration
      * 
@@ -0,0 +1,227 @@
+/*
+ * Publishes the utilities and greedy policy of the latest completed sweep of a solver to readers on other threads,
+ * such as a monitor, while the solver carries on. The solver's own stores and static fields are swapped and updated
+ * in place without synchronization, so a reader only ever sees copies made through the publisher.
+ *
+ * The publisher holds a pair of slots. After a sweep the solver copies its latest store into the slot that is not
+ * the published one and then publishes it, so the slot a reader is copying from is only written again two sweeps
+ * later. Each slot is a seqlock: its version is odd while the solver writes it, and a reader copies the slot between
+ * two reads of the version and tries again if the version changed. Neither side takes a lock, and the solver never
+ * waits for a reader. With no reader attached, publishing is a single volatile read and the solver copies nothing.
+ */
+
+package controller;
+
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import grid.UtilityStore;
+
+public class SnapshotPublisher {
+
+	// Number of attached readers, the solver only copies its sweeps while there is one
+	private final AtomicInteger readers = new AtomicInteger();
+
+	// Pair of slots written by the solver, and the one of the latest completed sweep, null until the first
+	private final Slot[] slots = new Slot[2];
+	private volatile Slot published;
+
+	/*
+	 * Copy of a sweep, written by the solver only, under a seqlock.
+	 */
+
+	private static final class Slot {
+
+		private final UtilityStore utils;
+		private int sweep;
+		private double delta;
+
+		// Odd while the solver writes the slot
+		private volatile long version = 0;
+
+		Slot(int numCols, int numRows) {
+			this.utils = new UtilityStore(numCols, numRows);
+		}
+
+	}
+
+	/*
+	 * Reader of the published sweeps, used by one thread. Each read copies the latest sweep into the reader's own store.
+	 */
+
+	public final class Reader implements AutoCloseable {
+
+		private UtilityStore utils;
+		private int sweep = 0;
+		private double delta = Double.NaN;
+		private boolean closed = false;
+
+		private Reader() {
+		}
+
+	    /**
+	     * Copies the latest completed sweep, trying again while the solver overwrites the slot being copied.
+	     * @return False if no sweep has been published since the reader was attached
+	     */
+
+		public boolean read() {
+			if (closed) {
+				throw new IllegalStateException("The reader is closed");
+			}
+			while (true) {
+				Slot slot = published;
+				if (slot == null) {
+					return false;
+				}
+				long version = slot.version;
+				if ((version & 1) == 0) {
+					if (utils == null || utils.getNumCols() != slot.utils.getNumCols()
+					|| utils.getNumRows() != slot.utils.getNumRows()) {
+						utils = new UtilityStore(slot.utils.getNumCols(), slot.utils.getNumRows());
+					}
+					utils.copyFrom(slot.utils);
+					int slot_sweep = slot.sweep;
+					double slot_delta = slot.delta;
+
+					// Keep the copy before the second read of the version
+					VarHandle.loadLoadFence();
+					if (slot.version == version) {
+						sweep = slot_sweep;
+						delta = slot_delta;
+						return true;
+					}
+				}
+				Thread.onSpinWait();
+			}
+		}
+
+		// Utilities and actions of the latest read sweep, owned by the reader and replaced by the next read
+		public UtilityStore getUtils() {
+			return utils;
+		}
+
+		// Number of the latest read sweep, counted from 1
+		public int getSweep() {
+			return sweep;
+		}
+
+		// Largest change in utility of the latest read sweep
+		public double getDelta() {
+			return delta;
+		}
+
+		// Detaches the reader, the solver stops copying its sweeps once no reader is left
+		@Override
+		public void close() {
+			if (!closed) {
+				closed = true;
+				readers.decrementAndGet();
+			}
+		}
+
+	}
+
+    /**
+     * Attaches a reader. The solver publishes the sweeps completed from then on.
+     * @return The reader, to be closed once done
+     */
+
+	public Reader attach() {
+		readers.incrementAndGet();
+		return new Reader();
+	}
+
+    /**
+     * Returns whether any reader is attached, so that a solver can skip work only a snapshot needs.
+     * @return True if a reader is attached
+     */
+
+	public boolean isWatched() {
+		return readers.get() > 0;
+	}
+
+    /**
+     * Publishes a completed sweep if any reader is attached, called by the solver thread only.
+     * @param utils The utilities and actions of the sweep, copied before returning
+     * @param sweep The number of the sweep, counted from 1
+     * @param delta The largest change in utility of the sweep
+     */
+
+	public void publish(UtilityStore utils, int sweep, double delta) {
+		if (readers.get() == 0) {
+			return;
+		}
+
+		// Write the slot readers are not copying from, allocated again if the grid changed
+		int index = published == slots[0] ? 1 : 0;
+		Slot slot = slots[index];
+		if (slot == null || slot.utils.getNumCols() != utils.getNumCols() || slot.utils.getNumRows() != utils.getNumRows()) {
+			slot = new Slot(utils.getNumCols(), utils.getNumRows());
+			slots[index] = slot;
+		}
+
+		long version = slot.version;
+		slot.version = version + 1;
+		// Keep the writes of the slot after the odd version
+		VarHandle.storeStoreFence();
+		slot.utils.copyFrom(utils);
+		slot.sweep = sweep;
+		slot.delta = delta;
+		slot.version = version + 2;
+		published = slot;
+	}
+
+    /**
+     * Clears the published sweep before a new solve, so readers do not take the last sweep of the previous one
+     * for the current one. Called by the solver thread only.
+     */
+
+	public void reset() {
+		published = null;
+	}
+
+    /**
+     * Starts a daemon thread sampling the published sweeps and printing each new one to the standard error: its
+     * number, largest change, the utility and action of a cell and how many actions changed since the last sample.
+     * @param solver The name of the solver, printed with each sample
+     * @param intervalMillis The milliseconds between two samples
+     * @param col The column index of the cell printed
+     * @param row The row index of the cell printed
+     * @return The thread
+     */
+
+	public Thread monitor(String solver, long intervalMillis, int col, int row) {
+		Reader reader = attach();
+		Thread thread = new Thread(() -> {
+			byte[] actions = null;
+			int sweep = 0;
+			try {
+				while (!Thread.currentThread().isInterrupted()) {
+					Thread.sleep(intervalMillis);
+					if (!reader.read() || reader.getSweep() == sweep) {
+						continue;
+					}
+					sweep = reader.getSweep();
+					UtilityStore utils = reader.getUtils();
+					int changes = 0;
+					if (actions != null && actions.length == utils.size()) {
+						for (int cell = 0; cell < actions.length; cell++) {
+							changes += actions[cell] != utils.getActionCode(cell) ? 1 : 0;
+						}
+					}
+					actions = utils.actions().clone();
+					System.err.println(String.format("%s sweep %d: max delta %.6f, utility at (%d,%d) %.5f %s, %d actions changed",
+					solver, sweep, reader.getDelta(), col, row, utils.getUtil(col, row), utils.getAction(col, row), changes));
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				reader.close();
+			}
+		}, solver + "-monitor");
+		thread.setDaemon(true);
+		thread.start();
+		return thread;
+	}
+
+}
@@ -0,0 +1,448 @@
+/*
+ * On-disk cache of the solutions of previous runs, one file per solution in the directory set by SOLUTION_CACHE.
+ * A solution is keyed by the solver, a hash of the layout of the grid, i.e. its size, walls and which reward each
+ * cell has, and the parameters of the problem: the value of each reward, the discount factor, the transition
+ * probabilities and the maximum error. A run of the same problem takes the cached solution as its result,
+ * any other run starts from the solution of the closest problem of the same size, the same layout first,
+ * fitted to the walls of the grid if they are not the same.
+ * Files are evicted least recently used first, a file being used whenever it is written or read,
+ * until the cache takes no more than SOLUTION_CACHE_BYTES.
+ *
+ * A file holds a little-endian header, magic "UTILSOLN", int32 version, int32 cols, int32 rows, int32 iterations,
+ * int64 layout hash, int32 number of parameters, int32 length of the solver name, then the parameters as float64,
+ * the solver name in UTF-8, the utility of every cell as float64 and the action code of every cell, row by row.
+ */
+
+package controller;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import globals.IterationConstants;
+import grid.GridStore;
+import grid.UtilityStore;
+
+public class SolutionCache {
+
+	public static final byte[] MAGIC = "UTILSOLN".getBytes(StandardCharsets.US_ASCII);
+	public static final int VERSION = 1;
+	public static final int HEADER_BYTES = 40;
+
+	// Extension of the files of the cache
+	private static final String EXTENSION = ".sol";
+
+	// Size of the buffer the utilities are written and read through
+	private static final int BUFFER_BYTES = 1 << 20;
+
+	private final Path directory;
+	private final long max_bytes;
+
+	/*
+	 * A solution read from the cache, with whether it solved the same problem and the iterations it took.
+	 */
+
+	public static final class Solution {
+
+		private final UtilityStore utils;
+		private final boolean exact;
+		private final int iterations;
+
+		Solution(UtilityStore utils, boolean exact, int iterations) {
+			this.utils = utils;
+			this.exact = exact;
+			this.iterations = iterations;
+		}
+
+		// Utilities and actions of the solution
+		public UtilityStore getUtils() {
+			return utils;
+		}
+
+		// Whether the solution is the one of the same solver, grid and parameters
+		public boolean isExact() {
+			return exact;
+		}
+
+		// Number of iterations the solver took to find the solution
+		public int getIterations() {
+			return iterations;
+		}
+
+	}
+
+    /**
+     * Opens the cache in a directory, creating the directory if needed.
+     * @param directory The directory of the cache
+     * @param maxBytes The most bytes the files of the cache take after a solution is written
+     */
+
+	public SolutionCache(Path directory, long maxBytes) {
+		this.directory = directory;
+		this.max_bytes = maxBytes;
+		try {
+			Files.createDirectories(directory);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+    /**
+     * Opens the cache set by SOLUTION_CACHE.
+     * @return The cache, or null if no cache directory is set
+     */
+
+	public static SolutionCache open() {
+		if (IterationConstants.SOLUTION_CACHE == null) {
+			return null;
+		}
+		return new SolutionCache(Paths.get(IterationConstants.SOLUTION_CACHE), IterationConstants.SOLUTION_CACHE_BYTES);
+	}
+
+    /**
+     * Finds the solution of a problem, or of the closest problem of the same size with the current parameters.
+     * The solution of another layout is fitted to the walls of the grid, see UtilityController.fitToWalls.
+     * @param grid The compact grid
+     * @param solver The name of the solver
+     * @return The solution, or null if the cache has none of a grid of that size
+     */
+
+	public Solution lookup(final GridStore grid, final String solver) {
+
+		long layout = layoutHash(grid);
+		double[] parameters = parameters(grid);
+
+		// Rank the candidates by same solver and layout first, then by distance between their parameters
+		Path best_file = null;
+		Header best = null;
+		double best_distance = Double.POSITIVE_INFINITY;
+		for (Path file : files()) {
+			Header header = Header.read(file);
+			if (header == null || header.num_cols != grid.getNumCols() || header.num_rows != grid.getNumRows()) {
+				continue;
+			}
+			double distance = distance(parameters, header.parameters);
+			if (header.layout != layout) {
+				distance += 2 * parameters.length;
+			}
+			if (!header.solver.equals(solver)) {
+				distance += parameters.length;
+			}
+			if (distance < best_distance) {
+				best_distance = distance;
+				best_file = file;
+				best = header;
+			}
+		}
+		if (best == null) {
+			return null;
+		}
+
+		boolean exact = best.layout == layout && best.solver.equals(solver) && Arrays.equals(best.parameters, parameters);
+		UtilityStore utils = new UtilityStore(grid.getNumCols(), grid.getNumRows());
+		try (FileChannel channel = FileChannel.open(best_file, StandardOpenOption.READ)) {
+			readValues(channel, best.dataStart(), utils);
+			touch(best_file);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		// A solution of other walls has utilities and actions on the walls of this grid and none on its new open cells
+		if (best.layout != layout) {
+			UtilityController.fitToWalls(new TransitionModel(grid), utils);
+		}
+		return new Solution(utils, exact, best.iterations);
+	}
+
+    /**
+     * Writes the solution of a problem with the current parameters to the cache,
+     * then evicts the least recently used files until the cache is small enough.
+     * @param grid The compact grid
+     * @param solver The name of the solver
+     * @param utils The utilities and actions of the solution
+     * @param iterations The number of iterations the solver took
+     */
+
+	public void store(final GridStore grid, final String solver, final UtilityStore utils, final int iterations) {
+
+		long layout = layoutHash(grid);
+		double[] parameters = parameters(grid);
+		Header header = new Header(grid.getNumCols(), grid.getNumRows(), iterations, layout, parameters, solver);
+
+		// Written next to its final name and moved there, so a reader never sees half a file
+		Path file = directory.resolve(String.format("%016x%016x", layout, keyHash(solver, parameters)) + EXTENSION);
+		try {
+			Path temp = Files.createTempFile(directory, "solution", ".tmp");
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+				header.write(channel);
+				writeValues(channel, header.dataStart(), utils);
+			}
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			touch(file);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		evict(file);
+	}
+
+	// Deletes the least recently used files, never the one just written, until the cache is small enough
+	private void evict(final Path keep) {
+		List<Path> files = files();
+		long[] modified = new long[files.size()];
+		long total = 0;
+		try {
+			for (int i = 0; i < files.size(); i++) {
+				modified[i] = Files.getLastModifiedTime(files.get(i)).toMillis();
+				total += Files.size(files.get(i));
+			}
+			Integer[] order = new Integer[files.size()];
+			for (int i = 0; i < order.length; i++) {
+				order[i] = i;
+			}
+			Arrays.sort(order, (a, b) -> Long.compare(modified[a], modified[b]));
+			for (int i = 0; i < order.length && total > max_bytes; i++) {
+				Path file = files.get(order[i]);
+				if (!file.equals(keep)) {
+					total -= Files.size(file);
+					Files.deleteIfExists(file);
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	// Files of the cache
+	private List<Path> files() {
+		List<Path> files = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+			for (Path file : stream) {
+				files.add(file);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return files;
+	}
+
+	// Marks a file as just used
+	private static void touch(final Path file) throws IOException {
+		Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+	}
+
+	// Parameters of the problem: the reward of each reward class of the grid, then the constants of the solvers
+	private static double[] parameters(final GridStore grid) {
+		double[] rewards = grid.getRewardTable();
+		double[] parameters = Arrays.copyOf(rewards, rewards.length + 5);
+		int i = rewards.length;
+		parameters[i++] = IterationConstants.DISCOUNT_FACTOR;
+		parameters[i++] = IterationConstants.INTENDED_PROBABILITY;
+		parameters[i++] = IterationConstants.LEFT_PROBABILITY;
+		parameters[i++] = IterationConstants.RIGHT_PROBABILITY;
+		parameters[i++] = IterationConstants.MAXIMUM_ALLOWABLE_DISCOUNTED_ERROR;
+		return parameters;
+	}
+
+	// Sum of the relative differences between two sets of parameters, each at most 1, or infinity if they differ in length
+	private static double distance(final double[] a, final double[] b) {
+		if (a.length != b.length) {
+			return Double.POSITIVE_INFINITY;
+		}
+		double distance = 0.000;
+		for (int i = 0; i < a.length; i++) {
+			double scale = Math.max(Math.abs(a[i]), Math.abs(b[i]));
+			if (scale > 0) {
+				distance += Math.abs(a[i] - b[i]) / scale;
+			}
+		}
+		return distance;
+	}
+
+	// Hash of the solver and the parameters, naming the file of a solution together with the layout hash
+	private static long keyHash(final String solver, final double[] parameters) {
+		long hash = mix(solver.hashCode());
+		for (double parameter : parameters) {
+			hash = mix(hash ^ Double.doubleToLongBits(parameter));
+		}
+		return hash;
+	}
+
+	// Hash of the size, walls and reward class of every cell of a grid
+	private static long layoutHash(final GridStore grid) {
+		long hash = mix(((long) grid.getNumCols() << 32) | grid.getNumRows());
+		for (int row = 0; row < grid.getNumRows(); row++) {
+			long word = 0;
+			for (int col = 0; col < grid.getNumCols(); col++) {
+				word = (word << 8) | (grid.isWall(col, row) ? 0xFF : grid.getRewardClass(col, row) & 0xFF);
+				if ((col & 7) == 7) {
+					hash = mix(hash ^ word);
+					word = 0;
+				}
+			}
+			hash = mix(hash ^ word);
+		}
+		return hash;
+	}
+
+	// Mixes the bits of a value, the finalizer of SplitMix64
+	private static long mix(long value) {
+		value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+		value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+		return value ^ (value >>> 31);
+	}
+
+	// Writes the utilities, then the action codes, of a store from a position of a file
+	private static void writeValues(final FileChannel channel, long position, final UtilityStore utils) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		double[] values = utils.utils();
+		for (int first = 0; first < values.length; first += BUFFER_BYTES / Double.BYTES) {
+			int count = Math.min(BUFFER_BYTES / Double.BYTES, values.length - first);
+			buffer.clear();
+			buffer.asDoubleBuffer().put(values, first, count);
+			buffer.limit(count * Double.BYTES);
+			position = writeFully(channel, buffer, position);
+		}
+		byte[] actions = utils.actions();
+		for (int first = 0; first < actions.length; first += BUFFER_BYTES) {
+			int count = Math.min(BUFFER_BYTES, actions.length - first);
+			position = writeFully(channel, ByteBuffer.wrap(actions, first, count), position);
+		}
+	}
+
+	// Reads the utilities, then the action codes, of a store from a position of a file
+	private static void readValues(final FileChannel channel, long position, final UtilityStore utils) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		double[] values = utils.utils();
+		for (int first = 0; first < values.length; first += BUFFER_BYTES / Double.BYTES) {
+			int count = Math.min(BUFFER_BYTES / Double.BYTES, values.length - first);
+			buffer.clear();
+			buffer.limit(count * Double.BYTES);
+			position = readFully(channel, buffer, position);
+			buffer.flip();
+			buffer.asDoubleBuffer().get(values, first, count);
+		}
+		byte[] actions = utils.actions();
+		for (int first = 0; first < actions.length; first += BUFFER_BYTES) {
+			int count = Math.min(BUFFER_BYTES, actions.length - first);
+			position = readFully(channel, ByteBuffer.wrap(actions, first, count), position);
+		}
+	}
+
+	private static long writeFully(final FileChannel channel, final ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+		return position;
+	}
+
+	private static long readFully(final FileChannel channel, final ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position);
+			if (read < 0) {
+				throw new IOException("Solution file ends early");
+			}
+			position += read;
+		}
+		return position;
+	}
+
+	/*
+	 * Header of a file of the cache, what a solution solves.
+	 */
+
+	private static final class Header {
+
+		private final int num_cols;
+		private final int num_rows;
+		private final int iterations;
+		private final long layout;
+		private final double[] parameters;
+		private final String solver;
+
+		Header(int numCols, int numRows, int iterations, long layout, double[] parameters, String solver) {
+			this.num_cols = numCols;
+			this.num_rows = numRows;
+			this.iterations = iterations;
+			this.layout = layout;
+			this.parameters = parameters;
+			this.solver = solver;
+		}
+
+		// Reads the header of a file, or returns null if it is not a file of this version of the cache
+		static Header read(final Path file) {
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+				ByteBuffer fixed = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+				if (channel.read(fixed, 0) < HEADER_BYTES) {
+					return null;
+				}
+				fixed.flip();
+				byte[] magic = new byte[MAGIC.length];
+				fixed.get(magic);
+				if (!Arrays.equals(magic, MAGIC) || fixed.getInt() != VERSION) {
+					return null;
+				}
+				int num_cols = fixed.getInt();
+				int num_rows = fixed.getInt();
+				int iterations = fixed.getInt();
+				long layout = fixed.getLong();
+				int num_parameters = fixed.getInt();
+				int solver_bytes = fixed.getInt();
+
+				ByteBuffer variable = ByteBuffer.allocate(num_parameters * Double.BYTES + solver_bytes)
+				.order(ByteOrder.LITTLE_ENDIAN);
+				readFully(channel, variable, HEADER_BYTES);
+				variable.flip();
+				double[] parameters = new double[num_parameters];
+				variable.asDoubleBuffer().get(parameters);
+				variable.position(num_parameters * Double.BYTES);
+				byte[] solver = new byte[solver_bytes];
+				variable.get(solver);
+				return new Header(num_cols, num_rows, iterations, layout, parameters,
+				new String(solver, StandardCharsets.UTF_8));
+			} catch (IOException e) {
+				// A file being replaced or deleted by another run is skipped
+				return null;
+			}
+		}
+
+		void write(final FileChannel channel) throws IOException {
+			byte[] solver_bytes = solver.getBytes(StandardCharsets.UTF_8);
+			ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + parameters.length * Double.BYTES + solver_bytes.length)
+			.order(ByteOrder.LITTLE_ENDIAN);
+			buffer.put(MAGIC);
+			buffer.putInt(VERSION);
+			buffer.putInt(num_cols);
+			buffer.putInt(num_rows);
+			buffer.putInt(iterations);
+			buffer.putLong(layout);
+			buffer.putInt(parameters.length);
+			buffer.putInt(solver_bytes.length);
+			for (double parameter : parameters) {
+				buffer.putDouble(parameter);
+			}
+			buffer.put(solver_bytes);
+			buffer.flip();
+			writeFully(channel, buffer, 0);
+		}
+
+		// Position of the utilities in the file
+		long dataStart() {
+			return HEADER_BYTES + (long) parameters.length * Double.BYTES + solver.getBytes(StandardCharsets.UTF_8).length;
+		}
+
+	}
+
+}
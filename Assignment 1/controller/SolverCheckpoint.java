@@ -0,0 +1,441 @@
+/*
+ * Periodic checkpoints of a solver, so that a run killed part way can resume where it was and end with the same
+ * results. Every CHECKPOINT_INTERVAL iterations the solver takes a State between two iterations: a copy of the
+ * latest utilities and policy, its counters and a snapshot of its history, see UtilityHistory.snapshot. The state
+ * is written on a background thread while the solver carries on, so the sweep only pauses for the copies. A state
+ * that falls due while the previous one is still being written is skipped.
+ *
+ * A checkpoint is written to a temporary file, forced to the storage device and moved over the previous one,
+ * so a crash at any point leaves either the previous checkpoint or the new one, never half a file. The iterations
+ * of a STREAM or MEMORY history are in a file next to the checkpoint, forced with it, and cut back to the iterations
+ * of the checkpoint on resume.
+ *
+ * File format, all big-endian as written by DataOutputStream: magic "SOLVCKPT", int32 version 1, int32 iterations,
+ * int32 steps, int64 backups, boolean converged, int32 length and float64 values of the state of the solver, the
+ * latest store, boolean and store the solve started from if any, the state of the history, then the int64 CRC-32
+ * of everything before it. A store is int32 cols, int32 rows, the utility of every cell as float64 and the action
+ * code of every cell, row by row.
+ */
+
+package controller;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import globals.IterationConstants;
+import grid.UtilityStore;
+
+public class SolverCheckpoint implements AutoCloseable {
+
+	public static final byte[] MAGIC = "SOLVCKPT".getBytes(StandardCharsets.US_ASCII);
+	public static final int VERSION = 1;
+
+	// Argument of the solvers resuming from their latest checkpoint
+	public static final String RESUME = "resume";
+
+	// Size of the buffer the utilities are written and read through
+	private static final int BUFFER_BYTES = 1 << 20;
+
+	private final String name;
+	private final Path file;
+	private final Path temp_file;
+	private final Path spill_file;
+	private final int interval;
+
+	// Single thread writing the checkpoints, so at most one is being written
+	private final ExecutorService writer;
+	private Future<?> pending;
+
+	/*
+	 * State of a solver between two iterations, taken to be written or read back from a checkpoint.
+	 */
+
+	public static final class State {
+
+		private final UtilityStore utils;
+		private final UtilityStore start;
+		private final int iterations;
+		private final int steps;
+		private final long backups;
+		private final boolean converged;
+		private final double[] solver_state;
+
+		// History to write, or checkpoint positioned at the history to restore
+		private final UtilityHistory.Snapshot history;
+		private DataInputStream history_in;
+
+        /**
+         * Takes the state of a solver, copying its latest utilities and taking a snapshot of its history.
+         * @param utils The latest utilities and policy
+         * @param start The utilities or policy the solve started from, not changed by the solver, or null
+         * @param iterations The number of iterations done
+         * @param steps The number of sweeps or improvements done, as numbered in the solver metrics
+         * @param backups The number of Bellman backups done
+         * @param converged Whether the solver has converged
+         * @param solverState Any other state the solver carries from one iteration to the next, or null
+         * @param history The history of the solver
+         */
+
+		public State(UtilityStore utils, UtilityStore start, int iterations, int steps, long backups, boolean converged,
+		double[] solverState, UtilityHistory history) {
+			this(utils.copy(), start, iterations, steps, backups, converged,
+			solverState == null ? new double[0] : solverState.clone(), history.snapshot(), null);
+		}
+
+		private State(UtilityStore utils, UtilityStore start, int iterations, int steps, long backups, boolean converged,
+		double[] solverState, UtilityHistory.Snapshot history, DataInputStream historyIn) {
+			this.utils = utils;
+			this.start = start;
+			this.iterations = iterations;
+			this.steps = steps;
+			this.backups = backups;
+			this.converged = converged;
+			this.solver_state = solverState;
+			this.history = history;
+			this.history_in = historyIn;
+		}
+
+		// Latest utilities and policy
+		public UtilityStore getUtils() {
+			return utils;
+		}
+
+		// Utilities or policy the solve started from, or null
+		public UtilityStore getStart() {
+			return start;
+		}
+
+		// Number of iterations done
+		public int getIterations() {
+			return iterations;
+		}
+
+		// Number of sweeps or improvements done
+		public int getSteps() {
+			return steps;
+		}
+
+		// Number of Bellman backups done
+		public long getBackups() {
+			return backups;
+		}
+
+		// Whether the solver had converged
+		public boolean isConverged() {
+			return converged;
+		}
+
+		// Any other state of the solver
+		public double[] getSolverState() {
+			return solver_state;
+		}
+
+        /**
+         * Restores the history of a state read back from a checkpoint, which can only be done once.
+         * @param utilityHistory The new history of the resumed solver, created like the one checkpointed
+         */
+
+		public void restoreHistory(UtilityHistory utilityHistory) {
+			if (history_in == null) {
+				throw new IllegalStateException("The history of this state has already been restored");
+			}
+			try (DataInputStream in = history_in) {
+				utilityHistory.restore(in);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			} finally {
+				history_in = null;
+			}
+		}
+
+	}
+
+    /**
+     * Opens the checkpoint of a solver in a directory, creating the directory if needed.
+     * @param directory The directory of the checkpoints
+     * @param name The name of the solver, naming its files
+     * @param interval The number of iterations between two checkpoints
+     */
+
+	public SolverCheckpoint(Path directory, String name, int interval) {
+		this.name = name;
+		this.file = directory.resolve(name + ".ckpt");
+		this.temp_file = directory.resolve(name + ".ckpt.tmp");
+		this.spill_file = directory.resolve(name + ".history.bin");
+		this.interval = Math.max(1, interval);
+		this.writer = Executors.newSingleThreadExecutor(task -> {
+			Thread thread = new Thread(task, "checkpoint-" + name);
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			Files.createDirectories(directory);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+    /**
+     * Opens the checkpoint of a solver in the directory set by CHECKPOINT_DIR.
+     * @param name The name of the solver
+     * @return The checkpoint, or null if no checkpoint directory is set
+     */
+
+	public static SolverCheckpoint open(String name) {
+		if (IterationConstants.CHECKPOINT_DIR == null) {
+			return null;
+		}
+		return new SolverCheckpoint(Paths.get(IterationConstants.CHECKPOINT_DIR), name, IterationConstants.CHECKPOINT_INTERVAL);
+	}
+
+    /**
+     * Reads the latest checkpoint of a solver if its arguments ask to resume.
+     * @param checkpoint The checkpoint of the solver, or null if it is not checkpointing
+     * @param args The arguments of the solver
+     * @return The state to resume from, or null to start over
+     */
+
+	public static State resume(SolverCheckpoint checkpoint, String[] args) {
+		if (!Arrays.asList(args).contains(RESUME)) {
+			return null;
+		}
+		if (checkpoint == null) {
+			throw new IllegalArgumentException("Resuming needs the directory of the checkpoints, set with -Dcheckpoint=path");
+		}
+		State state = checkpoint.load();
+		if (state == null) {
+			System.err.println("No checkpoint of " + checkpoint.name + " to resume from, starting over");
+		}
+		return state;
+	}
+
+    /**
+     * Returns the file a STREAM history of the solver writes to, next to the checkpoint, see UtilityHistory.create.
+     * @return The path of the file
+     */
+
+	public Path getSpillFile() {
+		return spill_file;
+	}
+
+    /**
+     * Returns whether a checkpoint falls due after a step, and the previous one has been written.
+     * @param step The number of sweeps or improvements done
+     * @return True if the solver should save its state
+     */
+
+	public boolean isDue(int step) {
+		return step % interval == 0 && (pending == null || pending.isDone());
+	}
+
+    /**
+     * Writes a state on the background thread, after the previous one.
+     * @param state The state of the solver
+     */
+
+	public void save(final State state) {
+		await();
+		pending = writer.submit(() -> {
+			write(state);
+			return null;
+		});
+	}
+
+    /**
+     * Reads back the latest checkpoint, checking that it is whole.
+     * @return The state of the checkpoint, or null if there is none
+     */
+
+	public State load() {
+		await();
+		if (!Files.exists(file)) {
+			return null;
+		}
+		try {
+			verify();
+			DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_BYTES));
+			byte[] magic = new byte[MAGIC.length];
+			in.readFully(magic);
+			int version = in.readInt();
+			if (!Arrays.equals(magic, MAGIC) || version != VERSION) {
+				in.close();
+				throw new IllegalStateException(file + " is not a checkpoint of version " + VERSION);
+			}
+			int iterations = in.readInt();
+			int steps = in.readInt();
+			long backups = in.readLong();
+			boolean converged = in.readBoolean();
+			double[] solver_state = new double[in.readInt()];
+			for (int i = 0; i < solver_state.length; i++) {
+				solver_state[i] = in.readDouble();
+			}
+			UtilityStore utils = readStore(in);
+			UtilityStore start = in.readBoolean() ? readStore(in) : null;
+			return new State(utils, start, iterations, steps, backups, converged, solver_state, null, in);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+    /**
+     * Deletes the checkpoint and the history file of the solver, once its run is done. It can be called after close.
+     */
+
+	public void discard() {
+		await();
+		try {
+			Files.deleteIfExists(file);
+			Files.deleteIfExists(temp_file);
+			Files.deleteIfExists(spill_file);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	// Waits for the checkpoint being written and stops the background thread. The snapshot of a STREAM history forces
+	// its file on that thread, so the solver closes the checkpoint before it closes its history
+	@Override
+	public void close() {
+		await();
+		writer.shutdown();
+	}
+
+    /**
+     * Writes a store to a checkpoint.
+     * @param out The checkpoint
+     * @param utils The store
+     * @throws IOException If the store cannot be written
+     */
+
+	public static void writeStore(final DataOutputStream out, final UtilityStore utils) throws IOException {
+		out.writeInt(utils.getNumCols());
+		out.writeInt(utils.getNumRows());
+		ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+		double[] values = utils.utils();
+		for (int first = 0; first < values.length; first += BUFFER_BYTES / Double.BYTES) {
+			int count = Math.min(BUFFER_BYTES / Double.BYTES, values.length - first);
+			buffer.clear();
+			buffer.asDoubleBuffer().put(values, first, count);
+			out.write(buffer.array(), 0, count * Double.BYTES);
+		}
+		out.write(utils.actions());
+	}
+
+    /**
+     * Reads a store from a checkpoint.
+     * @param in The checkpoint
+     * @return The store
+     * @throws IOException If the store cannot be read
+     */
+
+	public static UtilityStore readStore(final DataInputStream in) throws IOException {
+		UtilityStore utils = new UtilityStore(in.readInt(), in.readInt());
+		ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+		double[] values = utils.utils();
+		for (int first = 0; first < values.length; first += BUFFER_BYTES / Double.BYTES) {
+			int count = Math.min(BUFFER_BYTES / Double.BYTES, values.length - first);
+			in.readFully(buffer.array(), 0, count * Double.BYTES);
+			buffer.clear();
+			buffer.asDoubleBuffer().get(values, first, count);
+		}
+		in.readFully(utils.actions());
+		return utils;
+	}
+
+	// Writes a state to the temporary file, forces it and moves it over the checkpoint
+	private void write(final State state) throws IOException {
+		try (FileOutputStream stream = new FileOutputStream(temp_file.toFile())) {
+			BufferedOutputStream buffered = new BufferedOutputStream(stream, BUFFER_BYTES);
+			CheckedOutputStream checked = new CheckedOutputStream(buffered, new CRC32());
+			DataOutputStream out = new DataOutputStream(checked);
+			out.write(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(state.iterations);
+			out.writeInt(state.steps);
+			out.writeLong(state.backups);
+			out.writeBoolean(state.converged);
+			out.writeInt(state.solver_state.length);
+			for (double value : state.solver_state) {
+				out.writeDouble(value);
+			}
+			writeStore(out, state.utils);
+			out.writeBoolean(state.start != null);
+			if (state.start != null) {
+				writeStore(out, state.start);
+			}
+			state.history.write(out);
+			out.flush();
+			new DataOutputStream(buffered).writeLong(checked.getChecksum().getValue());
+			buffered.flush();
+			stream.getFD().sync();
+		}
+		Files.move(temp_file, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	// Checks the CRC-32 at the end of the checkpoint against the bytes before it
+	private void verify() throws IOException {
+		long length = Files.size(file) - Long.BYTES;
+		if (length < MAGIC.length) {
+			throw new IllegalStateException(file + " is too short to be a checkpoint");
+		}
+		try (InputStream stream = new BufferedInputStream(Files.newInputStream(file), BUFFER_BYTES)) {
+			CheckedInputStream checked = new CheckedInputStream(stream, new CRC32());
+			byte[] buffer = new byte[BUFFER_BYTES];
+			long remaining = length;
+			while (remaining > 0) {
+				int read = checked.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+				if (read < 0) {
+					throw new IOException("Checkpoint ends early");
+				}
+				remaining -= read;
+			}
+			if (new DataInputStream(stream).readLong() != checked.getChecksum().getValue()) {
+				throw new IllegalStateException(file + " is corrupt, its checksum does not match");
+			}
+		}
+	}
+
+	// Waits for the checkpoint being written, passing on any failure to write it
+	private void await() {
+		if (pending == null) {
+			return;
+		}
+		try {
+			pending.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while writing a checkpoint", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw new UncheckedIOException((IOException) e.getCause());
+			}
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			pending = null;
+		}
+	}
+
+}
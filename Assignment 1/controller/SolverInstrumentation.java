@@ -0,0 +1,128 @@
+/*
+ * Reports the metrics of every iteration of the solvers to the registered SolverListeners and as
+ * SolverIterationEvents to Java Flight Recorder. A solver calls start() before an iteration and, if it got a probe,
+ * finish() after it. With no listener and no recording of the event, start() returns null after a read of the
+ * listeners and of whether the event is enabled, so the solver reads no clock, no allocation counter and creates
+ * nothing, and the extra work of a metric only the probe needs is skipped with it.
+ *
+ * -Dprogress=N registers a listener printing every Nth iteration to the standard error, see PROGRESS_INTERVAL.
+ */
+
+package controller;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import globals.IterationConstants;
+import jdk.jfr.EventType;
+
+public final class SolverInstrumentation {
+
+	private static final List<SolverListener> LISTENERS = new CopyOnWriteArrayList<>();
+
+	// Whether there are listeners, read by every start() instead of the list
+	private static volatile boolean has_listeners = false;
+
+	private static final EventType EVENT_TYPE = EventType.getEventType(SolverIterationEvent.class);
+
+	// Reads the bytes allocated by a thread
+	private static final com.sun.management.ThreadMXBean THREADS =
+	(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	static {
+		if (IterationConstants.PROGRESS_INTERVAL > 0) {
+			addListener(metrics -> {
+				if (metrics.getIteration() % IterationConstants.PROGRESS_INTERVAL == 0) {
+					System.err.println(metrics);
+				}
+			});
+		}
+	}
+
+	private SolverInstrumentation() {
+	}
+
+    /**
+     * Registers a listener of the iterations of every solver.
+     * @param listener The listener
+     */
+
+	public static void addListener(SolverListener listener) {
+		LISTENERS.add(listener);
+		has_listeners = true;
+	}
+
+    /**
+     * Unregisters a listener.
+     * @param listener The listener
+     */
+
+	public static void removeListener(SolverListener listener) {
+		LISTENERS.remove(listener);
+		has_listeners = !LISTENERS.isEmpty();
+	}
+
+    /**
+     * Starts measuring an iteration, if anything listens.
+     * @return The probe of the iteration, or null if nothing listens
+     */
+
+	public static Probe start() {
+		if (!has_listeners && !EVENT_TYPE.isEnabled()) {
+			return null;
+		}
+		return new Probe();
+	}
+
+	/*
+	 * Measures one iteration, from start() to finish().
+	 */
+
+	public static final class Probe {
+
+		private final long start_nanos;
+		private final long start_bytes;
+		private final SolverIterationEvent event = new SolverIterationEvent();
+
+		private Probe() {
+			event.begin();
+			start_bytes = THREADS.getCurrentThreadAllocatedBytes();
+			start_nanos = System.nanoTime();
+		}
+
+	    /**
+	     * Reports the iteration to the listeners and to Java Flight Recorder.
+	     * @param solver The name of the solver
+	     * @param iteration The iteration, counted from 1
+	     * @param maxDelta The largest change in utility of any state
+	     * @param backups The number of Bellman backups of the iteration
+	     * @param policyChanges The number of states whose action changed, or IterationMetrics.NO_POLICY_STEP
+	     */
+
+		public void finish(String solver, int iteration, double maxDelta, long backups, int policyChanges) {
+			long nanos = System.nanoTime() - start_nanos;
+			long bytes = THREADS.getCurrentThreadAllocatedBytes() - start_bytes;
+
+			event.end();
+			if (event.shouldCommit()) {
+				event.solver = solver;
+				event.iteration = iteration;
+				event.maxDelta = maxDelta;
+				event.backups = backups;
+				event.policyChanges = policyChanges;
+				event.allocatedBytes = bytes;
+				event.commit();
+			}
+
+			if (has_listeners) {
+				IterationMetrics metrics = new IterationMetrics(solver, iteration, maxDelta, nanos, backups, policyChanges, bytes);
+				for (SolverListener listener : LISTENERS) {
+					listener.iterationCompleted(metrics);
+				}
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,48 @@
+/*
+ * Java Flight Recorder event of one iteration of a solver, committed by SolverInstrumentation. Its duration is the
+ * wall time of the iteration. Record it with e.g. -XX:StartFlightRecording=filename=solve.jfr and open the recording
+ * in JDK Mission Control, or print it with jfr print --events gridworld.SolverIteration solve.jfr.
+ */
+
+package controller;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name(SolverIterationEvent.NAME)
+@Label("Solver Iteration")
+@Category("Grid World")
+@Description("One sweep of value iteration, or one evaluation and improvement of policy iteration")
+@StackTrace(false)
+public class SolverIterationEvent extends Event {
+
+	public static final String NAME = "gridworld.SolverIteration";
+
+	@Label("Solver")
+	String solver;
+
+	@Label("Iteration")
+	int iteration;
+
+	@Label("Max Delta")
+	@Description("Largest change in utility of any state")
+	double maxDelta;
+
+	@Label("Backups")
+	long backups;
+
+	@Label("Policy Changes")
+	@Description("States whose action changed, -1 for solvers without a policy step")
+	int policyChanges;
+
+	@Label("Allocated")
+	@Description("Bytes allocated by the solver thread")
+	@DataAmount
+	long allocatedBytes;
+
+}
@@ -0,0 +1,17 @@
+/*
+ * Receives the metrics of every iteration of a solver, see SolverInstrumentation. Listeners are called on the
+ * solver thread between two iterations, so they should return quickly.
+ */
+
+package controller;
+
+public interface SolverListener {
+
+    /**
+     * Called after each iteration of a solver.
+     * @param metrics The metrics of the iteration
+     */
+
+	void iterationCompleted(IterationMetrics metrics);
+
+}
@@ -0,0 +1,145 @@
+/*
+ * Builds the order in which a Jacobi sweep visits the states of a transition model, see SweepOrder. The states stay
+ * numbered and stored row by row, the order is a permutation of them, so the same model and utility stores serve
+ * every order and only the sweep goes through the permutation.
+ *
+ * A tiled sweep visits square tiles small enough that the current and new utilities and the actions of a tile,
+ * BYTES_PER_STATE bytes per state, fill at most half of L2_CACHE_BYTES, so the rows above and below a row of a tile
+ * are still in cache when it is swept. The curve orders sort the states by their index along the curve of the
+ * smallest square of a power of two side covering the grid.
+ */
+
+package controller;
+
+import java.util.Arrays;
+
+import globals.IterationConstants;
+import globals.SweepOrder;
+
+public final class StateOrder {
+
+	// Bytes of the utility stores read and written per state in a Jacobi sweep, two utilities and an action
+	public static final int BYTES_PER_STATE = 2 * Double.BYTES + 1;
+
+	// Largest side of a grid whose curve index fits in 32 bits
+	private static final int MAX_CURVE_SIDE = 1 << 16;
+
+	private StateOrder() {
+	}
+
+    /**
+     * Returns the side of the tiles of a tiled sweep.
+     * @return The number of rows and of columns of a tile
+     */
+
+	public static int tileSide() {
+		return Math.max(1, (int) Math.sqrt(IterationConstants.L2_CACHE_BYTES / 2.0 / BYTES_PER_STATE));
+	}
+
+    /**
+     * Builds the order of the states of a model.
+     * @param model The transition model of the grid
+     * @param order The order to visit the states in
+     * @return The states in the order they are visited
+     */
+
+	public static int[] build(final TransitionModel model, final SweepOrder order) {
+		switch (order) {
+			case TILED:
+			return tiled(model, tileSide());
+
+			case MORTON:
+			case HILBERT:
+			return alongCurve(model, order);
+
+			default:
+			int[] states = new int[model.getNumStates()];
+			Arrays.setAll(states, state -> state);
+			return states;
+		}
+	}
+
+	// States tile by tile, row by row within a tile
+	private static int[] tiled(final TransitionModel model, final int side) {
+		int num_cols = model.getNumCols();
+		int num_rows = model.getNumRows();
+		int[] states = new int[model.getNumStates()];
+		int count = 0;
+		for (int tile_row = 0; tile_row < num_rows; tile_row += side) {
+			for (int tile_col = 0; tile_col < num_cols; tile_col += side) {
+				for (int row = tile_row; row < Math.min(num_rows, tile_row + side); row++) {
+					for (int col = tile_col; col < Math.min(num_cols, tile_col + side); col++) {
+						int state = model.getState(row * num_cols + col);
+						if (state >= 0) {
+							states[count++] = state;
+						}
+					}
+				}
+			}
+		}
+		return states;
+	}
+
+	// States sorted by their index along the curve, packed above the state so that one sort of longs orders both
+	private static int[] alongCurve(final TransitionModel model, final SweepOrder order) {
+		int num_cols = model.getNumCols();
+		int side = Integer.highestOneBit(Math.max(1, Math.max(num_cols, model.getNumRows()) - 1)) << 1;
+		if (side > MAX_CURVE_SIDE) {
+			throw new IllegalArgumentException("A " + order + " sweep needs a grid of at most " + MAX_CURVE_SIDE
+			+ " cells a side");
+		}
+
+		long[] keys = new long[model.getNumStates()];
+		for (int state = 0; state < keys.length; state++) {
+			int cell = model.getCell(state);
+			long index = order == SweepOrder.MORTON ? mortonIndex(cell % num_cols, cell / num_cols)
+			: hilbertIndex(side, cell % num_cols, cell / num_cols);
+			keys[state] = index << 32 | state;
+		}
+		Arrays.sort(keys);
+
+		int[] states = new int[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			states[i] = (int) keys[i];
+		}
+		return states;
+	}
+
+	// Index along the Z-order curve, the bits of the column at the even positions and of the row at the odd ones
+	private static long mortonIndex(int col, int row) {
+		return spreadBits(col) | spreadBits(row) << 1;
+	}
+
+	// Moves bit i of a 16-bit value to bit 2i
+	private static long spreadBits(int value) {
+		long bits = value & 0xFFFF;
+		bits = (bits | bits << 8) & 0x00FF00FFL;
+		bits = (bits | bits << 4) & 0x0F0F0F0FL;
+		bits = (bits | bits << 2) & 0x33333333L;
+		bits = (bits | bits << 1) & 0x55555555L;
+		return bits;
+	}
+
+	// Index along the Hilbert curve of a square of a power of two side, rotating the quadrant at every level
+	private static long hilbertIndex(int side, int col, int row) {
+		long index = 0;
+		int x = col;
+		int y = row;
+		for (int half = side / 2; half > 0; half /= 2) {
+			int rx = (x & half) > 0 ? 1 : 0;
+			int ry = (y & half) > 0 ? 1 : 0;
+			index += (long) half * half * ((3 * rx) ^ ry);
+			if (ry == 0) {
+				if (rx == 1) {
+					x = side - 1 - x;
+					y = side - 1 - y;
+				}
+				int temp = x;
+				x = y;
+				y = temp;
+			}
+		}
+		return index;
+	}
+
+}
@@ -0,0 +1,144 @@
+/*
+ * Indexed priority queue of states, a binary max-heap over state ids with the position of every
+ * state in the heap, so the priority of a state already in the queue can be changed in O(log n).
+ * Ties are broken by the lower state id, so the order states come out in does not depend on the order they went in.
+ */
+
+package controller;
+
+import java.util.Arrays;
+
+public class StatePriorityQueue {
+
+	// State ids in heap order
+	private final int[] heap;
+
+	// Position of each state id in the heap, or -1 if the state is not in the queue
+	private final int[] position;
+
+	// Priority of each state id
+	private final double[] priority;
+
+	private int size = 0;
+
+    /**
+     * Creates an empty queue for the state ids 0 to capacity - 1.
+     * @param capacity The number of state ids
+     */
+
+	public StatePriorityQueue(int capacity) {
+		heap = new int[capacity];
+		position = new int[capacity];
+		priority = new double[capacity];
+		Arrays.fill(position, -1);
+	}
+
+    /**
+     * Returns whether the queue is empty.
+     * @return True if there is no state in the queue
+     */
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+    /**
+     * Returns the state with the highest priority, without removing it.
+     * @return The state id with the highest priority
+     */
+
+	public int peek() {
+		return heap[0];
+	}
+
+    /**
+     * Returns the highest priority in the queue.
+     * @return The highest priority, or 0 if the queue is empty
+     */
+
+	public double peekPriority() {
+		return size == 0 ? 0.000 : priority[heap[0]];
+	}
+
+    /**
+     * Removes and returns the state with the highest priority.
+     * @return The state id with the highest priority
+     */
+
+	public int poll() {
+		int top = heap[0];
+		size--;
+		if (size > 0) {
+			move(heap[size], 0);
+			siftDown(0);
+		}
+		position[top] = -1;
+		return top;
+	}
+
+    /**
+     * Adds a state to the queue, or changes its priority if it is already in the queue.
+     * @param state The state id
+     * @param newPriority The priority of the state
+     */
+
+	public void update(int state, double newPriority) {
+		int index = position[state];
+		if (index < 0) {
+			priority[state] = newPriority;
+			move(state, size);
+			size++;
+			siftUp(size - 1);
+		} else if (newPriority > priority[state]) {
+			priority[state] = newPriority;
+			siftUp(index);
+		} else {
+			priority[state] = newPriority;
+			siftDown(index);
+		}
+	}
+
+	// Whether state a comes out of the queue before state b
+	private boolean before(int a, int b) {
+		return priority[a] > priority[b] || (priority[a] == priority[b] && a < b);
+	}
+
+	private void siftUp(int index) {
+		int state = heap[index];
+		while (index > 0) {
+			int parent = (index - 1) >>> 1;
+			if (!before(state, heap[parent])) {
+				break;
+			}
+			move(heap[parent], index);
+			index = parent;
+		}
+		move(state, index);
+	}
+
+	private void siftDown(int index) {
+		int state = heap[index];
+		while (true) {
+			int child = 2 * index + 1;
+			if (child >= size) {
+				break;
+			}
+			if (child + 1 < size && before(heap[child + 1], heap[child])) {
+				child++;
+			}
+			if (!before(heap[child], state)) {
+				break;
+			}
+			move(heap[child], index);
+			index = child;
+		}
+		move(state, index);
+	}
+
+	// Places a state at a position of the heap
+	private void move(int state, int index) {
+		heap[index] = state;
+		position[state] = index;
+	}
+
+}
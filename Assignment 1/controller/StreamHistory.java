@@ -0,0 +1,148 @@
+/*
+ * History that writes every iteration to a temporary binary file as soon as it is recorded, see BinaryOutputWriter,
+ * so only the latest iteration stays in memory. The utilities are written as float64, so the saved file,
+ * converted to the format set by OUTPUT_FORMAT, holds the same values as if every iteration had been kept in memory.
+ *
+ * A solver that checkpoints gives the file instead, next to its checkpoint. A snapshot then only records the number
+ * of iterations and forces the file, and restoring it reopens the file and drops the iterations after them. The file
+ * is forced on the thread of the checkpoints, so the history is closed only after the checkpoint, see
+ * SolverCheckpoint.close.
+ */
+
+package controller;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+import grid.UtilityStore;
+
+public class StreamHistory implements UtilityHistory {
+
+	// File holding the utilities of every iteration, one after the other, temporary unless given
+	private Path spill_file;
+	private final boolean temporary;
+	private BinaryOutputWriter writer;
+
+	// Copy of the latest iteration, allocated on the first one
+	private UtilityStore latest;
+
+	private int count = 0;
+
+    /**
+     * Creates a history streaming to a temporary file.
+     */
+
+	public StreamHistory() {
+		this(null);
+	}
+
+    /**
+     * Creates a history streaming to a file, replacing it on the first iteration. A given file is left for its owner
+     * to delete, such as the checkpoint it belongs to, a temporary file is deleted on close.
+     * @param spillFile The file, or null for a temporary file
+     */
+
+	public StreamHistory(Path spillFile) {
+		this.spill_file = spillFile;
+		this.temporary = spillFile == null;
+	}
+
+	@Override
+	public void add(UtilityStore utils) {
+		if (latest == null) {
+			latest = utils.copy();
+			if (spill_file == null) {
+				try {
+					spill_file = Files.createTempFile("utilities", ".bin");
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				spill_file.toFile().deleteOnExit();
+			}
+			writer = new BinaryOutputWriter(spill_file, 8, utils.getNumCols(), utils.getNumRows());
+		} else {
+			latest.copyFrom(utils);
+		}
+		writer.append(utils);
+		count++;
+	}
+
+	@Override
+	public UtilityStore getLatest() {
+		return latest;
+	}
+
+	@Override
+	public int size() {
+		return count;
+	}
+
+	@Override
+	public void writeToFile(String fileName) {
+		if (count == 0) {
+			SaveOutput.writeUtilities(new ArrayList<>(), fileName);
+			return;
+		}
+
+		// Write the number of iterations to the header before reading the file back
+		writer.flush();
+		SaveOutput.writeUtilities(new BinaryOutputReader(spill_file), fileName);
+	}
+
+	@Override
+	public void close() {
+		if (writer != null) {
+			writer.close();
+			writer = null;
+			if (temporary) {
+				try {
+					Files.deleteIfExists(spill_file);
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	// The recorded iterations stay in the file, forced when the snapshot is written
+	@Override
+	public Snapshot snapshot() {
+		int recorded = count;
+		UtilityStore latest_copy = latest == null ? null : latest.copy();
+		BinaryOutputWriter spill = writer;
+		if (spill != null) {
+			spill.flush();
+		}
+		return out -> {
+			if (spill != null) {
+				spill.force();
+			}
+			out.writeInt(recorded);
+			if (latest_copy != null) {
+				SolverCheckpoint.writeStore(out, latest_copy);
+			}
+		};
+	}
+
+	@Override
+	public void restore(DataInputStream in) throws IOException {
+		if (writer != null) {
+			writer.close();
+			writer = null;
+		}
+		count = in.readInt();
+		latest = null;
+		if (count > 0) {
+			if (spill_file == null) {
+				throw new IllegalStateException("A streamed history can only be restored from the file it streamed to");
+			}
+			latest = SolverCheckpoint.readStore(in);
+			writer = new BinaryOutputWriter(spill_file, 8, latest.getNumCols(), latest.getNumRows(), count);
+		}
+	}
+
+}
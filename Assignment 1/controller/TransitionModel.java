@@ -0,0 +1,680 @@
+/*
+ * Transition model of the grid, compiled once before solving so the sweeps never look at walls or the border again.
+ * The non-wall states are numbered densely, row by row. Each (state, action) pair has a list of successors and
+ * their probabilities in compressed sparse row form, where moves that bump into a wall or the border
+ * become self-loops and outcomes landing on the same cell are merged into one entry.
+ * Successors are ids of the UtilityStore, so the solvers read and write utilities without translating indices.
+ */
+
+package controller;
+
+import java.util.Arrays;
+
+import globals.IterationConstants;
+import globals.SweepOrder;
+import grid.AgentAction;
+import grid.AgentState;
+import grid.GridStore;
+
+public class TransitionModel {
+
+	// Number of actions of every state
+	public static final int NUM_ACTIONS = 4;
+
+	// Actions in the order of their slots, which is the order ties are broken in
+	private static final AgentAction[] SLOT_ACTIONS = { AgentAction.UP, AgentAction.DOWN, AgentAction.LEFT, AgentAction.RIGHT };
+
+	// Slot of each action code
+	private static final int[] CODE_SLOTS = new int[NUM_ACTIONS];
+	static {
+		for (int slot = 0; slot < NUM_ACTIONS; slot++) {
+			CODE_SLOTS[SLOT_ACTIONS[slot].ordinal()] = slot;
+		}
+	}
+
+	// Moves of a state in the order of the ids of the cells they reach, a bump staying on the state itself
+	public static final int MOVE_UP = 0;
+	public static final int MOVE_LEFT = 1;
+	public static final int MOVE_STAY = 2;
+	public static final int MOVE_RIGHT = 3;
+	public static final int MOVE_DOWN = 4;
+	public static final int NUM_MOVES = 5;
+
+	// Number of sets of open neighbours of a state, see getOpenMoves
+	public static final int NUM_OPEN_MOVES = 16;
+
+	// Outcomes of (open moves, slot) are the entries MOVE_OUTCOME_START[open_moves * NUM_ACTIONS + slot] to the next start,
+	// as moves, merged and sorted like the transitions of every state with those open neighbours
+	private static final int[] MOVE_OUTCOME_START = new int[NUM_OPEN_MOVES * NUM_ACTIONS + 1];
+	private static final int[] MOVE_OUTCOMES;
+	private static final double[] MOVE_PROBABILITIES;
+	static {
+		int[] moves = new int[NUM_OPEN_MOVES * NUM_ACTIONS * 3];
+		double[] prob = new double[NUM_OPEN_MOVES * NUM_ACTIONS * 3];
+		int entries = 0;
+		for (int open_moves = 0; open_moves < NUM_OPEN_MOVES; open_moves++) {
+			for (int slot = 0; slot < NUM_ACTIONS; slot++) {
+				MOVE_OUTCOME_START[open_moves * NUM_ACTIONS + slot] = entries;
+				entries = addMoveOutcomes(moves, prob, entries, open_moves, slot);
+			}
+		}
+		MOVE_OUTCOME_START[NUM_OPEN_MOVES * NUM_ACTIONS] = entries;
+		MOVE_OUTCOMES = Arrays.copyOf(moves, entries);
+		MOVE_PROBABILITIES = Arrays.copyOf(prob, entries);
+	}
+
+	/*
+	 * Reward of a cell of the grid a model is compiled from.
+	 */
+
+	public interface RewardFunction {
+
+		double getReward(int col, int row);
+
+	}
+
+	private final int num_cols;
+	private final int num_rows;
+	private final int num_states;
+
+	// Discount applied to the utilities of the successors
+	private final double discount;
+
+	// UtilityStore id of each state
+	private final int[] cell_of;
+
+	// State of each UtilityStore id, or -1 for walls
+	private final int[] state_of;
+
+	// First state of each row, and the number of states at the end
+	private final int[] row_start;
+
+	// States of each colour of the checkerboard, i.e. (col + row) % 2, and the first of them in each row
+	private final int[][] colour_states = new int[2][];
+	private final int[][] colour_row_start = new int[2][];
+
+	private final double[] rewards;
+
+	// States whose cells became walls after the model was compiled, see blockState
+	private final boolean[] blocked;
+
+	// Transitions of (state, slot) are the entries transition_start[state * NUM_ACTIONS + slot] to the next start
+	private final int[] transition_start;
+	private final int[] successors;
+	private final double[] probabilities;
+
+	// States whose transitions lead to a state are the entries predecessor_start[state] to the next start
+	private final int[] predecessor_start;
+	private final int[] predecessors;
+
+	// Cell reached by moving up, down, left and right from each state, built on first use, see getMoveCells
+	private int[][] move_cells;
+
+	// States in each order of a Jacobi sweep, indexed by the ordinal of the order, built on first use
+	private final int[][] state_orders = new int[SweepOrder.values().length][];
+
+    /**
+     * Compiles the transition model of a grid.
+     * @param grid The grid of states
+     */
+
+	public TransitionModel(final AgentState[][] grid) {
+		this(GridStore.fromStates(grid));
+	}
+
+    /**
+     * Compiles the transition model of a compact grid.
+     * @param grid The compact grid
+     */
+
+	public TransitionModel(final GridStore grid) {
+		this(grid, grid::getReward, IterationConstants.DISCOUNT_FACTOR);
+	}
+
+    /**
+     * Compiles the transition model of the walls of a compact grid with other rewards and another discount,
+     * such as the coarse grids of MultigridSolver.
+     * @param grid The compact grid, only its walls are read
+     * @param rewards The reward of each cell
+     * @param discount The discount factor
+     */
+
+	public TransitionModel(final GridStore grid, final RewardFunction rewards, final double discount) {
+
+		num_cols = grid.getNumCols();
+		num_rows = grid.getNumRows();
+		this.discount = discount;
+
+		// Number the non-wall states row by row
+		state_of = new int[num_cols * num_rows];
+		row_start = new int[num_rows + 1];
+		int count = 0;
+		for (int row = 0; row < num_rows; row++) {
+			row_start[row] = count;
+			for (int col = 0; col < num_cols; col++) {
+				state_of[cellId(col, row)] = grid.isWall(col, row) ? -1 : count++;
+			}
+		}
+		row_start[num_rows] = count;
+		num_states = count;
+
+		cell_of = new int[num_states];
+		this.rewards = new double[num_states];
+		blocked = new boolean[num_states];
+		for (int row = 0; row < num_rows; row++) {
+			for (int col = 0; col < num_cols; col++) {
+				int state = state_of[cellId(col, row)];
+				if (state >= 0) {
+					cell_of[state] = cellId(col, row);
+					this.rewards[state] = rewards.getReward(col, row);
+				}
+			}
+		}
+
+		// At most 3 outcomes per action
+		transition_start = new int[num_states * NUM_ACTIONS + 1];
+		int[] succ = new int[num_states * NUM_ACTIONS * 3];
+		double[] prob = new double[num_states * NUM_ACTIONS * 3];
+		int entries = 0;
+		for (int state = 0; state < num_states; state++) {
+			for (int slot = 0; slot < NUM_ACTIONS; slot++) {
+				transition_start[state * NUM_ACTIONS + slot] = entries;
+				entries = addActionOutcomes(succ, prob, entries, state, slot);
+			}
+		}
+		transition_start[num_states * NUM_ACTIONS] = entries;
+		successors = Arrays.copyOf(succ, entries);
+		probabilities = Arrays.copyOf(prob, entries);
+
+		// Reverse the transitions, listing each predecessor once per state
+		predecessor_start = new int[num_states + 1];
+		int[] last_predecessor = new int[num_states];
+		Arrays.fill(last_predecessor, -1);
+		for (int state = 0; state < num_states; state++) {
+			for (int k = transition_start[state * NUM_ACTIONS]; k < transition_start[(state + 1) * NUM_ACTIONS]; k++) {
+				int target = state_of[successors[k]];
+				if (last_predecessor[target] != state) {
+					last_predecessor[target] = state;
+					predecessor_start[target + 1]++;
+				}
+			}
+		}
+		for (int state = 0; state < num_states; state++) {
+			predecessor_start[state + 1] += predecessor_start[state];
+		}
+
+		predecessors = new int[predecessor_start[num_states]];
+		int[] next_predecessor = Arrays.copyOf(predecessor_start, num_states);
+		Arrays.fill(last_predecessor, -1);
+		for (int state = 0; state < num_states; state++) {
+			for (int k = transition_start[state * NUM_ACTIONS]; k < transition_start[(state + 1) * NUM_ACTIONS]; k++) {
+				int target = state_of[successors[k]];
+				if (last_predecessor[target] != state) {
+					last_predecessor[target] = state;
+					predecessors[next_predecessor[target]++] = state;
+				}
+			}
+		}
+
+		// Split the states by colour of the checkerboard
+		for (int colour = 0; colour < 2; colour++) {
+			int[] states = new int[num_states];
+			int[] starts = new int[num_rows + 1];
+			int colour_count = 0;
+			for (int row = 0; row < num_rows; row++) {
+				starts[row] = colour_count;
+				for (int state = row_start[row]; state < row_start[row + 1]; state++) {
+					int col = cell_of[state] % num_cols;
+					if (((col + row) & 1) == colour) {
+						states[colour_count++] = state;
+					}
+				}
+			}
+			starts[num_rows] = colour_count;
+			colour_states[colour] = Arrays.copyOf(states, colour_count);
+			colour_row_start[colour] = starts;
+		}
+	}
+
+    /**
+     * Returns the number of columns of the grid.
+     * @return The number of columns
+     */
+
+	public int getNumCols() {
+		return num_cols;
+	}
+
+    /**
+     * Returns the number of rows of the grid.
+     * @return The number of rows
+     */
+
+	public int getNumRows() {
+		return num_rows;
+	}
+
+    /**
+     * Returns the discount factor applied to the utilities of the successors.
+     * @return The discount factor
+     */
+
+	public double getDiscount() {
+		return discount;
+	}
+
+    /**
+     * Returns the number of non-wall states.
+     * @return The number of states
+     */
+
+	public int getNumStates() {
+		return num_states;
+	}
+
+    /**
+     * Returns the UtilityStore id of a state.
+     * @param state The state
+     * @return The UtilityStore id of the state
+     */
+
+	public int getCell(int state) {
+		return cell_of[state];
+	}
+
+    /**
+     * Returns the UtilityStore id of every state.
+     * @return The UtilityStore ids, indexed by state
+     */
+
+	public int[] getCellsOfStates() {
+		return cell_of;
+	}
+
+    /**
+     * Returns the state of a UtilityStore id.
+     * @param cell The UtilityStore id
+     * @return The state, or -1 for a wall
+     */
+
+	public int getState(int cell) {
+		return state_of[cell];
+	}
+
+    /**
+     * Returns the first state of a row, states of the row are the ones up to the first state of the next row.
+     * @param row The row index, up to the number of rows
+     * @return The first state of the row
+     */
+
+	public int getRowStart(int row) {
+		return row_start[row];
+	}
+
+    /**
+     * Returns the states of one colour of the checkerboard, in order.
+     * @param colour The colour, 0 or 1
+     * @return The states where (col + row) % 2 equals the colour
+     */
+
+	public int[] getColourStates(int colour) {
+		return colour_states[colour];
+	}
+
+    /**
+     * Returns the position in getColourStates of the first state of a colour in a row.
+     * @param colour The colour, 0 or 1
+     * @param row The row index, up to the number of rows
+     * @return The position of the first state of the colour in the row
+     */
+
+	public int getColourRowStart(int colour, int row) {
+		return colour_row_start[colour][row];
+	}
+
+    /**
+     * Returns the reward of each state.
+     * @return The rewards, indexed by state
+     */
+
+	public double[] getRewards() {
+		return rewards;
+	}
+
+    /**
+     * Changes the reward of a state, for a cell whose reward changed after the model was compiled.
+     * @param state The state
+     * @param reward The new reward
+     */
+
+	public void setReward(int state, double reward) {
+		rewards[state] = reward;
+	}
+
+    /**
+     * Turns the open cell of a state into a wall without compiling the model again, which would number the states anew.
+     * The state keeps its number, with no reward and every action leading back to itself, so its utility stays 0,
+     * and the moves of its neighbours into it become bumps. Every (state, slot) keeps its entries, those no longer
+     * needed becoming self-loops with no probability, and the neighbours stay listed as predecessors of the state.
+     * @param state The state
+     */
+
+	public synchronized void blockState(int state) {
+		int cell = cell_of[state];
+		blocked[state] = true;
+		move_cells = null;
+		rewards[state] = 0.000;
+		for (int slot = 0; slot < NUM_ACTIONS; slot++) {
+			int first = transition_start[state * NUM_ACTIONS + slot];
+			for (int k = first; k < transition_start[state * NUM_ACTIONS + slot + 1]; k++) {
+				successors[k] = cell;
+				probabilities[k] = k == first ? 1.000 : 0.000;
+			}
+		}
+
+		// Bumps have at most as many distinct outcomes as moves, so the new outcomes fit in the old entries
+		int col = cell % num_cols;
+		int row = cell / num_cols;
+		int[][] neighbours = { { col, row - 1 }, { col, row + 1 }, { col - 1, row }, { col + 1, row } };
+		int[] succ = new int[3];
+		double[] prob = new double[3];
+		for (int[] neighbour : neighbours) {
+			int next = openState(neighbour[0], neighbour[1]);
+			if (next < 0) {
+				continue;
+			}
+			for (int slot = 0; slot < NUM_ACTIONS; slot++) {
+				int first = transition_start[next * NUM_ACTIONS + slot];
+				int count = addActionOutcomes(succ, prob, 0, next, slot);
+				for (int k = first; k < transition_start[next * NUM_ACTIONS + slot + 1]; k++) {
+					successors[k] = k - first < count ? succ[k - first] : cell_of[next];
+					probabilities[k] = k - first < count ? prob[k - first] : 0.000;
+				}
+			}
+		}
+	}
+
+    /**
+     * Returns whether a state was turned into a wall after the model was compiled.
+     * @param state The state
+     * @return True if the state is blocked
+     */
+
+	public boolean isBlocked(int state) {
+		return blocked[state];
+	}
+
+    /**
+     * Returns the cell reached by each move of every state, a plane per direction in the order UP, DOWN, LEFT, RIGHT,
+     * each indexed by state, bumps into a wall or the border already folded in as the cell of the state itself,
+     * and every move of a blocked state leading back to it.
+     * Unlike the transitions, the outcomes of an action are not merged, so a kernel can read the same four planes
+     * for every state, and policy iteration can sum the outcomes in the order of the reference backups.
+     * The planes are built on first use.
+     * @return The planes of UtilityStore ids
+     */
+
+	public synchronized int[][] getMoveCells() {
+		if (move_cells == null) {
+			int[][] planes = new int[NUM_ACTIONS][num_states];
+			for (int state = 0; state < num_states; state++) {
+				int cell = cell_of[state];
+				int col = cell % num_cols;
+				int row = cell / num_cols;
+				boolean open = !blocked[state];
+				planes[0][state] = open && openState(col, row - 1) >= 0 ? cellId(col, row - 1) : cell;
+				planes[1][state] = open && openState(col, row + 1) >= 0 ? cellId(col, row + 1) : cell;
+				planes[2][state] = open && openState(col - 1, row) >= 0 ? cellId(col - 1, row) : cell;
+				planes[3][state] = open && openState(col + 1, row) >= 0 ? cellId(col + 1, row) : cell;
+			}
+			move_cells = planes;
+		}
+		return move_cells;
+	}
+
+    /**
+     * Returns the states in the order a Jacobi sweep visits them, see StateOrder. The order is built on first use.
+     * Blocking a state keeps its number, so the order stays valid.
+     * @param order The order of the sweep
+     * @return The states in the order they are visited
+     */
+
+	public synchronized int[] getStateOrder(SweepOrder order) {
+		if (state_orders[order.ordinal()] == null) {
+			state_orders[order.ordinal()] = StateOrder.build(this, order);
+		}
+		return state_orders[order.ordinal()];
+	}
+
+    /**
+     * Returns where the transitions of each (state, slot) start, (state * NUM_ACTIONS + slot) indexing the array.
+     * @return The start of the transitions, followed by the number of transitions
+     */
+
+	public int[] getTransitionStart() {
+		return transition_start;
+	}
+
+    /**
+     * Returns the successor of each transition, as a UtilityStore id.
+     * @return The successors
+     */
+
+	public int[] getSuccessors() {
+		return successors;
+	}
+
+    /**
+     * Returns the probability of each transition.
+     * @return The probabilities
+     */
+
+	public double[] getProbabilities() {
+		return probabilities;
+	}
+
+    /**
+     * Returns where the predecessors of each state start in getPredecessors.
+     * @return The start of the predecessors, followed by the number of predecessors
+     */
+
+	public int[] getPredecessorStart() {
+		return predecessor_start;
+	}
+
+    /**
+     * Returns the predecessors of every state, i.e. the states with a transition into it, including itself on a bump.
+     * @return The predecessors
+     */
+
+	public int[] getPredecessors() {
+		return predecessors;
+	}
+
+    /**
+     * Returns the action code, as stored in a UtilityStore, of a slot.
+     * @param slot The slot, from 0 to NUM_ACTIONS - 1
+     * @return The action code
+     */
+
+	public static byte getActionCode(int slot) {
+		return AgentAction.toCode(SLOT_ACTIONS[slot]);
+	}
+
+    /**
+     * Returns the slot of an action code, as stored in a UtilityStore.
+     * @param code The action code
+     * @return The slot of the action
+     */
+
+	public static int getSlot(byte code) {
+		return CODE_SLOTS[code];
+	}
+
+    /**
+     * Returns the set of open neighbours of a state, which its outcomes depend on alone, see getMoveOutcomeStart.
+     * @param up True if the cell above is open
+     * @param down True if the cell below is open
+     * @param left True if the cell to the left is open
+     * @param right True if the cell to the right is open
+     * @return The open moves, from 0 to NUM_OPEN_MOVES - 1
+     */
+
+	public static int getOpenMoves(boolean up, boolean down, boolean left, boolean right) {
+		return (up ? 1 : 0) | (down ? 2 : 0) | (left ? 4 : 0) | (right ? 8 : 0);
+	}
+
+    /**
+     * Returns where the outcomes of each (open moves, slot) start, (open moves * NUM_ACTIONS + slot) indexing the array,
+     * for solvers backing up states of grids too large to compile. The outcomes are the transitions of every state
+     * with those open neighbours, with moves in place of successors.
+     * @return The start of the outcomes, followed by the number of outcomes
+     */
+
+	public static int[] getMoveOutcomeStart() {
+		return MOVE_OUTCOME_START;
+	}
+
+    /**
+     * Returns the move of each outcome, from MOVE_UP to MOVE_DOWN, in the order of the ids of the cells they reach.
+     * @return The moves
+     */
+
+	public static int[] getMoveOutcomes() {
+		return MOVE_OUTCOMES;
+	}
+
+    /**
+     * Returns the probability of each outcome.
+     * @return The probabilities
+     */
+
+	public static double[] getMoveProbabilities() {
+		return MOVE_PROBABILITIES;
+	}
+
+	// UtilityStore id of a cell, the store numbers cells row by row
+	private int cellId(int col, int row) {
+		return row * num_cols + col;
+	}
+
+	// State of a cell if it is in the grid and open, or -1
+	private int openState(int col, int row) {
+		if (col < 0 || row < 0 || col >= num_cols || row >= num_rows) {
+			return -1;
+		}
+		int state = state_of[cellId(col, row)];
+		return state >= 0 && !blocked[state] ? state : -1;
+	}
+
+	// Adds the outcomes of an action of a state from an entry, merged and sorted by successor, and returns the next entry
+	private int addActionOutcomes(int[] succ, double[] prob, int entries, int state, int slot) {
+		int cell = cell_of[state];
+		int col = cell % num_cols;
+		int row = cell / num_cols;
+		int open_moves = getOpenMoves(openState(col, row - 1) >= 0, openState(col, row + 1) >= 0,
+		openState(col - 1, row) >= 0, openState(col + 1, row) >= 0);
+
+		// Moves are in the order of the cells they reach, so the outcomes stay sorted by successor
+		int end = MOVE_OUTCOME_START[open_moves * NUM_ACTIONS + slot + 1];
+		for (int k = MOVE_OUTCOME_START[open_moves * NUM_ACTIONS + slot]; k < end; k++) {
+			switch (MOVE_OUTCOMES[k]) {
+				case MOVE_UP:
+				succ[entries] = cell - num_cols;
+				break;
+
+				case MOVE_LEFT:
+				succ[entries] = cell - 1;
+				break;
+
+				case MOVE_RIGHT:
+				succ[entries] = cell + 1;
+				break;
+
+				case MOVE_DOWN:
+				succ[entries] = cell + num_cols;
+				break;
+
+				default:
+				succ[entries] = cell;
+				break;
+			}
+			prob[entries++] = MOVE_PROBABILITIES[k];
+		}
+		return entries;
+	}
+
+	// Adds the outcomes of an action of a state with some open neighbours from an entry, as moves merged and sorted
+	// in the order of the cells they reach, and returns the next entry
+	private static int addMoveOutcomes(int[] moves, double[] prob, int entries, int openMoves, int slot) {
+
+		// Move in each direction, staying on the state where it bumps
+		int up = (openMoves & 1) != 0 ? MOVE_UP : MOVE_STAY;
+		int down = (openMoves & 2) != 0 ? MOVE_DOWN : MOVE_STAY;
+		int left = (openMoves & 4) != 0 ? MOVE_LEFT : MOVE_STAY;
+		int right = (openMoves & 8) != 0 ? MOVE_RIGHT : MOVE_STAY;
+		int first = entries;
+
+		// Outcomes of each action as moveUpUtil, moveDownUtil, moveLeftUtil and moveRightUtil list them, merged where they
+		// land on the same cell and then sorted by successor, so the sums of the backups are not in the order of those methods
+		switch (SLOT_ACTIONS[slot]) {
+			case UP:
+			entries = addOutcome(moves, prob, first, entries, up, IterationConstants.INTENDED_PROBABILITY);
+			entries = addOutcome(moves, prob, first, entries, left, IterationConstants.LEFT_PROBABILITY);
+			entries = addOutcome(moves, prob, first, entries, right, IterationConstants.RIGHT_PROBABILITY);
+			break;
+
+			case DOWN:
+			entries = addOutcome(moves, prob, first, entries, down, IterationConstants.INTENDED_PROBABILITY);
+			entries = addOutcome(moves, prob, first, entries, left, IterationConstants.LEFT_PROBABILITY);
+			entries = addOutcome(moves, prob, first, entries, right, IterationConstants.RIGHT_PROBABILITY);
+			break;
+
+			case LEFT:
+			entries = addOutcome(moves, prob, first, entries, left, IterationConstants.INTENDED_PROBABILITY);
+			entries = addOutcome(moves, prob, first, entries, up, IterationConstants.RIGHT_PROBABILITY);
+			entries = addOutcome(moves, prob, first, entries, down, IterationConstants.LEFT_PROBABILITY);
+			break;
+
+			case RIGHT:
+			entries = addOutcome(moves, prob, first, entries, right, IterationConstants.INTENDED_PROBABILITY);
+			entries = addOutcome(moves, prob, first, entries, down, IterationConstants.RIGHT_PROBABILITY);
+			entries = addOutcome(moves, prob, first, entries, up, IterationConstants.LEFT_PROBABILITY);
+			break;
+		}
+		sortOutcomes(moves, prob, first, entries);
+		return entries;
+	}
+
+	// Sorts the outcomes of a (state, action) by successor, so actions with the same outcomes sum them in the same order
+	private static void sortOutcomes(int[] succ, double[] prob, int first, int entries) {
+		for (int i = first + 1; i < entries; i++) {
+			int cell = succ[i];
+			double probability = prob[i];
+			int k = i - 1;
+			while (k >= first && succ[k] > cell) {
+				succ[k + 1] = succ[k];
+				prob[k + 1] = prob[k];
+				k--;
+			}
+			succ[k + 1] = cell;
+			prob[k + 1] = probability;
+		}
+	}
+
+	// Adds an outcome to the transitions of a (state, action), merging it with an earlier outcome on the same cell
+	private static int addOutcome(int[] succ, double[] prob, int first, int entries, int cell, double probability) {
+		if (probability == 0.000) {
+			return entries;
+		}
+		for (int k = first; k < entries; k++) {
+			if (succ[k] == cell) {
+				prob[k] += probability;
+				return entries;
+			}
+		}
+		succ[entries] = cell;
+		prob[entries] = probability;
+		return entries + 1;
+	}
+}
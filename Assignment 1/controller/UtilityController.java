@@ -12,23 +12,41 @@ import java.util.List;
 
 import globals.GridConstants;
 import globals.IterationConstants;
+import globals.SweepMode;
+import globals.SweepOrder;
 import grid.Utility;
+import grid.UtilityStore;
 import grid.AgentState;
 import grid.AgentAction;
 
 public class UtilityController {
 
+	// Kernel of the Jacobi sweeps, null for the scalar backups below
+	private static final BellmanKernel KERNEL = IterationConstants.VECTOR_KERNEL ? BellmanKernel.loadVector() : null;
+
+	// Order of the Jacobi sweeps, the vectorized kernel only sweeping rows
+	private static final SweepOrder ORDER = IterationConstants.SWEEP_ORDER;
+
+	// Sideways moves of each slot, as planes of TransitionModel.getMoveCells, and their probabilities, in the order
+	// moveUpUtil, moveDownUtil, moveLeftUtil and moveRightUtil add them after the intended move
+	private static final int[][] SIDE_MOVES = { { 2, 3 }, { 2, 3 }, { 0, 1 }, { 1, 0 } };
+	private static final double[][] SIDE_PROBABILITIES = {
+		{ IterationConstants.LEFT_PROBABILITY, IterationConstants.RIGHT_PROBABILITY },
+		{ IterationConstants.LEFT_PROBABILITY, IterationConstants.RIGHT_PROBABILITY },
+		{ IterationConstants.RIGHT_PROBABILITY, IterationConstants.LEFT_PROBABILITY },
+		{ IterationConstants.RIGHT_PROBABILITY, IterationConstants.LEFT_PROBABILITY } };
+
     /**
      * Calculates the utility all possible actions and returns action with maximum utility.
      * 
      * @param col         The column index of the current state
      * @param row         The row index of the current state
-     * @param curr_utils  The current utility array
+     * @param curr_utils  The current utility store
      * @param grid        The grid of states
      * @return            The Utility object with the highest utility
      */
 
-	public static Utility calcBestUtil(final int col, final int row, final Utility[][] curr_utils, final AgentState[][] grid) {
+	public static Utility calcBestUtil(final int col, final int row, final UtilityStore curr_utils, final AgentState[][] grid) {
 
         // Create a list to store the utilities for each action
 		List<Utility> utils = new ArrayList<>();
@@ -54,12 +72,12 @@ public class UtilityController {
      * @param action        The action to calculate the utility for
      * @param col           The column index of the current state
      * @param row           The row index of the current state
-     * @param action_utils  The current utility array for the action
+     * @param action_utils  The current utility store for the action
      * @param grid          The grid of states
      * @return              The Utility object for the given action
      */
 
-	public static Utility calcActionUtil(final AgentAction action, final int col, final int row, final Utility[][] action_utils, 
+	public static Utility calcActionUtil(final AgentAction action, final int col, final int row, final UtilityStore action_utils, 
 	final AgentState[][] grid) {
 
 		Utility action_util = null;
@@ -87,46 +105,450 @@ public class UtilityController {
 	}
 
 	/**
-     * Use Bellman Equation to calculate the next utility value.
+     * Bellman backup of a state: calculates the utility of all four actions from the compiled transitions
+     * in a single pass and writes the maximum utility and its action to the new utility store, without allocating.
+     * Ties keep the first action in the order UP, DOWN, LEFT, RIGHT, like calcBestUtil.
      * 
-     * @param utils 	The current utility list
-     * @param grid    	The grid of states
-     * @return        	The next utility list
+     * @param model       The transition model of the grid
+     * @param state       The state, as numbered by the model
+     * @param curr_utils  The current utility store
+     * @param new_utils   The utility store the best utility and action are written to
+     * @return            The highest utility
      */
 
-	public static Utility[][] calcNextUtil(final Utility[][] utils, final AgentState[][] grid) {
+	public static double backupBestUtil(final TransitionModel model, final int state, final UtilityStore curr_utils, 
+	final UtilityStore new_utils) {
 
-		Utility[][] curr_utils = new Utility[GridConstants.TOTAL_NUM_COLS][GridConstants.TOTAL_NUM_ROWS];
-		
-		// Initializes the current utility array with new utility objects
-		for (int col = 0; col < GridConstants.TOTAL_NUM_COLS; col++) {
-			for (int row = 0; row < GridConstants.TOTAL_NUM_ROWS; row++) {
-				curr_utils[col][row] = new Utility();
+		return backupBestUtil(model.getRewards()[state], model.getDiscount(), model.getTransitionStart(),
+		model.getSuccessors(), model.getProbabilities(), state * TransitionModel.NUM_ACTIONS, curr_utils.utils(),
+		model.getCell(state), new_utils.utils(), new_utils.actions());
+
+	}
+
+	/**
+     * Bellman backup of a state from its outcomes, listed like the transitions of TransitionModel: the outcomes of
+     * action slot s are the entries outcome_start[first_entry + s] to the next start, each reading the utility of its
+     * successor in utils. The model backs up its states with its transitions and successors that are UtilityStore ids,
+     * OffHeapSolver the states of grids too large to compile with the move outcomes of TransitionModel and the
+     * utilities of the five cells a state moves to. Ties keep the first action in the order UP, DOWN, LEFT, RIGHT.
+     * 
+     * @param reward         The reward of the state
+     * @param discount       The discount factor
+     * @param outcome_start  Where the outcomes of each action start
+     * @param successors     The successor of each outcome, an index into utils
+     * @param probabilities  The probability of each outcome
+     * @param first_entry    The index in outcome_start of the outcomes of the first action of the state
+     * @param utils          The current utilities of the successors
+     * @param cell           The index the best utility and action are written to
+     * @param new_utils      The utilities the best utility is written to
+     * @param new_actions    The action codes the best action is written to
+     * @return               The highest utility
+     */
+
+	public static double backupBestUtil(final double reward, final double discount, final int[] outcome_start,
+	final int[] successors, final double[] probabilities, final int first_entry, final double[] utils, final int cell,
+	final double[] new_utils, final byte[] new_actions) {
+
+		int best_slot = 0;
+		double best_util = slotUtil(reward, discount, outcome_start, successors, probabilities, first_entry, utils);
+		for (int slot = 1; slot < TransitionModel.NUM_ACTIONS; slot++) {
+			double slot_util = slotUtil(reward, discount, outcome_start, successors, probabilities, first_entry + slot, utils);
+			if (slot_util > best_util) {
+				best_slot = slot;
+				best_util = slot_util;
 			}
 		}
 
-		Utility[][] new_utils = new Utility[GridConstants.TOTAL_NUM_COLS][GridConstants.TOTAL_NUM_ROWS];
+		new_utils[cell] = best_util;
+		new_actions[cell] = TransitionModel.getActionCode(best_slot);
+		return best_util;
+
+	}
+
+    /**
+     * Calculates the utility of the action stated in the policy for a state, without allocating.
+     * Gives the same bits as calcActionUtil, see policySlotUtil.
+     * 
+     * @param model         The transition model of the grid
+     * @param state         The state, as numbered by the model
+     * @param action_utils  The current utility store, holding the policy
+     * @return              The utility of the policy action
+     */
+
+	public static double calcPolicyUtil(final TransitionModel model, final int state, final UtilityStore action_utils) {
+		return calcPolicyUtil(model, model.getMoveCells(), state, action_utils);
+	}
+
+	// Utility of the action stated in the policy, reading the move planes of the model fetched once per sweep
+	private static double calcPolicyUtil(final TransitionModel model, final int[][] move_cells, final int state,
+	final UtilityStore action_utils) {
+
+		byte action = action_utils.getActionCode(model.getCell(state));
+		return policySlotUtil(model, move_cells, state, TransitionModel.getSlot(action), action_utils.utils());
+
+	}
+
+    /**
+     * Policy improvement of a state: replaces the action stated in the policy with the best action
+     * if the best action has a strictly higher utility, without allocating.
+     * Gives the same result as comparing calcBestUtil with calcActionUtil, as the sums are theirs, see policySlotUtil.
+     * 
+     * @param model   The transition model of the grid
+     * @param state   The state, as numbered by the model
+     * @param utils   The utility store holding the evaluated policy, updated in place
+     * @return        True if the action of the state was changed
+     */
+
+	public static boolean improvePolicyAction(final TransitionModel model, final int state, final UtilityStore utils) {
+		return improvePolicyAction(model, state, utils, 0.000);
+	}
+
+    /**
+     * Policy improvement of a state: replaces the action stated in the policy with the best action
+     * if the best action beats the utility of the policy by more than a margin, so that errors of
+     * the evaluation below the margin cannot flip actions back and forth.
+     * 
+     * @param model   The transition model of the grid
+     * @param state   The state, as numbered by the model
+     * @param utils   The utility store holding the evaluated policy, updated in place
+     * @param margin  The smallest gain in utility the best action must beat
+     * @return        True if the action of the state was changed
+     */
 
-		// Copies the utility and action values from the previous utility array to the new utility array
-		for (int col = 0; col < GridConstants.TOTAL_NUM_COLS; col++) {
-			for (int row = 0; row < GridConstants.TOTAL_NUM_ROWS; row++) {
-				new_utils[col][row] = new Utility(utils[col][row].getAction(), utils[col][row].getUtil());
+	public static boolean improvePolicyAction(final TransitionModel model, final int state, final UtilityStore utils, 
+	final double margin) {
+
+		int cell = model.getCell(state);
+		byte policy_action = utils.getActionCode(cell);
+		int policy_slot = policy_action == UtilityStore.NO_ACTION ? -1 : TransitionModel.getSlot(policy_action);
+
+		// A state without an action always takes the best one
+		int[][] move_cells = model.getMoveCells();
+		double policy_util = Double.NEGATIVE_INFINITY;
+		int best_slot = 0;
+		double best_util = Double.NEGATIVE_INFINITY;
+		for (int slot = 0; slot < TransitionModel.NUM_ACTIONS; slot++) {
+			double slot_util = policySlotUtil(model, move_cells, state, slot, utils.utils());
+			if (slot == 0 || slot_util > best_util) {
+				best_slot = slot;
+				best_util = slot_util;
 			}
+			if (slot == policy_slot) {
+				policy_util = slot_util;
+			}
+		}
+
+		if (best_util > policy_util + margin) {
+			utils.setActionCode(cell, TransitionModel.getActionCode(best_slot));
+			return true;
 		}
+		return false;
+
+	}
+
+    /**
+     * Calculates the highest utility over all four actions of a state, without writing it anywhere.
+     * The Bellman residual of the state is the difference between this and its current utility.
+     * 
+     * @param model   The transition model of the grid
+     * @param state   The state, as numbered by the model
+     * @param utils   The current utility store
+     * @return        The highest utility
+     */
+
+	public static double calcMaxUtil(final TransitionModel model, final int state, final UtilityStore utils) {
+
+		double max_util = slotUtil(model, state, 0, utils.utils());
+		for (int slot = 1; slot < TransitionModel.NUM_ACTIONS; slot++) {
+			max_util = Math.max(max_util, slotUtil(model, state, slot, utils.utils()));
+		}
+		return max_util;
+
+	}
+
+    /**
+     * Fits utilities and actions taken from another layout of the grid, such as a cached solution, to the walls of a
+     * model. Walls get no utility and no action, as the sweeps never write them, and open cells without an action,
+     * walls of the other layout, get the best action and its utility from their neighbours, so that a policy
+     * can be evaluated from them. Utilities and actions of the same layout are left as they are.
+     * 
+     * @param model   The transition model of the grid
+     * @param utils   The utility store, updated in place
+     * @return        The number of cells changed
+     */
+
+	public static int fitToWalls(final TransitionModel model, final UtilityStore utils) {
+
+		int changed = 0;
+		for (int cell = 0; cell < utils.size(); cell++) {
+			int state = model.getState(cell);
+			boolean wall = state < 0 || model.isBlocked(state);
+			if (wall && (utils.getUtil(cell) != 0.000 || utils.getActionCode(cell) != UtilityStore.NO_ACTION)) {
+				utils.setUtil(cell, 0.000);
+				utils.setActionCode(cell, UtilityStore.NO_ACTION);
+				changed++;
+			}
+		}
+		for (int state = 0; state < model.getNumStates(); state++) {
+			int cell = model.getCell(state);
+			if (!model.isBlocked(state) && utils.getActionCode(cell) == UtilityStore.NO_ACTION) {
+				utils.setUtil(cell, calcMaxUtil(model, state, utils));
+				improvePolicyAction(model, state, utils);
+				changed++;
+			}
+		}
+		return changed;
+
+	}
+
+	/*
+	 * Utility of one action of a state: its reward plus the discounted utilities of its successors, summed in the
+	 * order of the transitions, i.e. by successor with the outcomes landing on one cell merged into one probability.
+	 * moveUpUtil, moveDownUtil, moveLeftUtil and moveRightUtil weight and add the three outcomes one by one in the order
+	 * of the action, so the two only give the same bits when the outcomes land on distinct cells already in the order of
+	 * successor. Otherwise the utility differs from theirs by rounding alone, within a few units in the last place of
+	 * the largest term, and ties between actions may be broken apart by it, as Check.BELLMAN_BACKUP checks state by
+	 * state. That the 60 x 60 results of value iteration stay byte-identical to the reference is checked by
+	 * Check.REFERENCE_SOLVE. Policy iteration sums with policySlotUtil instead.
+	 */
+
+	private static double slotUtil(final TransitionModel model, final int state, final int slot, final double[] utils) {
+
+		return slotUtil(model.getRewards()[state], model.getDiscount(), model.getTransitionStart(), model.getSuccessors(),
+		model.getProbabilities(), state * TransitionModel.NUM_ACTIONS + slot, utils);
+
+	}
+
+	/*
+	 * Utility of one action of a state, summed like moveUpUtil, moveDownUtil, moveLeftUtil and moveRightUtil: the
+	 * intended move and then the two sideways ones, each weighted and added on its own even where they bump into the
+	 * same wall, reading the move planes of the model. Policy iteration evaluates and improves with these, since its
+	 * policies change on near-ties that the merged sums of slotUtil would break apart differently from the reference,
+	 * which Check.REFERENCE_SOLVE checks on the 60 x 60 grid.
+	 */
+
+	private static double policySlotUtil(final TransitionModel model, final int[][] move_cells, final int state,
+	final int slot, final double[] utils) {
+
+		double slot_util = 0.000;
+		slot_util += IterationConstants.INTENDED_PROBABILITY * utils[move_cells[slot][state]];
+		slot_util += SIDE_PROBABILITIES[slot][0] * utils[move_cells[SIDE_MOVES[slot][0]][state]];
+		slot_util += SIDE_PROBABILITIES[slot][1] * utils[move_cells[SIDE_MOVES[slot][1]][state]];
+		return model.getRewards()[state] + model.getDiscount() * slot_util;
+
+	}
+
+	// Utility of the action whose outcomes start at outcome_start[entry], see backupBestUtil
+	private static double slotUtil(final double reward, final double discount, final int[] outcome_start,
+	final int[] successors, final double[] probabilities, final int entry, final double[] utils) {
+
+		double slot_util = 0.000;
+		int end = outcome_start[entry + 1];
+		for (int k = outcome_start[entry]; k < end; k++) {
+			slot_util += probabilities[k] * utils[successors[k]];
+		}
+		return reward + discount * slot_util;
+
+	}
+
+	/**
+     * Value iteration sweep over a band of rows: Bellman backup of every state in the rows, 
+     * reading the current utility store and writing the new utility store.
+     * Passing the same store twice updates the utilities in place (Gauss-Seidel). Sweeps between two stores
+     * (Jacobi) go through the vectorized kernel when it is enabled and available.
+     * 
+     * @param model       The transition model of the grid
+     * @param from_row    The first row of the band
+     * @param to_row      The row after the last row of the band
+     * @param curr_utils  The current utility store
+     * @param new_utils   The utility store the best utilities and actions are written to
+     * @return            The largest change in utility within the band
+     */
+
+	public static double calcBestUtils(final TransitionModel model, final int from_row, final int to_row, 
+	final UtilityStore curr_utils, final UtilityStore new_utils) {
+
+		if (KERNEL != null && curr_utils != new_utils) {
+			return KERNEL.calcBestUtils(model, from_row, to_row, curr_utils, new_utils);
+		}
+
+		// Initialize delta to minimum double value first
+		double delta = Double.MIN_VALUE;
+
+		int to_state = model.getRowStart(to_row);
+		for (int state = model.getRowStart(from_row); state < to_state; state++) {
+
+			// Read before the backup, which may overwrite it when updating in place
+			double current_util = curr_utils.getUtil(model.getCell(state));
+			double updated_util = backupBestUtil(model, state, curr_utils, new_utils);
+
+			// Update delta, if the updated delta value is larger than the current one
+			delta = Math.max(delta, Math.abs(updated_util - current_util));
+		}
+		return delta;
+
+	}
+
+	/**
+     * Jacobi value iteration sweep over a range of the states of a sweep order: Bellman backup of every state in the
+     * range, reading the current utility store and writing the new utility store, see StateOrder.
+     * 
+     * @param model       The transition model of the grid
+     * @param states      The states in the order of the sweep
+     * @param from_index  The index of the first state of the range
+     * @param to_index    The index after the last state of the range
+     * @param curr_utils  The current utility store
+     * @param new_utils   The utility store the best utilities and actions are written to, not the current one
+     * @return            The largest change in utility within the range
+     */
+
+	public static double calcBestUtilsInOrder(final TransitionModel model, final int[] states, final int from_index, 
+	final int to_index, final UtilityStore curr_utils, final UtilityStore new_utils) {
+
+		// Initialize delta to minimum double value first
+		double delta = Double.MIN_VALUE;
+
+		for (int index = from_index; index < to_index; index++) {
+			int state = states[index];
+			double current_util = curr_utils.getUtil(model.getCell(state));
+			double updated_util = backupBestUtil(model, state, curr_utils, new_utils);
+			delta = Math.max(delta, Math.abs(updated_util - current_util));
+		}
+		return delta;
+
+	}
+
+	/**
+     * In-place value iteration sweep over the cells of one colour of a checkerboard in a band of rows,
+     * i.e. the cells where (col + row) % 2 equals the colour. The neighbours of these cells all have the other
+     * colour, so the cells of one colour can be updated in any order, or in parallel, with the same result.
+     * 
+     * @param model       The transition model of the grid
+     * @param from_row    The first row of the band
+     * @param to_row      The row after the last row of the band
+     * @param colour      The colour of the cells to update, 0 or 1
+     * @param utils       The utility store, updated in place
+     * @return            The largest change in utility within the band
+     */
+
+	public static double calcBestUtilsOfColour(final TransitionModel model, final int from_row, final int to_row, 
+	final int colour, final UtilityStore utils) {
+
+		// Initialize delta to minimum double value first
+		double delta = Double.MIN_VALUE;
+
+		int[] states = model.getColourStates(colour);
+		int to_index = model.getColourRowStart(colour, to_row);
+		for (int index = model.getColourRowStart(colour, from_row); index < to_index; index++) {
+			int state = states[index];
+			double current_util = utils.getUtil(model.getCell(state));
+			double updated_util = backupBestUtil(model, state, utils, utils);
+
+			// Update delta, if the updated delta value is larger than the current one
+			delta = Math.max(delta, Math.abs(updated_util - current_util));
+		}
+		return delta;
+
+	}
+
+	/**
+     * One value iteration sweep over the whole grid in the given order, on the pool of threads if there is one.
+     * The Jacobi order reads the current store and writes the new store, the other orders update the current
+     * store in place and leave the new store untouched.
+     * 
+     * @param sweep_mode      The order to sweep the grid in
+     * @param parallel_sweep  The pool of threads to sweep with, or null to sweep on this thread
+     * @param model           The transition model of the grid
+     * @param curr_utils      The current utility store
+     * @param new_utils       The utility store written by a Jacobi sweep
+     * @return                The largest change in utility over the grid
+     */
+
+	public static double sweepBestUtils(final SweepMode sweep_mode, final ParallelSweep parallel_sweep, 
+	final TransitionModel model, final UtilityStore curr_utils, final UtilityStore new_utils) {
+
+		switch (sweep_mode) {
+			case GAUSS_SEIDEL:
+			// Each row reads the rows updated before it, so this order cannot be split over threads
+			return calcBestUtils(model, 0, model.getNumRows(), curr_utils, curr_utils);
+
+			case RED_BLACK:
+			if (parallel_sweep != null) {
+				return parallel_sweep.calcBestUtilsRedBlack(model, curr_utils);
+			}
+			return Math.max(calcBestUtilsOfColour(model, 0, model.getNumRows(), 0, curr_utils),
+			calcBestUtilsOfColour(model, 0, model.getNumRows(), 1, curr_utils));
+
+			default:
+			// Every state reads the previous sweep only, so visiting them in another order gives the same utilities
+			if (ORDER != SweepOrder.ROWS) {
+				int[] states = model.getStateOrder(ORDER);
+				if (parallel_sweep != null) {
+					return parallel_sweep.calcBestUtilsInOrder(model, states, curr_utils, new_utils);
+				}
+				return calcBestUtilsInOrder(model, states, 0, states.length, curr_utils, new_utils);
+			}
+			if (parallel_sweep != null) {
+				return parallel_sweep.calcBestUtils(model, curr_utils, new_utils);
+			}
+			return calcBestUtils(model, 0, model.getNumRows(), curr_utils, new_utils);
+		}
+
+	}
+
+	/**
+     * Policy evaluation sweep: simplified Bellman update of every state with the action stated in the policy,
+     * reading the current utility store and writing the new utility store.
+     * 
+     * @param model       The transition model of the grid
+     * @param curr_utils  The current utility store, holding the policy
+     * @param new_utils   The utility store the utilities are written to, holding the same policy
+     * @return            The largest change in utility over the grid
+     */
+
+	public static double calcPolicyUtils(final TransitionModel model, final UtilityStore curr_utils, 
+	final UtilityStore new_utils) {
+
+		// Initialize delta to minimum double value first
+		double delta = Double.MIN_VALUE;
+
+		// Like the value iteration sweeps, in the order of the Jacobi sweeps, null being row by row
+		int[] states = ORDER != SweepOrder.ROWS ? model.getStateOrder(ORDER) : null;
+		int[][] move_cells = model.getMoveCells();
+
+		for (int index = 0; index < model.getNumStates(); index++) {
+			int state = states != null ? states[index] : index;
+			int cell = model.getCell(state);
+			double updated_util = calcPolicyUtil(model, move_cells, state, curr_utils);
+			new_utils.setUtil(cell, updated_util);
+			delta = Math.max(delta, Math.abs(updated_util - curr_utils.getUtil(cell)));
+		}
+		return delta;
+
+	}
+
+	/**
+     * Use Bellman Equation to calculate the next utility value.
+     * 
+     * @param utils 	The current utility store
+     * @param model    	The transition model of the grid
+     * @return        	The next utility store
+     */
+
+	public static UtilityStore calcNextUtil(final UtilityStore utils, final TransitionModel model) {
+
+		// Two buffers holding the same actions and walls, so they can be swapped between sweeps
+		UtilityStore curr_utils = utils.copy();
+		UtilityStore new_utils = utils.copy();
 
 		int k = 0;
 		do {
-			UtilityController.updateUtils(new_utils, curr_utils);
+			UtilityStore temp = curr_utils;
+			curr_utils = new_utils;
+			new_utils = temp;
 
 			// Updates the utility for each state based on the action stated in the policy
-			for (int row = 0; row < GridConstants.TOTAL_NUM_ROWS; row++) {
-				for (int col = 0; col < GridConstants.TOTAL_NUM_COLS; col++) {
-					if (!grid[col][row].isWall()) {
-						AgentAction action = curr_utils[col][row].getAction();
-						new_utils[col][row] = UtilityController.calcActionUtil(action, col, row, curr_utils, grid);
-					}
-				}
-			}
+			calcPolicyUtils(model, curr_utils, new_utils);
 			k++;
 		} while(k < IterationConstants.K);
 		return new_utils;
@@ -138,12 +560,12 @@ public class UtilityController {
 	 * 
 	 * @param col 			The column of the current state
 	 * @param row 			The row of the current state
-	 * @param curr_utils 	The current utility array
+	 * @param curr_utils 	The current utility store
 	 * @param grid 			The state grid
 	 * @return 				The utility of attempting to move up
 	*/
 
-	public static double moveUpUtil(final int col, final int row, final Utility[][] curr_utils, final AgentState[][] grid) {
+	public static double moveUpUtil(final int col, final int row, final UtilityStore curr_utils, final AgentState[][] grid) {
 
 		double up_util = 0.000;
 
@@ -168,12 +590,12 @@ public class UtilityController {
 	 * 
 	 * @param col 			The column index of the state
 	 * @param row 			The row index of the state
-	 * @param curr_utils 	The current utility array
+	 * @param curr_utils 	The current utility store
 	 * @param grid 			The grid of states
 	 * @return 				The utility value for attempting to move down
 	 */
 
-	public static double moveDownUtil(final int col, final int row, final Utility[][] curr_utils, final AgentState[][] grid) {
+	public static double moveDownUtil(final int col, final int row, final UtilityStore curr_utils, final AgentState[][] grid) {
 
 		double down_util = 0.000;
 
@@ -198,12 +620,12 @@ public class UtilityController {
 	 * 
 	 * @param col 			The column index of the state
 	 * @param row 			The row index of the state
-	 * @param curr_utils 	The current utility array
+	 * @param curr_utils 	The current utility store
 	 * @param grid 			The grid of states
 	 * @return 				The utility value for attempting to move left
 	 */
 
-	public static double moveLeftUtil(final int col, final int row, final Utility[][] curr_utils, final AgentState[][] grid) {
+	public static double moveLeftUtil(final int col, final int row, final UtilityStore curr_utils, final AgentState[][] grid) {
 
 		double left_util = 0.000;
 
@@ -228,12 +650,12 @@ public class UtilityController {
 	 * 
 	 * @param col 			The column index of the state
 	 * @param row 			The row index of the state
-	 * @param curr_utils 	The current utility array
+	 * @param curr_utils 	The current utility store
 	 * @param grid 			The grid of states
 	 * @return 				The utility value for attempting to move right
 	 */
 
-	public static double moveRightUtil(final int col, final int row, final Utility[][] curr_utils, final AgentState[][] grid) {
+	public static double moveRightUtil(final int col, final int row, final UtilityStore curr_utils, final AgentState[][] grid) {
 
 		double right_util = 0.000;
 
@@ -258,17 +680,17 @@ public class UtilityController {
 	 * 
 	 * @param col 			The column of the current cell
 	 * @param row 			The row of the current cell
-	 * @param curr_utils 	The 2D array of current utilities for each state in the grid
+	 * @param curr_utils 	The store of current utilities for each state in the grid
 	 * @param grid 			The 2D array of states representing the grid
 	 * @return 				The utility of the cell above if the agent can move there, or the current cell's utility if the agent cannot move there
 	*/
 	
-	public static double goUp(final int col, final int row, final Utility[][] curr_utils, final AgentState[][] grid) {
+	public static double goUp(final int col, final int row, final UtilityStore curr_utils, final AgentState[][] grid) {
 
 		if (row - 1 >= 0 && !grid[col][row - 1].isWall()) {
-			return curr_utils[col][row - 1].getUtil();
+			return curr_utils.getUtil(col, row - 1);
 		}
-		return curr_utils[col][row].getUtil();
+		return curr_utils.getUtil(col, row);
 
 	}
 
@@ -277,17 +699,17 @@ public class UtilityController {
 	 * 
 	 * @param col 			The column of the current cell
 	 * @param row 			The row of the current cell
-	 * @param curr_utils 	The 2D array of current utilities for each state in the grid
+	 * @param curr_utils 	The store of current utilities for each state in the grid
 	 * @param grid 			The 2D array of states representing the grid
 	 * @return 				The utility of the cell below if the agent can move there, or the current cell's utility if the agent cannot move there
 	*/
 	
-	public static double goDown(final int col, final int row, final Utility[][] curr_utils, final AgentState[][] grid) {
+	public static double goDown(final int col, final int row, final UtilityStore curr_utils, final AgentState[][] grid) {
 		
 		if (row + 1 < GridConstants.TOTAL_NUM_ROWS && !grid[col][row + 1].isWall()) {
-			return curr_utils[col][row + 1].getUtil();
+			return curr_utils.getUtil(col, row + 1);
 		}
-		return curr_utils[col][row].getUtil();
+		return curr_utils.getUtil(col, row);
 	
 	}
 
@@ -296,17 +718,17 @@ public class UtilityController {
 	 * 
 	 * @param col 			The column of the current cell
 	 * @param row 			The row of the current cell
-	 * @param curr_utils 	The 2D array of current utilities for each state in the grid
+	 * @param curr_utils 	The store of current utilities for each state in the grid
 	 * @param grid 			The 2D array of states representing the grid
 	 * @return 				The utility of the cell to the left if the agent can move there, or the current cell's utility if the agent cannot move there
 	*/
 	
-	public static double turnLeft(final int col, final int row, final Utility[][] curr_utils, final AgentState[][] grid) {
+	public static double turnLeft(final int col, final int row, final UtilityStore curr_utils, final AgentState[][] grid) {
 		
 		if (col - 1 >= 0 && !grid[col - 1][row].isWall()) {
-			return curr_utils[col - 1][row].getUtil();
+			return curr_utils.getUtil(col - 1, row);
 		}
-		return curr_utils[col][row].getUtil();
+		return curr_utils.getUtil(col, row);
 	
 	}
 
@@ -315,33 +737,54 @@ public class UtilityController {
 	 * 
 	 * @param col 			The column index of the current state
 	 * @param row 			The row index of the current state
-	 * @param curr_utils 	The current utility array
+	 * @param curr_utils 	The current utility store
 	 * @param grid 			The state grid
 	 * @return 				The calculated utility
 	*/
 
-	public static double turnRight(final int col, final int row, final Utility[][] curr_utils, final AgentState[][] grid) {
+	public static double turnRight(final int col, final int row, final UtilityStore curr_utils, final AgentState[][] grid) {
 		
 		if (col + 1 < GridConstants.TOTAL_NUM_COLS && !grid[col + 1][row].isWall()) {
-			return curr_utils[col + 1][row].getUtil();
+			return curr_utils.getUtil(col + 1, row);
 		}
-		return curr_utils[col][row].getUtil();
+		return curr_utils.getUtil(col, row);
 	
 	}
 
 	/**
-	 * Copies the contents of the source array to the destination array.
+	 * Copies the contents of the source store to the destination store.
 	 * 
-	 * @param src 		The source utility array
-	 * @param dst 	The destination utility array
+	 * @param src 		The source utility store
+	 * @param dst 	The destination utility store
 	*/
 
-	public static void updateUtils(Utility[][] src, Utility[][] dst) {
+	public static void updateUtils(UtilityStore src, UtilityStore dst) {
 		
-		for (int i = 0; i < src.length; i++) {
-			System.arraycopy(src[i], 0, dst[i], 0, src[i].length);
-		}
+		dst.copyFrom(src);
 		
 	}
 
-}
\ No newline at end of file
+	/**
+	 * Calculates the largest change in utility of any state between two stores.
+	 * 
+	 * @param model 		The transition model of the grid
+	 * @param curr_utils 	The utilities before the change
+	 * @param new_utils 	The utilities after the change
+	 * @return 				The largest absolute change in utility
+	*/
+
+	public static double calcMaxDelta(final TransitionModel model, final UtilityStore curr_utils, 
+	final UtilityStore new_utils) {
+
+		int[] cells = model.getCellsOfStates();
+		double[] curr = curr_utils.utils();
+		double[] next = new_utils.utils();
+		double delta = 0.000;
+		for (int state = 0; state < model.getNumStates(); state++) {
+			delta = Math.max(delta, Math.abs(next[cells[state]] - curr[cells[state]]));
+		}
+		return delta;
+
+	}
+
+}
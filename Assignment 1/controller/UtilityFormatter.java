@@ -0,0 +1,114 @@
+/*
+ * Formats utilities for the csv file without allocating, giving exactly the text of
+ * new DecimalFormat("00.000").format(utility).substring(0, 6): at least 2 integer digits, 3 fraction digits
+ * rounded half-even, a minus sign for any negative value, even one rounding to 0, and only the first 6 characters kept.
+ * The rounding is done on the utility times 1000 in double precision. Utilities too close to halfway between
+ * two results are left to DecimalFormat, which rounds those from the shortest decimal representation of the utility
+ * rather than its exact binary value (0.0005 gives 00.000), as are utilities of 1e9 and more, NaN and infinities.
+ */
+
+package controller;
+
+import java.nio.charset.StandardCharsets;
+import java.text.DecimalFormat;
+
+public final class UtilityFormatter {
+
+	// Number of characters kept of every utility
+	public static final int WIDTH = 6;
+
+	// Largest utility formatted without DecimalFormat
+	private static final double FAST_LIMIT = 1e9;
+
+	// Number of ulps of the scaled utility from halfway within which the rounding is left to DecimalFormat
+	private static final double TIE_ULPS = 4.000;
+
+	private UtilityFormatter() {
+	}
+
+    /**
+     * Writes the formatted text of a utility to a buffer.
+     * @param utility The utility
+     * @param out The buffer, with room for WIDTH characters at the position
+     * @param position The position to write the text at
+     * @return The position after the text
+     */
+
+	public static int format(double utility, byte[] out, int position) {
+
+		double magnitude = Math.abs(utility);
+		if (!(magnitude < FAST_LIMIT)) {
+			return formatSlow(utility, out, position);
+		}
+
+		// Round in thousandths, unless the scaled utility is too close to halfway to know which way DecimalFormat goes
+		double scaled = magnitude * 1000.000;
+		double floor = Math.floor(scaled);
+		double fraction = scaled - floor;
+		if (Math.abs(fraction - 0.500) <= TIE_ULPS * Math.ulp(scaled)) {
+			return formatSlow(utility, out, position);
+		}
+		long thousandths = fraction < 0.500 ? (long) floor : (long) floor + 1;
+
+		long integer = thousandths / 1000;
+		int decimals = (int) (thousandths % 1000);
+		int integer_digits = Math.max(2, digits(integer));
+
+		// Write every character that falls within the first WIDTH ones
+		int index = 0;
+		if (Double.doubleToRawLongBits(utility) < 0) {
+			out[position + index++] = '-';
+		}
+		for (int i = integer_digits - 1; i >= 0 && index < WIDTH; i--) {
+			out[position + index++] = (byte) ('0' + digitAt(integer, i));
+		}
+		if (index < WIDTH) {
+			out[position + index++] = '.';
+		}
+		for (int i = 2; i >= 0 && index < WIDTH; i--) {
+			out[position + index++] = (byte) ('0' + digitAt(decimals, i));
+		}
+		return position + index;
+
+	}
+
+    /**
+     * Returns the formatted text of a utility.
+     * @param utility The utility
+     * @return The text, at most WIDTH characters
+     */
+
+	public static String format(double utility) {
+		byte[] out = new byte[WIDTH];
+		int length = format(utility, out, 0);
+		return new String(out, 0, length, StandardCharsets.US_ASCII);
+	}
+
+	// Formats the way SaveOutput always did, for utilities the fast path does not handle, allocating
+	private static int formatSlow(double utility, byte[] out, int position) {
+		String text = new DecimalFormat("00.000").format(utility).substring(0, WIDTH);
+		for (int i = 0; i < text.length(); i++) {
+			out[position + i] = (byte) text.charAt(i);
+		}
+		return position + text.length();
+	}
+
+	// Number of decimal digits of a value, 1 for 0
+	private static int digits(long value) {
+		int count = 1;
+		while (value >= 10) {
+			value /= 10;
+			count++;
+		}
+		return count;
+	}
+
+	// Decimal digit of a value at a power of ten
+	private static int digitAt(long value, int power) {
+		for (int i = 0; i < power; i++) {
+			value /= 10;
+		}
+		return (int) (value % 10);
+	}
+
+}
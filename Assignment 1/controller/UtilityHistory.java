@@ -0,0 +1,121 @@
+/*
+ * History of the utilities of every iteration of a solver, saved to a csv file for plotting once the solver is done.
+ * Where the iterations are kept in the meantime depends on the implementation, so that the memory used
+ * does not have to grow with the number of iterations. Every implementation keeps the latest iteration,
+ * which is the one displayed as the result.
+ */
+
+package controller;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+
+import globals.HistoryMode;
+import globals.IterationConstants;
+import grid.UtilityStore;
+
+public interface UtilityHistory extends AutoCloseable {
+
+    /**
+     * Records a copy of the utilities and actions of an iteration.
+     * @param utils The utility store of the iteration, not kept by the history
+     */
+
+	void add(UtilityStore utils);
+
+    /**
+     * Returns the utilities and actions of the latest recorded iteration.
+     * @return The utility store of the latest iteration, owned by the history
+     */
+
+	UtilityStore getLatest();
+
+    /**
+     * Returns the number of recorded iterations, including those no longer kept.
+     * @return The number of iterations
+     */
+
+	int size();
+
+    /**
+     * Writes the kept iterations to a file in the format set by OUTPUT_FORMAT,
+     * a csv file with one line per cell and one column per iteration, or a binary file with one row per iteration.
+     * @param fileName The name of the file, without the extension
+     */
+
+	void writeToFile(String fileName);
+
+    /**
+     * Releases what the history holds, such as a temporary file. The latest iteration and the number of
+     * iterations stay readable.
+     */
+
+	@Override
+	void close();
+
+    /**
+     * Takes the state of the history between two iterations, for a checkpoint written on another thread
+     * while the solver carries on, see SolverCheckpoint.
+     * @return The state, unchanged by later iterations
+     */
+
+	Snapshot snapshot();
+
+    /**
+     * Restores the state written by a snapshot, dropping any iteration recorded since.
+     * @param in The checkpoint, positioned at the state of the history
+     * @throws IOException If the checkpoint cannot be read
+     */
+
+	void restore(DataInputStream in) throws IOException;
+
+	/*
+	 * State of a history taken by snapshot, written to a checkpoint after the solver has moved on.
+	 */
+	interface Snapshot {
+
+		void write(DataOutputStream out) throws IOException;
+
+	}
+
+    /**
+     * Creates the history set by HISTORY_MODE, sampling every HISTORY_SAMPLING iterations.
+     * @return The new history
+     */
+
+	static UtilityHistory create() {
+		return create(null);
+	}
+
+    /**
+     * Creates the history set by HISTORY_MODE, sampling every HISTORY_SAMPLING iterations, streaming to a file
+     * left after the history is closed, so that a solver resuming from a checkpoint can carry on appending to it.
+     * A MEMORY history appends the iterations of each snapshot to the file instead.
+     * @param spillFile The file a STREAM history writes to, or null for a temporary file and no snapshots of a MEMORY one
+     * @return The new history
+     */
+
+	static UtilityHistory create(Path spillFile) {
+		UtilityHistory history;
+		switch (IterationConstants.HISTORY_MODE) {
+			case MEMORY:
+			history = new MemoryHistory(spillFile);
+			break;
+
+			case RING:
+			history = new RingHistory(IterationConstants.HISTORY_RING_SIZE);
+			break;
+
+			default:
+			history = new StreamHistory(spillFile);
+			break;
+		}
+		if (IterationConstants.HISTORY_SAMPLING > 1) {
+			history = new SampledHistory(history, IterationConstants.HISTORY_SAMPLING);
+		}
+		return history;
+	}
+
+}
@@ -0,0 +1,26 @@
+/*
+ * An enum that represents how policy iteration decides how many sweeps to spend evaluating each policy.
+ */
+
+package globals;
+
+public enum EvaluationMode {
+
+	// Always runs K sweeps
+	FIXED,
+
+	// Sweeps until the largest change is below EVALUATION_TOLERANCE_RATIO times the Bellman residual
+	// of the last improvement step, up to MAXIMUM_EVALUATION_SWEEPS
+	ADAPTIVE,
+
+	// Like ADAPTIVE, but starts with a budget of K sweeps, doubling it when an evaluation used all of it
+	// and halving it when an evaluation needed less than half of it
+	SCHEDULED,
+
+	// Solves the linear system of the policy exactly, with BiCGSTAB preconditioned by the diagonal
+	BICGSTAB,
+
+	// Solves the linear system of the policy exactly, with successive over-relaxation
+	SOR;
+
+}
@@ -6,11 +6,21 @@
 
 package globals;
 
+import grid.MazeLoader;
+
 public final class GridConstants {
 
-    // Define the dimensions of the Grid
-    public static final int TOTAL_NUM_COLS = 600;
-    public static final int TOTAL_NUM_ROWS = 600;
+    // Define the maze file loaded instead of the special cells below, text or binary (set with -Dmaze=path, see MazeLoader)
+    public static final String MAZE_FILE = System.getProperty("maze");
+
+    // Define the dimensions of the Grid, read from the maze file if there is one (override with -Dcols=N -Drows=N)
+    private static final int[] MAZE_DIMENSIONS = MAZE_FILE == null ? null : MazeLoader.readDimensions(MAZE_FILE);
+    public static final int TOTAL_NUM_COLS = MAZE_DIMENSIONS != null ? MAZE_DIMENSIONS[0] : Integer.getInteger("cols", 600);
+    public static final int TOTAL_NUM_ROWS = MAZE_DIMENSIONS != null ? MAZE_DIMENSIONS[1] : Integer.getInteger("rows", 600);
+
+    // Define the dimensions of the base grid, repeated over the whole grid
+    public static final int BASE_NUM_COLS = 6;
+    public static final int BASE_NUM_ROWS = 6;
 
     // Define separators for grid cells and row-columns
     public static final String CELL_SEPARATOR = ";";
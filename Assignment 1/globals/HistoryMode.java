@@ -0,0 +1,18 @@
+/*
+ * An enum that represents where the utilities of every iteration are kept until they are saved to the csv file.
+ */
+
+package globals;
+
+public enum HistoryMode {
+
+	// Keeps a copy of every iteration in memory
+	MEMORY,
+
+	// Writes every iteration to a temporary file as it is produced, and transposes it into the csv file at the end
+	STREAM,
+
+	// Keeps only the latest HISTORY_RING_SIZE iterations in memory, overwriting the oldest one
+	RING;
+
+}
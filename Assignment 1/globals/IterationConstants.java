@@ -32,7 +32,116 @@ public final class IterationConstants {
     // Define the number of times the Bellman algorithm is executed
     public static final int K = 50;
 
+    // Define how many sweeps policy iteration spends evaluating each policy (override with -Devaluation=FIXED|ADAPTIVE|SCHEDULED|BICGSTAB|SOR)
+    public static final EvaluationMode EVALUATION_MODE = EvaluationMode.valueOf(System.getProperty("evaluation", EvaluationMode.FIXED.name()).toUpperCase());
+
+    // Define the tolerance of an adaptive evaluation, relative to the Bellman residual of the last improvement step
+    public static final double EVALUATION_TOLERANCE_RATIO = 0.100;
+
+    // Define the maximum number of sweeps of an adaptive evaluation
+    public static final int MAXIMUM_EVALUATION_SWEEPS = 10 * K;
+
+    // Define the largest Bellman residual of the policy at which an exact evaluation stops
+    public static final double EXACT_EVALUATION_TOLERANCE = 1e-9;
+
+    // Define the smallest gain in utility that changes an action after an exact evaluation,
+    // twice the largest error of a utility whose Bellman residual is below the tolerance
+    public static final double EXACT_IMPROVEMENT_MARGIN = 2 * EXACT_EVALUATION_TOLERANCE / (1 - DISCOUNT_FACTOR);
+
+    // Define the maximum number of iterations of an exact evaluation
+    public static final int MAXIMUM_SOLVER_ITERATIONS = 100 * K;
+
+    // Define the number of timed solves of each evaluation mode when policy iteration compares it with FIXED, the modes
+    // taking turns to run first and the fastest solve of each reported (override with -DcomparisonRounds=N)
+    public static final int COMPARISON_ROUNDS = Math.max(1, Integer.getInteger("comparisonRounds", 2));
+
+    // Define the relaxation factor of SOR, 1 is Gauss-Seidel, much larger factors diverge on random initial policies
+    public static final double SOR_RELAXATION = 1.100;
+
+    // Define the number of threads used to sweep the grid, 1 sweeps on the calling thread (override with -Dthreads=N)
+    public static final int NUM_THREADS = Integer.getInteger("threads", Runtime.getRuntime().availableProcessors());
+
+    // Define the order in which value iteration sweeps the grid (override with -Dsweep=JACOBI|GAUSS_SEIDEL|RED_BLACK|PRIORITIZED)
+    public static final SweepMode SWEEP_MODE = SweepMode.valueOf(System.getProperty("sweep", SweepMode.JACOBI.name()).toUpperCase());
+
+    // Define the order in which Jacobi sweeps visit the states, which leaves the result the same (override with -Dorder=ROWS|TILED|MORTON|HILBERT)
+    public static final SweepOrder SWEEP_ORDER = SweepOrder.valueOf(System.getProperty("order", SweepOrder.ROWS.name()).toUpperCase());
+
+    // Define the size of the L2 cache the tiles of a tiled sweep are sized to (override with -Dl2=bytes)
+    public static final int L2_CACHE_BYTES = Integer.getInteger("l2", 1 << 20);
+
+    // Define whether Jacobi sweeps use the vectorized Bellman kernel, which needs --add-modules jdk.incubator.vector (override with -Dvector=true)
+    public static final boolean VECTOR_KERNEL = Boolean.getBoolean("vector");
+
+    // Define the number of coarse grids value iteration solves first to start the grid from, 0 solves the grid alone (override with -Dmultigrid=N)
+    public static final int MULTIGRID_LEVELS = Integer.getInteger("multigrid", 0);
+
+    // Define how much looser than their convergence threshold the coarse grids are solved, their utilities are only a starting point
+    public static final double MULTIGRID_TOLERANCE_RATIO = 10.000;
+
+    // Define where the utilities of every iteration are kept until they are saved (override with -Dhistory=MEMORY|STREAM|RING)
+    public static final HistoryMode HISTORY_MODE = HistoryMode.valueOf(System.getProperty("history", HistoryMode.STREAM.name()).toUpperCase());
+
+    // Define how often an iteration is kept, 1 keeps every iteration, N every Nth and the last one (override with -Dsampling=N)
+    public static final int HISTORY_SAMPLING = Integer.getInteger("sampling", 1);
+
+    // Define the number of iterations kept by the ring history (override with -Dring=N)
+    public static final int HISTORY_RING_SIZE = Integer.getInteger("ring", 100);
+
+    // Define the number of utilities read back at once when the streamed history is saved
+    public static final int HISTORY_BUFFER_VALUES = 1 << 20;
+
+    // Define the format the utilities of every iteration are saved in (override with -Doutput=CSV|FLOAT64|FLOAT32)
+    public static final OutputFormat OUTPUT_FORMAT = OutputFormat.valueOf(System.getProperty("output", OutputFormat.CSV.name()).toUpperCase());
+
+    // Define whether the csv files are gzipped (override with -Dgzip=true)
+    public static final boolean CSV_GZIP = Boolean.getBoolean("gzip");
+
+    // Define the directory of the cache of previous solutions, none if not set (set with -Dcache=path)
+    public static final String SOLUTION_CACHE = System.getProperty("cache");
+
+    // Define the most bytes the solution cache takes, older solutions are evicted first (override with -DcacheBytes=N)
+    public static final long SOLUTION_CACHE_BYTES = Long.getLong("cacheBytes", 256L << 20);
+
+    // Define the file the off-heap solver keeps its utilities in, direct buffers if not set (set with -Doffheap=path)
+    public static final String OFF_HEAP_FILE = System.getProperty("offheap");
+
+    // Define the directory of the checkpoints of the solvers, none if not set (set with -Dcheckpoint=path)
+    public static final String CHECKPOINT_DIR = System.getProperty("checkpoint");
+
+    // Define how many iterations apart the solvers write a checkpoint (override with -DcheckpointEvery=N)
+    public static final int CHECKPOINT_INTERVAL = Integer.getInteger("checkpointEvery", 50);
+
+    // Define the file the solved policy is packed into for the policy service, none if not set (set with -Dpolicy=path)
+    public static final String POLICY_FILE = System.getProperty("policy");
+
+    // Define the localhost port the policy service answers HTTP queries on, none if 0 (override with -Dport=N)
+    public static final int POLICY_PORT = Integer.getInteger("port", 0);
+
+    // Define the most steps of a path query of the policy service (override with -DpathSteps=N)
+    public static final int PATH_MAX_STEPS = Integer.getInteger("pathSteps", 10000);
+
+    // Define how often the metrics of an iteration of the solvers are printed, 0 never (override with -Dprogress=N)
+    public static final int PROGRESS_INTERVAL = Integer.getInteger("progress", 0);
+
+    // Define how many milliseconds apart a monitor thread samples the sweeps of value iteration, never if 0 (override with -Dmonitor=N)
+    public static final int MONITOR_INTERVAL = Integer.getInteger("monitor", 0);
+
+    // Define the discounts and intended move probabilities a parameter sweep solves every pair of (override with -Ddiscounts=a,b,... and -Dintended=a,b,...)
+    public static final double[] SWEEP_DISCOUNTS = parseValues(System.getProperty("discounts", "0.900,0.950,0.990"));
+    public static final double[] SWEEP_INTENDED_PROBABILITIES = parseValues(System.getProperty("intended", "0.700,0.800,0.900"));
+
     // Define the upper bound on utility values
     public static final double UTILITY_UPPER_BOUND = MAXIMUM_REWARD / (1 - DISCOUNT_FACTOR);
 
+    // Values of a comma-separated list
+    private static double[] parseValues(String values) {
+        String[] parts = values.split(",");
+        double[] parsed = new double[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            parsed[i] = Double.parseDouble(parts[i].trim());
+        }
+        return parsed;
+    }
+
 }
@@ -0,0 +1,18 @@
+/*
+ * An enum that represents the format the utilities of every iteration are saved in for plotting.
+ */
+
+package globals;
+
+public enum OutputFormat {
+
+	// Text file with one line per cell and one column per iteration, each utility formatted as 00.000
+	CSV,
+
+	// Binary file with a header followed by one row of little-endian float64 utilities per iteration, see BinaryOutputWriter
+	FLOAT64,
+
+	// Like FLOAT64, with float32 utilities, half the size
+	FLOAT32;
+
+}
@@ -0,0 +1,23 @@
+/*
+ * An enum that represents the order in which value iteration sweeps the states of the grid.
+ */
+
+package globals;
+
+public enum SweepMode {
+
+	// Reads the utilities of the previous sweep and writes a second buffer
+	JACOBI,
+
+	// Updates the utilities in place, row by row, so later states already see the new utilities
+	GAUSS_SEIDEL,
+
+	// Updates the utilities in place in a checkerboard order, first the cells where (col + row) is even, then the odd ones.
+	// On a 4-neighbour grid cells of the same colour never read each other, so each colour can be swept in parallel
+	RED_BLACK,
+
+	// Backs up the states with the largest Bellman residual first instead of sweeping, a sweep being
+	// counted for every as many backups as there are non-wall states
+	PRIORITIZED;
+
+}
@@ -0,0 +1,23 @@
+/*
+ * An enum that represents the order in which a Jacobi sweep visits the states of the grid. Every state of a Jacobi
+ * sweep only reads the utilities of the previous sweep, so the order changes which utilities are still in cache
+ * when a neighbour reads them, never the result. The in-place orders of SweepMode keep their own order.
+ */
+
+package globals;
+
+public enum SweepOrder {
+
+	// Row by row, the order the states are numbered and stored in
+	ROWS,
+
+	// Square tiles of rows and columns sized to the L2 cache, tile by tile and row by row within a tile
+	TILED,
+
+	// Along the Z-order curve, interleaving the bits of the column and the row
+	MORTON,
+
+	// Along the Hilbert curve, which unlike the Z-order curve only ever steps to a neighbouring cell
+	HILBERT;
+
+}
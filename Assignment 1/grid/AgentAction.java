@@ -52,4 +52,24 @@ public enum AgentAction {
 		return ACTIONS[RANDOM.nextInt(SIZE)];
 	}
 
+    /**
+     * Returns the AgentAction encoded by a code, as stored in a UtilityStore.
+     * @param code The ordinal of the action, or a negative value for no action.
+     * @return The encoded AgentAction, or null if there is none.
+     */
+
+	public static AgentAction fromCode(byte code) {
+		return code < 0 ? null : ACTIONS[code];
+	}
+
+    /**
+     * Returns the code of an AgentAction, as stored in a UtilityStore.
+     * @param action The action to encode, or null for no action.
+     * @return The ordinal of the action, or -1 if there is none.
+     */
+
+	public static byte toCode(AgentAction action) {
+		return action == null ? -1 : (byte) action.ordinal();
+	}
+
 }
@@ -1,41 +1,59 @@
 /*
  * This class represents a state in the grid environment
- * It has a reward and a boolean flag indicating whether it's a wall or not
+ * It is a view of one cell of a GridStore, which holds the reward and whether it's a wall or not,
+ * so reading or changing the state reads or changes the grid
  */
 
 package grid;
 
 public class AgentState {
 
-    // The reward for being in this state, initialized to 0
-    private double current_reward = 0.000;
+    // The grid holding the state, and the cell of the state in it
+    private final GridStore store;
+    private final int col;
+    private final int row;
 
-     // Indicates whether this state is a wall or not, initialized to false
-	private boolean is_wall = false;
-
-    // Constructor that takes the initial reward for the state as a parameter
+    // Constructor that takes the initial reward for the state as a parameter, for a state outside any grid
 	public AgentState(double reward) {
-		this.current_reward = reward;
+		this(new GridStore(1, 1), 0, 0);
+		store.setReward(0, 0, reward);
+	}
+
+    // Constructor for the view of a cell of a grid
+	public AgentState(GridStore store, int col, int row) {
+		this.store = store;
+		this.col = col;
+		this.row = row;
+	}
+
+    // Get method for the column of the state in its grid
+	public int getCol() {
+		return col;
+	}
+
+    // Get method for the row of the state in its grid
+	public int getRow() {
+		return row;
 	}
 
     // Get method for the reward of the state
 	public double getReward() {
-		return current_reward;
+		return store.getReward(col, row);
 	}
 
     // Set method for the reward of the state
 	public void setReward(double reward) {
-		this.current_reward = reward;
+		store.setReward(col, row, reward);
 	}
 
     // Get method for the is_wall flag of the state
 	public boolean isWall() {
-		return is_wall;
+		return store.isWall(col, row);
 	}
 
     // Set method for the is_wall flag of the state
 	public void setAsWall(boolean is_Wall) {
-		this.is_wall = is_Wall;
+		store.setWall(col, row, is_Wall);
 	}
 
 }
@@ -1,5 +1,5 @@
 /*
- * Represents a Grid Environment consisting of a 2D array of states
+ * Represents a Grid Environment consisting of a 2D array of states, views of the cells of a compact GridStore
  */
 
 package grid;
@@ -8,34 +8,57 @@ import globals.GridConstants;
 import globals.IterationConstants;
 
 public class Grid {
+    private GridStore gridStore = null;
     private AgentState[][] gridEnv = null;
 
-    // Constructor to initialize the grid environment by building the grid
+    // Constructor to initialize the grid environment by loading the maze file, or by building the grid
 	public Grid() {
-		gridEnv = new AgentState[GridConstants.TOTAL_NUM_COLS][GridConstants.TOTAL_NUM_ROWS];
+		if (GridConstants.MAZE_FILE != null) {
+			gridStore = MazeLoader.load(GridConstants.MAZE_FILE);
+			return;
+		}
+		gridStore = new GridStore(GridConstants.TOTAL_NUM_COLS, GridConstants.TOTAL_NUM_ROWS);
+		grid_builder();
+		complexGrid();
+	}
+
+	// Constructor to build a grid of other dimensions than GridConstants, such as only the base grid
+	public Grid(int numCols, int numRows) {
+		gridStore = new GridStore(numCols, numRows);
 		grid_builder();
 		complexGrid();
 	}
 
 	/**
-     * Returns a 2D array of states
+     * Returns a 2D array of states, views of the cells of the compact grid created on the first call
      * @return 2D array of State objects representing the grid
      */
 	public AgentState[][] getGrid() {
+		if (gridEnv == null) {
+			gridEnv = new AgentState[gridStore.getNumCols()][gridStore.getNumRows()];
+			for (int col = 0; col < gridStore.getNumCols(); col++) {
+				for (int row = 0; row < gridStore.getNumRows(); row++) {
+					gridEnv[col][row] = new AgentState(gridStore, col, row);
+				}
+			}
+		}
 		return gridEnv;
 	}
 
+	/**
+     * Returns the compact grid, with the walls and rewards of every cell
+     * @return The GridStore of the grid
+     */
+	public GridStore getStore() {
+		return gridStore;
+	}
+
 	/*
      * Initializes the grid by setting rewards for each state based on 
      * their color, and marking walls as unreachable
      */
 	public void grid_builder() {
-		// All cells start with -0.040 as reward
-		for(int row = 0 ; row < GridConstants.TOTAL_NUM_ROWS ; row++) {
-			for(int col = 0 ; col < GridConstants.TOTAL_NUM_COLS ; col++) {
-				gridEnv[col][row] = new AgentState(IterationConstants.REWARD_WHITE);
-			}
-		}
+		// All cells start with -0.040 as reward, the reward of a new GridStore
 
 		// Set +1.000 as the reward for green cells
 		String[] green_cells = GridConstants.GREEN_CELLS.split(GridConstants.CELL_SEPARATOR);
@@ -44,7 +67,7 @@ public class Grid {
 			String [] gridInfo = green_cell.split(GridConstants.ROW_COLUMN_SEPARATOR);
 			int gridCol = Integer.parseInt(gridInfo[0]);
 			int gridRow = Integer.parseInt(gridInfo[1]);
-			gridEnv[gridCol][gridRow].setReward(IterationConstants.REWARD_GREEN);
+			gridStore.setReward(gridCol, gridRow, IterationConstants.REWARD_GREEN);
 		}
 
 		// Set -1.000 as the reward for brown cells
@@ -55,7 +78,7 @@ public class Grid {
 			String[] gridInfo = brown_cell.split(GridConstants.ROW_COLUMN_SEPARATOR);
 			int gridCol = Integer.parseInt(gridInfo[0]);
 			int gridRow = Integer.parseInt(gridInfo[1]);
-			gridEnv[gridCol][gridRow].setReward(IterationConstants.REWARD_BROWN);
+			gridStore.setReward(gridCol, gridRow, IterationConstants.REWARD_BROWN);
 		}
 
 		// Set 0 for all the walls and mark them as unreachable - agent does not move
@@ -66,25 +89,16 @@ public class Grid {
 			String[] gridInfo = wall_cell.split(GridConstants.ROW_COLUMN_SEPARATOR);
 			int gridCol = Integer.parseInt(gridInfo[0]);
 			int gridRow = Integer.parseInt(gridInfo[1]);
-			gridEnv[gridCol][gridRow].setReward(IterationConstants.WALL_COLLISION);
-			gridEnv[gridCol][gridRow].setAsWall(true);
+			gridStore.setReward(gridCol, gridRow, IterationConstants.WALL_COLLISION);
+			gridStore.setWall(gridCol, gridRow, true);
 		}
 	}
 
+	/*
+     * Repeats the 6 x 6 base grid over the whole grid, copying whole rows at a time
+     */
 	public void complexGrid() {
-
-		for(int row = 0 ; row < GridConstants.TOTAL_NUM_ROWS ; row++) {
-			for(int col = 0 ; col < GridConstants.TOTAL_NUM_COLS ; col++) {
-
-				if (row >= 6 || col >= 6) {
-					int trueRow = row % 6;
-					int trueCol = col % 6;
-
-					gridEnv[col][row].setReward(gridEnv[trueCol][trueRow].getReward());
-					gridEnv[col][row].setAsWall(gridEnv[trueCol][trueRow].isWall());
-				}
-			}
-		}
+		gridStore.tile(GridConstants.BASE_NUM_COLS, GridConstants.BASE_NUM_ROWS);
 	}
 
 }
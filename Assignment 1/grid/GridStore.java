@@ -0,0 +1,215 @@
+/*
+ * Compact storage of the grid environment: one bit per cell for the walls and one byte per cell for the reward,
+ * an index into a small table of the distinct rewards, starting with the four rewards of IterationConstants.
+ * Each row of the wall bitset starts on a new long, so whole rows can be copied as words.
+ * A 20,000 x 20,000 grid takes about 450 MB, instead of an AgentState object per cell.
+ */
+
+package grid;
+
+import java.util.Arrays;
+
+import globals.IterationConstants;
+
+public class GridStore {
+
+	// Maximum number of distinct rewards, as a byte indexes the reward table
+	public static final int MAX_REWARDS = 256;
+
+	// Index of the rewards every grid starts with, in the order of the constructor, white being the one of new cells
+	public static final byte WHITE = 0;
+	public static final byte GREEN = 1;
+	public static final byte BROWN = 2;
+	public static final byte WALL = 3;
+
+	private final int num_cols;
+	private final int num_rows;
+	private final int words_per_row;
+
+	// Bit (col & 63) of walls[row * words_per_row + (col >>> 6)] is set for a wall
+	private final long[] walls;
+
+	// Index into reward_table of the reward of each cell, cells numbered row by row
+	private final byte[] reward_class;
+
+	private final double[] reward_table = new double[MAX_REWARDS];
+	private int num_rewards = 0;
+
+    /**
+     * Creates a grid where every cell has the white reward and there are no walls.
+     * @param numCols The number of columns
+     * @param numRows The number of rows
+     */
+
+	public GridStore(int numCols, int numRows) {
+		this.num_cols = numCols;
+		this.num_rows = numRows;
+		this.words_per_row = (numCols + 63) >>> 6;
+		this.walls = new long[numRows * words_per_row];
+		this.reward_class = new byte[numCols * numRows];
+
+		// The rewards every grid has, in the order of IterationConstants, the white one first so new cells start with it
+		rewardClass(IterationConstants.REWARD_WHITE);
+		rewardClass(IterationConstants.REWARD_GREEN);
+		rewardClass(IterationConstants.REWARD_BROWN);
+		rewardClass(IterationConstants.WALL_COLLISION);
+	}
+
+    /**
+     * Copies a grid of states into a compact grid.
+     * @param grid The grid of states
+     * @return A grid with the same walls and rewards
+     */
+
+	public static GridStore fromStates(final AgentState[][] grid) {
+		GridStore store = new GridStore(grid.length, grid.length == 0 ? 0 : grid[0].length);
+		for (int row = 0; row < store.num_rows; row++) {
+			for (int col = 0; col < store.num_cols; col++) {
+				store.setReward(col, row, grid[col][row].getReward());
+				store.setWall(col, row, grid[col][row].isWall());
+			}
+		}
+		return store;
+	}
+
+    /**
+     * Returns the number of columns of the grid.
+     * @return The number of columns
+     */
+
+	public int getNumCols() {
+		return num_cols;
+	}
+
+    /**
+     * Returns the number of rows of the grid.
+     * @return The number of rows
+     */
+
+	public int getNumRows() {
+		return num_rows;
+	}
+
+    /**
+     * Returns whether a cell is a wall.
+     * @param col The column index of the cell
+     * @param row The row index of the cell
+     * @return True if the cell is a wall
+     */
+
+	public boolean isWall(int col, int row) {
+		return (walls[row * words_per_row + (col >>> 6)] & (1L << col)) != 0;
+	}
+
+    /**
+     * Marks a cell as a wall or not.
+     * @param col The column index of the cell
+     * @param row The row index of the cell
+     * @param wall Whether the cell is a wall
+     */
+
+	public void setWall(int col, int row, boolean wall) {
+		int word = row * words_per_row + (col >>> 6);
+		if (wall) {
+			walls[word] |= 1L << col;
+		} else {
+			walls[word] &= ~(1L << col);
+		}
+	}
+
+    /**
+     * Returns the reward of a cell.
+     * @param col The column index of the cell
+     * @param row The row index of the cell
+     * @return The reward
+     */
+
+	public double getReward(int col, int row) {
+		return reward_table[reward_class[row * num_cols + col] & 0xFF];
+	}
+
+    /**
+     * Sets the reward of a cell, adding it to the reward table if it is not there yet.
+     * @param col The column index of the cell
+     * @param row The row index of the cell
+     * @param reward The reward
+     */
+
+	public void setReward(int col, int row, double reward) {
+		reward_class[row * num_cols + col] = rewardClass(reward);
+	}
+
+    /**
+     * Returns the index of the reward of a cell in the reward table.
+     * @param col The column index of the cell
+     * @param row The row index of the cell
+     * @return The reward class
+     */
+
+	public byte getRewardClass(int col, int row) {
+		return reward_class[row * num_cols + col];
+	}
+
+	// Sets the index of the reward of a cell, which must already be in the reward table.
+	// Unlike setReward it never changes the table, so threads can set the classes of different rows at once
+	void setRewardClass(int col, int row, byte rewardClass) {
+		reward_class[row * num_cols + col] = rewardClass;
+	}
+
+    /**
+     * Repeats the top left tileCols x tileRows cells over the whole grid, walls and rewards,
+     * like cell (col % tileCols, row % tileRows) was copied to every cell (col, row).
+     * The first tileRows rows are filled by doubling the copied part of each row, the other rows are copied whole.
+     * @param tileCols The number of columns of the tile
+     * @param tileRows The number of rows of the tile
+     */
+
+	public void tile(int tileCols, int tileRows) {
+
+		for (int row = 0; row < Math.min(tileRows, num_rows); row++) {
+			int start = row * num_cols;
+			for (int filled = tileCols; filled < num_cols; filled *= 2) {
+				System.arraycopy(reward_class, start, reward_class, start + filled, Math.min(filled, num_cols - filled));
+			}
+
+			// Walls of the tile row, then the words of the row one bit at a time from the tile, once per row
+			long[] tile_row = new long[words_per_row];
+			for (int col = 0; col < num_cols; col++) {
+				if (isWall(col % tileCols, row)) {
+					tile_row[col >>> 6] |= 1L << col;
+				}
+			}
+			System.arraycopy(tile_row, 0, walls, row * words_per_row, words_per_row);
+		}
+
+		for (int row = tileRows; row < num_rows; row++) {
+			int tile_row = row % tileRows;
+			System.arraycopy(reward_class, tile_row * num_cols, reward_class, row * num_cols, num_cols);
+			System.arraycopy(walls, tile_row * words_per_row, walls, row * words_per_row, words_per_row);
+		}
+	}
+
+	// Index of a reward in the reward table, adding it if it is not there yet
+	private byte rewardClass(double reward) {
+		for (int i = 0; i < num_rewards; i++) {
+			if (Double.compare(reward_table[i], reward) == 0) {
+				return (byte) i;
+			}
+		}
+		if (num_rewards == MAX_REWARDS) {
+			throw new IllegalStateException("A grid cannot have more than " + MAX_REWARDS + " distinct rewards");
+		}
+		reward_table[num_rewards] = reward;
+		return (byte) num_rewards++;
+	}
+
+    /**
+     * Returns the distinct rewards of the grid, indexed by reward class.
+     * @return A copy of the reward table
+     */
+
+	public double[] getRewardTable() {
+		return Arrays.copyOf(reward_table, num_rewards);
+	}
+
+}
@@ -0,0 +1,229 @@
+/*
+ * Grid environment held outside the Java heap: one byte per cell, the reward class of GridStore, row by row, in the
+ * layout of the binary maze files of MazeLoader. A binary maze file is memory-mapped as it is, so a grid of any size
+ * opens without parsing and the operating system pages its rows in and out. A grid can also be built by repeating a
+ * GridStore, either into direct buffers or into a new binary maze file.
+ *
+ * A mapping or direct buffer holds at most 2 GB, so the rows are split into segments of whole rows of at most
+ * SEGMENT_BYTES, and a row is found by its segment and its offset within it. Direct buffers are limited by
+ * -XX:MaxDirectMemorySize, which defaults to the maximum heap, so grids larger than the heap need a file.
+ */
+
+package grid;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import globals.IterationConstants;
+
+public class MappedGrid {
+
+	// Largest segment of rows in one buffer
+	public static final int SEGMENT_BYTES = 1 << 30;
+
+	private final int num_cols;
+	private final int num_rows;
+	private final int rows_per_segment;
+
+	// Reward classes of the rows [s * rows_per_segment, (s + 1) * rows_per_segment) in segments[s]
+	private final ByteBuffer[] segments;
+
+	// Reward of each class of a maze file
+	private final double[] reward_table = { IterationConstants.REWARD_WHITE, IterationConstants.REWARD_GREEN,
+	IterationConstants.REWARD_BROWN, IterationConstants.WALL_COLLISION };
+
+	private MappedGrid(int numCols, int numRows, ByteBuffer[] segments) {
+		this.num_cols = numCols;
+		this.num_rows = numRows;
+		this.rows_per_segment = rowsPerSegment(numCols);
+		this.segments = segments;
+	}
+
+    /**
+     * Maps a binary maze file without reading it.
+     * @param fileName The path of the binary maze file
+     * @return The grid of the maze
+     */
+
+	public static MappedGrid open(String fileName) {
+		try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(MazeLoader.HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			channel.read(header, 0);
+			header.flip();
+			byte[] magic = new byte[MazeLoader.MAGIC.length];
+			header.get(magic);
+			if (!Arrays.equals(magic, MazeLoader.MAGIC)) {
+				throw new IllegalArgumentException(fileName + " is not a binary maze file, convert it with MazeLoader");
+			}
+			int version = header.getInt();
+			if (version != MazeLoader.VERSION) {
+				throw new IllegalArgumentException("Maze file version " + version + " is not " + MazeLoader.VERSION);
+			}
+			int num_cols = header.getInt();
+			int num_rows = header.getInt();
+			if (MazeLoader.HEADER_BYTES + (long) num_cols * num_rows > channel.size()) {
+				throw new IllegalArgumentException(fileName + " has fewer than " + num_rows + " rows of " + num_cols + " cells");
+			}
+			return new MappedGrid(num_cols, num_rows, map(channel, FileChannel.MapMode.READ_ONLY, num_cols, num_rows));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+    /**
+     * Builds a grid by repeating a compact grid, cell (col % its columns, row % its rows) being copied to every
+     * cell (col, row), walls and rewards. Only a GridStore of the four rewards of a maze file can be repeated, and
+     * none of its open cells can have the reward of a wall, which is a wall in a maze file.
+     * @param tile The compact grid to repeat, such as the base grid
+     * @param numCols The number of columns
+     * @param numRows The number of rows
+     * @param file The binary maze file to write the grid to, or null to keep it in direct buffers
+     * @return The grid
+     */
+
+	public static MappedGrid tile(GridStore tile, int numCols, int numRows, Path file) {
+		ByteBuffer[] segments;
+		if (file == null) {
+			segments = allocate(numCols, numRows);
+		} else {
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+			StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				ByteBuffer header = ByteBuffer.allocate(MazeLoader.HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+				header.put(MazeLoader.MAGIC);
+				header.putInt(MazeLoader.VERSION);
+				header.putInt(numCols);
+				header.putInt(numRows);
+				header.rewind();
+				channel.write(header, 0);
+				segments = map(channel, FileChannel.MapMode.READ_WRITE, numCols, numRows);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		MappedGrid grid = new MappedGrid(numCols, numRows, segments);
+
+		// Every row of the tile once, then copied to the rows repeating it
+		byte[][] tile_rows = new byte[tile.getNumRows()][numCols];
+		for (int row = 0; row < tile.getNumRows(); row++) {
+			for (int col = 0; col < numCols; col++) {
+				int tile_col = col % tile.getNumCols();
+				byte reward_class = tile.isWall(tile_col, row) ? GridStore.WALL : tile.getRewardClass(tile_col, row);
+				if (reward_class > GridStore.WALL || (reward_class == GridStore.WALL && !tile.isWall(tile_col, row))) {
+					throw new IllegalArgumentException("Cell " + tile_col + "," + row + " has a reward no maze file can hold");
+				}
+				tile_rows[row][col] = reward_class;
+			}
+		}
+		for (int row = 0; row < numRows; row++) {
+			grid.getSegment(row).put(grid.getOffset(row), tile_rows[row % tile.getNumRows()]);
+		}
+		return grid;
+	}
+
+    /**
+     * Returns the number of columns of the grid.
+     * @return The number of columns
+     */
+
+	public int getNumCols() {
+		return num_cols;
+	}
+
+    /**
+     * Returns the number of rows of the grid.
+     * @return The number of rows
+     */
+
+	public int getNumRows() {
+		return num_rows;
+	}
+
+    /**
+     * Returns the reward class of a cell, WALL for a wall.
+     * @param col The column index of the cell
+     * @param row The row index of the cell
+     * @return The reward class
+     */
+
+	public byte getRewardClass(int col, int row) {
+		return getSegment(row).get(getOffset(row) + col);
+	}
+
+    /**
+     * Returns whether a cell is a wall.
+     * @param col The column index of the cell
+     * @param row The row index of the cell
+     * @return True if the cell is a wall
+     */
+
+	public boolean isWall(int col, int row) {
+		return getRewardClass(col, row) == GridStore.WALL;
+	}
+
+    /**
+     * Returns the reward of a reward class.
+     * @param rewardClass The reward class
+     * @return The reward
+     */
+
+	public double getReward(byte rewardClass) {
+		return reward_table[rewardClass];
+	}
+
+    /**
+     * Returns the buffer holding a row, for sweeps reading a whole row at once.
+     * @param row The row index
+     * @return The segment of the row
+     */
+
+	public ByteBuffer getSegment(int row) {
+		return segments[row / rows_per_segment];
+	}
+
+    /**
+     * Returns the offset of the first cell of a row within its segment.
+     * @param row The row index
+     * @return The offset of the row
+     */
+
+	public int getOffset(int row) {
+		return (row % rows_per_segment) * num_cols;
+	}
+
+	// Whole rows of cells fitting in a segment
+	private static int rowsPerSegment(int numCols) {
+		return Math.max(1, SEGMENT_BYTES / Math.max(1, numCols));
+	}
+
+	// Maps the rows of a maze file after its header, segment by segment
+	private static ByteBuffer[] map(FileChannel channel, FileChannel.MapMode mode, int numCols, int numRows)
+	throws IOException {
+		int rows_per_segment = rowsPerSegment(numCols);
+		ByteBuffer[] segments = new ByteBuffer[(numRows + rows_per_segment - 1) / rows_per_segment];
+		for (int s = 0; s < segments.length; s++) {
+			int rows = Math.min(rows_per_segment, numRows - s * rows_per_segment);
+			long start = MazeLoader.HEADER_BYTES + (long) s * rows_per_segment * numCols;
+			segments[s] = channel.map(mode, start, (long) rows * numCols);
+		}
+		return segments;
+	}
+
+	// Allocates the rows in direct buffers, segment by segment
+	private static ByteBuffer[] allocate(int numCols, int numRows) {
+		int rows_per_segment = rowsPerSegment(numCols);
+		ByteBuffer[] segments = new ByteBuffer[(numRows + rows_per_segment - 1) / rows_per_segment];
+		for (int s = 0; s < segments.length; s++) {
+			int rows = Math.min(rows_per_segment, numRows - s * rows_per_segment);
+			segments[s] = ByteBuffer.allocateDirect(rows * numCols);
+		}
+		return segments;
+	}
+
+}
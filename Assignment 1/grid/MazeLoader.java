@@ -0,0 +1,326 @@
+/*
+ * Loads a maze from a file into a GridStore, instead of the cells in GridConstants. Two formats are read:
+ *
+ * Text, a line "<cols> <rows>" followed by one line per row with one character per cell,
+ * '.' for white, 'G' for green, 'B' for brown and 'W' for a wall, every line of the same length.
+ *
+ * Binary, a header of HEADER_BYTES bytes, all little-endian, magic "MAZEGRID", int32 version 1, int32 cols,
+ * int32 rows, followed by one byte per cell row by row, the reward class of GridStore: 0 for white, 1 for green,
+ * 2 for brown and 3 for a wall.
+ *
+ * The file is memory-mapped in bands of rows parsed on NUM_THREADS threads. Every row of a GridStore has its own
+ * bytes and its own words of the wall bitset, so the bands never write to the same memory.
+ *
+ * Usage: java grid.MazeLoader <maze file> writes the maze set by GridConstants to a file, binary if it ends in .bin
+ */
+
+package grid;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import globals.IterationConstants;
+
+public final class MazeLoader {
+
+	public static final byte[] MAGIC = "MAZEGRID".getBytes(StandardCharsets.US_ASCII);
+	public static final int VERSION = 1;
+	public static final int HEADER_BYTES = 32;
+
+	// Characters of the text format, indexed by reward class
+	private static final byte[] CELL_CHARS = { '.', 'G', 'B', 'W' };
+
+	// Reward class of each byte of the text format, -1 for the ones that are no cell
+	private static final byte[] CHAR_CLASSES = new byte[256];
+
+	static {
+		Arrays.fill(CHAR_CLASSES, (byte) -1);
+		for (byte reward_class = 0; reward_class < CELL_CHARS.length; reward_class++) {
+			CHAR_CLASSES[CELL_CHARS[reward_class]] = reward_class;
+		}
+	}
+
+	// Number of bands of rows given to each thread, so that threads finishing early can take more
+	private static final int BANDS_PER_THREAD = 4;
+
+	private MazeLoader() {
+	}
+
+	public static void main(String[] args) {
+		if (args.length != 1) {
+			System.err.println("Usage: java grid.MazeLoader <maze file>");
+			System.exit(1);
+		}
+		Path file = Paths.get(args[0]);
+		GridStore store = new Grid().getStore();
+		if (args[0].endsWith(".bin")) {
+			writeBinary(store, file);
+		} else {
+			writeText(store, file);
+		}
+	}
+
+    /**
+     * Reads the number of columns and rows of a maze file from its header.
+     * @param fileName The path of the maze file
+     * @return The number of columns and the number of rows
+     */
+
+	public static int[] readDimensions(String fileName) {
+		try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+			return new Header(channel).dimensions();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+    /**
+     * Loads a maze file, text or binary.
+     * @param fileName The path of the maze file
+     * @return The compact grid of the maze
+     */
+
+	public static GridStore load(String fileName) {
+		try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+			Header header = new Header(channel);
+			// The last line of the text format may have no line break
+			long last_row = header.data_start + (long) (header.num_rows - 1) * header.line_bytes;
+			if (header.num_rows > 0 && last_row + header.num_cols > channel.size()) {
+				throw new IllegalArgumentException(fileName + " has fewer than " + header.num_rows + " rows of "
+				+ header.num_cols + " cells");
+			}
+			GridStore store = new GridStore(header.num_cols, header.num_rows);
+			parseBands(channel, header, store);
+			return store;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+    /**
+     * Writes a grid to a maze file in the text format.
+     * @param store The compact grid
+     * @param file The path of the maze file
+     */
+
+	public static void writeText(GridStore store, Path file) {
+		try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16)) {
+			out.write((store.getNumCols() + " " + store.getNumRows() + "\n").getBytes(StandardCharsets.US_ASCII));
+			byte[] line = new byte[store.getNumCols() + 1];
+			line[store.getNumCols()] = '\n';
+			for (int row = 0; row < store.getNumRows(); row++) {
+				for (int col = 0; col < store.getNumCols(); col++) {
+					line[col] = CELL_CHARS[cellClass(store, col, row)];
+				}
+				out.write(line);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+    /**
+     * Writes a grid to a maze file in the binary format.
+     * @param store The compact grid
+     * @param file The path of the maze file
+     */
+
+	public static void writeBinary(GridStore store, Path file) {
+		try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			header.put(MAGIC);
+			header.putInt(VERSION);
+			header.putInt(store.getNumCols());
+			header.putInt(store.getNumRows());
+			out.write(header.array());
+			byte[] line = new byte[store.getNumCols()];
+			for (int row = 0; row < store.getNumRows(); row++) {
+				for (int col = 0; col < store.getNumCols(); col++) {
+					line[col] = cellClass(store, col, row);
+				}
+				out.write(line);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	// Reward class of a cell as written to a maze file, walls always being WALL whatever their reward
+	private static byte cellClass(GridStore store, int col, int row) {
+		if (store.isWall(col, row)) {
+			return GridStore.WALL;
+		}
+		byte reward_class = store.getRewardClass(col, row);
+		if (reward_class > GridStore.BROWN) {
+			throw new IllegalArgumentException("Cell " + col + "," + row + " has a reward no maze file can hold");
+		}
+		return reward_class;
+	}
+
+	// Parses the rows of the file in bands, on a pool of threads if there are several
+	private static void parseBands(FileChannel channel, Header header, GridStore store) throws IOException {
+		int threads = Math.max(1, IterationConstants.NUM_THREADS);
+		int band_rows = Math.max(1, header.num_rows / (threads * BANDS_PER_THREAD));
+
+		if (threads == 1) {
+			for (int first = 0; first < header.num_rows; first += band_rows) {
+				parseBand(channel, header, store, first, Math.min(header.num_rows, first + band_rows));
+			}
+			return;
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Void>> bands = new ArrayList<>();
+			for (int first = 0; first < header.num_rows; first += band_rows) {
+				final int from_row = first;
+				final int to_row = Math.min(header.num_rows, first + band_rows);
+				bands.add(pool.submit(() -> {
+					parseBand(channel, header, store, from_row, to_row);
+					return null;
+				}));
+			}
+			for (Future<Void> band : bands) {
+				band.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while loading the maze", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	// Maps the rows fromRow to toRow - 1 and writes their cells to the grid
+	private static void parseBand(FileChannel channel, Header header, GridStore store, int fromRow, int toRow)
+	throws IOException {
+		long start = header.data_start + (long) fromRow * header.line_bytes;
+		long length = Math.min((long) (toRow - fromRow) * header.line_bytes, channel.size() - start);
+		MappedByteBuffer band = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+
+		for (int row = fromRow; row < toRow; row++) {
+			int offset = (row - fromRow) * header.line_bytes;
+			for (int col = 0; col < header.num_cols; col++) {
+				byte cell = band.get(offset + col);
+				byte reward_class = header.binary ? cell : textClass(cell, col, row);
+				if (reward_class < 0 || reward_class > GridStore.WALL) {
+					throw new IllegalArgumentException("Cell " + col + "," + row + " has no reward class " + reward_class);
+				}
+				store.setRewardClass(col, row, reward_class);
+				if (reward_class == GridStore.WALL) {
+					store.setWall(col, row, true);
+				}
+			}
+
+			// Every line of the text format is as long as the first one
+			if (!header.binary && offset + header.num_cols < length && band.get(offset + header.num_cols) != '\r'
+			&& band.get(offset + header.num_cols) != '\n') {
+				throw new IllegalArgumentException("Row " + row + " is not " + header.num_cols + " cells long");
+			}
+		}
+	}
+
+	// Reward class of a character of the text format
+	private static byte textClass(byte cell, int col, int row) {
+		byte reward_class = CHAR_CLASSES[cell & 0xFF];
+		if (reward_class < 0) {
+			throw new IllegalArgumentException("Cell " + col + "," + row + " is '" + (char) cell + "', not one of .GBW");
+		}
+		return reward_class;
+	}
+
+	/*
+	 * Dimensions of a maze file and where its rows are, read from the start of the file.
+	 */
+
+	private static final class Header {
+
+		private final boolean binary;
+		private final int num_cols;
+		private final int num_rows;
+
+		// Offset of the first row and the bytes from one row to the next
+		private final long data_start;
+		private final int line_bytes;
+
+		Header(FileChannel channel) throws IOException {
+			ByteBuffer start = ByteBuffer.allocate((int) Math.min(channel.size(), 4096)).order(ByteOrder.LITTLE_ENDIAN);
+			channel.read(start, 0);
+			start.flip();
+
+			byte[] magic = new byte[Math.min(MAGIC.length, start.limit())];
+			start.get(magic);
+			binary = Arrays.equals(magic, MAGIC);
+			if (binary) {
+				int version = start.getInt();
+				if (version != VERSION) {
+					throw new IllegalArgumentException("Maze file version " + version + " is not " + VERSION);
+				}
+				num_cols = start.getInt();
+				num_rows = start.getInt();
+				data_start = HEADER_BYTES;
+				line_bytes = num_cols;
+				return;
+			}
+
+			// The first line holds the dimensions, the second one gives the length of every line
+			int header_end = indexOf(start, (byte) '\n');
+			if (header_end < 0) {
+				throw new IllegalArgumentException("A maze file starts with \"<cols> <rows>\" on a line of its own");
+			}
+			String[] dimensions = new String(start.array(), 0, header_end, StandardCharsets.US_ASCII).trim().split("\\s+");
+			if (dimensions.length != 2) {
+				throw new IllegalArgumentException("A maze file starts with \"<cols> <rows>\", not \""
+				+ String.join(" ", dimensions) + "\"");
+			}
+			num_cols = Integer.parseInt(dimensions[0]);
+			num_rows = Integer.parseInt(dimensions[1]);
+			data_start = header_end + 1;
+
+			ByteBuffer first_line = ByteBuffer.allocate(num_cols + 2);
+			channel.read(first_line, data_start);
+			first_line.flip();
+			int line_end = indexOf(first_line, (byte) '\n');
+			line_bytes = line_end < 0 ? num_cols : line_end + 1;
+		}
+
+		int[] dimensions() {
+			return new int[] { num_cols, num_rows };
+		}
+
+		// Position of the first byte of a flipped buffer equal to a value, or -1
+		private static int indexOf(ByteBuffer buffer, byte value) {
+			for (int i = 0; i < buffer.limit(); i++) {
+				if (buffer.get(i) == value) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+	}
+
+}
@@ -0,0 +1,318 @@
+/*
+ * Utility values and actions of every cell held outside the Java heap, for grids whose utilities do not fit in it.
+ * The store has two planes of utilities, the current and the new store of a Jacobi sweep, and one plane of actions,
+ * all row by row like UtilityStore. It lives either in direct buffers or in a memory-mapped file the operating system
+ * pages in and out, which then holds the solution: reopening the file reads the latest plane without parsing it.
+ *
+ * File format, all little-endian: a header of HEADER_BYTES bytes, magic "UTILPLNS", int32 version 1, int32 cols,
+ * int32 rows, int32 latest plane, int32 sweeps, followed by the two planes of cols * rows doubles and the plane of
+ * cols * rows action codes of UtilityStore.
+ *
+ * Like MappedGrid, every plane is split into segments of whole rows of at most SEGMENT_BYTES.
+ */
+
+package grid;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+public class OffHeapUtilityStore {
+
+	public static final byte[] MAGIC = "UTILPLNS".getBytes(StandardCharsets.US_ASCII);
+	public static final int VERSION = 1;
+	public static final int HEADER_BYTES = 32;
+
+	// Largest segment of rows in one buffer
+	public static final int SEGMENT_BYTES = 1 << 30;
+
+	private final int num_cols;
+	private final int num_rows;
+	private final int rows_per_segment;
+
+	// Utilities of the rows [s * rows_per_segment, (s + 1) * rows_per_segment) in planes[p][s], likewise for actions
+	private final DoubleBuffer[][] planes = new DoubleBuffer[2][];
+	private final ByteBuffer[] actions;
+
+	// Buffers the planes are views of, forced to the file as they are
+	private final ByteBuffer[][] plane_bytes = new ByteBuffer[2][];
+
+	// Header of the file, null for direct buffers
+	private final MappedByteBuffer header;
+
+	private int latest_plane = 0;
+	private int sweeps = 0;
+
+	private OffHeapUtilityStore(int numCols, int numRows, FileChannel channel, FileChannel.MapMode mode) throws IOException {
+		this.num_cols = numCols;
+		this.num_rows = numRows;
+		this.rows_per_segment = Math.max(1, SEGMENT_BYTES / (Double.BYTES * Math.max(1, numCols)));
+		int num_segments = (numRows + rows_per_segment - 1) / rows_per_segment;
+		long plane_size = (long) Double.BYTES * numCols * numRows;
+
+		header = channel == null ? null : channel.map(mode, 0, HEADER_BYTES);
+		actions = new ByteBuffer[num_segments];
+		for (int p = 0; p < planes.length; p++) {
+			planes[p] = new DoubleBuffer[num_segments];
+			plane_bytes[p] = new ByteBuffer[num_segments];
+		}
+		for (int s = 0; s < num_segments; s++) {
+			int rows = Math.min(rows_per_segment, numRows - s * rows_per_segment);
+			long first_cell = (long) s * rows_per_segment * numCols;
+			for (int p = 0; p < planes.length; p++) {
+				ByteBuffer segment = channel == null ? ByteBuffer.allocateDirect(Double.BYTES * rows * numCols)
+				: channel.map(mode, HEADER_BYTES + p * plane_size + Double.BYTES * first_cell, (long) Double.BYTES * rows * numCols);
+				plane_bytes[p][s] = segment;
+				planes[p][s] = segment.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+			}
+			actions[s] = channel == null ? ByteBuffer.allocateDirect(rows * numCols)
+			: channel.map(mode, HEADER_BYTES + 2 * plane_size + first_cell, (long) rows * numCols);
+		}
+		if (header != null) {
+			header.order(ByteOrder.LITTLE_ENDIAN);
+		}
+	}
+
+    /**
+     * Creates a store in direct buffers, with every utility 0 and no actions.
+     * @param numCols The number of columns in the grid
+     * @param numRows The number of rows in the grid
+     * @return The store
+     */
+
+	public static OffHeapUtilityStore allocate(int numCols, int numRows) {
+		try {
+			OffHeapUtilityStore store = new OffHeapUtilityStore(numCols, numRows, null, null);
+			store.clearActions();
+			return store;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+    /**
+     * Creates a store in a new file, replacing any file there, with every utility 0 and no actions.
+     * @param file The path of the file
+     * @param numCols The number of columns in the grid
+     * @param numRows The number of rows in the grid
+     * @return The store
+     */
+
+	public static OffHeapUtilityStore create(Path file, int numCols, int numRows) {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+		StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			OffHeapUtilityStore store = new OffHeapUtilityStore(numCols, numRows, channel, FileChannel.MapMode.READ_WRITE);
+			store.header.put(MAGIC);
+			store.header.putInt(VERSION);
+			store.header.putInt(numCols);
+			store.header.putInt(numRows);
+			store.setLatest(0, 0);
+			store.clearActions();
+			return store;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+    /**
+     * Maps the file of a store read-only, such as a solution, without reading it.
+     * @param file The path of the file
+     * @return The store
+     */
+
+	public static OffHeapUtilityStore open(Path file) {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer start = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			channel.read(start, 0);
+			start.flip();
+			byte[] magic = new byte[MAGIC.length];
+			start.get(magic);
+			if (!Arrays.equals(magic, MAGIC)) {
+				throw new IllegalArgumentException(file + " is not a file of utility planes");
+			}
+			int version = start.getInt();
+			if (version != VERSION) {
+				throw new IllegalArgumentException("Utility file version " + version + " is not " + VERSION);
+			}
+			int num_cols = start.getInt();
+			int num_rows = start.getInt();
+			if (HEADER_BYTES + (2L * Double.BYTES + 1) * num_cols * num_rows > channel.size()) {
+				throw new IllegalArgumentException(file + " is shorter than the planes of " + num_cols + " x " + num_rows + " cells");
+			}
+			OffHeapUtilityStore store = new OffHeapUtilityStore(num_cols, num_rows, channel, FileChannel.MapMode.READ_ONLY);
+			store.latest_plane = start.getInt();
+			store.sweeps = start.getInt();
+			return store;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+    /**
+     * Returns the number of columns of the grid.
+     * @return The number of columns
+     */
+
+	public int getNumCols() {
+		return num_cols;
+	}
+
+    /**
+     * Returns the number of rows of the grid.
+     * @return The number of rows
+     */
+
+	public int getNumRows() {
+		return num_rows;
+	}
+
+    /**
+     * Returns the plane holding the utilities of the latest completed sweep.
+     * @return The latest plane, 0 or 1
+     */
+
+	public int getLatestPlane() {
+		return latest_plane;
+	}
+
+    /**
+     * Returns the number of sweeps that produced the latest plane.
+     * @return The number of sweeps
+     */
+
+	public int getSweeps() {
+		return sweeps;
+	}
+
+    /**
+     * Marks a plane as the one of the latest completed sweep, in the header of the file if there is one.
+     * @param plane The latest plane, 0 or 1
+     * @param numSweeps The number of sweeps that produced it
+     */
+
+	public void setLatest(int plane, int numSweeps) {
+		latest_plane = plane;
+		sweeps = numSweeps;
+		if (header != null) {
+			header.putInt(20, plane);
+			header.putInt(24, numSweeps);
+		}
+	}
+
+    /**
+     * Returns the utility value of a cell in the latest plane.
+     * @param col The column index of the cell
+     * @param row The row index of the cell
+     * @return The utility value of the cell
+     */
+
+	public double getUtil(int col, int row) {
+		return getPlane(latest_plane, row).get(getOffset(row) + col);
+	}
+
+    /**
+     * Returns the action of a cell.
+     * @param col The column index of the cell
+     * @param row The row index of the cell
+     * @return The action of the cell, or null if it has none
+     */
+
+	public AgentAction getAction(int col, int row) {
+		return AgentAction.fromCode(getActions(row).get(getOffset(row) + col));
+	}
+
+    /**
+     * Returns the buffer of a plane holding a row of utilities, for sweeps reading a whole row at once.
+     * @param plane The plane, 0 or 1
+     * @param row The row index
+     * @return The segment of the row
+     */
+
+	public DoubleBuffer getPlane(int plane, int row) {
+		return planes[plane][row / rows_per_segment];
+	}
+
+    /**
+     * Returns the buffer holding a row of actions.
+     * @param row The row index
+     * @return The segment of the row
+     */
+
+	public ByteBuffer getActions(int row) {
+		return actions[row / rows_per_segment];
+	}
+
+    /**
+     * Returns the offset of the first cell of a row within its segments, of utilities and of actions alike.
+     * @param row The row index
+     * @return The offset of the row
+     */
+
+	public int getOffset(int row) {
+		return (row % rows_per_segment) * num_cols;
+	}
+
+    /**
+     * Writes the changes of a file-backed store to the file. Direct buffers have nothing to write.
+     */
+
+	public void force() {
+		if (header == null) {
+			return;
+		}
+		for (ByteBuffer[] plane : plane_bytes) {
+			for (ByteBuffer segment : plane) {
+				((MappedByteBuffer) segment).force();
+			}
+		}
+		for (ByteBuffer segment : actions) {
+			((MappedByteBuffer) segment).force();
+		}
+		header.force();
+	}
+
+    /**
+     * Copies the latest plane and the actions into a UtilityStore, for grids small enough to be held in the heap.
+     * @return A new store holding the same utility values and actions
+     */
+
+	public UtilityStore toUtilityStore() {
+		UtilityStore store = new UtilityStore(num_cols, num_rows);
+		copyTo(store);
+		return store;
+	}
+
+    /**
+     * Copies the latest plane and the actions into a UtilityStore of the same dimensions, such as the snapshot of a sweep.
+     * @param store The store to copy to
+     */
+
+	public void copyTo(UtilityStore store) {
+		if (store.getNumCols() != num_cols || store.getNumRows() != num_rows) {
+			throw new IllegalArgumentException("A store of " + store.getNumCols() + " x " + store.getNumRows()
+			+ " cells cannot hold the utilities of " + num_cols + " x " + num_rows + " cells");
+		}
+		for (int row = 0; row < num_rows; row++) {
+			getPlane(latest_plane, row).get(getOffset(row), store.utils(), row * num_cols, num_cols);
+			getActions(row).get(getOffset(row), store.actions(), row * num_cols, num_cols);
+		}
+	}
+
+	// Every cell starts without an action, walls keep it
+	private void clearActions() {
+		byte[] no_actions = new byte[num_cols];
+		Arrays.fill(no_actions, UtilityStore.NO_ACTION);
+		for (int row = 0; row < num_rows; row++) {
+			getActions(row).put(getOffset(row), no_actions);
+		}
+	}
+
+}
@@ -0,0 +1,307 @@
+/*
+ * Solved policy packed for serving: the action of every cell in 2 bits and a mask of the walls in 1 bit, in a file
+ * that is memory-mapped as it is, so a policy of any size opens without parsing and answers which action to take at
+ * a cell with a couple of byte reads, without the utilities or a Utility[][] in memory.
+ *
+ * File format, all little-endian: a header of HEADER_BYTES bytes, magic "POLICYPK", int32 version 1, int32 cols,
+ * int32 rows, zero padding, followed by the actions of every cell row by row, four cells a byte with the first cell
+ * in the lowest 2 bits and each action being its code of UtilityStore, then the wall mask of every cell row by row,
+ * eight cells a byte with the first cell in the lowest bit. A cell without an action, a wall, is 1 in the mask.
+ *
+ * The cells of the file follow each other row by row, so the queries check that a cell is in the grid, see contains,
+ * rather than read the cell a column past the end of a row as the first one of the next row.
+ */
+
+package grid;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+public class PolicyIndex {
+
+	public static final byte[] MAGIC = "POLICYPK".getBytes(StandardCharsets.US_ASCII);
+	public static final int VERSION = 1;
+	public static final int HEADER_BYTES = 32;
+
+	// Largest file that fits in one mapping
+	private static final long MAX_FILE_BYTES = Integer.MAX_VALUE;
+
+	private final int num_cols;
+	private final int num_rows;
+
+	// Packed actions from offset HEADER_BYTES, then the wall mask from mask_offset
+	private final ByteBuffer buffer;
+	private final int mask_offset;
+
+	private PolicyIndex(int numCols, int numRows, ByteBuffer buffer) {
+		this.num_cols = numCols;
+		this.num_rows = numRows;
+		this.buffer = buffer;
+		this.mask_offset = HEADER_BYTES + actionBytes(numCols, numRows);
+	}
+
+    /**
+     * Packs the policy of a utility store into a file, replacing any file there. The file is written next to its
+     * final name and moved there, so a service opening it never sees half a policy.
+     * @param file The path of the file
+     * @param utils The utility store holding the policy
+     */
+
+	public static void write(Path file, UtilityStore utils) {
+		int num_cells = utils.size();
+		long length = fileBytes(utils.getNumCols(), utils.getNumRows());
+		if (length > MAX_FILE_BYTES) {
+			throw new IllegalArgumentException("A policy of " + num_cells + " cells does not fit in one mapping");
+		}
+		ByteBuffer packed = ByteBuffer.allocate((int) length).order(ByteOrder.LITTLE_ENDIAN);
+		packed.put(MAGIC);
+		packed.putInt(VERSION);
+		packed.putInt(utils.getNumCols());
+		packed.putInt(utils.getNumRows());
+
+		int mask_offset = HEADER_BYTES + actionBytes(utils.getNumCols(), utils.getNumRows());
+		byte[] actions = utils.actions();
+		for (int cell = 0; cell < num_cells; cell++) {
+			byte code = actions[cell];
+			if (code < 0) {
+				int mask_byte = mask_offset + (cell >>> 3);
+				packed.put(mask_byte, (byte) (packed.get(mask_byte) | 1 << (cell & 7)));
+			} else {
+				int action_byte = HEADER_BYTES + (cell >>> 2);
+				packed.put(action_byte, (byte) (packed.get(action_byte) | code << ((cell & 3) << 1)));
+			}
+		}
+
+		try {
+			Path directory = file.toAbsolutePath().getParent();
+			Path temp = Files.createTempFile(directory, "policy", ".tmp");
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+				packed.rewind();
+				while (packed.hasRemaining()) {
+					channel.write(packed);
+				}
+			}
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+    /**
+     * Maps a packed policy read-only without reading it.
+     * @param file The path of the file
+     * @return The policy
+     */
+
+	public static PolicyIndex open(Path file) {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			channel.read(header, 0);
+			header.flip();
+			byte[] magic = new byte[MAGIC.length];
+			header.get(magic);
+			if (!Arrays.equals(magic, MAGIC)) {
+				throw new IllegalArgumentException(file + " is not a packed policy");
+			}
+			int version = header.getInt();
+			if (version != VERSION) {
+				throw new IllegalArgumentException("Policy file version " + version + " is not " + VERSION);
+			}
+			int num_cols = header.getInt();
+			int num_rows = header.getInt();
+			long length = fileBytes(num_cols, num_rows);
+			if (length > MAX_FILE_BYTES) {
+				throw new IllegalArgumentException("A policy of " + num_cols + " x " + num_rows + " cells does not fit in one mapping");
+			}
+			if (length > channel.size()) {
+				throw new IllegalArgumentException(file + " is shorter than the policy of " + num_cols + " x " + num_rows + " cells");
+			}
+			return new PolicyIndex(num_cols, num_rows, channel.map(FileChannel.MapMode.READ_ONLY, 0, length));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+    /**
+     * Returns the number of columns of the grid.
+     * @return The number of columns
+     */
+
+	public int getNumCols() {
+		return num_cols;
+	}
+
+    /**
+     * Returns the number of rows of the grid.
+     * @return The number of rows
+     */
+
+	public int getNumRows() {
+		return num_rows;
+	}
+
+    /**
+     * Returns whether a cell is in the grid.
+     * @param col The column index of the cell
+     * @param row The row index of the cell
+     * @return True if the cell is in the grid
+     */
+
+	public boolean contains(int col, int row) {
+		return col >= 0 && col < num_cols && row >= 0 && row < num_rows;
+	}
+
+    /**
+     * Returns whether a cell is a wall, a cell without an action.
+     * @param col The column index of the cell
+     * @param row The row index of the cell
+     * @return True if the cell is a wall
+     * @throws IllegalArgumentException If the cell is outside the grid
+     */
+
+	public boolean isWall(int col, int row) {
+		return isWallCell(cellId(col, row));
+	}
+
+    /**
+     * Returns the code of the action of a cell, as stored in a UtilityStore.
+     * @param col The column index of the cell
+     * @param row The row index of the cell
+     * @return The code of the action, or UtilityStore.NO_ACTION for a wall
+     * @throws IllegalArgumentException If the cell is outside the grid
+     */
+
+	public byte getActionCode(int col, int row) {
+		return actionCode(cellId(col, row));
+	}
+
+    /**
+     * Returns the action of a cell.
+     * @param col The column index of the cell
+     * @param row The row index of the cell
+     * @return The action of the cell, or null for a wall
+     * @throws IllegalArgumentException If the cell is outside the grid
+     */
+
+	public AgentAction getAction(int col, int row) {
+		return AgentAction.fromCode(getActionCode(col, row));
+	}
+
+    /**
+     * Returns the actions of several cells at once.
+     * @param cols The column index of each cell
+     * @param rows The row index of each cell
+     * @param actions The array the action of each cell is written to, null for a wall
+     * @throws IllegalArgumentException If a cell is outside the grid
+     */
+
+	public void getActions(int[] cols, int[] rows, AgentAction[] actions) {
+		for (int i = 0; i < actions.length; i++) {
+			actions[i] = getAction(cols[i], rows[i]);
+		}
+	}
+
+    /**
+     * Follows the policy from a cell, each step taking the intended move of the action of the cell, a move into
+     * a wall or out of the grid staying put, until a cell comes round again or after a number of steps.
+     * @param col The column index of the first cell
+     * @param row The row index of the first cell
+     * @param maxSteps The most steps taken
+     * @return The cells visited in order, as UtilityStore ids, starting with the first cell
+     * @throws IllegalArgumentException If the first cell is outside the grid
+     */
+
+	public int[] path(int col, int row, int maxSteps) {
+		int[] cells = new int[16];
+		int length = 0;
+		Set<Integer> visited = new HashSet<>();
+		int cell = cellId(col, row);
+		while (true) {
+			if (length == cells.length) {
+				cells = Arrays.copyOf(cells, 2 * length);
+			}
+			cells[length++] = cell;
+			visited.add(cell);
+
+			AgentAction action = AgentAction.fromCode(actionCode(cell));
+			if (action == null || length > maxSteps) {
+				break;
+			}
+			int next = moveCell(cell, action);
+			if (visited.contains(next)) {
+				break;
+			}
+			cell = next;
+		}
+		return Arrays.copyOf(cells, length);
+	}
+
+	// Cell reached by the intended move of an action, the cell itself if it bumps into a wall or the border
+	private int moveCell(int cell, AgentAction action) {
+		int col = cell % num_cols;
+		int row = cell / num_cols;
+		switch (action) {
+			case UP:
+			row--;
+			break;
+
+			case DOWN:
+			row++;
+			break;
+
+			case LEFT:
+			col--;
+			break;
+
+			default:
+			col++;
+			break;
+		}
+		return contains(col, row) && !isWall(col, row) ? row * num_cols + col : cell;
+	}
+
+	// Index of a cell in the file, row by row, checking that it is in the grid
+	private int cellId(int col, int row) {
+		if (!contains(col, row)) {
+			throw new IllegalArgumentException("Cell " + col + "," + row + " is outside the grid of " + num_cols + " x "
+			+ num_rows + " cells");
+		}
+		return row * num_cols + col;
+	}
+
+	// Whether the cell of an index is a wall
+	private boolean isWallCell(int cell) {
+		return (buffer.get(mask_offset + (cell >>> 3)) >> (cell & 7) & 1) != 0;
+	}
+
+	// Code of the action of the cell of an index, UtilityStore.NO_ACTION for a wall
+	private byte actionCode(int cell) {
+		if (isWallCell(cell)) {
+			return UtilityStore.NO_ACTION;
+		}
+		return (byte) (buffer.get(HEADER_BYTES + (cell >>> 2)) >> ((cell & 3) << 1) & 3);
+	}
+
+	// Bytes of the packed actions, four cells a byte
+	private static int actionBytes(int numCols, int numRows) {
+		return (int) (((long) numCols * numRows + 3) / 4);
+	}
+
+	// Bytes of the whole file
+	private static long fileBytes(int numCols, int numRows) {
+		long cells = (long) numCols * numRows;
+		return HEADER_BYTES + (cells + 3) / 4 + (cells + 7) / 8;
+	}
+
+}
@@ -0,0 +1,227 @@
+/*
+ * Flat, primitive store of the utility value and action of every state in the grid.
+ * Values live in a double[] and actions in a byte[], both indexed by a single state id,
+ * so a sweep over the grid touches contiguous memory and allocates nothing.
+ * Utility objects are only created on demand as a view for display and export.
+ */
+
+package grid;
+
+import java.util.Arrays;
+
+import globals.GridConstants;
+
+public class UtilityStore {
+
+	// Encoded action of a state without an action (i.e., a wall)
+	public static final byte NO_ACTION = -1;
+
+	private final int num_cols;
+	private final int num_rows;
+
+	// Utility value of each state, indexed by state id
+	private final double[] utils;
+
+	// Ordinal of the AgentAction of each state, or NO_ACTION, indexed by state id
+	private final byte[] actions;
+
+    // Creates a store sized to the grid in GridConstants, with every utility 0 and no actions.
+	public UtilityStore() {
+		this(GridConstants.TOTAL_NUM_COLS, GridConstants.TOTAL_NUM_ROWS);
+	}
+
+    /**
+     * Creates a store for a grid of the given dimensions, with every utility 0 and no actions.
+     * @param numCols The number of columns in the grid
+     * @param numRows The number of rows in the grid
+     */
+
+	public UtilityStore(int numCols, int numRows) {
+		this.num_cols = numCols;
+		this.num_rows = numRows;
+		this.utils = new double[numCols * numRows];
+		this.actions = new byte[numCols * numRows];
+		Arrays.fill(actions, NO_ACTION);
+	}
+
+    /**
+     * Returns the state id of a cell. States are numbered row by row, so the
+     * cells of one row are adjacent in memory.
+     * @param col The column index of the cell
+     * @param row The row index of the cell
+     * @return The state id of the cell
+     */
+
+	public int stateId(int col, int row) {
+		return row * num_cols + col;
+	}
+
+    /**
+     * Returns the number of columns of the grid.
+     * @return The number of columns
+     */
+
+	public int getNumCols() {
+		return num_cols;
+	}
+
+    /**
+     * Returns the number of rows of the grid.
+     * @return The number of rows
+     */
+
+	public int getNumRows() {
+		return num_rows;
+	}
+
+    /**
+     * Returns the number of states held by the store.
+     * @return The number of states
+     */
+
+	public int size() {
+		return utils.length;
+	}
+
+    /**
+     * Returns the utility value of a state.
+     * @param id The state id
+     * @return The utility value of the state
+     */
+
+	public double getUtil(int id) {
+		return utils[id];
+	}
+
+    /**
+     * Returns the utility value of a cell.
+     * @param col The column index of the cell
+     * @param row The row index of the cell
+     * @return The utility value of the cell
+     */
+
+	public double getUtil(int col, int row) {
+		return utils[row * num_cols + col];
+	}
+
+    /**
+     * Sets the utility value of a state.
+     * @param id The state id
+     * @param util The utility value to be set
+     */
+
+	public void setUtil(int id, double util) {
+		utils[id] = util;
+	}
+
+    /**
+     * Returns the encoded action of a state.
+     * @param id The state id
+     * @return The ordinal of the action, or NO_ACTION
+     */
+
+	public byte getActionCode(int id) {
+		return actions[id];
+	}
+
+    /**
+     * Sets the encoded action of a state.
+     * @param id The state id
+     * @param code The ordinal of the action, or NO_ACTION
+     */
+
+	public void setActionCode(int id, byte code) {
+		actions[id] = code;
+	}
+
+    /**
+     * Returns the action of a cell.
+     * @param col The column index of the cell
+     * @param row The row index of the cell
+     * @return The action of the cell, or null if it has none
+     */
+
+	public AgentAction getAction(int col, int row) {
+		return AgentAction.fromCode(actions[row * num_cols + col]);
+	}
+
+    /**
+     * Sets the action of a cell.
+     * @param col The column index of the cell
+     * @param row The row index of the cell
+     * @param action The action to be set, or null for no action
+     */
+
+	public void setAction(int col, int row, AgentAction action) {
+		actions[row * num_cols + col] = AgentAction.toCode(action);
+	}
+
+    /**
+     * Returns the backing array of utility values, indexed by state id.
+     * Intended for solver kernels that sweep the whole grid.
+     * @return The backing utility array
+     */
+
+	public double[] utils() {
+		return utils;
+	}
+
+    /**
+     * Returns the backing array of encoded actions, indexed by state id.
+     * Intended for solver kernels that sweep the whole grid.
+     * @return The backing action array
+     */
+
+	public byte[] actions() {
+		return actions;
+	}
+
+    /**
+     * Copies every utility value and action of another store of the same size into this store.
+     * @param src The store to copy from
+     */
+
+	public void copyFrom(UtilityStore src) {
+		System.arraycopy(src.utils, 0, utils, 0, utils.length);
+		System.arraycopy(src.actions, 0, actions, 0, actions.length);
+	}
+
+    /**
+     * Returns a deep copy of this store.
+     * @return A new store holding the same utility values and actions
+     */
+
+	public UtilityStore copy() {
+		UtilityStore copy = new UtilityStore(num_cols, num_rows);
+		copy.copyFrom(this);
+		return copy;
+	}
+
+    /**
+     * Returns a Utility view of a single cell.
+     * @param col The column index of the cell
+     * @param row The row index of the cell
+     * @return A new Utility object holding the action and utility value of the cell
+     */
+
+	public Utility getUtility(int col, int row) {
+		int id = row * num_cols + col;
+		return new Utility(AgentAction.fromCode(actions[id]), utils[id]);
+	}
+
+    /**
+     * Returns the store as a 2D array of Utility objects, laid out [col][row], for display and export.
+     * @return A new 2D array of Utility objects
+     */
+
+	public Utility[][] toUtilityArray() {
+		Utility[][] utilArr = new Utility[num_cols][num_rows];
+		for (int col = 0; col < num_cols; col++) {
+			for (int row = 0; row < num_rows; row++) {
+				utilArr[col][row] = getUtility(col, row);
+			}
+		}
+		return utilArr;
+	}
+
+}
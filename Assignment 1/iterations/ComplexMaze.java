@@ -1,181 +1,95 @@
 package iterations;
 
-import java.util.ArrayList;
-import java.util.List;
-
+import controller.MultigridSolver;
 import controller.ShowOutput;
-import controller.SaveOutput;
-import controller.UtilityController;
+import controller.SolverCheckpoint;
+import globals.SweepMode;
 import grid.Utility;
-import grid.AgentState;
+import grid.UtilityStore;
 import grid.Grid;
-import grid.AgentAction;
+import grid.GridStore;
 
 public class ComplexMaze {
     public static Grid gridEnvironment;
-	private static List<Utility[][]> utilityList;
-	private static AgentState[][] grid;
-	private static int iterations = 0;
-	private static double convergeThreshold;
+	private static GridStore store;
 	private static boolean isValueIteration = true;
 
+	// Names of the solves in the checkpoint directory
+	private static final String VALUE_CHECKPOINT = "complex_maze_value";
+	private static final String POLICY_CHECKPOINT = "complex_maze_policy";
+
     // Change grid size in GridConstants.java
 
 	public static void main(String[] args) {
 
 		// Initialize grid environment
 		gridEnvironment = new Grid();
-		grid = gridEnvironment.getGrid();
-
-		// Execute value iteration
-		runValueIteration(grid);
+		store = gridEnvironment.getStore();
 
-		// Display experiment results
-		displayResults();
+		// Sample the sweeps of value iteration from another thread, if a monitor interval is set
+		ValueIteration.startMonitor();
 
-		// Save utility estimates to csv file for plotting
-		SaveOutput.writeToFile(utilityList, "complex_maze__value_utilities");
+		// Checkpoint each solve if a checkpoint directory is set, carrying on from the latest checkpoints if asked to
+		SolverCheckpoint valueCheckpoint = SolverCheckpoint.open(VALUE_CHECKPOINT);
+		SolverCheckpoint policyCheckpoint = SolverCheckpoint.open(POLICY_CHECKPOINT);
 
-        // Execute policy iteration
-		runPolicyIteration(grid);
+		// Execute value iteration
+		int sweeps = ValueIteration.runValueIteration(store, globals.IterationConstants.SWEEP_MODE, null, valueCheckpoint,
+		SolverCheckpoint.resume(valueCheckpoint, args));
 
 		// Display experiment results
-		displayResults();
+		displayResults(ValueIteration.getLatestUtils(), ValueIteration.getIterations(), ValueIteration.getMultigrid(),
+		ValueIteration.getConvergeThreshold());
 
 		// Save utility estimates to csv file for plotting
-		SaveOutput.writeToFile(utilityList, "complex_maze_policy_utilities");
-	}
-
-    public static void runPolicyIteration(final AgentState[][] grid) {
+		ValueIteration.getHistory().writeToFile("complex_maze__value_utilities");
 
-		Utility[][] currUtilArr = new Utility[globals.GridConstants.TOTAL_NUM_COLS][globals.GridConstants.TOTAL_NUM_ROWS];
-		Utility[][] newUtilArr = new Utility[globals.GridConstants.TOTAL_NUM_COLS][globals.GridConstants.TOTAL_NUM_ROWS];
-
-		// Initialize default utilities and policies for each state
-		for (int col = 0; col < globals.GridConstants.TOTAL_NUM_COLS; col++) {
-			for (int row = 0; row < globals.GridConstants.TOTAL_NUM_ROWS; row++) {
-				newUtilArr[col][row] = new Utility();
-				if (!grid[col][row].isWall()) {
-					AgentAction randomAction = AgentAction.getRandomAction();
-					newUtilArr[col][row].setAction(randomAction);
-				}
-			}
+		// The last checkpoint may still be forcing the file of the history, so it is written before the history is closed
+		if (valueCheckpoint != null) {
+			valueCheckpoint.close();
 		}
-
-		// List to store utilities of every state at each iteration
-		utilityList = new ArrayList<>();
-
-		// Used to check if the current policy value is already optimal
-		boolean unchanged = true;
-
-		do {
-
-			UtilityController.updateUtils(newUtilArr, currUtilArr);
-
-			// Append to list of Utility a copy of the existing actions & utilities
-			Utility[][] currUtilArrCopy =
-			new Utility[globals.GridConstants.TOTAL_NUM_COLS][globals.GridConstants.TOTAL_NUM_ROWS];
-			UtilityController.updateUtils(currUtilArr, currUtilArrCopy);
-			utilityList.add(currUtilArrCopy);
-			
-
-			// Policy estimation based on the current actions and utilities
-			newUtilArr = UtilityController.calcNextUtil(currUtilArr, grid);
-
-			unchanged = true;
-
-			// For each state - Policy improvement
-			for (int row = 0; row < globals.GridConstants.TOTAL_NUM_ROWS; row++) {
-				for (int col = 0; col < globals.GridConstants.TOTAL_NUM_COLS; col++) {
-
-					// Calculate the utility for each state, not necessary to calculate for walls
-					if (!grid[col][row].isWall()) {
-						// Best calculated action based on maximizing utility
-						Utility bestActionUtil =
-						UtilityController.calcBestUtil(col, row, newUtilArr, grid);
-
-						// Action and the corresponding utility based on current policy
-						AgentAction policyAction = newUtilArr[col][row].getAction();
-						Utility policyActionUtil = UtilityController.calcActionUtil(policyAction, col, row, newUtilArr, grid);
-
-						if((bestActionUtil.getUtil() > policyActionUtil.getUtil())) {
-							newUtilArr[col][row].setAction(bestActionUtil.getAction());
-							unchanged = false;
-						}
-					}
-				}
-			}
-			iterations++;
-
-		} while (!unchanged);
-	}
-
-
-	public static void runValueIteration(final AgentState[][] grid) {
-
-		Utility[][] currUtilArr = new Utility[globals.GridConstants.TOTAL_NUM_COLS][globals.GridConstants.TOTAL_NUM_ROWS];
-		Utility[][] newUtilArr = new Utility[globals.GridConstants.TOTAL_NUM_COLS][globals.GridConstants.TOTAL_NUM_ROWS];
-
-		// Initialize default utilities for each state
-		for (int col = 0; col < globals.GridConstants.TOTAL_NUM_COLS; col++) {
-			for (int row = 0; row < globals.GridConstants.TOTAL_NUM_ROWS; row++) {
-				newUtilArr[col][row] = new Utility();
-			}
+		ValueIteration.getHistory().close();
+
+		// Compare the sweeps to converge against the Jacobi baseline
+		if (globals.IterationConstants.SWEEP_MODE != SweepMode.JACOBI) {
+			long sweepBackups = ValueIteration.getBackups();
+			int jacobiSweeps = ValueIteration.runValueIteration(store, SweepMode.JACOBI);
+			ValueIteration.getHistory().close();
+			ShowOutput.displaySweepComparison(globals.IterationConstants.SWEEP_MODE, sweeps, sweepBackups, jacobiSweeps,
+			ValueIteration.getBackups());
 		}
 
-		utilityList = new ArrayList<>();
-
-		// Initialize delta to minimum double value first
-		double delta = Double.MIN_VALUE;
-
-		convergeThreshold = globals.IterationConstants.MAXIMUM_ALLOWABLE_DISCOUNTED_ERROR * 
-        ((1.000 - globals.IterationConstants.DISCOUNT_FACTOR) / globals.IterationConstants.DISCOUNT_FACTOR);
-
-		// Initialize number of iterations
-		do {
-
-			UtilityController.updateUtils(newUtilArr, currUtilArr);
+        // Execute policy iteration, from the policy the checkpointed solve started from if resuming
+		SolverCheckpoint.State policyResumed = SolverCheckpoint.resume(policyCheckpoint, args);
+		PolicyIteration.runPolicyIteration(store, globals.IterationConstants.EVALUATION_MODE,
+		policyResumed != null ? policyResumed.getStart() : PolicyIteration.randomPolicy(store), policyCheckpoint,
+		policyResumed);
 
- 			delta = Double.MIN_VALUE;
-
-			// Append to list of Utility a copy of the existing actions & utilities
- 			Utility[][] currUtilArrCopy =
- 			new Utility[globals.GridConstants.TOTAL_NUM_COLS][globals.GridConstants.TOTAL_NUM_ROWS];
-            UtilityController.updateUtils(currUtilArr, currUtilArrCopy);
-			utilityList.add(currUtilArrCopy);
-
-			// For each state
-			for(int row = 0 ; row < globals.GridConstants.TOTAL_NUM_ROWS ; row++) {
-				for(int col = 0 ; col < globals.GridConstants.TOTAL_NUM_COLS ; col++) {
-
-					// Calculate the utility for each state, not necessary to calculate for walls
-					if (!grid[col][row].isWall()) {
-						newUtilArr[col][row] =
-						UtilityController.calcBestUtil(col, row, currUtilArr, grid);
-
-						double updatedUtil = newUtilArr[col][row].getUtil();
-						double currentUtil = currUtilArr[col][row].getUtil();
-						double updatedDelta = Math.abs(updatedUtil - currentUtil);
+		// Display experiment results
+		displayResults(PolicyIteration.getLatestUtils(), PolicyIteration.getIterations(), null,
+		ValueIteration.getConvergeThreshold());
 
-						// Update delta, if the updated delta value is larger than the current one
-						delta = Math.max(delta, updatedDelta);
-					}
-				}
-			}
-			iterations++;
+		// Save utility estimates to csv file for plotting
+		PolicyIteration.getHistory().writeToFile("complex_maze_policy_utilities");
+		if (policyCheckpoint != null) {
+			policyCheckpoint.close();
+		}
+		PolicyIteration.getHistory().close();
 
-		//the iteration will cease when the delta is less than the convergence threshold
-		} while ((delta) >= convergeThreshold);
+		// Both runs are done, so there is nothing left to resume
+		if (valueCheckpoint != null) {
+			valueCheckpoint.discard();
+			policyCheckpoint.discard();
+		}
 	}
 
-	private static void displayResults() {
-		// Final item in the list is the optimal policy derived by value iteration
-		int lastIteration = utilityList.size() - 1;
-		final Utility[][] optimalPolicy =
-		utilityList.get(lastIteration);
+	private static void displayResults(final UtilityStore latest, final int iterations, final MultigridSolver multigrid,
+	final double convergeThreshold) {
+		// Latest iteration in the history is the optimal policy derived by the solve
+		final Utility[][] optimalPolicy = latest.toUtilityArray();
 
 		// Displays the Grid Environment
-		ShowOutput.dispGrid(grid);
+		ShowOutput.dispGrid(store);
 
 		// Displays the experiment setup
 		ShowOutput.displayExperimentSetup(isValueIteration, convergeThreshold);
@@ -183,8 +97,13 @@ public class ComplexMaze {
 		// Display total number of iterations required for convergence
 		ShowOutput.displayIterationsCount(iterations);
 
+		// Display the sweeps and wall time of every level of the coarse-to-fine solve
+		if (multigrid != null) {
+			ShowOutput.displayMultigridLevels(multigrid);
+		}
+
 		// Display the final utilities of all the (non-wall) states
-		ShowOutput.displayUtilities(grid, optimalPolicy);
+		ShowOutput.displayUtilities(store, optimalPolicy);
 
 		// Display the optimal policy
 		ShowOutput.displayPolicy(optimalPolicy);
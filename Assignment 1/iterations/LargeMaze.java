@@ -0,0 +1,65 @@
+/*
+ * Value iteration on grids larger than the heap, with the grid and the utilities outside it, see OffHeapSolver.
+ * The grid is the binary maze file of -Dmaze, mapped as it is, or the base grid repeated over -Dcols x -Drows.
+ * With -Doffheap=path the utilities are solved into that file and the repeated grid is written next to it as
+ * path.maze, a binary maze file for -Dmaze, otherwise both are kept in direct buffers.
+ *
+ * Usage: java -Dcols=50000 -Drows=50000 -Doffheap=large.utils iterations.LargeMaze solves a 50,000 x 50,000 grid,
+ * java iterations.LargeMaze large.utils reopens the solution without solving or parsing it.
+ */
+
+package iterations;
+
+import java.nio.file.Paths;
+
+import controller.OffHeapSolver;
+import controller.ShowOutput;
+import globals.GridConstants;
+import globals.IterationConstants;
+import grid.Grid;
+import grid.MappedGrid;
+import grid.OffHeapUtilityStore;
+
+public class LargeMaze {
+
+	public static void main(String[] args) {
+
+		// Reopen a solution, mapping the file without reading it
+		if (args.length == 1) {
+			long startTime = System.nanoTime();
+			OffHeapUtilityStore utils = OffHeapUtilityStore.open(Paths.get(args[0]));
+			long nanos = System.nanoTime() - startTime;
+			ShowOutput.displayOffHeapSolve("OFF-HEAP SOLUTION", utils, args[0], nanos);
+			return;
+		}
+
+		String file = IterationConstants.OFF_HEAP_FILE;
+
+		// Map the maze file, or repeat the base grid without building the whole grid on the heap
+		MappedGrid grid = GridConstants.MAZE_FILE != null ? MappedGrid.open(GridConstants.MAZE_FILE)
+		: MappedGrid.tile(new Grid(GridConstants.BASE_NUM_COLS, GridConstants.BASE_NUM_ROWS).getStore(),
+		GridConstants.TOTAL_NUM_COLS, GridConstants.TOTAL_NUM_ROWS, file == null ? null : Paths.get(file + ".maze"));
+
+		OffHeapUtilityStore utils = file == null ? OffHeapUtilityStore.allocate(grid.getNumCols(), grid.getNumRows())
+		: OffHeapUtilityStore.create(Paths.get(file), grid.getNumCols(), grid.getNumRows());
+
+		double convergeThreshold = IterationConstants.MAXIMUM_ALLOWABLE_DISCOUNTED_ERROR *
+		((1.000 - IterationConstants.DISCOUNT_FACTOR) / IterationConstants.DISCOUNT_FACTOR);
+
+		// Sample the sweeps from another thread, if a monitor interval is set
+		OffHeapSolver solver = new OffHeapSolver(grid, utils);
+		if (IterationConstants.MONITOR_INTERVAL > 0) {
+			solver.getSnapshots().monitor(OffHeapSolver.SOLVER, IterationConstants.MONITOR_INTERVAL,
+			GridConstants.AGENT_INIT_COL, GridConstants.AGENT_INIT_ROW);
+		}
+
+		// Execute value iteration outside the heap
+		long startTime = System.nanoTime();
+		solver.solve(convergeThreshold);
+		long nanos = System.nanoTime() - startTime;
+
+		// Display experiment results
+		ShowOutput.displayOffHeapSolve("OFF-HEAP SOLVE", utils, file, nanos);
+	}
+
+}
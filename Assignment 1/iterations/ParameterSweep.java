@@ -0,0 +1,53 @@
+package iterations;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import controller.BatchedSolver;
+import controller.Scenario;
+import controller.ShowOutput;
+import grid.Grid;
+import grid.GridStore;
+import grid.UtilityStore;
+
+public class ParameterSweep {
+    public static Grid gridEnvironment;
+
+	public static void main(String[] args) {
+
+		// Initialize grid environment
+		gridEnvironment = new Grid();
+		GridStore store = gridEnvironment.getStore();
+
+		// Every pair of discount and intended move probability
+		List<Scenario> scenarios = new ArrayList<>();
+		for (double discount : globals.IterationConstants.SWEEP_DISCOUNTS) {
+			for (double intended : globals.IterationConstants.SWEEP_INTENDED_PROBABILITIES) {
+				scenarios.add(Scenario.of(discount, intended));
+			}
+		}
+
+		// All the scenarios in one batch
+		long startTime = System.nanoTime();
+		BatchedSolver batched = new BatchedSolver(store, scenarios);
+		batched.solve();
+		long nanos = System.nanoTime() - startTime;
+
+		// The same scenarios one at a time, each in a batch of its own
+		double maxDifference = 0.000;
+		startTime = System.nanoTime();
+		for (int s = 0; s < scenarios.size(); s++) {
+			BatchedSolver alone = new BatchedSolver(store, Collections.singletonList(scenarios.get(s)));
+			alone.solve();
+			UtilityStore batchedUtils = batched.getResult(s);
+			UtilityStore aloneUtils = alone.getResult(0);
+			for (int id = 0; id < aloneUtils.size(); id++) {
+				maxDifference = Math.max(maxDifference, Math.abs(batchedUtils.getUtil(id) - aloneUtils.getUtil(id)));
+			}
+		}
+		long aloneNanos = System.nanoTime() - startTime;
+
+		ShowOutput.displayParameterSweep(scenarios, batched, nanos, aloneNanos, maxDifference);
+	}
+}
@@ -1,114 +1,316 @@
 package iterations;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.file.Paths;
 
+import controller.PolicyEvaluator;
 import controller.ShowOutput;
-import controller.SaveOutput;
+import controller.SolutionCache;
+import controller.SolverCheckpoint;
+import controller.SolverInstrumentation;
+import controller.TransitionModel;
 import controller.UtilityController;
+import controller.UtilityHistory;
+import globals.EvaluationMode;
 import grid.Utility;
+import grid.UtilityStore;
 import grid.AgentState;
 import grid.Grid;
+import grid.GridStore;
+import grid.PolicyIndex;
 import grid.AgentAction;
 
 public class PolicyIteration {
     
     public static Grid gridEnvironment;
-	private static List<Utility[][]> utilityList;
-	private static AgentState[][] grid;
+	private static UtilityHistory utilityHistory;
 	private static int iterations = 0;
+	private static long backups = 0;
 	//private static double convergeThreshold;
 	private static boolean isValueIteration = true;
 
+	// Name of the solver in the solution cache
+	private static final String SOLVER = "policy_iteration";
+
 	public static void main(String[] args) {
 
 		// Initialize grid environment
 		gridEnvironment = new Grid();
-		grid = gridEnvironment.getGrid();
+		GridStore store = gridEnvironment.getStore();
+
+		// Checkpoint the solve if a checkpoint directory is set, carrying on from the latest checkpoint if asked to
+		SolverCheckpoint checkpoint = SolverCheckpoint.open(SOLVER);
+		SolverCheckpoint.State resumed = SolverCheckpoint.resume(checkpoint, args);
+
+		// Look the grid and parameters up in the cache of previous solutions, if there is one and not resuming
+		SolutionCache cache = SolutionCache.open();
+		SolutionCache.Solution cached = cache == null || resumed != null ? null
+		: cache.lookup(store, SOLVER);
+		boolean exactHit = cached != null && cached.isExact();
+
+		// Execute policy iteration, from the solution of the closest problem if there is one,
+		// or from the policy the checkpointed solve started from
+		UtilityStore initialPolicy = resumed != null ? resumed.getStart()
+		: cached == null ? randomPolicy(store) : cached.getUtils();
+		if (exactHit) {
+			// The same problem was solved before, its solution is the result
+			utilityHistory = UtilityHistory.create();
+			utilityHistory.add(initialPolicy);
+		} else {
+			runPolicyIteration(store, globals.IterationConstants.EVALUATION_MODE, initialPolicy, checkpoint, resumed);
+			if (cache != null) {
+				cache.store(store, SOLVER, utilityHistory.getLatest(), iterations);
+			}
+		}
 
-		// Execute policy iteration
-		runPolicyIteration(grid);
+		// Pack the policy for the policy service, if a policy file is set
+		if (globals.IterationConstants.POLICY_FILE != null) {
+			PolicyIndex.write(Paths.get(globals.IterationConstants.POLICY_FILE), utilityHistory.getLatest());
+		}
 
 		// Display experiment results
 		displayResults();
+		if (cache != null) {
+			ShowOutput.displaySolutionCache(cached);
+		}
 
 		// Save utility estimates to csv file for plotting
-		SaveOutput.writeToFile(utilityList, "policy_iteration_utilities");
+		utilityHistory.writeToFile("policy_iteration_utilities");
+
+		// The last checkpoint may still be forcing the file of the history, so it is written before the history is closed
+		if (checkpoint != null) {
+			checkpoint.close();
+		}
+		utilityHistory.close();
+
+		// Compare the backups and wall time against the fixed K baseline, from the same initial policy
+		if (globals.IterationConstants.EVALUATION_MODE != EvaluationMode.FIXED && !exactHit) {
+			int iterationsCount = iterations;
+			long evaluationBackups = backups;
+
+			// The solve of the baseline counts its iterations and backups, and warms it up as the solve above did
+			// the selected mode
+			iterations = 0;
+			runPolicyIteration(store, EvaluationMode.FIXED, initialPolicy);
+			utilityHistory.close();
+			int fixedIterations = iterations;
+			long fixedBackups = backups;
+
+			long[] nanos = timeEvaluationModes(store, initialPolicy);
+			ShowOutput.displayEvaluationComparison(globals.IterationConstants.EVALUATION_MODE, iterationsCount,
+			evaluationBackups, nanos[0], fixedIterations, fixedBackups, nanos[1]);
+			iterations = iterationsCount;
+			backups = evaluationBackups;
+		}
+
+		// The run is done, so there is nothing left to resume
+		if (checkpoint != null) {
+			checkpoint.discard();
+		}
 	}
 
     public static void runPolicyIteration(final AgentState[][] grid) {
+		runPolicyIteration(GridStore.fromStates(grid));
+	}
+
+	/**
+     * Runs policy iteration from a random policy, evaluating each policy in EVALUATION_MODE.
+     * 
+     * @param store  The grid, with the walls and rewards of every cell
+     */
 
-		Utility[][] currUtilArr = new Utility[globals.GridConstants.TOTAL_NUM_COLS][globals.GridConstants.TOTAL_NUM_ROWS];
-		Utility[][] newUtilArr = new Utility[globals.GridConstants.TOTAL_NUM_COLS][globals.GridConstants.TOTAL_NUM_ROWS];
+	public static void runPolicyIteration(final GridStore store) {
+		runPolicyIteration(store, globals.IterationConstants.EVALUATION_MODE, randomPolicy(store));
+	}
+
+	/**
+     * Returns the utilities and actions of the latest run, the result displayed and saved.
+     * 
+     * @return  The utility store of the latest iteration, owned by the history
+     */
+
+	public static UtilityStore getLatestUtils() {
+		return utilityHistory.getLatest();
+	}
+
+	/**
+     * Returns the history of the latest run, to be written and closed by the caller.
+     * 
+     * @return  The history of the utilities of every iteration
+     */
+
+	public static UtilityHistory getHistory() {
+		return utilityHistory;
+	}
+
+	/**
+     * Returns the number of iterations counted so far, carried over from one run to the next.
+     * 
+     * @return  The number of iterations
+     */
+
+	public static int getIterations() {
+		return iterations;
+	}
+
+	/**
+     * Creates a random policy of a grid of states, copied into a compact grid first.
+     * 
+     * @param grid  The grid of states
+     * @return      A utility store holding a random action for each non-wall state
+     */
+
+	public static UtilityStore randomPolicy(final AgentState[][] grid) {
+		return randomPolicy(GridStore.fromStates(grid));
+	}
+
+	/**
+     * Creates a random policy, with every utility at 0.
+     * 
+     * @param store  The grid, with the walls and rewards of every cell
+     * @return       A utility store holding a random action for each non-wall state
+     */
+
+	public static UtilityStore randomPolicy(final GridStore store) {
+
+		UtilityStore policy = new UtilityStore(store.getNumCols(), store.getNumRows());
 
 		// Initialize default utilities and policies for each state
-		for (int col = 0; col < globals.GridConstants.TOTAL_NUM_COLS; col++) {
-			for (int row = 0; row < globals.GridConstants.TOTAL_NUM_ROWS; row++) {
-				newUtilArr[col][row] = new Utility();
-				if (!grid[col][row].isWall()) {
+		for (int col = 0; col < store.getNumCols(); col++) {
+			for (int row = 0; row < store.getNumRows(); row++) {
+				if (!store.isWall(col, row)) {
 					AgentAction randomAction = AgentAction.getRandomAction();
-					newUtilArr[col][row].setAction(randomAction);
+					policy.setAction(col, row, randomAction);
 				}
 			}
 		}
+		return policy;
+	}
+
+	/**
+     * Runs policy iteration from the given policy, evaluating each policy in the given mode.
+     * 
+     * @param store           The grid, with the walls and rewards of every cell
+     * @param evaluationMode  How to decide the number of sweeps of each evaluation
+     * @param initialPolicy   The utility store holding the policy to start from
+     * @return                The number of Bellman backups until convergence
+     */
+
+	public static long runPolicyIteration(final GridStore store, final EvaluationMode evaluationMode,
+	final UtilityStore initialPolicy) {
+		return runPolicyIteration(store, evaluationMode, initialPolicy, null, null);
+	}
+
+	/**
+     * Runs policy iteration from the given policy, evaluating each policy in the given mode and saving its state
+     * every few improvements, or carries on from a checkpointed state.
+     * 
+     * @param store           The grid, with the walls and rewards of every cell
+     * @param evaluationMode  How to decide the number of sweeps of each evaluation
+     * @param initialPolicy   The utility store holding the policy to start from, saved with every checkpoint
+     * @param checkpoint      The checkpoints of the run, or null to run without
+     * @param state           The checkpointed state to carry on from instead of the initial policy, or null
+     * @return                The number of Bellman backups until convergence
+     */
+
+	public static long runPolicyIteration(final GridStore store, final EvaluationMode evaluationMode,
+	final UtilityStore initialPolicy, final SolverCheckpoint checkpoint, final SolverCheckpoint.State state) {
+
+		UtilityStore currUtilArr = new UtilityStore(store.getNumCols(), store.getNumRows());
+		UtilityStore newUtilArr = state != null ? state.getUtils().copy() : initialPolicy.copy();
+
+		// Compile the transitions of the grid once, the sweeps only read the model
+		TransitionModel model = new TransitionModel(store);
+		PolicyEvaluator evaluator = new PolicyEvaluator(model, evaluationMode);
+
+		// A policy of another layout has actions on walls and none on open cells, which cannot be evaluated
+		if (state == null) {
+			UtilityController.fitToWalls(model, newUtilArr);
+		}
 
-		// List to store utilities of every state at each iteration
-		utilityList = new ArrayList<>();
+		// History of the utilities of every state at each iteration
+		utilityHistory = checkpoint != null ? UtilityHistory.create(checkpoint.getSpillFile()) : UtilityHistory.create();
 
 		// Used to check if the current policy value is already optimal
 		boolean unchanged = true;
+		int improvements = 0;
+
+		// Carry on from the checkpoint, with nothing left to do if it had converged
+		if (state != null) {
+			iterations = state.getIterations();
+			improvements = state.getSteps();
+			evaluator.setState(state.getSolverState());
+			state.restoreHistory(utilityHistory);
+			if (state.isConverged()) {
+				backups = evaluator.getBackups();
+				return backups;
+			}
+		}
 
 		do {
 
 			UtilityController.updateUtils(newUtilArr, currUtilArr);
 
-			// Append to list of Utility a copy of the existing actions & utilities
-			Utility[][] currUtilArrCopy =
-			new Utility[globals.GridConstants.TOTAL_NUM_COLS][globals.GridConstants.TOTAL_NUM_ROWS];
-			UtilityController.updateUtils(currUtilArr, currUtilArrCopy);
-			utilityList.add(currUtilArrCopy);
-			
+			// Record a copy of the existing actions & utilities in the history
+			utilityHistory.add(currUtilArr);
 
-			// Policy estimation based on the current actions and utilities
-			newUtilArr = UtilityController.calcNextUtil(currUtilArr, grid);
+			// Measure the evaluation and improvement, only if anything listens
+			SolverInstrumentation.Probe probe = SolverInstrumentation.start();
+			long iterationBackups = evaluator.getBackups();
 
-			unchanged = true;
+			// Policy estimation based on the current actions and utilities
+			newUtilArr = evaluator.evaluate(currUtilArr);
 
-			// For each state - Policy improvement
-			for (int row = 0; row < globals.GridConstants.TOTAL_NUM_ROWS; row++) {
-				for (int col = 0; col < globals.GridConstants.TOTAL_NUM_COLS; col++) {
+			// The largest change of the evaluation, read before the improvement sets the actions
+			double delta = probe != null ? UtilityController.calcMaxDelta(model, currUtilArr, newUtilArr) : 0.000;
 
-					// Calculate the utility for each state, not necessary to calculate for walls
-					if (!grid[col][row].isWall()) {
-						// Best calculated action based on maximizing utility
-						Utility bestActionUtil =
-						UtilityController.calcBestUtil(col, row, newUtilArr, grid);
+			// For each (non-wall) state - Policy improvement
+			unchanged = !evaluator.improve(newUtilArr);
+			iterations++;
+			improvements++;
 
-						// Action and the corresponding utility based on current policy
-						AgentAction policyAction = newUtilArr[col][row].getAction();
-						Utility policyActionUtil = UtilityController.calcActionUtil(policyAction, col, row, newUtilArr, grid);
+			if (probe != null) {
+				probe.finish(SOLVER, improvements, delta, evaluator.getBackups() - iterationBackups, evaluator.getPolicyChanges());
+			}
 
-						if((bestActionUtil.getUtil() > policyActionUtil.getUtil())) {
-							newUtilArr[col][row].setAction(bestActionUtil.getAction());
-							unchanged = false;
-						}
-					}
-				}
+			// Save the evaluated and improved policy every few improvements, and once converged,
+			// with the policy the solve started from for the baseline to start from too
+			if (checkpoint != null && (unchanged || checkpoint.isDue(improvements))) {
+				checkpoint.save(new SolverCheckpoint.State(newUtilArr, initialPolicy, iterations, improvements,
+				evaluator.getBackups(), unchanged, evaluator.getState(), utilityHistory));
 			}
-			iterations++;
 
 		} while (!unchanged);
+
+		backups = evaluator.getBackups();
+		return backups;
 	}
 
 
+	// Fastest wall times in nanoseconds of policy iteration from the same policy in EVALUATION_MODE and in FIXED,
+	// both warmed up, over COMPARISON_ROUNDS solves of each. The modes take turns to run first, so neither always
+	// runs on code compiled for the other
+	private static long[] timeEvaluationModes(final GridStore store, final UtilityStore initialPolicy) {
+		EvaluationMode[] modes = { globals.IterationConstants.EVALUATION_MODE, EvaluationMode.FIXED };
+		long[] nanos = { Long.MAX_VALUE, Long.MAX_VALUE };
+		for (int round = 0; round < globals.IterationConstants.COMPARISON_ROUNDS; round++) {
+			for (int turn = 0; turn < modes.length; turn++) {
+				int mode = round % 2 == 0 ? turn : modes.length - 1 - turn;
+				long startTime = System.nanoTime();
+				runPolicyIteration(store, modes[mode], initialPolicy);
+				nanos[mode] = Math.min(nanos[mode], System.nanoTime() - startTime);
+				utilityHistory.close();
+			}
+		}
+		return nanos;
+	}
+
 	private static void displayResults() {
-		// Final item in the list is the optimal policy derived by policy iteration
-		int latestUtilities = utilityList.size() - 1;
+		// Latest iteration in the history is the optimal policy derived by policy iteration
 		final Utility[][] optimalPolicy =
-		utilityList.get(latestUtilities);
+		utilityHistory.getLatest().toUtilityArray();
 
 		// Displays the Grid Environment
-		ShowOutput.dispGrid(grid);
+		ShowOutput.dispGrid(gridEnvironment.getStore());
 
 		// Displays the experiment setup
 		ShowOutput.displayExperimentSetup(isValueIteration, 0);
@@ -116,8 +318,11 @@ public class PolicyIteration {
 		// Display total number of iterations required for convergence
 		ShowOutput.displayIterationsCount(iterations);
 
+		// Display total number of Bellman backups, to compare the evaluation modes
+		ShowOutput.displayBackupsCount(backups);
+
 		// Display the utilities of all the (non-wall) states
-		ShowOutput.displayUtilities(grid, optimalPolicy);
+		ShowOutput.displayUtilities(gridEnvironment.getStore(), optimalPolicy);
 
 		// Display the optimal policy
 		ShowOutput.displayPolicy(optimalPolicy);
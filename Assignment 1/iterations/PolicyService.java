@@ -0,0 +1,85 @@
+/*
+ * Serves a policy packed by ValueIteration or PolicyIteration with -Dpolicy=path, see PolicyIndex and PolicyServer.
+ * The policy is mapped without reading it, the queries of one cell, of every cell at once and of the path from the
+ * agent's start are timed in process, and with -Dport=N the policy is then served over HTTP on localhost until the
+ * process is stopped.
+ *
+ * Usage: java -Dpolicy=policy.pack iterations.ValueIteration, then java -Dport=8080 iterations.PolicyService
+ * policy.pack and curl "localhost:8080/action?col=2&row=3", "localhost:8080/actions?cells=0,0;2,3" or
+ * "localhost:8080/path".
+ */
+
+package iterations;
+
+import java.nio.file.Paths;
+
+import controller.PolicyServer;
+import controller.ShowOutput;
+import globals.GridConstants;
+import globals.IterationConstants;
+import grid.AgentAction;
+import grid.PolicyIndex;
+
+public class PolicyService {
+
+	// Number of times each query is timed, after as many to warm up
+	private static final int ROUNDS = 5;
+
+	public static void main(String[] args) {
+
+		String file = args.length > 0 ? args[0] : IterationConstants.POLICY_FILE;
+		if (file == null) {
+			throw new IllegalArgumentException("Give the file of a policy packed with -Dpolicy=path");
+		}
+
+		// Map the policy, without reading it
+		long startTime = System.nanoTime();
+		PolicyIndex policy = PolicyIndex.open(Paths.get(file));
+		long openNanos = System.nanoTime() - startTime;
+
+		// Every cell of the grid, queried one at a time and all at once
+		int numCells = policy.getNumCols() * policy.getNumRows();
+		int[] cols = new int[numCells];
+		int[] rows = new int[numCells];
+		for (int cell = 0; cell < numCells; cell++) {
+			cols[cell] = cell % policy.getNumCols();
+			rows[cell] = cell / policy.getNumCols();
+		}
+		AgentAction[] actions = new AgentAction[numCells];
+
+		double cellNanos = 0;
+		double batchNanos = 0;
+		double pathNanos = 0;
+		int[] path = null;
+		for (int round = 0; round < 2 * ROUNDS; round++) {
+			boolean timed = round >= ROUNDS;
+
+			startTime = System.nanoTime();
+			for (int cell = 0; cell < numCells; cell++) {
+				actions[cell] = policy.getAction(cols[cell], rows[cell]);
+			}
+			long nanos = System.nanoTime() - startTime;
+			cellNanos += timed ? nanos / (double) numCells / ROUNDS : 0;
+
+			startTime = System.nanoTime();
+			policy.getActions(cols, rows, actions);
+			nanos = System.nanoTime() - startTime;
+			batchNanos += timed ? nanos / (double) numCells / ROUNDS : 0;
+
+			startTime = System.nanoTime();
+			path = policy.path(GridConstants.AGENT_INIT_COL, GridConstants.AGENT_INIT_ROW, IterationConstants.PATH_MAX_STEPS);
+			nanos = System.nanoTime() - startTime;
+			pathNanos += timed ? nanos / (double) ROUNDS : 0;
+		}
+
+		// Display the time of each query and the path from the agent's start
+		ShowOutput.displayPolicyService(file, policy, openNanos, cellNanos, batchNanos, pathNanos, path);
+
+		// Answer queries over HTTP, the server's thread keeping the process alive
+		if (IterationConstants.POLICY_PORT != 0) {
+			PolicyServer server = new PolicyServer(policy, IterationConstants.POLICY_PORT);
+			System.out.println("ANSWERING QUERIES ON http://localhost:" + server.getPort() + "/");
+		}
+	}
+
+}
@@ -0,0 +1,119 @@
+package iterations;
+
+import java.util.Arrays;
+import java.util.List;
+
+import controller.IncrementalPlanner;
+import controller.ShowOutput;
+import controller.TransitionModel;
+import controller.UtilityController;
+import globals.SweepMode;
+import grid.AgentState;
+import grid.Grid;
+import grid.GridStore;
+import grid.UtilityStore;
+
+public class Replanning {
+    public static Grid gridEnvironment;
+	private static GridStore store;
+	private static double convergeThreshold;
+
+	public static void main(String[] args) {
+
+		// Initialize grid environment
+		gridEnvironment = new Grid();
+		store = gridEnvironment.getStore();
+		convergeThreshold = globals.IterationConstants.MAXIMUM_ALLOWABLE_DISCOUNTED_ERROR *
+        ((1.000 - globals.IterationConstants.DISCOUNT_FACTOR) / globals.IterationConstants.DISCOUNT_FACTOR);
+
+		// Solve the grid once from scratch
+		UtilityStore utilArr = new UtilityStore();
+		TransitionModel model = new TransitionModel(store);
+		solve(model, utilArr);
+		IncrementalPlanner planner = new IncrementalPlanner(store, model, utilArr, convergeThreshold);
+
+		// A wall appears in the middle of the grid
+		AgentState wall = findCell(globals.IterationConstants.REWARD_WHITE);
+		wall.setAsWall(true);
+		wall.setReward(globals.IterationConstants.WALL_COLLISION);
+		replan(planner, utilArr, "WALL AT " + wall.getCol() + "," + wall.getRow(), Arrays.asList(wall));
+
+		// A green tile moves to a white cell next to it
+		AgentState from = findCell(globals.IterationConstants.REWARD_GREEN);
+		AgentState to = whiteNeighbour(from);
+		from.setReward(globals.IterationConstants.REWARD_WHITE);
+		to.setReward(globals.IterationConstants.REWARD_GREEN);
+		replan(planner, utilArr, "GREEN " + from.getCol() + "," + from.getRow() + " TO " + to.getCol() + "," + to.getRow(),
+		Arrays.asList(from, to));
+
+		// The wall is taken down again
+		wall.setAsWall(false);
+		wall.setReward(globals.IterationConstants.REWARD_WHITE);
+		replan(planner, utilArr, "WALL REMOVED AT " + wall.getCol() + "," + wall.getRow(), Arrays.asList(wall));
+	}
+
+	// Re-solves the utilities after a change, then solves the changed grid from scratch to compare
+	private static void replan(final IncrementalPlanner planner, final UtilityStore utilArr, final String change,
+	final List<AgentState> changes) {
+
+		long startTime = System.nanoTime();
+		planner.replan(changes);
+		long nanos = System.nanoTime() - startTime;
+
+		startTime = System.nanoTime();
+		UtilityStore fullUtilArr = new UtilityStore();
+		TransitionModel fullModel = new TransitionModel(store);
+		long fullBackups = solve(fullModel, fullUtilArr);
+		long fullNanos = System.nanoTime() - startTime;
+
+		// Largest difference between the re-solved and the solved utilities, both within the error bound
+		double maxDifference = 0.000;
+		for (int state = 0; state < fullModel.getNumStates(); state++) {
+			int cell = fullModel.getCell(state);
+			maxDifference = Math.max(maxDifference, Math.abs(utilArr.getUtil(cell) - fullUtilArr.getUtil(cell)));
+		}
+
+		ShowOutput.displayReplanning(change, planner.getBackups(), planner.getTouchedStates(), planner.isRecompiled(),
+		nanos, fullBackups, fullNanos, maxDifference);
+	}
+
+	// Gauss-Seidel sweeps until convergence, returning the number of backups
+	private static long solve(final TransitionModel model, final UtilityStore utilArr) {
+		double delta;
+		long sweeps = 0;
+		do {
+			delta = UtilityController.sweepBestUtils(SweepMode.GAUSS_SEIDEL, null, model, utilArr, utilArr);
+			sweeps++;
+		} while (delta >= convergeThreshold);
+		return sweeps * model.getNumStates();
+	}
+
+	// First open cell with the given reward and a white neighbour from the middle of the grid, row by row, as a view
+	// of the cell to change it through
+	private static AgentState findCell(final double reward) {
+		int numCols = store.getNumCols();
+		int numRows = store.getNumRows();
+		for (int i = 0; i < numCols * numRows; i++) {
+			int cell = (numRows / 2 * numCols + numCols / 2 + i) % (numCols * numRows);
+			AgentState state = new AgentState(store, cell % numCols, cell / numCols);
+			if (!state.isWall() && state.getReward() == reward && whiteNeighbour(state) != null) {
+				return state;
+			}
+		}
+		throw new IllegalStateException("No open cell with a reward of " + reward);
+	}
+
+	// A white cell next to a cell, or null if there is none
+	private static AgentState whiteNeighbour(final AgentState state) {
+		int[][] moves = { { 0, 1 }, { 1, 0 }, { 0, -1 }, { -1, 0 } };
+		for (int[] move : moves) {
+			int col = state.getCol() + move[0];
+			int row = state.getRow() + move[1];
+			if (col >= 0 && row >= 0 && col < store.getNumCols() && row < store.getNumRows() && !store.isWall(col, row)
+			&& store.getReward(col, row) == globals.IterationConstants.REWARD_WHITE) {
+				return new AgentState(store, col, row);
+			}
+		}
+		return null;
+	}
+}
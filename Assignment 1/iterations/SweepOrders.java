@@ -0,0 +1,76 @@
+package iterations;
+
+import java.util.Arrays;
+
+import controller.ShowOutput;
+import controller.StateOrder;
+import controller.TransitionModel;
+import controller.UtilityController;
+import globals.SweepOrder;
+import grid.Grid;
+import grid.UtilityStore;
+
+public class SweepOrders {
+
+	// Number of Jacobi sweeps timed in each order, after as many sweeps to warm up
+	private static final int SWEEPS = globals.IterationConstants.K;
+
+	public static void main(String[] args) {
+
+		// Initialize grid environment
+		Grid gridEnvironment = new Grid();
+		TransitionModel model = new TransitionModel(gridEnvironment.getStore());
+
+		SweepOrder[] orders = SweepOrder.values();
+		double[] sweepNanos = new double[orders.length];
+		long[] sweepBytes = new long[orders.length];
+		boolean[] identical = new boolean[orders.length];
+		UtilityStore rowsUtils = null;
+
+		for (int i = 0; i < orders.length; i++) {
+			int[] states = model.getStateOrder(orders[i]);
+			runSweeps(model, orders[i], states);
+			long startTime = System.nanoTime();
+			UtilityStore utils = runSweeps(model, orders[i], states);
+			sweepNanos[i] = (System.nanoTime() - startTime) / (double) SWEEPS;
+			sweepBytes[i] = bytesPerSweep(model, orders[i]);
+
+			// Every order must give the utilities and actions of the sweeps row by row, bit for bit
+			if (rowsUtils == null) {
+				rowsUtils = utils;
+			}
+			identical[i] = Arrays.equals(utils.utils(), rowsUtils.utils()) && Arrays.equals(utils.actions(), rowsUtils.actions());
+		}
+
+		// Display the time and effective memory bandwidth of a sweep in each order
+		ShowOutput.displaySweepOrders(orders, sweepNanos, sweepBytes, identical, StateOrder.tileSide());
+	}
+
+	// Jacobi sweeps from every utility at 0 on this thread, row by row through the usual kernel or in the order
+	private static UtilityStore runSweeps(final TransitionModel model, final SweepOrder order, final int[] states) {
+		UtilityStore currUtilArr = new UtilityStore(model.getNumCols(), model.getNumRows());
+		UtilityStore newUtilArr = new UtilityStore(model.getNumCols(), model.getNumRows());
+		for (int sweep = 0; sweep < SWEEPS; sweep++) {
+			UtilityStore tempUtilArr = currUtilArr;
+			currUtilArr = newUtilArr;
+			newUtilArr = tempUtilArr;
+			if (order == SweepOrder.ROWS) {
+				UtilityController.calcBestUtils(model, 0, model.getNumRows(), currUtilArr, newUtilArr);
+			} else {
+				UtilityController.calcBestUtilsInOrder(model, states, 0, states.length, currUtilArr, newUtilArr);
+			}
+		}
+		return newUtilArr;
+	}
+
+	// Bytes a sweep reads and writes: the transitions, reward and cell of every state, the utility of every successor,
+	// the utilities and action of every state, and the order itself when not sweeping row by row
+	private static long bytesPerSweep(final TransitionModel model, final SweepOrder order) {
+		long states = model.getNumStates();
+		long entries = model.getTransitionStart()[model.getNumStates() * TransitionModel.NUM_ACTIONS];
+		long bytes = states * (TransitionModel.NUM_ACTIONS * Integer.BYTES + Double.BYTES + Integer.BYTES
+		+ StateOrder.BYTES_PER_STATE) + entries * (Integer.BYTES + 2 * Double.BYTES);
+		return order == SweepOrder.ROWS ? bytes : bytes + states * Integer.BYTES;
+	}
+
+}
@@ -1,104 +1,401 @@
 package iterations;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.file.Paths;
 
+import controller.IterationMetrics;
+import controller.MultigridSolver;
+import controller.ParallelSweep;
+import controller.PrioritizedSweep;
 import controller.ShowOutput;
-import controller.SaveOutput;
+import controller.SnapshotPublisher;
+import controller.SolverCheckpoint;
+import controller.SolverInstrumentation;
+import controller.SolutionCache;
+import controller.TransitionModel;
 import controller.UtilityController;
+import controller.UtilityHistory;
+import globals.SweepMode;
 import grid.Utility;
+import grid.UtilityStore;
 import grid.AgentState;
 import grid.Grid;
+import grid.PolicyIndex;
+import grid.GridStore;
 
 public class ValueIteration {
     public static Grid gridEnvironment;
-	private static List<Utility[][]> utilityList;
-	private static AgentState[][] grid;
+	private static UtilityHistory utilityHistory;
+	private static MultigridSolver multigrid;
 	private static int iterations = 0;
+	private static long backups = 0;
 	private static double convergeThreshold;
 	private static boolean isValueIteration = true;
 
+	// Latest completed sweep, published for readers on other threads
+	private static final SnapshotPublisher snapshots = new SnapshotPublisher();
+
+	// Name of the solver in the solution cache
+	private static final String SOLVER = "value_iteration";
+
 	public static void main(String[] args) {
 
 		// Initialize grid environment
 		gridEnvironment = new Grid();
-		grid = gridEnvironment.getGrid();
 
-		// Execute value iteration
-		runValueIteration(grid);
+		// Sample the sweeps from another thread, if a monitor interval is set
+		startMonitor();
+
+		// Checkpoint the solve if a checkpoint directory is set, carrying on from the latest checkpoint if asked to
+		SolverCheckpoint checkpoint = SolverCheckpoint.open(SOLVER);
+		SolverCheckpoint.State resumed = SolverCheckpoint.resume(checkpoint, args);
+
+		// Look the grid and parameters up in the cache of previous solutions, if there is one and not resuming
+		SolutionCache cache = SolutionCache.open();
+		SolutionCache.Solution cached = cache == null || resumed != null ? null
+		: cache.lookup(gridEnvironment.getStore(), SOLVER);
+
+		if (cached != null && cached.isExact()) {
+			// The same problem was solved before, its solution is the result
+			utilityHistory = UtilityHistory.create();
+			utilityHistory.add(cached.getUtils());
+			convergeThreshold = calcConvergeThreshold();
+		} else {
+			// Execute value iteration, from the solution of the closest problem if there is one
+			runValueIteration(gridEnvironment.getStore(), globals.IterationConstants.SWEEP_MODE,
+			cached == null ? null : cached.getUtils(), checkpoint, resumed);
+			if (cache != null) {
+				cache.store(gridEnvironment.getStore(), SOLVER, utilityHistory.getLatest(), iterations);
+			}
+		}
+
+		// Pack the policy for the policy service, if a policy file is set
+		if (globals.IterationConstants.POLICY_FILE != null) {
+			PolicyIndex.write(Paths.get(globals.IterationConstants.POLICY_FILE), utilityHistory.getLatest());
+		}
 
 		// Display experiment results
 		displayResults();
+		if (cache != null) {
+			ShowOutput.displaySolutionCache(cached);
+		}
 
 		// Save utility estimates to csv file for plotting
-		SaveOutput.writeToFile(utilityList, "value_iteration_utilities");
+		utilityHistory.writeToFile("value_iteration_utilities");
+
+		// The last checkpoint may still be forcing the file of the history, so it is written before the history is closed
+		if (checkpoint != null) {
+			checkpoint.close();
+		}
+		utilityHistory.close();
+
+		// The run is done, so there is nothing left to resume
+		if (checkpoint != null) {
+			checkpoint.discard();
+		}
 	}
 
 	public static void runValueIteration(final AgentState[][] grid) {
+		runValueIteration(GridStore.fromStates(grid), globals.IterationConstants.SWEEP_MODE);
+	}
+
+	/**
+     * Returns the utilities and actions of the latest run, the result displayed and saved.
+     * 
+     * @return  The utility store of the latest iteration, owned by the history
+     */
+
+	public static UtilityStore getLatestUtils() {
+		return utilityHistory.getLatest();
+	}
+
+	/**
+     * Returns the history of the latest run, to be written and closed by the caller.
+     * 
+     * @return  The history of the utilities of every sweep
+     */
+
+	public static UtilityHistory getHistory() {
+		return utilityHistory;
+	}
+
+	/**
+     * Returns the number of iterations counted so far, carried over from one run to the next.
+     * 
+     * @return  The number of iterations
+     */
 
-		Utility[][] currUtilArr = new Utility[globals.GridConstants.TOTAL_NUM_COLS][globals.GridConstants.TOTAL_NUM_ROWS];
-		Utility[][] newUtilArr = new Utility[globals.GridConstants.TOTAL_NUM_COLS][globals.GridConstants.TOTAL_NUM_ROWS];
+	public static int getIterations() {
+		return iterations;
+	}
+
+	/**
+     * Returns the number of Bellman backups of the latest run.
+     * 
+     * @return  The number of backups
+     */
+
+	public static long getBackups() {
+		return backups;
+	}
+
+	/**
+     * Returns the coarse-to-fine solver of the latest run.
+     * 
+     * @return  The multigrid solver, or null if the run had no coarse grids
+     */
+
+	public static MultigridSolver getMultigrid() {
+		return multigrid;
+	}
+
+	/**
+     * Returns the largest change in utility of a sweep at which value iteration has converged.
+     * 
+     * @return  The convergence threshold
+     */
+
+	public static double getConvergeThreshold() {
+		return calcConvergeThreshold();
+	}
+
+	/**
+     * Returns the publisher of the latest completed sweep of value iteration, for reading the utilities and policy
+     * from another thread while it runs. The static fields of this class are not safe to read meanwhile.
+     * 
+     * @return  The publisher
+     */
 
-		// Initialize default utilities for each state
-		for (int col = 0; col < globals.GridConstants.TOTAL_NUM_COLS; col++) {
-			for (int row = 0; row < globals.GridConstants.TOTAL_NUM_ROWS; row++) {
-				newUtilArr[col][row] = new Utility();
+	public static SnapshotPublisher getSnapshots() {
+		return snapshots;
+	}
+
+	/**
+     * Starts sampling the published sweeps on another thread if MONITOR_INTERVAL is set, printing the utility
+     * of the cell the agent starts in, see SnapshotPublisher.monitor.
+     */
+
+	public static void startMonitor() {
+		if (globals.IterationConstants.MONITOR_INTERVAL > 0) {
+			snapshots.monitor(SOLVER, globals.IterationConstants.MONITOR_INTERVAL, globals.GridConstants.AGENT_INIT_COL,
+			globals.GridConstants.AGENT_INIT_ROW);
+		}
+	}
+
+	/**
+     * Runs value iteration on a grid of states, copied into a compact grid first.
+     * 
+     * @param grid       The grid of states
+     * @param sweepMode  The order to sweep the grid in
+     * @return           The number of sweeps until convergence
+     */
+
+	public static int runValueIteration(final AgentState[][] grid, final SweepMode sweepMode) {
+		return runValueIteration(GridStore.fromStates(grid), sweepMode, null);
+	}
+
+	/**
+     * Runs value iteration, sweeping the grid in the given order.
+     * 
+     * @param store      The grid, with the walls and rewards of every cell
+     * @param sweepMode  The order to sweep the grid in
+     * @return           The number of sweeps until convergence
+     */
+
+	public static int runValueIteration(final GridStore store, final SweepMode sweepMode) {
+		return runValueIteration(store, sweepMode, null);
+	}
+
+	/**
+     * Runs value iteration from the given utilities, sweeping the grid in the given order.
+     * 
+     * @param store         The grid, with the walls and rewards of every cell
+     * @param sweepMode     The order to sweep the grid in
+     * @param initialUtils  The utilities and actions to start from, or null to start from 0 or from the coarse grids
+     * @return              The number of sweeps until convergence
+     */
+
+	public static int runValueIteration(final GridStore store, final SweepMode sweepMode,
+	final UtilityStore initialUtils) {
+		return runValueIteration(store, sweepMode, initialUtils, null, null);
+	}
+
+	/**
+     * Runs value iteration from the given utilities, sweeping the grid in the given order and saving its state
+     * every few sweeps, or carries on from a checkpointed state.
+     * 
+     * @param store         The grid, with the walls and rewards of every cell
+     * @param sweepMode     The order to sweep the grid in
+     * @param initialUtils  The utilities and actions to start from, or null to start from 0 or from the coarse grids
+     * @param checkpoint    The checkpoints of the run, or null to run without
+     * @param resumed       The checkpointed state to carry on from instead of the initial utilities, or null
+     * @return              The number of sweeps until convergence
+     */
+
+	public static int runValueIteration(final GridStore store, final SweepMode sweepMode,
+	final UtilityStore initialUtils, final SolverCheckpoint checkpoint, final SolverCheckpoint.State resumed) {
+
+		// Checkpoint only the sweeps whose whole state is in the utility stores
+		SolverCheckpoint checkpoints = checkpoints(sweepMode, checkpoint);
+		SolverCheckpoint.State state = checkpoints != null ? resumed : null;
+
+		// Both stores start with every utility at 0 and no actions, or with the initial or checkpointed utilities
+		UtilityStore currUtilArr = state != null ? state.getUtils().copy()
+		: initialUtils == null ? new UtilityStore(store.getNumCols(), store.getNumRows()) : initialUtils.copy();
+		UtilityStore newUtilArr = currUtilArr.copy();
+
+		utilityHistory = checkpoints != null ? UtilityHistory.create(checkpoints.getSpillFile()) : UtilityHistory.create();
+		snapshots.reset();
+
+		// Compile the transitions of the grid once, the sweeps only read the model, and of its coarse grids if any
+		// and there are no initial utilities
+		multigrid = createMultigrid(store, initialUtils);
+		TransitionModel model = multigrid != null ? multigrid.getModel(0) : new TransitionModel(store);
+		backups = 0;
+
+		// Initial utilities of another layout keep their utilities and actions on walls, which are never swept
+		if (state == null && initialUtils != null && UtilityController.fitToWalls(model, currUtilArr) > 0) {
+			newUtilArr.copyFrom(currUtilArr);
+		}
+
+		convergeThreshold = calcConvergeThreshold();
+
+		// Carry on from the checkpoint, with nothing left to do if it had converged
+		int sweeps = 0;
+		if (state != null) {
+			iterations = state.getIterations();
+			sweeps = state.getSteps();
+			backups = state.getBackups();
+			state.restoreHistory(utilityHistory);
+			if (state.isConverged()) {
+				return sweeps;
 			}
 		}
 
-		utilityList = new ArrayList<>();
+		// Pool of threads to sweep with, none when sweeping on this thread only
+		try (ParallelSweep parallelSweep = globals.IterationConstants.NUM_THREADS > 1
+		&& (sweepMode == SweepMode.JACOBI || sweepMode == SweepMode.RED_BLACK) ?
+		new ParallelSweep(globals.IterationConstants.NUM_THREADS) : null) {
+
+			// Start from the utilities of the coarse grids, solved first
+			if (multigrid != null) {
+				multigrid.solveCoarseLevels(sweepMode, parallelSweep, currUtilArr);
+				newUtilArr.copyFrom(currUtilArr);
+			}
+			long start = System.nanoTime();
+
+			sweeps = sweepToConvergence(sweepMode, parallelSweep, model, currUtilArr, newUtilArr, sweeps, checkpoints);
+
+			// The backups of the coarse grids count towards the cost of converging
+			if (multigrid != null) {
+				multigrid.recordLevel(0, sweeps, System.nanoTime() - start);
+				backups += multigrid.getBackups();
+			}
+		}
+		return sweeps;
+	}
+
+	// Checkpoints of a run, null if the sweeps keep state outside the utility stores, which prioritized sweeping and
+	// the coarse grids of multigrid do
+	private static SolverCheckpoint checkpoints(final SweepMode sweepMode, final SolverCheckpoint checkpoint) {
+		if (checkpoint == null || sweepMode != SweepMode.PRIORITIZED && globals.IterationConstants.MULTIGRID_LEVELS == 0) {
+			return checkpoint;
+		}
+		System.err.println("Prioritized sweeping and multigrid are not checkpointed, solving without checkpoints");
+		return null;
+	}
+
+	// Coarse-to-fine solver of a grid if MULTIGRID_LEVELS is set, null if not or if the run has initial utilities
+	private static MultigridSolver createMultigrid(final GridStore store, final UtilityStore initialUtils) {
+		if (globals.IterationConstants.MULTIGRID_LEVELS == 0 || initialUtils != null) {
+			return null;
+		}
+		return new MultigridSolver(store, globals.IterationConstants.MULTIGRID_LEVELS);
+	}
+
+	// Sweeps from the given number of sweeps until the largest change is below the threshold, recording every sweep
+	// in the history and saving the state every few sweeps, and returns the number of sweeps
+	private static int sweepToConvergence(final SweepMode sweepMode, final ParallelSweep parallelSweep,
+	final TransitionModel model, UtilityStore currUtilArr, UtilityStore newUtilArr, int sweeps,
+	final SolverCheckpoint checkpoints) {
+
+		int numStates = model.getNumStates();
 
 		// Initialize delta to minimum double value first
 		double delta = Double.MIN_VALUE;
 
-		convergeThreshold = globals.IterationConstants.MAXIMUM_ALLOWABLE_DISCOUNTED_ERROR * 
-        ((1.000 - globals.IterationConstants.DISCOUNT_FACTOR) / globals.IterationConstants.DISCOUNT_FACTOR);
+		// Queue of states by Bellman residual, only for prioritized sweeping
+		PrioritizedSweep prioritizedSweep = sweepMode == SweepMode.PRIORITIZED ?
+		new PrioritizedSweep(currUtilArr, model) : null;
 
 		// Initialize number of iterations
 		do {
 
-			UtilityController.updateUtils(newUtilArr, currUtilArr);
+			// Swap the buffers, every non-wall state of the new store is overwritten in a Jacobi sweep,
+			// the other orders update the current store in place
+			if (sweepMode == SweepMode.JACOBI) {
+				UtilityStore tempUtilArr = currUtilArr;
+				currUtilArr = newUtilArr;
+				newUtilArr = tempUtilArr;
+			}
 
- 			delta = Double.MIN_VALUE;
+			// Record a copy of the existing actions & utilities in the history
+			utilityHistory.add(currUtilArr);
 
-			// Append to list of Utility a copy of the existing actions & utilities
- 			Utility[][] currUtilArrCopy =
- 			new Utility[globals.GridConstants.TOTAL_NUM_COLS][globals.GridConstants.TOTAL_NUM_ROWS];
-            UtilityController.updateUtils(currUtilArr, currUtilArrCopy);
-			utilityList.add(currUtilArrCopy);
+			// Measure the sweep, only if anything listens
+			SolverInstrumentation.Probe probe = SolverInstrumentation.start();
+			long sweepBackups = prioritizedSweep != null ? prioritizedSweep.getBackups() : backups;
 
-			// For each state
-			for(int row = 0 ; row < globals.GridConstants.TOTAL_NUM_ROWS ; row++) {
-				for(int col = 0 ; col < globals.GridConstants.TOTAL_NUM_COLS ; col++) {
+			if (prioritizedSweep != null) {
+				// As many backups as a sweep, in order of the residuals, delta is the largest residual left
+				delta = prioritizedSweep.backupStates(numStates, convergeThreshold);
+			} else {
+				// For each state, the rows are split into bands over the threads if there are several
+				delta = UtilityController.sweepBestUtils(sweepMode, parallelSweep, model, currUtilArr, newUtilArr);
+				backups += numStates;
+			}
+			iterations++;
+			sweeps++;
 
-					// Calculate the utility for each state, not necessary to calculate for walls
-					if (!grid[col][row].isWall()) {
-						newUtilArr[col][row] =
-						UtilityController.calcBestUtil(col, row, currUtilArr, grid);
+			if (probe != null) {
+				sweepBackups = (prioritizedSweep != null ? prioritizedSweep.getBackups() : backups) - sweepBackups;
+				probe.finish(SOLVER, sweeps, delta, sweepBackups, IterationMetrics.NO_POLICY_STEP);
+			}
 
-						double updatedUtil = newUtilArr[col][row].getUtil();
-						double currentUtil = currUtilArr[col][row].getUtil();
-						double updatedDelta = Math.abs(updatedUtil - currentUtil);
+			// Publish the sweep, a single read when no reader is attached
+			snapshots.publish(sweepMode == SweepMode.JACOBI ? newUtilArr : currUtilArr, sweeps, delta);
 
-						// Update delta, if the updated delta value is larger than the current one
-						delta = Math.max(delta, updatedDelta);
-					}
-				}
+			// Save the state between two sweeps every few sweeps, and once converged
+			if (checkpoints != null && (delta < convergeThreshold || checkpoints.isDue(sweeps))) {
+				checkpoints.save(new SolverCheckpoint.State(sweepMode == SweepMode.JACOBI ? newUtilArr : currUtilArr,
+				null, iterations, sweeps, backups, delta < convergeThreshold, null, utilityHistory));
 			}
-			iterations++;
 
 		//the iteration will cease when the delta is less than the convergence threshold
 		} while ((delta) >= convergeThreshold);
+
+		// The last backups happened after the last copy, so append the final utilities with the best actions for them
+		if (prioritizedSweep != null) {
+			backups = prioritizedSweep.getBackups();
+			prioritizedSweep.extractPolicy();
+			utilityHistory.add(currUtilArr);
+		}
+
+		return sweeps;
+	}
+
+	// Largest change in utility of a sweep at which the utilities are within the maximum error of the optimal ones
+	private static double calcConvergeThreshold() {
+		return globals.IterationConstants.MAXIMUM_ALLOWABLE_DISCOUNTED_ERROR * 
+        ((1.000 - globals.IterationConstants.DISCOUNT_FACTOR) / globals.IterationConstants.DISCOUNT_FACTOR);
 	}
 
 	private static void displayResults() {
-		// Final item in the list is the optimal policy derived by value iteration
-		int lastIteration = utilityList.size() - 1;
+		// Latest iteration in the history is the optimal policy derived by value iteration
 		final Utility[][] optimalPolicy =
-		utilityList.get(lastIteration);
+		utilityHistory.getLatest().toUtilityArray();
 
 		// Displays the Grid Environment
-		ShowOutput.dispGrid(grid);
+		ShowOutput.dispGrid(gridEnvironment.getStore());
 
 		// Displays the experiment setup
 		ShowOutput.displayExperimentSetup(isValueIteration, convergeThreshold);
@@ -106,8 +403,16 @@ public class ValueIteration {
 		// Display total number of iterations required for convergence
 		ShowOutput.displayIterationsCount(iterations);
 
+		// Display the sweeps and wall time of every level of the coarse-to-fine solve
+		if (multigrid != null) {
+			ShowOutput.displayMultigridLevels(multigrid);
+		}
+
+		// Display total number of Bellman backups, to compare prioritized sweeping with full sweeps
+		ShowOutput.displayBackupsCount(backups);
+
 		// Display the final utilities of all the (non-wall) states
-		ShowOutput.displayUtilities(grid, optimalPolicy);
+		ShowOutput.displayUtilities(gridEnvironment.getStore(), optimalPolicy);
 
 		// Display the optimal policy
 		ShowOutput.displayPolicy(optimalPolicy);
@@ -0,0 +1,129 @@
+/*
+ * Jacobi value iteration sweep on the Vector API, a lane per state. The states of a band of rows are numbered
+ * consecutively, so a vector of states covers a run of cells of one or more rows. For each vector the utilities of
+ * the four neighbours are gathered through the move planes of TransitionModel, where bumps into walls and the border
+ * are already the state itself, so there is no branch per neighbour. The four action utilities are lane-wise fused
+ * multiply-adds of the intended, left and right outcomes, and the best of them and its slot are picked lane-wise,
+ * ties keeping the first slot in the order UP, DOWN, LEFT, RIGHT like the scalar backup. The states left over after
+ * the last whole vector are backed up by the scalar kernel.
+ *
+ * The scalar backup sums the outcomes of an action merged by successor, so outcomes bumping into the same wall are
+ * added before being weighted, and rounds every product. The utilities of this kernel therefore differ from the
+ * scalar ones by a few units in the last place per sweep, and after convergence by at most getTolerance of the
+ * model, a generous 1e-12 of the bound on its utilities, its largest reward over (1 - discount), per sweep amplified
+ * by 1 / (1 - discount). That is about 1e-8 for the grid of IterationConstants, and less for the coarse grids of
+ * MultigridSolver, whose discounts are smaller; 6e-13 was measured on the 600 x 600 grid. Actions whose utilities
+ * are tied up to that rounding may be picked differently.
+ *
+ * Compiled on its own with --add-modules jdk.incubator.vector, after the rest of the code, and run with the module too,
+ * see BellmanKernel.
+ */
+
+package controller;
+
+import globals.IterationConstants;
+import grid.UtilityStore;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+public class VectorBellmanKernel implements BellmanKernel {
+
+	// Lanes of the preferred shape up to 256 bits, as the C2 compiler of JDK 17 crashes on 512-bit gathers of doubles
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED.vectorBitSize() > 256
+	? DoubleVector.SPECIES_256 : DoubleVector.SPECIES_PREFERRED;
+
+	// Action code of each slot
+	private static final byte[] SLOT_CODES = new byte[TransitionModel.NUM_ACTIONS];
+	static {
+		for (int slot = 0; slot < TransitionModel.NUM_ACTIONS; slot++) {
+			SLOT_CODES[slot] = TransitionModel.getActionCode(slot);
+		}
+	}
+
+	// Largest difference between the converged utilities of this kernel and of the scalar one, from the model's own
+	// rewards and discount
+	@Override
+	public double getTolerance(final TransitionModel model) {
+		double max_reward = 0.000;
+		for (double reward : model.getRewards()) {
+			max_reward = Math.max(max_reward, Math.abs(reward));
+		}
+		double upper_bound = max_reward / (1 - model.getDiscount());
+		return 1e-12 * upper_bound / (1 - model.getDiscount());
+	}
+
+	@Override
+	public double calcBestUtils(final TransitionModel model, final int from_row, final int to_row,
+	final UtilityStore curr_utils, final UtilityStore new_utils) {
+
+		int[][] move_cells = model.getMoveCells();
+		int[] up = move_cells[0];
+		int[] down = move_cells[1];
+		int[] left = move_cells[2];
+		int[] right = move_cells[3];
+		int[] cells = model.getCellsOfStates();
+		double[] rewards = model.getRewards();
+		double[] utils = curr_utils.utils();
+		double[] updated = new_utils.utils();
+		byte[] actions = new_utils.actions();
+
+		DoubleVector intended = DoubleVector.broadcast(SPECIES, IterationConstants.INTENDED_PROBABILITY);
+		DoubleVector slip_left = DoubleVector.broadcast(SPECIES, IterationConstants.LEFT_PROBABILITY);
+		DoubleVector slip_right = DoubleVector.broadcast(SPECIES, IterationConstants.RIGHT_PROBABILITY);
+		DoubleVector discount = DoubleVector.broadcast(SPECIES, model.getDiscount());
+		DoubleVector delta = DoubleVector.broadcast(SPECIES, Double.MIN_VALUE);
+		double[] best_slots = new double[SPECIES.length()];
+
+		int from_state = model.getRowStart(from_row);
+		int to_state = model.getRowStart(to_row);
+		int state = from_state;
+		for (; state <= to_state - SPECIES.length(); state += SPECIES.length()) {
+
+			// Utilities of the neighbours, the state itself where a move bumps
+			DoubleVector u_up = DoubleVector.fromArray(SPECIES, utils, 0, up, state);
+			DoubleVector u_down = DoubleVector.fromArray(SPECIES, utils, 0, down, state);
+			DoubleVector u_left = DoubleVector.fromArray(SPECIES, utils, 0, left, state);
+			DoubleVector u_right = DoubleVector.fromArray(SPECIES, utils, 0, right, state);
+
+			// Outcomes of each action in the same order as moveUpUtil, moveDownUtil, moveLeftUtil and moveRightUtil
+			DoubleVector best = u_right.fma(slip_right, u_left.fma(slip_left, u_up.mul(intended)));
+			DoubleVector best_slot = DoubleVector.zero(SPECIES);
+
+			DoubleVector q_down = u_right.fma(slip_right, u_left.fma(slip_left, u_down.mul(intended)));
+			VectorMask<Double> better = q_down.compare(VectorOperators.GT, best);
+			best = best.blend(q_down, better);
+			best_slot = best_slot.blend(1, better);
+
+			DoubleVector q_left = u_down.fma(slip_left, u_up.fma(slip_right, u_left.mul(intended)));
+			better = q_left.compare(VectorOperators.GT, best);
+			best = best.blend(q_left, better);
+			best_slot = best_slot.blend(2, better);
+
+			DoubleVector q_right = u_up.fma(slip_left, u_down.fma(slip_right, u_right.mul(intended)));
+			better = q_right.compare(VectorOperators.GT, best);
+			best = best.blend(q_right, better);
+			best_slot = best_slot.blend(3, better);
+
+			DoubleVector util = best.fma(discount, DoubleVector.fromArray(SPECIES, rewards, state));
+			DoubleVector current = DoubleVector.fromArray(SPECIES, utils, 0, cells, state);
+			delta = delta.max(util.sub(current).abs());
+			util.intoArray(updated, 0, cells, state);
+
+			best_slot.intoArray(best_slots, 0);
+			for (int lane = 0; lane < SPECIES.length(); lane++) {
+				actions[cells[state + lane]] = SLOT_CODES[(int) best_slots[lane]];
+			}
+		}
+
+		double max_delta = delta.reduceLanes(VectorOperators.MAX);
+		for (; state < to_state; state++) {
+			double current_util = curr_utils.getUtil(cells[state]);
+			double updated_util = UtilityController.backupBestUtil(model, state, curr_utils, new_utils);
+			max_delta = Math.max(max_delta, Math.abs(updated_util - current_util));
+		}
+		return max_delta;
+	}
+
+}